@@ -0,0 +1,181 @@
+
+/****************************************************************************************
+ * @file  AccessPath.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * This class records how Table.select (Expr) answers a condition: which of its conjuncts
+ * restrict the primary key enough to be answered from an index, and which are left over
+ * (the residual) to be tested on the tuples the index returns.  Equality on every key
+ * attribute, or IN on a single-attribute key, becomes point lookups; comparisons and
+ * BETWEEN on a single-attribute key are merged into one key range.  Anything else
+ * (OR, NOT, !=, conditions on non-key attributes, literals of the wrong type) is
+ * residual, and a condition with no key conjuncts is a scan.
+ */
+class AccessPath
+{
+    /** The keys to look up (null unless this is a point access).
+     */
+    final List <KeyType> points;
+
+    /** The key range to select (null unless this is a range access).
+     */
+    final KeyRange range;
+
+    /** The conjuncts left to test on the tuples found.
+     */
+    final List <Expr> residual;
+
+    /************************************************************************************
+     * Construct an access path.
+     *
+     * @param _points    the keys to look up (or null)
+     * @param _range     the key range to select (or null)
+     * @param _residual  the conjuncts left to test
+     */
+    private AccessPath (List <KeyType> _points, KeyRange _range, List <Expr> _residual)
+    {
+        points   = _points;
+        range    = _range;
+        residual = _residual;
+    } // constructor
+
+    /************************************************************************************
+     * Analyze the condition against a table's primary key.
+     *
+     * @param condition  the selection condition
+     * @param key        the names of the key attributes
+     * @param keyCols    the positions of the key attributes
+     * @param domain     the domains of the table's attributes
+     * @return  the access path for the condition
+     */
+    static AccessPath analyze (Expr condition, String [] key, int [] keyCols, Class [] domain)
+    {
+        List <Expr>       conjs  = condition.conjuncts ();
+        Comparable []     eq     = new Comparable [key.length];
+        Expr []           eqExpr = new Expr [key.length];
+        Expr.In           in     = null;
+        List <Expr>       bounds = new ArrayList <> ();
+        Comparable        low = null, high = null;
+        boolean           lowIncl = true, highIncl = true;
+
+        for (Expr c : conjs) {
+            if (c instanceof Expr.Cmp && ((Expr.Cmp) c).normalized () != null) {
+                Expr.Cmp   cmp = ((Expr.Cmp) c).normalized ();
+                int        j   = position (key, ((Expr.Col) cmp.left).name);
+                Comparable v   = (j < 0) ? null : Expr.coerce (((Expr.Lit) cmp.right).value, domain [keyCols [j]]);
+                if (v == null) continue;
+                switch (cmp.op) {
+                case "==":
+                    if (eq [j] == null) { eq [j] = v; eqExpr [j] = c; }
+                    break;
+                case "<": case "<=":
+                    if (key.length > 1) break;
+                    if (high == null || Expr.compareValues (v, high) < 0 || Expr.compareValues (v, high) == 0 && cmp.op.equals ("<")) {
+                        high     = v;
+                        highIncl = cmp.op.equals ("<=");
+                    } // if
+                    bounds.add (c);
+                    break;
+                case ">": case ">=":
+                    if (key.length > 1) break;
+                    if (low == null || Expr.compareValues (v, low) > 0 || Expr.compareValues (v, low) == 0 && cmp.op.equals (">")) {
+                        low     = v;
+                        lowIncl = cmp.op.equals (">=");
+                    } // if
+                    bounds.add (c);
+                    break;
+                } // switch
+            } else if (c instanceof Expr.Between && key.length == 1 && isKey (((Expr.Between) c).expr, key)) {
+                Expr.Between b  = (Expr.Between) c;
+                Comparable   lo = Expr.coerce (b.low, domain [keyCols [0]]);
+                Comparable   hi = Expr.coerce (b.high, domain [keyCols [0]]);
+                if (lo == null || hi == null) continue;
+                if (low == null || Expr.compareValues (lo, low) > 0) { low = lo; lowIncl = true; }
+                if (high == null || Expr.compareValues (hi, high) < 0) { high = hi; highIncl = true; }
+                bounds.add (c);
+            } else if (c instanceof Expr.In && key.length == 1 && in == null && isKey (((Expr.In) c).expr, key)) {
+                in = (Expr.In) c;
+            } // if
+        } // for
+
+        if (! Arrays.asList (eq).contains (null)) {
+            List <Expr> rest = new ArrayList <> (conjs);
+            rest.removeAll (Arrays.asList (eqExpr));
+            return new AccessPath (Collections.singletonList (new KeyType (eq)), null, rest);
+        } // if
+        if (in != null) {
+            Set <KeyType> keys = new LinkedHashSet <> ();
+            for (Comparable v : in.values) {
+                Comparable w = Expr.coerce (v, domain [keyCols [0]]);
+                if (w != null) keys.add (new KeyType (w));
+            } // for
+            List <Expr> rest = new ArrayList <> (conjs);
+            rest.remove (in);
+            return new AccessPath (new ArrayList <> (keys), null, rest);
+        } // if
+        if (! bounds.isEmpty ()) {
+            List <Expr> rest = new ArrayList <> (conjs);
+            rest.removeAll (bounds);
+            KeyRange range = new KeyRange (keyCols, low == null ? null : new KeyType (low), lowIncl,
+                                           high == null ? null : new KeyType (high), highIncl);
+            return new AccessPath (null, range, rest);
+        } // if
+        return new AccessPath (null, null, conjs);
+    } // analyze
+
+    /************************************************************************************
+     * Return the access path that scans the tuples, testing the whole condition.
+     *
+     * @param condition  the selection condition
+     */
+    static AccessPath scan (Expr condition)
+    {
+        return new AccessPath (null, null, condition.conjuncts ());
+    } // scan
+
+    /************************************************************************************
+     * Return the residual conjuncts as one condition (null if there are none).
+     */
+    Expr residual ()
+    {
+        if (residual.isEmpty ()) return null;
+        return (residual.size () == 1) ? residual.get (0) : Expr.and (residual.toArray (new Expr [0]));
+    } // residual
+
+    /************************************************************************************
+     * Convert the access path to a string, e.g., "range 100 <= key <= 200, filter
+     * status == 'FR'".
+     */
+    public String toString ()
+    {
+        String access = (points != null) ? "lookup " + points
+                      : (range != null)  ? "range " + range
+                      : "scan";
+        return residual.isEmpty () ? access : access + ", filter " + residual ();
+    } // toString
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Determine whether the expression is a reference to the (single) key attribute.
+     */
+    private static boolean isKey (Expr e, String [] key)
+    {
+        return e instanceof Expr.Col && ((Expr.Col) e).name.equals (key [0]);
+    } // isKey
+
+    /************************************************************************************
+     * Return the position of the name among the key attributes (-1 if not there).
+     */
+    private static int position (String [] key, String name)
+    {
+        for (int j = 0; j < key.length; j++) if (key [j].equals (name)) return j;
+        return -1;
+    } // position
+
+} // AccessPath class
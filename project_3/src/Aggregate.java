@@ -0,0 +1,447 @@
+
+/****************************************************************************************
+ * @file  Aggregate.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/****************************************************************************************
+ * This class provides grouping and aggregation by hashing, e.g., for Table.groupBy.
+ * The tuples are grouped on the values of the grouping attributes, and each group
+ * keeps one accumulator per aggregate (COUNT (*), COUNT, SUM, AVG, MIN or MAX) that is
+ * updated as each tuple streams past, so no group's tuples are ever collected.  As in
+ * SQL, the aggregates other than COUNT (*) ignore nulls, and SUM, AVG, MIN and MAX of
+ * no values are null.
+ *
+ * An accumulator can be written out as a partial aggregate (e.g., a sum and a count
+ * for AVG) and partial aggregates can be merged, which gives the two other modes:
+ *
+ *   - With several threads, each aggregates its own chunk of the tuples into its own
+ *     hash table, and the partial aggregates are merged at the end, so no table is
+ *     shared and no lock is needed.
+ *   - When the groups held in memory exceed the budget, their partial aggregates are
+ *     written to spill files under store/, partitioned on the hash of the group, and
+ *     the table is emptied.  At the end each partition is merged on its own,
+ *     partitioned again if it is still over the budget.
+ */
+public class Aggregate
+{
+    /** The aggregate functions.
+     */
+    static final String [] FUNCTIONS = { "count(*)", "count", "sum", "avg", "min", "max" };
+
+    private static final int COUNT_ALL = 0, COUNT = 1, SUM = 2, AVG = 3, MIN = 4, MAX = 5;
+
+    /** The number of partitions the groups are spilled to.
+     */
+    private static final int FANOUT = 16;
+
+    /** The estimated heap space of a group's hash table entry and of an accumulator.
+     */
+    private static final int ENTRY_BYTES = 64, ACC_BYTES = 48;
+
+    /** The positions and domains of the grouping attributes.
+     */
+    private final int []   groupCols;
+    private final Class [] groupDom;
+
+    /** The function and the position of the attribute (-1 for COUNT (*)) of each
+     *  aggregate, and the domains of the aggregated attributes.
+     */
+    private final int []   fn, cols;
+    private final Class [] colDom;
+
+    /** The domains of the partial aggregate tuples (the grouping attributes followed by
+     *  the partial aggregates) and of the result tuples.
+     */
+    private final Class [] partialDom, resultDom;
+
+    /************************************************************************************
+     * Construct an aggregation.
+     *
+     * @param _groupCols  the positions of the grouping attributes
+     * @param functions   the aggregate functions, e.g., "count(*)", "sum"
+     * @param _cols       the positions of the aggregated attributes (-1 for count(*))
+     * @param domain      the domains of the input tuples
+     */
+    public Aggregate (int [] _groupCols, String [] functions, int [] _cols, Class [] domain)
+    {
+        groupCols = _groupCols;
+        cols      = _cols;
+        fn        = new int [functions.length];
+        colDom    = new Class [functions.length];
+        groupDom  = new Class [groupCols.length];
+        for (int j = 0; j < groupCols.length; j++) groupDom [j] = domain [groupCols [j]];
+
+        List <Class> partial = new ArrayList <> (Arrays.asList (groupDom));
+        List <Class> result  = new ArrayList <> (Arrays.asList (groupDom));
+        for (int i = 0; i < fn.length; i++) {
+            fn [i] = Arrays.asList (FUNCTIONS).indexOf (functions [i]);
+            if (fn [i] < 0) throw new IllegalArgumentException ("Aggregate: unknown function " + functions [i]);
+            colDom [i] = (cols [i] < 0) ? Long.class : domain [cols [i]];
+            boolean numeric = Number.class.isAssignableFrom (colDom [i]);
+            if ((fn [i] == SUM || fn [i] == AVG) && ! numeric) {
+                throw new IllegalArgumentException ("Aggregate: " + functions [i] + " of a non-numeric attribute");
+            } // if
+            Class sum = floating (colDom [i]) ? Double.class : Long.class;
+            switch (fn [i]) {
+            case COUNT_ALL: case COUNT:
+                partial.add (Long.class);
+                result.add (Long.class);
+                break;
+            case SUM: case AVG:
+                partial.add (sum);
+                partial.add (Long.class);
+                result.add ((fn [i] == SUM) ? sum : Double.class);
+                break;
+            default:
+                partial.add (colDom [i]);
+                result.add (colDom [i]);
+            } // switch
+        } // for
+        partialDom = partial.toArray (new Class [0]);
+        resultDom  = result.toArray (new Class [0]);
+    } // constructor
+
+    /************************************************************************************
+     * Return the domains of the result tuples: the grouping attributes' followed by the
+     * aggregates' (Long for COUNT and integral SUM, Double for AVG and floating SUM, the
+     * attribute's own for MIN and MAX).
+     */
+    public Class [] resultDomain ()
+    {
+        return resultDom.clone ();
+    } // resultDomain
+
+    /************************************************************************************
+     * Aggregate the tuples, passing one result tuple per group (the grouping attributes
+     * followed by the aggregates) to out.  With no grouping attributes there is exactly
+     * one group, even for no tuples.
+     *
+     * @param rows     the tuples
+     * @param budget   the memory budget for the groups in bytes
+     * @param threads  the number of threads
+     * @param out      the consumer of the result tuples
+     * @throws IOException  if a spill file cannot be written or read
+     */
+    public void aggregate (List <Comparable []> rows, long budget, int threads, Consumer <Comparable []> out)
+           throws IOException
+    {
+        try {
+            if (threads <= 1 || rows.size () < 2) {
+                Groups groups = new Groups (budget, 0);
+                for (Comparable [] t : rows) groups.add (t);
+                groups.finish (out);
+            } else {
+                parallelAggregate (rows, budget, threads, out);
+            } // if
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause ();
+        } // try
+    } // aggregate
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Aggregate the tuples in two phases: each thread aggregates a chunk into its own
+     * groups, then the partial aggregates are merged.  If any thread spilled, every
+     * thread's groups are spilled and the partitions (which hold the same groups in
+     * every thread) are merged one at a time.
+     */
+    private void parallelAggregate (List <Comparable []> rows, long budget, int threads, Consumer <Comparable []> out)
+            throws IOException
+    {
+        List <Callable <Groups>> tasks = new ArrayList <> ();
+        for (List <Comparable []> chunk : Parallel.chunks (rows, threads)) {
+            tasks.add (() -> {
+                Groups groups = new Groups (budget / threads, 0);
+                for (Comparable [] t : chunk) groups.add (t);
+                return groups;
+            });
+        } // for
+        List <Groups> partials = Parallel.invokeAll (threads, tasks);
+
+        boolean spilled = false;
+        for (Groups g : partials) spilled |= g.parts != null;
+        if (! spilled) {
+            Groups groups = new Groups (budget, 0);
+            for (Groups g : partials) {
+                for (Map.Entry <Object, Acc []> e : g.map.entrySet ()) groups.merge (e.getKey (), e.getValue ());
+            } // for
+            groups.finish (out);
+            return;
+        } // if
+
+        try {
+            for (Groups g : partials) g.spill ();
+            for (int i = 0; i < FANOUT; i++) {
+                Groups groups = new Groups (budget, 1);
+                for (Groups g : partials) {
+                    for (Comparable [] p : g.parts [i]) groups.mergePartial (p);
+                    g.parts [i].close ();
+                } // for
+                groups.finish (out);
+            } // for
+        } finally {
+            for (Groups g : partials) g.close ();
+        } // try
+    } // parallelAggregate
+
+    /************************************************************************************
+     * Return whether the domain is a floating point type.
+     */
+    private static boolean floating (Class c)
+    {
+        return c == Double.class || c == Float.class;
+    } // floating
+
+    /************************************************************************************
+     * Return the group of the tuple: the grouping attribute's value if there is one,
+     * else the list of their values.
+     */
+    private static Object group (Comparable [] t, int [] cols)
+    {
+        if (cols.length == 1) return t [cols [0]];
+        Comparable [] g = new Comparable [cols.length];
+        for (int j = 0; j < g.length; j++) g [j] = t [cols [j]];
+        return Arrays.asList (g);
+    } // group
+
+    /************************************************************************************
+     * This inner class holds the groups of one phase: a hash table from each group to
+     * its accumulators, spilled to partitions once it exceeds its budget.
+     */
+    private class Groups
+    {
+        final Map <Object, Acc []> map = new HashMap <> ();
+        final long                 budget;
+        final int                  depth;
+        final TupleCodec           codec = new TupleCodec (groupDom);
+        final int []               first = firstCols ();
+        long                       bytes = 0;
+        SpillFile []               parts;
+
+        Groups (long _budget, int _depth)
+        {
+            budget = _budget;
+            depth  = _depth;
+        } // constructor
+
+        /** Add an input tuple to its group. */
+        void add (Comparable [] t)
+        {
+            Acc [] accs = accumulators (group (t, groupCols));
+            for (int i = 0; i < accs.length; i++) accs [i].add ((cols [i] < 0) ? null : t [cols [i]]);
+        } // add
+
+        /** Merge a group's accumulators into this one's. */
+        void merge (Object g, Acc [] other)
+        {
+            Acc [] accs = accumulators (g);
+            for (int i = 0; i < accs.length; i++) accs [i].merge (other [i]);
+        } // merge
+
+        /** Merge a partial aggregate tuple into its group. */
+        void mergePartial (Comparable [] p)
+        {
+            Acc [] accs = accumulators (group (p, first));
+            int    k    = groupCols.length;
+            for (int i = 0; i < accs.length; i++) k = accs [i].read (p, k);
+        } // mergePartial
+
+        /** Return the accumulators of the group, adding the group if it is new. */
+        Acc [] accumulators (Object g)
+        {
+            Acc [] accs = map.get (g);
+            if (accs != null) return accs;
+            if (bytes > budget && depth <= HashJoin.MAX_DEPTH) spill ();
+            accs = newAccs ();
+            map.put (g, accs);
+            bytes += ENTRY_BYTES + ACC_BYTES * accs.length + HashJoin.HEAP_FACTOR * codec.size (key (g));
+            return accs;
+        } // accumulators
+
+        /** Write the groups' partial aggregates to the partitions and empty the table. */
+        void spill ()
+        {
+            try {
+                if (parts == null) {
+                    parts = new SpillFile [FANOUT];
+                    for (int i = 0; i < FANOUT; i++) parts [i] = new SpillFile (partialDom);
+                } // if
+                for (Map.Entry <Object, Acc []> e : map.entrySet ()) {
+                    Comparable [] p = Arrays.copyOf (key (e.getKey ()), partialDom.length);
+                    int           k = groupCols.length;
+                    for (Acc a : e.getValue ()) k = a.write (p, k);
+                    parts [HashJoin.partition (e.getKey (), depth, FANOUT)].add (p);
+                } // for
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            map.clear ();
+            bytes = 0;
+        } // spill
+
+        /** Pass the result tuple of each group to out, merging the partitions if any. */
+        void finish (Consumer <Comparable []> out)
+        {
+            if (parts == null) {
+                if (map.isEmpty () && groupCols.length == 0) map.put (Collections.emptyList (), newAccs ());
+                for (Map.Entry <Object, Acc []> e : map.entrySet ()) {
+                    Comparable [] r = Arrays.copyOf (key (e.getKey ()), resultDom.length);
+                    Acc []        a = e.getValue ();
+                    for (int i = 0; i < a.length; i++) r [groupCols.length + i] = a [i].result ();
+                    out.accept (r);
+                } // for
+                return;
+            } // if
+            try {
+                spill ();
+                for (int i = 0; i < FANOUT; i++) {
+                    Groups groups = new Groups (budget, depth + 1);
+                    for (Comparable [] p : parts [i]) groups.mergePartial (p);
+                    parts [i].close ();
+                    groups.finish (out);
+                } // for
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } finally {
+                close ();
+            } // try
+        } // finish
+
+        /** Delete the partitions. */
+        void close ()
+        {
+            if (parts == null) return;
+            try {
+                for (SpillFile f : parts) f.close ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+        } // close
+    } // Groups class
+
+    /************************************************************************************
+     * Return the grouping attributes' values given a group.
+     */
+    @SuppressWarnings ("unchecked")
+    private Comparable [] key (Object g)
+    {
+        if (groupCols.length == 1) return new Comparable [] { (Comparable) g };
+        return ((List <Comparable>) g).toArray (new Comparable [groupCols.length]);
+    } // key
+
+    /************************************************************************************
+     * Return the positions 0, 1, ... of the grouping attributes in a partial tuple.
+     */
+    private int [] firstCols ()
+    {
+        int [] first = new int [groupCols.length];
+        for (int j = 0; j < first.length; j++) first [j] = j;
+        return first;
+    } // firstCols
+
+    /************************************************************************************
+     * Return new accumulators for a group.
+     */
+    private Acc [] newAccs ()
+    {
+        Acc [] accs = new Acc [fn.length];
+        for (int i = 0; i < accs.length; i++) accs [i] = new Acc (fn [i], floating (colDom [i]));
+        return accs;
+    } // newAccs
+
+    /************************************************************************************
+     * This class provides the accumulators of the aggregates.  SUM and AVG keep a count
+     * and either a long or a double sum; MIN and MAX keep the extreme value.
+     */
+    private static class Acc
+    {
+        final int     fn;
+        final boolean floating;
+        long          count, sum;
+        double        dsum;
+        Comparable    ext;
+
+        Acc (int _fn, boolean _floating)
+        {
+            fn       = _fn;
+            floating = _floating;
+        } // constructor
+
+        /** Add a value (ignored if null, except by COUNT (*)). */
+        @SuppressWarnings ("unchecked")
+        void add (Comparable v)
+        {
+            if (fn == COUNT_ALL) { count++; return; }
+            if (v == null) return;
+            switch (fn) {
+            case COUNT: count++; break;
+            case SUM: case AVG:
+                count++;
+                if (floating) dsum += ((Number) v).doubleValue ();
+                else          sum  += ((Number) v).longValue ();
+                break;
+            case MIN: if (ext == null || v.compareTo (ext) < 0) ext = v; break;
+            default:  if (ext == null || v.compareTo (ext) > 0) ext = v;
+            } // switch
+        } // add
+
+        /** Merge another accumulator of the same aggregate into this one. */
+        void merge (Acc a)
+        {
+            count += a.count;
+            sum   += a.sum;
+            dsum  += a.dsum;
+            if (a.ext != null) add (a.ext);                           // MIN or MAX
+        } // merge
+
+        /** Write the partial aggregate into p from position k, returning the next position. */
+        int write (Comparable [] p, int k)
+        {
+            switch (fn) {
+            case COUNT_ALL: case COUNT: p [k] = count; return k + 1;
+            case SUM: case AVG:
+                p [k]     = floating ? (Comparable) dsum : (Comparable) sum;
+                p [k + 1] = count;
+                return k + 2;
+            default: p [k] = ext; return k + 1;
+            } // switch
+        } // write
+
+        /** Merge the partial aggregate in p from position k, returning the next position. */
+        int read (Comparable [] p, int k)
+        {
+            switch (fn) {
+            case COUNT_ALL: case COUNT: count += (Long) p [k]; return k + 1;
+            case SUM: case AVG:
+                if (floating) dsum += (Double) p [k];
+                else          sum  += (Long) p [k];
+                count += (Long) p [k + 1];
+                return k + 2;
+            default:
+                if (p [k] != null) add (p [k]);
+                return k + 1;
+            } // switch
+        } // read
+
+        /** Return the aggregate's value. */
+        Comparable result ()
+        {
+            switch (fn) {
+            case COUNT_ALL: case COUNT: return count;
+            case SUM: return (count == 0) ? null : floating ? (Comparable) dsum : (Comparable) sum;
+            case AVG: return (count == 0) ? null : (floating ? dsum : (double) sum) / count;
+            default:  return ext;
+            } // switch
+        } // result
+    } // Acc class
+
+} // Aggregate class
@@ -0,0 +1,54 @@
+
+/****************************************************************************************
+ * @file  Batch.java
+ */
+
+/****************************************************************************************
+ * This class provides the unit of vectorized execution: a window of up to SIZE rows of
+ * a ColumnStore together with a selection vector listing the rows of the window still
+ * qualifying.  The column values are not copied; operators read them straight from the
+ * store's primitive vectors (ints, longs, doubles) at the selected positions, and a
+ * filter (see VectorPredicate) just shortens the selection vector.
+ */
+public class Batch
+{
+    /** The (maximum) number of rows in a batch.
+     */
+    public static final int SIZE = 1024;
+
+    /** The store holding the rows.
+     */
+    public final ColumnStore store;
+
+    /** The positions (in the store) of the selected rows; only the first n are valid.
+     */
+    public final int [] sel = new int [SIZE];
+
+    /** The number of selected rows.
+     */
+    public int n;
+
+    /************************************************************************************
+     * Construct an empty batch over the given store.
+     *
+     * @param _store  the store holding the rows
+     */
+    public Batch (ColumnStore _store)
+    {
+        store = _store;
+    } // constructor
+
+    /************************************************************************************
+     * Select all the rows of the window starting at row start (up to SIZE of them).
+     *
+     * @param start  the first row of the window
+     * @return  whether the window has any rows
+     */
+    public boolean reset (int start)
+    {
+        n = Math.max (0, Math.min (SIZE, store.size () - start));
+        for (int i = 0; i < n; i++) sel [i] = start + i;
+        return n > 0;
+    } // reset
+
+} // Batch class
@@ -86,40 +86,30 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // comparator
 
     /********************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a set containing all the entries as pairs of keys and values.  The set is
+     * a view backed by the map and is iterated in key order along the leaf chain.
      * @return  the set view of the map
      */
     public Set <Map.Entry <K, V>> entrySet ()
     {       
-        return subSet(root);
+        return new Range (null, true, null, true).entrySet ();
     } // entrySet
 
-    /**
-     * Creates a Set of keys and values from the leaves of the tree
-     * @param n
-     * @return the set of values of tree rooted at n
+    /********************************************************************************
+     * Return a cursor over the entries with keys between lo and hi in increasing key
+     * order.  The cursor descends once to the leaf where lo belongs and then walks the
+     * leaf chain, so a range of k keys costs O(log n + k) without building anything.
+     * @param lo      the lower bound (null for none)
+     * @param loIncl  whether the lower bound is inclusive
+     * @param hi      the upper bound (null for none)
+     * @param hiIncl  whether the upper bound is inclusive
+     * @return  an iterator over the entries in the range
      */
-    public Set <Map.Entry <K, V>> subSet (Node n)
+    public Iterator <Map.Entry <K, V>> cursor (K lo, boolean loIncl, K hi, boolean hiIncl)
     {
-    	if (!n.isLeaf)
-    	{
-    		return subSet((Node) n.ref[0]);
-    	}
-    	else
-    	{
-    		Node current = n;
-    		Set <Map.Entry <K, V>> returnSet = new HashSet <> ();
-    		while (current != null)
-    		{
-    			for(int i = 0;i < n.nKeys;i ++)
-    			{
-    				returnSet.add(new AbstractMap.SimpleEntry(current.key[i], current.ref[i]));
-    			}
-    			current = (Node) current.ref[ORDER];
-    		}
-    		return returnSet;
-    	}
-    }
+        return new Cursor (lo, loIncl, hi, hiIncl);
+    } // cursor
+
     /********************************************************************************
      * Given the key, look up the value in the B+Tree map.
      * @param key  the key used for look up
@@ -144,6 +134,93 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return null;
     } // put
 
+    /********************************************************************************
+     * Build the (empty) B+Tree map bottom-up from entries in strictly increasing key
+     * order, filling every node.  See bulkLoad (entries, fillFactor).
+     * @param entries  the entries in increasing key order
+     */
+    public void bulkLoad (Iterator <Map.Entry <K, V>> entries)
+    {
+        bulkLoad (entries, 1.0);
+    } // bulkLoad
+
+    /********************************************************************************
+     * Build the (empty) B+Tree map bottom-up from entries in strictly increasing key
+     * order.  The leaves are packed left to right with fillFactor * (ORDER - 1) keys
+     * each and chained together; then each level of internal nodes is built over the
+     * level below, until a single root remains.  Each entry is touched once, so the
+     * build is linear-time, and the packed nodes make the tree shallower than one
+     * built by repeated put calls.
+     * @param entries     the entries in increasing key order
+     * @param fillFactor  the fraction of each node to fill (0 < fillFactor <= 1)
+     */
+    @SuppressWarnings("unchecked")
+    public void bulkLoad (Iterator <Map.Entry <K, V>> entries, double fillFactor)
+    {
+        if (treeSize != 0) throw new IllegalStateException ("BpTreeMap:bulkLoad: the map is not empty");
+        if (fillFactor <= 0.0 || fillFactor > 1.0) throw new IllegalArgumentException ("BpTreeMap:bulkLoad: bad fill factor " + fillFactor);
+        int leafCap = Math.max (1, Math.min (ORDER - 1, (int) Math.round (fillFactor * (ORDER - 1))));
+        int fanout  = Math.max (3, Math.min (ORDER, (int) Math.round (fillFactor * ORDER)));
+
+        List <Node> level  = new ArrayList <> ();        // nodes of the current level
+        List <K>    maxKey = new ArrayList <> ();        // largest key under each node
+        Node        leaf   = null;
+        K           prev   = null;
+
+        while (entries.hasNext ()) {
+            Map.Entry <K, V> e = entries.next ();
+            if (prev != null && e.getKey ().compareTo (prev) <= 0) {
+                throw new IllegalArgumentException ("BpTreeMap:bulkLoad: keys out of order at " + e.getKey ());
+            } // if
+            if (leaf == null || leaf.nKeys == leafCap) {
+                Node next = new Node (true);
+                if (leaf != null) leaf.ref [ORDER] = next;
+                leaf = next;
+                level.add (leaf);
+                maxKey.add (null);
+            } // if
+            leaf.key [leaf.nKeys] = e.getKey ();
+            leaf.ref [leaf.nKeys] = e.getValue ();
+            leaf.nKeys++;
+            maxKey.set (level.size () - 1, e.getKey ());
+            prev = e.getKey ();
+            treeSize++;
+        } // while
+        if (level.isEmpty ()) return;
+
+        while (level.size () > 1) {
+            int         m         = (level.size () + fanout - 1) / fanout;   // nodes on the next level
+            List <Node> upper     = new ArrayList <> (m);
+            List <K>    upperMax  = new ArrayList <> (m);
+            int         c         = 0;
+            for (int g = 0; g < m; g++) {
+                int  size = (level.size () - c) / (m - g);                  // spread children evenly
+                Node n    = new Node (false);
+                for (int i = 0; i < size; i++, c++) {
+                    n.ref [i] = level.get (c);
+                    if (i < size - 1) n.key [i] = maxKey.get (c);
+                } // for
+                n.nKeys = size - 1;
+                upper.add (n);
+                upperMax.add (maxKey.get (c - 1));
+            } // for
+            level  = upper;
+            maxKey = upperMax;
+        } // while
+        root = level.get (0);
+    } // bulkLoad
+
+    /********************************************************************************
+     * Return the height of the B+Tree (the number of levels, 1 for a single leaf).
+     * @return  the height of the B+Tree
+     */
+    public int height ()
+    {
+        int h = 1;
+        for (Node n = root; ! n.isLeaf; n = (Node) n.ref [0]) h++;
+        return h;
+    } // height
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
@@ -217,7 +294,17 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     public SortedMap <K,V> headMap (K toKey)
     {
-        return subMap(null, toKey);
+        return new Range (null, true, toKey, false);
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where key < toKey (or key <= toKey if
+     * inclusive).
+     * @return  the submap with keys up to toKey
+     */
+    public SortedMap <K,V> headMap (K toKey, boolean inclusive)
+    {
+        return new Range (null, true, toKey, inclusive);
     } // headMap
 
     /********************************************************************************
@@ -226,71 +313,39 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     public SortedMap <K,V> tailMap (K fromKey)
     {
-    	return subMap(fromKey, null);
+        return new Range (fromKey, true, null, true);
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key (or fromKey < key if
+     * not inclusive).
+     * @return  the submap with keys from fromKey on
+     */
+    public SortedMap <K,V> tailMap (K fromKey, boolean inclusive)
+    {
+        return new Range (fromKey, inclusive, null, true);
     } // tailMap
 
     /********************************************************************************
      * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
-     * i.e., fromKey <= key < toKey.
+     * i.e., fromKey <= key < toKey.  The submap is a live view backed by this map (see
+     * Range), not a copy.
      * @return  the submap with keys in the range [fromKey, toKey)
      */
     public SortedMap <K,V> subMap (K fromKey, K toKey)
     {
-    	// Create empty submap
-    	BpTreeMap <K, V> newMap = new BpTreeMap <> (classK, classV);
-    	
-    	// Set start and end keys
-    	K first = fromKey == null ? firstKey() : fromKey;
-    	K second = toKey == null ? lastKey() : toKey;
-    	
-    	Node temp = root;
-    	boolean foundLeaf = false;
-    	while (!foundLeaf)
-    	{
-    		if (temp.ref[0].getClass() != Node.class)
-    		{
-    			break;
-    		}
-    		
-    		for (int i = 0;i < temp.nKeys;i ++)
-    		{
-    			K key = temp.key[i];
-    			if (first.compareTo(key) < 0)
-    			{
-    				temp = (Node) temp.ref[i];
-    				break;
-    			}
-    			temp = (Node) temp.ref[temp.nKeys];
-    		}
-    	}
-    	
-    	int index = 0;
-    	for (int i = 0;i < temp.nKeys;i ++)
-    	{
-    		if (temp.key[i].compareTo(first) == 0)
-    		{
-    			index = i;
-    			break;
-    		}
-    	}
-    	
-    	while (temp != null)
-    	{
-    		for (int i = index;i < temp.nKeys;i ++)
-    		{
-    			K key = temp.key[i];
-    			if (key.compareTo(second) > 0)
-    			{
-    				return newMap;
-    			}
-    			newMap.put(key, (V) temp.ref[i]);
-    		}
-    		
-    		temp = (Node) temp.ref[ORDER];
-    		index = 0;
-    	}
-    	
-        return newMap;
+        return new Range (fromKey, true, toKey, false);
+    } // subMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * with each bound inclusive or exclusive as given.
+     * #usage tree.subMap (lo, true, hi, true)   // lo <= key <= hi
+     * @return  the submap view with keys in the range
+     */
+    public SortedMap <K,V> subMap (K fromKey, boolean fromIncl, K toKey, boolean toIncl)
+    {
+        return new Range (fromKey, fromIncl, toKey, toIncl);
     } // subMap
 
     /********************************************************************************
@@ -302,6 +357,202 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return treeSize;
     } // size
 
+    /********************************************************************************
+     * This inner class walks the leaf chain from the first key in range to the last.
+     * It is not fail-fast: puts made while iterating may or may not be seen.
+     */
+    private class Cursor
+            implements Iterator <Map.Entry <K, V>>
+    {
+        private final K       hi;
+        private final boolean hiIncl;
+        private Node          leaf;
+        private int           i;
+
+        @SuppressWarnings("unchecked")
+        Cursor (K lo, boolean loIncl, K _hi, boolean _hiIncl)
+        {
+            hi     = _hi;
+            hiIncl = _hiIncl;
+            leaf   = root;
+            while (! leaf.isLeaf) {                              // descend once to lo's leaf
+                count++;
+                int j = 0;
+                if (lo != null) while (j < leaf.nKeys && lo.compareTo (leaf.key [j]) > 0) j++;
+                leaf = (Node) leaf.ref [j];
+            } // while
+            count++;
+            i = 0;
+            if (lo != null) {
+                while (leaf != null) {
+                    while (i < leaf.nKeys && (loIncl ? lo.compareTo (leaf.key [i]) > 0
+                                                     : lo.compareTo (leaf.key [i]) >= 0)) i++;
+                    if (i < leaf.nKeys) break;
+                    leaf = (Node) leaf.ref [ORDER];
+                    i    = 0;
+                } // while
+            } // if
+            skipEmpty ();
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            if (leaf == null) return false;
+            if (hi == null) return true;
+            int c = leaf.key [i].compareTo (hi);
+            return hiIncl ? c <= 0 : c < 0;
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> (leaf.key [i], (V) leaf.ref [i]);
+            i++;
+            skipEmpty ();
+            return e;
+        } // next
+
+        /** Move to the next leaf when the current one is used up.
+         */
+        private void skipEmpty ()
+        {
+            while (leaf != null && i >= leaf.nKeys) {
+                leaf = (Node) leaf.ref [ORDER];
+                i    = 0;
+            } // while
+        } // skipEmpty
+    } // Cursor inner class
+
+    /********************************************************************************
+     * This inner class provides a live view of the entries with keys in a range.  Reads
+     * go through a Cursor and puts are passed on to the backing map, so nothing is
+     * copied.  As for the whole map, size and lastKey are found by scanning the range.
+     */
+    private class Range
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        private final K       lo;
+        private final boolean loIncl;
+        private final K       hi;
+        private final boolean hiIncl;
+
+        Range (K _lo, boolean _loIncl, K _hi, boolean _hiIncl)
+        {
+            lo     = _lo;
+            loIncl = _loIncl;
+            hi     = _hi;
+            hiIncl = _hiIncl;
+        } // constructor
+
+        /** Determine whether the key lies within the range.
+         */
+        boolean inRange (K key)
+        {
+            if (lo != null) {
+                int c = key.compareTo (lo);
+                if (loIncl ? c < 0 : c <= 0) return false;
+            } // if
+            if (hi != null) {
+                int c = key.compareTo (hi);
+                if (hiIncl ? c > 0 : c >= 0) return false;
+            } // if
+            return true;
+        } // inRange
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator ()
+                {
+                    return new Cursor (lo, loIncl, hi, hiIncl);
+                } // iterator
+
+                public int size ()
+                {
+                    return Range.this.size ();
+                } // size
+            };
+        } // entrySet
+
+        public int size ()
+        {
+            if (lo == null && hi == null) return treeSize;
+            int n = 0;
+            for (Iterator <Map.Entry <K, V>> it = new Cursor (lo, loIncl, hi, hiIncl); it.hasNext (); it.next ()) n++;
+            return n;
+        } // size
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
+        {
+            return inRange ((K) key) ? BpTreeMap.this.get (key) : null;
+        } // get
+
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
+
+        public V put (K key, V value)
+        {
+            if (! inRange (key)) throw new IllegalArgumentException ("BpTreeMap:put: key out of range " + key);
+            return BpTreeMap.this.put (key, value);
+        } // put
+
+        public Comparator <? super K> comparator ()
+        {
+            return null;
+        } // comparator
+
+        public K firstKey ()
+        {
+            Cursor it = new Cursor (lo, loIncl, hi, hiIncl);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            Cursor it = new Cursor (lo, loIncl, hi, hiIncl);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            K last = null;
+            while (it.hasNext ()) last = it.next ().getKey ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            return narrow (fromKey, true, toKey, false);
+        } // subMap
+
+        public SortedMap <K, V> headMap (K toKey)
+        {
+            return narrow (null, true, toKey, false);
+        } // headMap
+
+        public SortedMap <K, V> tailMap (K fromKey)
+        {
+            return narrow (fromKey, true, null, true);
+        } // tailMap
+
+        /** Return the intersection of this range and the given one.
+         */
+        private Range narrow (K from, boolean fromIncl, K to, boolean toIncl)
+        {
+            K       l     = lo,     h     = hi;
+            boolean lIncl = loIncl, hIncl = hiIncl;
+            if (from != null && (l == null || from.compareTo (l) > 0 || (from.compareTo (l) == 0 && ! fromIncl))) {
+                l = from; lIncl = fromIncl;
+            } // if
+            if (to != null && (h == null || to.compareTo (h) < 0 || (to.compareTo (h) == 0 && ! toIncl))) {
+                h = to; hIncl = toIncl;
+            } // if
+            return new Range (l, lIncl, h, hIncl);
+        } // narrow
+    } // Range inner class
+
     /********************************************************************************
      * Print the B+Tree using a pre-order traveral and indenting each level.
      * @param n      the current node to print
@@ -73,13 +73,89 @@ public class BpTreeMapTest {
 	public void testSubMap()
 	{
 		BpTreeMap <Integer, Integer> tree = createTree();
-		BpTreeMap <Integer, Integer> subTree = (BpTreeMap) tree.subMap(3, 7);
+		SortedMap <Integer, Integer> subTree = tree.subMap(3, 7);
 		
 		assertEquals(null, subTree.get(2));
 		assertEquals(9, (int) subTree.get(3));
 		assertEquals(null, subTree.get(8));
 	}
 	
+	/***************************************************************************
+	 * Tests that a bulk-loaded tree finds every key, is shallower than one built
+	 * by put, and still accepts puts afterwards
+	 */
+	@Test
+	public void testBulkLoad()
+	{
+		Map <Integer, Integer> sorted = new java.util.TreeMap <> ();
+		BpTreeMap <Integer, Integer> byPut = new BpTreeMap <> (Integer.class, Integer.class);
+		for (int i = 2; i <= 2000; i += 2) {
+			sorted.put(i, i * i);
+			byPut.put(i, i * i);
+		}
+		BpTreeMap <Integer, Integer> tree = new BpTreeMap <> (Integer.class, Integer.class);
+		tree.bulkLoad(sorted.entrySet().iterator());
+		
+		assertEquals(1000, tree.size());
+		for (int i = 2; i <= 2000; i += 2) {
+			assertEquals(i * i, (int) tree.get(i));
+		}
+		assertEquals(null, tree.get(3));
+		assertEquals(2, (int) tree.firstKey());
+		assertEquals(2000, (int) tree.lastKey());
+		assertTrue(tree.height() < byPut.height());
+		
+		tree.put(3, 9);
+		tree.put(2001, 1);
+		assertEquals(9, (int) tree.get(3));
+		assertEquals(1, (int) tree.get(2001));
+		assertEquals(4, (int) tree.get(2));
+	}
+	
+	/***************************************************************************
+	 * Tests range cursors and the subMap, headMap and tailMap views, including
+	 * inclusive/exclusive bounds and seeing puts made after the view was created
+	 */
+	@Test
+	public void testRangeViews()
+	{
+		BpTreeMap <Integer, Integer> tree = new BpTreeMap <> (Integer.class, Integer.class);
+		for (int i = 2; i <= 200; i += 2) {
+			tree.put(i, i * i);
+		}
+		
+		java.util.Iterator <Map.Entry <Integer, Integer>> it = tree.cursor(10, false, 20, true);
+		int expected = 12;
+		while (it.hasNext()) {
+			Map.Entry <Integer, Integer> e = it.next();
+			assertEquals(expected, (int) e.getKey());
+			assertEquals(expected * expected, (int) e.getValue());
+			expected += 2;
+		}
+		assertEquals(22, expected);
+		
+		SortedMap <Integer, Integer> sub = tree.subMap(11, 21);
+		assertEquals(5, sub.size());
+		assertEquals(12, (int) sub.firstKey());
+		assertEquals(20, (int) sub.lastKey());
+		assertEquals(null, sub.get(22));
+		assertEquals(3, tree.subMap(10, true, 14, true).size());
+		assertEquals(4, tree.headMap(10).size());
+		assertEquals(5, tree.headMap(10, true).size());
+		assertEquals(5, tree.tailMap(192).size());
+		assertEquals(2, sub.tailMap(18).size());
+		assertEquals(0, tree.subMap(201, 300).size());
+		
+		tree.put(15, 225);
+		assertEquals(6, sub.size());
+		assertEquals(225, (int) sub.get(15));
+		assertEquals(101, tree.entrySet().size());
+		
+		Set <Integer> keys = new HashSet <> ();
+		for (Map.Entry <Integer, Integer> e : tree.entrySet()) keys.add(e.getKey());
+		assertEquals(101, keys.size());
+	}
+	
 	/***************************************************************************
 	 * Tests the size method
 	 */
@@ -0,0 +1,272 @@
+
+/****************************************************************************************
+ * @file  BufferPool.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides a buffer pool that caches fixed-size pages of a file in a fixed
+ * number of frames.  Pages are pinned while in use and a page that is not pinned may be
+ * evicted using the clock (second chance) algorithm, writing it back first if it is
+ * dirty.  Hits and misses are counted for performance testing.
+ */
+public class BufferPool
+{
+    /** The size of a page in bytes.
+     */
+    private final int pageSize;
+
+    /** The file holding the pages.
+     */
+    private final FileChannel file;
+
+    /** The frames holding cached pages.
+     */
+    private final ByteBuffer [] frame;
+
+    /** The page held by each frame (-1 if free).
+     */
+    private final int [] pageOf;
+
+    /** The pin count of each frame.
+     */
+    private final int [] pins;
+
+    /** The dirty flag of each frame.
+     */
+    private final boolean [] dirty;
+
+    /** The reference bit of each frame (for the clock algorithm).
+     */
+    private final boolean [] referenced;
+
+    /** Maps page numbers to the frames caching them.
+     */
+    private final Map <Integer, Integer> pageTable = new HashMap <> ();
+
+    /** The position of the clock hand.
+     */
+    private int hand = 0;
+
+    /** The number of pages in the file (including newly allocated ones).
+     */
+    private int nPages;
+
+    /** Counters for the number of page requests found in / missing from the pool.
+     */
+    private long hits = 0;
+    private long misses = 0;
+
+    /************************************************************************************
+     * Construct a buffer pool over the file at the given path (created if missing).
+     * @param path      the path of the page file
+     * @param _pageSize the size of a page in bytes
+     * @param frames    the number of frames in the pool
+     * @throws IOException  if the file cannot be opened
+     */
+    public BufferPool (String path, int _pageSize, int frames)
+           throws IOException
+    {
+        if (frames < 1) throw new IllegalArgumentException ("BufferPool: need at least one frame");
+        pageSize   = _pageSize;
+        file       = FileChannel.open (Paths.get (path), StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+        frame      = new ByteBuffer [frames];
+        pageOf     = new int [frames];
+        pins       = new int [frames];
+        dirty      = new boolean [frames];
+        referenced = new boolean [frames];
+        nPages     = (int) (file.size () / pageSize);
+        Arrays.fill (pageOf, -1);
+        for (int f = 0; f < frames; f++) frame [f] = ByteBuffer.allocateDirect (pageSize);
+    } // constructor
+
+    /************************************************************************************
+     * Return the page size of this pool.
+     */
+    public int pageSize ()
+    {
+        return pageSize;
+    } // pageSize
+
+    /************************************************************************************
+     * Return the number of pages in the file.
+     */
+    public int size ()
+    {
+        return nPages;
+    } // size
+
+    /************************************************************************************
+     * Allocate a new (zeroed) page at the end of the file.  The page is cached but not
+     * pinned; call pin to use it.
+     * @return  the number of the new page
+     */
+    public synchronized int allocate ()
+    {
+        int        pid = nPages++;
+        int        f   = victim ();
+        ByteBuffer buf = frame [f];
+        buf.clear ();
+        buf.put (new byte [pageSize]);
+        install (f, pid);
+        dirty [f] = true;
+        return pid;
+    } // allocate
+
+    /************************************************************************************
+     * Pin the given page, reading it into a frame if it is not already cached.  The
+     * caller must unpin the page when done with the returned buffer.
+     * @param pid  the page number
+     * @return  the frame's buffer (positioned at 0)
+     */
+    public synchronized ByteBuffer pin (int pid)
+    {
+        if (pid < 0 || pid >= nPages) throw new IllegalArgumentException ("BufferPool: no page " + pid);
+        Integer f = pageTable.get (pid);
+        if (f != null) {
+            hits++;
+        } else {
+            misses++;
+            f = victim ();
+            ByteBuffer buf = frame [f];
+            buf.clear ();
+            try {
+                while (buf.hasRemaining ()) {
+                    if (file.read (buf, (long) pid * pageSize + buf.position ()) < 0) break;
+                } // while
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            install (f, pid);
+        } // if
+        pins [f]++;
+        referenced [f] = true;
+        ByteBuffer buf = frame [f].duplicate ();
+        buf.clear ();
+        return buf;
+    } // pin
+
+    /************************************************************************************
+     * Unpin the given page, marking it dirty if it was modified.
+     * @param pid       the page number
+     * @param modified  whether the caller changed the page
+     */
+    public synchronized void unpin (int pid, boolean modified)
+    {
+        Integer f = pageTable.get (pid);
+        if (f == null || pins [f] == 0) throw new IllegalStateException ("BufferPool: page " + pid + " not pinned");
+        pins [f]--;
+        dirty [f] |= modified;
+    } // unpin
+
+    /************************************************************************************
+     * Write all dirty pages back to the file and force them to disk.
+     */
+    public synchronized void flush ()
+    {
+        for (int f = 0; f < frame.length; f++) writeBack (f);
+        try {
+            file.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // flush
+
+    /************************************************************************************
+     * Flush the pool and close the file.
+     * @throws IOException  if the file cannot be closed
+     */
+    public synchronized void close ()
+           throws IOException
+    {
+        flush ();
+        file.close ();
+    } // close
+
+    /************************************************************************************
+     * Return the number of page requests satisfied from the pool.
+     */
+    public synchronized long hits ()
+    {
+        return hits;
+    } // hits
+
+    /************************************************************************************
+     * Return the number of page requests that had to read the page from the file.
+     */
+    public synchronized long misses ()
+    {
+        return misses;
+    } // misses
+
+    /************************************************************************************
+     * Reset the hit and miss counters.
+     */
+    public synchronized void resetCounters ()
+    {
+        hits = misses = 0;
+    } // resetCounters
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Choose a frame to hold a new page using the clock algorithm: sweep the frames,
+     * clearing reference bits, until an unpinned frame whose bit is clear is found.
+     * @return  a free frame (its previous page written back if dirty)
+     */
+    private int victim ()
+    {
+        for (int sweep = 0; sweep < 2 * frame.length + 1; sweep++) {
+            int f = hand;
+            hand = (hand + 1) % frame.length;
+            if (pins [f] > 0) continue;
+            if (referenced [f]) {
+                referenced [f] = false;
+                continue;
+            } // if
+            writeBack (f);
+            if (pageOf [f] >= 0) pageTable.remove (pageOf [f]);
+            pageOf [f] = -1;
+            return f;
+        } // for
+        throw new IllegalStateException ("BufferPool: all " + frame.length + " frames are pinned");
+    } // victim
+
+    /************************************************************************************
+     * Record that frame f now holds page pid.
+     */
+    private void install (int f, int pid)
+    {
+        pageOf [f]     = pid;
+        dirty [f]      = false;
+        referenced [f] = true;
+        pageTable.put (pid, f);
+    } // install
+
+    /************************************************************************************
+     * Write frame f back to its page if it is dirty.
+     */
+    private void writeBack (int f)
+    {
+        if (pageOf [f] < 0 || ! dirty [f]) return;
+        ByteBuffer buf = frame [f].duplicate ();
+        buf.clear ();
+        try {
+            while (buf.hasRemaining ()) file.write (buf, (long) pageOf [f] * pageSize + buf.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        dirty [f] = false;
+    } // writeBack
+
+} // BufferPool class
+
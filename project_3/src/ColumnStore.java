@@ -0,0 +1,496 @@
+
+/****************************************************************************************
+ * @file  ColumnStore.java
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides column-oriented (decomposed) storage for the tuples of a table.
+ * Each attribute is kept in its own primitive vector chosen from the attribute's domain:
+ *  integer types: Integer, Short, Byte, Character -> int []
+ *  long type:     Long                             -> long []
+ *  real types:    Double, Float                    -> double []
+ *  other types:   String, ...                      -> int [] of dictionary codes
+ * Tuples are only materialized as Comparable arrays when a caller asks for one (get),
+ * so scans and projections can work directly on the column vectors.  A null is stored
+ * as code -1 in a CODE column and as a bit in the column's null bitmap (allocated when
+ * its first null arrives) for the other kinds, whose vector then holds 0.
+ */
+public class ColumnStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** Required variable
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** Storage kinds for column vectors.
+     */
+    public static final int INT    = 0;
+    public static final int LONG   = 1;
+    public static final int DOUBLE = 2;
+    public static final int CODE   = 3;
+
+    /** Initial number of rows allocated for each column vector.
+     */
+    private static final int INIT_CAP = 16;
+
+    /************************************************************************************
+     * This inner class maps the distinct values of a column to dense integer codes.
+     * Dictionaries are append-only, so they may be shared by stores derived from this one.
+     */
+    private static class Dictionary
+            implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        final Map <Comparable, Integer> code  = new HashMap <> ();
+        final List <Comparable>         value = new ArrayList <> ();
+
+        /********************************************************************************
+         * Return the code for the given value, adding the value if it is new.
+         * @param v  the value to encode (null is encoded as -1)
+         */
+        int encode (Comparable v)
+        {
+            if (v == null) return -1;
+            Integer c = code.get (v);
+            if (c == null) {
+                c = value.size ();
+                code.put (v, c);
+                value.add (v);
+            } // if
+            return c;
+        } // encode
+
+    } // Dictionary inner class
+
+    /** The domains (data types) of the columns.
+     */
+    private final Class [] domain;
+
+    /** The storage kind of each column (INT, LONG, DOUBLE or CODE).
+     */
+    private final int [] kind;
+
+    /** The column vectors (int [], long [] or double []).
+     */
+    private final Object [] vec;
+
+    /** The dictionaries for the CODE columns (null for the other kinds).
+     */
+    private final Dictionary [] dict;
+
+    /** The null bitmaps (bit i of word i / 64 is set if row i is null) of the INT, LONG
+     *  and DOUBLE columns (null for a column without nulls).
+     */
+    private final long [][] nulls;
+
+    /** The number of rows stored.
+     */
+    private int nRows = 0;
+
+    /** The number of rows the column vectors can currently hold.
+     */
+    private int cap;
+
+    /************************************************************************************
+     * Construct an empty column store for the given domains.
+     * @param _domain  the domains of the columns
+     */
+    public ColumnStore (Class [] _domain)
+    {
+        this (_domain, INIT_CAP);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty column store for the given domains and initial capacity.
+     * @param _domain  the domains of the columns
+     * @param _cap     the initial number of rows to allocate
+     */
+    public ColumnStore (Class [] _domain, int _cap)
+    {
+        domain = _domain;
+        kind   = new int [domain.length];
+        vec    = new Object [domain.length];
+        dict   = new Dictionary [domain.length];
+        nulls  = new long [domain.length][];
+        cap    = Math.max (_cap, 1);
+        for (int j = 0; j < domain.length; j++) {
+            kind [j] = kindOf (domain [j]);
+            vec [j]  = newVector (kind [j], cap);
+            if (kind [j] == CODE) dict [j] = new Dictionary ();
+        } // for
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty column store sharing the dictionaries of the given columns of
+     * another store (used for projections and selections).
+     * @param src   the source store
+     * @param cols  the columns of the source store to keep
+     * @param _cap  the initial number of rows to allocate
+     */
+    private ColumnStore (ColumnStore src, int [] cols, int _cap)
+    {
+        domain = new Class [cols.length];
+        kind   = new int [cols.length];
+        vec    = new Object [cols.length];
+        dict   = new Dictionary [cols.length];
+        nulls  = new long [cols.length][];
+        cap    = Math.max (_cap, 1);
+        for (int j = 0; j < cols.length; j++) {
+            domain [j] = src.domain [cols [j]];
+            kind [j]   = src.kind [cols [j]];
+            dict [j]   = src.dict [cols [j]];
+            vec [j]    = newVector (kind [j], cap);
+        } // for
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // List methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the number of rows in the store.
+     */
+    public int size ()
+    {
+        return nRows;
+    } // size
+
+    /************************************************************************************
+     * Materialize the i-th row as a tuple.
+     * @param i  the row number
+     * @return  a new tuple holding the row's values
+     */
+    public Comparable [] get (int i)
+    {
+        if (i < 0 || i >= nRows) throw new IndexOutOfBoundsException ("row " + i);
+        Comparable [] t = new Comparable [domain.length];
+        fill (i, t);
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Append the tuple by decomposing it into the column vectors.
+     * @param t  the tuple to append
+     * @return  true
+     */
+    public boolean add (Comparable [] t)
+    {
+        if (nRows == cap) grow (cap * 2);
+        for (int j = 0; j < domain.length; j++) {
+            Comparable v = t [j];
+            if (v == null && kind [j] != CODE) setNull (j, nRows, true);
+            switch (kind [j]) {
+            case INT:    ((int [])    vec [j]) [nRows] = (v == null) ? 0 : toInt (v); break;
+            case LONG:   ((long [])   vec [j]) [nRows] = (v == null) ? 0L : ((Number) v).longValue (); break;
+            case DOUBLE: ((double []) vec [j]) [nRows] = (v == null) ? 0.0 : ((Number) v).doubleValue (); break;
+            default:     ((int [])    vec [j]) [nRows] = dict [j].encode (v);
+            } // switch
+        } // for
+        nRows++;
+        modCount++;
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Remove the i-th row, shifting the later rows down.
+     * @param i  the row number
+     * @return  the removed row as a tuple
+     */
+    public Comparable [] remove (int i)
+    {
+        Comparable [] t = get (i);
+        for (int j = 0; j < domain.length; j++) {
+            System.arraycopy (vec [j], i + 1, vec [j], i, nRows - i - 1);
+            if (nulls [j] != null) {
+                for (int r = i; r < nRows - 1; r++) setNull (j, r, isNull (r + 1, j));
+                setNull (j, nRows - 1, false);
+            } // if
+        } // for
+        nRows--;
+        modCount++;
+        return t;
+    } // remove
+
+    //----------------------------------------------------------------------------------
+    // Column access
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the storage kind (INT, LONG, DOUBLE or CODE) of column j.
+     * @param j  the column number
+     */
+    public int kind (int j)
+    {
+        return kind [j];
+    } // kind
+
+    /************************************************************************************
+     * Return the vector for an INT or CODE column.  Only the first size () entries
+     * are valid.
+     * @param j  the column number
+     */
+    public int [] ints (int j)
+    {
+        return (int []) vec [j];
+    } // ints
+
+    /************************************************************************************
+     * Return the vector for a LONG column.  Only the first size () entries are valid.
+     * @param j  the column number
+     */
+    public long [] longs (int j)
+    {
+        return (long []) vec [j];
+    } // longs
+
+    /************************************************************************************
+     * Return the vector for a DOUBLE column.  Only the first size () entries are valid.
+     * @param j  the column number
+     */
+    public double [] doubles (int j)
+    {
+        return (double []) vec [j];
+    } // doubles
+
+    /************************************************************************************
+     * Return the null bitmap of an INT, LONG or DOUBLE column (bit i of word i / 64 is
+     * set if row i is null), or null if the column has no nulls.
+     * @param j  the column number
+     */
+    public long [] nulls (int j)
+    {
+        return nulls [j];
+    } // nulls
+
+    /************************************************************************************
+     * Determine whether the value at the given row and column is null.
+     * @param i  the row number
+     * @param j  the column number
+     */
+    public boolean isNull (int i, int j)
+    {
+        if (kind [j] == CODE) return ((int []) vec [j]) [i] < 0;
+        return nulls [j] != null && (nulls [j][i >>> 6] >>> i & 1L) != 0;
+    } // isNull
+
+    /************************************************************************************
+     * Look up the dictionary code of a value in a CODE column without adding it.
+     * @param j  the column number
+     * @param v  the value to look up
+     * @return  the code, or -1 if the value does not occur in the column
+     */
+    public int code (int j, Comparable v)
+    {
+        Integer c = dict [j].code.get (v);
+        return (c == null) ? -1 : c;
+    } // code
+
+    /************************************************************************************
+     * Return the number of columns.
+     */
+    public int columns ()
+    {
+        return domain.length;
+    } // columns
+
+    /************************************************************************************
+     * Return the number of distinct values (codes) in the dictionary of a CODE column.
+     * @param j  the column number
+     */
+    public int dictionarySize (int j)
+    {
+        return dict [j].value.size ();
+    } // dictionarySize
+
+    /************************************************************************************
+     * Return the value with the given code in a CODE column.
+     * @param j  the column number
+     * @param c  the code (0 <= c < dictionarySize (j))
+     */
+    public Comparable decode (int j, int c)
+    {
+        return dict [j].value.get (c);
+    } // decode
+
+    /************************************************************************************
+     * Return the value stored at the given row and column (boxed into its domain).
+     * @param i  the row number
+     * @param j  the column number
+     */
+    public Comparable value (int i, int j)
+    {
+        if (nulls [j] != null && (nulls [j][i >>> 6] >>> i & 1L) != 0) return null;
+        switch (kind [j]) {
+        case INT:
+            int v = ((int []) vec [j]) [i];
+            if (domain [j] == Integer.class)   return v;
+            if (domain [j] == Short.class)     return (short) v;
+            if (domain [j] == Byte.class)      return (byte) v;
+            return (char) v;
+        case LONG:
+            return ((long []) vec [j]) [i];
+        case DOUBLE:
+            double d = ((double []) vec [j]) [i];
+            return (domain [j] == Float.class) ? (Comparable) (float) d : (Comparable) d;
+        default:
+            int c = ((int []) vec [j]) [i];
+            return (c < 0) ? null : dict [j].value.get (c);
+        } // switch
+    } // value
+
+    /************************************************************************************
+     * Materialize the i-th row into a caller supplied buffer, so that scans can reuse
+     * one array rather than allocating a tuple per row.
+     * @param i    the row number
+     * @param buf  the buffer to fill (length >= number of columns)
+     */
+    public void fill (int i, Comparable [] buf)
+    {
+        for (int j = 0; j < domain.length; j++) buf [j] = value (i, j);
+    } // fill
+
+    //----------------------------------------------------------------------------------
+    // Bulk operations
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Project the store onto the given columns by copying their vectors.  No tuple is
+     * materialized.
+     * @param cols  the column positions to keep
+     * @return  a new store with only the given columns
+     */
+    public ColumnStore project (int [] cols)
+    {
+        ColumnStore s = new ColumnStore (this, cols, nRows);
+        for (int j = 0; j < cols.length; j++) {
+            s.vec [j] = copyVector (vec [cols [j]], kind [cols [j]], s.cap);
+            if (nulls [cols [j]] != null) s.nulls [j] = Arrays.copyOf (nulls [cols [j]], words (s.cap));
+        } // for
+        s.nRows = nRows;
+        return s;
+    } // project
+
+    /************************************************************************************
+     * Gather the rows at the given positions into a new store.  No tuple is
+     * materialized.
+     * @param pos  the row positions to keep (in output order)
+     * @param n    the number of valid entries in pos
+     * @return  a new store with only the given rows
+     */
+    public ColumnStore gather (int [] pos, int n)
+    {
+        int [] cols = new int [domain.length];
+        for (int j = 0; j < cols.length; j++) cols [j] = j;
+        ColumnStore s = new ColumnStore (this, cols, n);
+        for (int j = 0; j < domain.length; j++) {
+            switch (kind [j]) {
+            case LONG:
+                long [] ls = (long []) vec [j], ld = (long []) s.vec [j];
+                for (int i = 0; i < n; i++) ld [i] = ls [pos [i]];
+                break;
+            case DOUBLE:
+                double [] ds = (double []) vec [j], dd = (double []) s.vec [j];
+                for (int i = 0; i < n; i++) dd [i] = ds [pos [i]];
+                break;
+            default:
+                int [] is = (int []) vec [j], id = (int []) s.vec [j];
+                for (int i = 0; i < n; i++) id [i] = is [pos [i]];
+            } // switch
+            if (nulls [j] != null) {
+                for (int i = 0; i < n; i++) if (isNull (pos [i], j)) s.setNull (j, i, true);
+            } // if
+        } // for
+        s.nRows = n;
+        return s;
+    } // gather
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Grow all column vectors to the given capacity.
+     * @param newCap  the new capacity (in rows)
+     */
+    private void grow (int newCap)
+    {
+        for (int j = 0; j < vec.length; j++) {
+            vec [j] = copyVector (vec [j], kind [j], newCap);
+            if (nulls [j] != null) nulls [j] = Arrays.copyOf (nulls [j], words (newCap));
+        } // for
+        cap = newCap;
+    } // grow
+
+    /************************************************************************************
+     * Set or clear the null bit of row i in column j (allocating the column's bitmap).
+     */
+    private void setNull (int j, int i, boolean isNull)
+    {
+        if (nulls [j] == null) {
+            if (! isNull) return;
+            nulls [j] = new long [words (cap)];
+        } // if
+        if (isNull) nulls [j][i >>> 6] |= 1L << i;
+        else        nulls [j][i >>> 6] &= ~(1L << i);
+    } // setNull
+
+    /************************************************************************************
+     * Return the number of words in a null bitmap for the given number of rows.
+     */
+    private static int words (int rows)
+    {
+        return (rows + 63) >>> 6;
+    } // words
+
+    /************************************************************************************
+     * Determine the storage kind for the given domain.
+     * @param c  the domain (data type)
+     */
+    private static int kindOf (Class c)
+    {
+        if (c == Integer.class || c == Short.class || c == Byte.class || c == Character.class) return INT;
+        if (c == Long.class)                           return LONG;
+        if (c == Double.class || c == Float.class)     return DOUBLE;
+        return CODE;
+    } // kindOf
+
+    /************************************************************************************
+     * Convert a value from an INT column to its primitive int representation.
+     * @param v  the value (Integer, Short, Byte or Character)
+     */
+    private static int toInt (Comparable v)
+    {
+        return (v instanceof Character) ? (Character) v : ((Number) v).intValue ();
+    } // toInt
+
+    /************************************************************************************
+     * Allocate a new vector of the given kind.
+     */
+    private static Object newVector (int k, int n)
+    {
+        switch (k) {
+        case LONG:   return new long [n];
+        case DOUBLE: return new double [n];
+        default:     return new int [n];
+        } // switch
+    } // newVector
+
+    /************************************************************************************
+     * Copy a vector of the given kind into a new vector of length n.
+     */
+    private static Object copyVector (Object v, int k, int n)
+    {
+        switch (k) {
+        case LONG:   return Arrays.copyOf ((long []) v, n);
+        case DOUBLE: return Arrays.copyOf ((double []) v, n);
+        default:     return Arrays.copyOf ((int []) v, n);
+        } // switch
+    } // copyVector
+
+} // ColumnStore class
+
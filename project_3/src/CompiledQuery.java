@@ -0,0 +1,574 @@
+
+/****************************************************************************************
+ * @file  CompiledQuery.java
+ */
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.util.*;
+import java.util.function.Predicate;
+import javax.tools.*;
+
+/****************************************************************************************
+ * This class provides selection conditions and projections compiled to Java classes at
+ * query time.  An Expr is interpreted through a tree of closures, each boxing its result
+ * and looking up its operands; here it is instead turned into Java source in which the
+ * attribute positions and types are constants and the literals are unboxed once into
+ * final fields, e.g.,
+ *
+ *     t [0] != null && ((Integer) t [0]).intValue () >= c0 && c1.equals (t [3])
+ *
+ * which the system Java compiler (javax.tools) compiles and the JIT then sees as one
+ * small monomorphic method.  A long IN list becomes a lookup in one hash set.  run
+ * fuses the select and the projection into one loop.
+ *
+ * Compiling takes on the order of 100 ms (a second for the first query), so Table only
+ * compiles for inputs of at least threshold tuples (see setThreshold).  Compiled classes
+ * are cached by their source, which leaves out the literals, so queries that differ only
+ * in their literals share a class.  Where no compiler is available (e.g., on a JRE), or
+ * for an expression it cannot translate, the condition is interpreted instead (see
+ * isCompiled), and the reason is left to the caller (see fallback) rather than printed.
+ */
+public abstract class CompiledQuery
+       implements Predicate <Comparable []>
+{
+    /** The input size (in tuples) from which Table compiles queries.
+     */
+    private static int threshold = 1 << 20;
+
+    /** The maximum number of compiled classes kept in the cache.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /** The system Java compiler (null if there is none).
+     */
+    private static final JavaCompiler JAVAC = ToolProvider.getSystemJavaCompiler ();
+
+    /** The constructors of compiled classes by the source of their methods, least
+     *  recently used first (null if the source did not compile).
+     */
+    private static final Map <String, Constructor <?>> cache =
+        new LinkedHashMap <String, Constructor <?>> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry <String, Constructor <?>> e)
+            {
+                return size () > CACHE_SIZE;
+            } // removeEldestEntry
+        };
+
+    /** Counter for naming compiled classes.
+     */
+    private static int count = 0;
+
+    /** IN lists longer than this are tested with one hash set rather than a chain of
+     *  comparisons (which javac would nest too deeply).
+     */
+    private static final int IN_LIST = 8;
+
+    /** The literals of the query, in the order the source refers to them.
+     */
+    protected final Comparable [] k;
+
+    /************************************************************************************
+     * Construct a query with the given literals.
+     *
+     * @param _k  the literals
+     */
+    protected CompiledQuery (Comparable [] _k)
+    {
+        k = _k;
+    } // constructor
+
+    /************************************************************************************
+     * Determine whether the tuple satisfies the condition (true, not false or unknown).
+     *
+     * @param t  the tuple
+     */
+    public abstract boolean test (Comparable [] t);
+
+    /************************************************************************************
+     * Project the tuple onto the query's attributes.
+     *
+     * @param t  the tuple
+     */
+    public abstract Comparable [] project (Comparable [] t);
+
+    /************************************************************************************
+     * Add the projections of the tuples satisfying the condition to out.
+     *
+     * @param in   the tuples
+     * @param out  the list of results
+     */
+    public void run (List <Comparable []> in, List <Comparable []> out)
+    {
+        for (Comparable [] t : in) if (test (t)) out.add (project (t));
+    } // run
+
+    /************************************************************************************
+     * Determine whether this query was compiled (false if it is interpreted).
+     */
+    public boolean isCompiled ()
+    {
+        return true;
+    } // isCompiled
+
+    /************************************************************************************
+     * Return why this query is interpreted although it was to be compiled, for the
+     * caller to report (null if it is compiled or was interpreted by choice).
+     */
+    public String fallback ()
+    {
+        return null;
+    } // fallback
+
+    /************************************************************************************
+     * Return the literals k [from .. to) in a hash set (for a compiled IN list).
+     *
+     * @param k     the literals
+     * @param from  the position of the first
+     * @param to    the position after the last
+     */
+    protected static Set <Comparable> set (Comparable [] k, int from, int to)
+    {
+        return new HashSet <> (Arrays.asList (k).subList (from, to));
+    } // set
+
+    /************************************************************************************
+     * Return the query for the condition and projection over the given attributes,
+     * compiled if the input has at least threshold tuples, else interpreted.
+     *
+     * @param condition  the selection condition
+     * @param cols       the positions of the projected attributes (null for all)
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param rows       the number of input tuples
+     * @return  the query
+     */
+    public static CompiledQuery of (Expr condition, int [] cols, String [] attribute, Class [] domain, int rows)
+    {
+        return (rows >= threshold) ? compile (condition, cols, attribute, domain)
+                                   : interpret (condition, cols, attribute);
+    } // of
+
+    /************************************************************************************
+     * Compile the condition and projection over the given attributes, falling back to
+     * interpreting them if they cannot be compiled.
+     *
+     * @param condition  the selection condition
+     * @param cols       the positions of the projected attributes (null for all)
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @return  the query
+     */
+    public static CompiledQuery compile (Expr condition, int [] cols, String [] attribute, Class [] domain)
+    {
+        if (JAVAC == null) return fallback (condition, cols, attribute, "compile: no system Java compiler");
+        Generator gen = new Generator (attribute, domain);
+        String    source;
+        try {
+            source = gen.source (condition, cols);
+        } catch (UnsupportedOperationException ex) {
+            return fallback (condition, cols, attribute, ex.getMessage ());
+        } // try
+
+        Constructor <?> ctor;
+        synchronized (cache) {
+            ctor = cache.get (source);
+            if (ctor == null && ! cache.containsKey (source)) {
+                String name = "CompiledQuery_" + count++;
+                Class <?> c = javac (name, "public final class " + name + " extends CompiledQuery {\n" +
+                                           "    public " + name + " (Comparable [] k) { super (k); }\n" +
+                                           source + "}\n");
+                try {
+                    ctor = (c == null) ? null : c.getConstructor (Comparable [].class);
+                } catch (NoSuchMethodException ex) {
+                    ctor = null;
+                } // try
+                cache.put (source, ctor);
+            } // if
+        } // synchronized
+        if (ctor == null) return fallback (condition, cols, attribute, "compile: javac rejected the generated source");
+
+        try {
+            return (CompiledQuery) ctor.newInstance ((Object) gen.consts.toArray (new Comparable [0]));
+        } catch (ReflectiveOperationException ex) {
+            return fallback (condition, cols, attribute, "compile: cannot instantiate " + ctor.getName ());
+        } // try
+    } // compile
+
+    /************************************************************************************
+     * Set the input size (in tuples) from which Table compiles queries.
+     *
+     * @param rows  the number of tuples
+     */
+    public static void setThreshold (int rows)
+    {
+        threshold = rows;
+    } // setThreshold
+
+    /************************************************************************************
+     * Return the input size (in tuples) from which Table compiles queries.
+     */
+    public static int getThreshold ()
+    {
+        return threshold;
+    } // getThreshold
+
+    /************************************************************************************
+     * Return the condition and projection over the given attributes, interpreted.
+     *
+     * @param condition  the selection condition
+     * @param cols       the positions of the projected attributes (null for all)
+     * @param attribute  the attribute names
+     * @return  the query
+     */
+    public static CompiledQuery interpret (Expr condition, int [] cols, String [] attribute)
+    {
+        return new Interpreted (condition.predicate (attribute), cols, null);
+    } // interpret
+
+    //----------------------------------------------------------------------------------
+    // Private Methods and Classes
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Compile the source of the named class in memory and load it.
+     *
+     * @param name    the class name
+     * @param source  the class source
+     * @return  the class, or null if it did not compile
+     */
+    private static Class <?> javac (String name, String source)
+    {
+        Map <String, ByteArrayOutputStream> classes = new HashMap <> ();
+        StandardJavaFileManager             std     = JAVAC.getStandardFileManager (null, null, null);
+        JavaFileManager fm = new ForwardingJavaFileManager <StandardJavaFileManager> (std) {
+            public JavaFileObject getJavaFileForOutput (Location loc, String cls, JavaFileObject.Kind kind,
+                                                        FileObject sibling)
+            {
+                return new SimpleJavaFileObject (URI.create ("mem:///" + cls + kind.extension), kind) {
+                    public OutputStream openOutputStream ()
+                    {
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+                        classes.put (cls, bytes);
+                        return bytes;
+                    } // openOutputStream
+                };
+            } // getJavaFileForOutput
+        };
+        JavaFileObject src = new SimpleJavaFileObject (URI.create ("string:///" + name + ".java"),
+                                                       JavaFileObject.Kind.SOURCE) {
+            public CharSequence getCharContent (boolean ignoreErrors)
+            {
+                return source;
+            } // getCharContent
+        };
+
+        StringWriter  errors  = new StringWriter ();
+        List <String> options = Arrays.asList ("-classpath", classpath (), "-g:none", "-nowarn");
+        boolean       ok      = JAVAC.getTask (errors, fm, null, options, null, Collections.singletonList (src)).call ();
+        if (! ok) return null;
+
+        ClassLoader loader = new ClassLoader (CompiledQuery.class.getClassLoader ()) {
+            protected Class <?> findClass (String cls)
+                      throws ClassNotFoundException
+            {
+                ByteArrayOutputStream bytes = classes.get (cls);
+                if (bytes == null) throw new ClassNotFoundException (cls);
+                return defineClass (cls, bytes.toByteArray (), 0, bytes.size ());
+            } // findClass
+        };
+        try {
+            return loader.loadClass (name);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } // try
+    } // javac
+
+    /************************************************************************************
+     * Return the class path for compiling queries: the application's class path plus
+     * wherever this class was loaded from.
+     */
+    private static String classpath ()
+    {
+        String cp = System.getProperty ("java.class.path");
+        try {
+            String here = new File (CompiledQuery.class.getProtectionDomain ().getCodeSource ()
+                                                    .getLocation ().toURI ()).getPath ();
+            return cp + File.pathSeparator + here;
+        } catch (Exception ex) {
+            return cp;
+        } // try
+    } // classpath
+
+    /************************************************************************************
+     * Return the condition and projection interpreted, for a query that could not be
+     * compiled for the given reason.
+     */
+    private static CompiledQuery fallback (Expr condition, int [] cols, String [] attribute, String reason)
+    {
+        return new Interpreted (condition.predicate (attribute), cols, reason);
+    } // fallback
+
+    /************************************************************************************
+     * This class provides queries interpreted from their expressions.
+     */
+    private static class Interpreted
+            extends CompiledQuery
+    {
+        private final Predicate <Comparable []> predicate;
+        private final int []                    cols;
+        private final String                    reason;
+
+        Interpreted (Predicate <Comparable []> _predicate, int [] _cols, String _reason)
+        {
+            super (new Comparable [0]);
+            predicate = _predicate;
+            cols      = _cols;
+            reason    = _reason;
+        } // constructor
+
+        public boolean test (Comparable [] t)
+        {
+            return predicate.test (t);
+        } // test
+
+        public Comparable [] project (Comparable [] t)
+        {
+            if (cols == null) return t;
+            Comparable [] tup = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) tup [j] = t [cols [j]];
+            return tup;
+        } // project
+
+        public boolean isCompiled ()
+        {
+            return false;
+        } // isCompiled
+
+        public String fallback ()
+        {
+            return reason;
+        } // fallback
+    } // Interpreted class
+
+    /************************************************************************************
+     * This class generates the source of a compiled query.  A condition is translated
+     * in negation normal form: cond (e, true) is a Java boolean expression that holds
+     * exactly when e is true, and cond (e, false) one that holds exactly when e is
+     * false, so NOT just flips the sign and an unknown (null) outcome is false either
+     * way, as in SQL.
+     */
+    private static class Generator
+    {
+        private final String []         attribute;
+        private final Class []          domain;
+        private final List <Comparable> consts = new ArrayList <> ();
+        private final StringBuilder     fields = new StringBuilder ();
+
+        Generator (String [] _attribute, Class [] _domain)
+        {
+            attribute = _attribute;
+            domain    = _domain;
+        } // constructor
+
+        /********************************************************************************
+         * Return the source of the methods of the class for the condition and projection.
+         */
+        String source (Expr condition, int [] cols)
+        {
+            String cond = cond (condition, true);
+            String proj = "t";
+            if (cols != null) {
+                StringJoiner sj = new StringJoiner (", ", "new Comparable [] { ", " }");
+                for (int j : cols) sj.add ("t [" + j + "]");
+                proj = sj.toString ();
+            } // if
+            return fields +
+                   "    public boolean test (Comparable [] t) { return " + cond + "; }\n" +
+                   "    public Comparable [] project (Comparable [] t) { return " + proj + "; }\n" +
+                   "    public void run (java.util.List <Comparable []> in, java.util.List <Comparable []> out) {\n" +
+                   "        for (Comparable [] t : in) if (" + cond + ") out.add (" + proj + ");\n" +
+                   "    }\n";
+        } // source
+
+        /********************************************************************************
+         * Return the Java expression that holds when e is true (positive) or false.
+         */
+        String cond (Expr e, boolean positive)
+        {
+            if (e instanceof Expr.And || e instanceof Expr.Or) {
+                List <Expr> conds = (e instanceof Expr.And) ? ((Expr.And) e).conds : ((Expr.Or) e).conds;
+                boolean     and   = (e instanceof Expr.And) == positive;
+                if (conds.isEmpty ()) return String.valueOf (and);
+                StringJoiner sj = new StringJoiner (and ? " && " : " || ", "(", ")");
+                for (Expr c : conds) sj.add (cond (c, positive));
+                return sj.toString ();
+            } else if (e instanceof Expr.Not) {
+                return cond (((Expr.Not) e).cond, ! positive);
+            } else if (e instanceof Expr.Cmp) {
+                Expr.Cmp c = (Expr.Cmp) e;
+                return compare (c.left, positive ? c.op : negate (c.op), c.right);
+            } else if (e instanceof Expr.In) {
+                Expr.In      in = (Expr.In) e;
+                StringJoiner sj = new StringJoiner (positive ? " || " : " && ", "(", ")");
+                if (! positive && in.values.contains (null)) return "false";
+                if (in.values.size () > IN_LIST) return contains (in, positive);
+                for (Comparable v : in.values) {
+                    if (v != null) sj.add (compare (in.expr, positive ? "==" : "!=", Expr.lit (v)));
+                } // for
+                if (sj.length () > 2) return sj.toString ();
+                return positive ? "false" : "(" + operand (in.expr) + " != null)";
+            } else if (e instanceof Expr.Between) {
+                Expr.Between b = (Expr.Between) e;
+                if (b.low == null || b.high == null) return "false";
+                return positive ? "(" + compare (b.expr, ">=", Expr.lit (b.low)) + " && " + compare (b.expr, "<=", Expr.lit (b.high)) + ")"
+                                : "(" + compare (b.expr, "<", Expr.lit (b.low)) + " || " + compare (b.expr, ">", Expr.lit (b.high)) + ")";
+            } else if (e instanceof Expr.Col || e instanceof Expr.Lit) {
+                return "Boolean." + (positive ? "TRUE" : "FALSE") + ".equals (" + operand (e) + ")";
+            } // if
+            throw new UnsupportedOperationException ("compile: " + e.getClass ().getName ());
+        } // cond
+
+        /********************************************************************************
+         * Return the Java expression for the comparison a op b (false if either is
+         * null).  An attribute compared with a literal of its own type is compared
+         * unboxed, as a primitive or a string.
+         */
+        String compare (Expr a, String op, Expr b)
+        {
+            if (a instanceof Expr.Lit && b instanceof Expr.Col) return compare (b, flip (op), a);
+            if (a instanceof Expr.Col && b instanceof Expr.Lit) {
+                int        j = position (((Expr.Col) a).name);
+                Comparable v = ((Expr.Lit) b).value;
+                if (v == null) return "false";
+                Class      d = domain [j];
+                Comparable w = Expr.coerce (v, d);
+                String     x = "t [" + j + "]";
+                if (w instanceof String) {
+                    String s = constant (w, d);
+                    if (op.equals ("==")) return s + ".equals (" + x + ")";
+                    if (op.equals ("!=")) return "(" + x + " != null && ! " + s + ".equals (" + x + "))";
+                    return "(" + x + " != null && ((String) " + x + ").compareTo (" + s + ") " + op + " 0)";
+                } // if
+                if (w instanceof Integer || w instanceof Long || w instanceof Short || w instanceof Byte || w instanceof Character) {
+                    return "(" + x + " != null && " + unbox (x, d) + " " + op + " " + constant (w, d) + ")";
+                } // if
+                if (w instanceof Double || w instanceof Float) {
+                    String type = (w instanceof Double) ? "Double" : "Float";
+                    return "(" + x + " != null && " + type + ".compare (" + unbox (x, d) + ", " + constant (w, d) + ") " + op + " 0)";
+                } // if
+            } // if
+            String x = operand (a), y = operand (b);
+            return "(" + x + " != null && " + y + " != null && Expr.compareValues (" + x + ", " + y + ") " + op + " 0)";
+        } // compare
+
+        /********************************************************************************
+         * Return the Java expression testing a long IN list (without nulls if negated)
+         * by looking the attribute up in a hash set of the values, converted to its
+         * domain.  A value that does not convert could only be compared by value, so the
+         * list is then left to the interpreter.
+         */
+        String contains (Expr.In in, boolean positive)
+        {
+            if (! (in.expr instanceof Expr.Col)) throw new UnsupportedOperationException ("compile: IN list of " + in.expr);
+            int   j    = position (((Expr.Col) in.expr).name);
+            int   from = consts.size ();
+            for (Comparable v : in.values) {
+                if (v == null) continue;
+                Comparable w = Expr.coerce (v, domain [j]);
+                if (w == null) throw new UnsupportedOperationException ("compile: IN list value " + v);
+                consts.add (w);
+            } // for
+            String x = "t [" + j + "]";
+            if (consts.size () == from) return positive ? "false" : "(" + x + " != null)";
+            fields.append ("    private final java.util.Set <Comparable> s" + from + " = set (k, " + from + ", " + consts.size () + ");\n");
+            return positive ? "s" + from + ".contains (" + x + ")"
+                            : "(" + x + " != null && ! s" + from + ".contains (" + x + "))";
+        } // contains
+
+        /********************************************************************************
+         * Return the Java expression for an attribute or literal as a Comparable.
+         */
+        String operand (Expr e)
+        {
+            if (e instanceof Expr.Col) return "t [" + position (((Expr.Col) e).name) + "]";
+            if (e instanceof Expr.Lit) {
+                if (((Expr.Lit) e).value == null) return "null";
+                consts.add (((Expr.Lit) e).value);
+                return "k [" + (consts.size () - 1) + "]";
+            } // if
+            throw new UnsupportedOperationException ("compile: " + e.getClass ().getName ());
+        } // operand
+
+        /********************************************************************************
+         * Return the position of the attribute, failing if it is not there.
+         */
+        int position (String name)
+        {
+            for (int j = 0; j < attribute.length; j++) if (attribute [j].equals (name)) return j;
+            throw new IllegalArgumentException ("Expr: unknown attribute " + name);
+        } // position
+
+        /********************************************************************************
+         * Return the Java expression unboxing x of domain d.
+         */
+        static String unbox (String x, Class d)
+        {
+            return "((" + d.getSimpleName () + ") " + x + ")." + primitive (d) + "Value ()";
+        } // unbox
+
+        /********************************************************************************
+         * Return the primitive type boxed by domain d (e.g., "int" for Integer).
+         */
+        static String primitive (Class d)
+        {
+            return (d == Integer.class) ? "int" : (d == Character.class) ? "char" : d.getSimpleName ().toLowerCase ();
+        } // primitive
+
+        /********************************************************************************
+         * Return the name of a final field holding the literal, unboxed if it is of a
+         * primitive type.
+         */
+        String constant (Comparable v, Class d)
+        {
+            int    i     = consts.size ();
+            String k     = "k [" + i + "]";
+            String type  = (d == String.class) ? "String" : primitive (d);
+            String value = (d == String.class) ? "(String) " + k : unbox (k, d);
+            consts.add (v);
+            fields.append ("    private final " + type + " c" + i + " = " + value + ";\n");
+            return "c" + i;
+        } // constant
+
+        /********************************************************************************
+         * Return the operator with its outcome negated (e.g., ">=" for "<").
+         */
+        static String negate (String op)
+        {
+            switch (op) {
+            case "==": return "!=";
+            case "!=": return "==";
+            case "<":  return ">=";
+            case "<=": return ">";
+            case ">":  return "<=";
+            default:   return "<";
+            } // switch
+        } // negate
+
+        /********************************************************************************
+         * Return the operator with its operands swapped (e.g., ">" for "<").
+         */
+        static String flip (String op)
+        {
+            switch (op) {
+            case "<":  return ">";
+            case "<=": return ">=";
+            case ">":  return "<";
+            case ">=": return "<=";
+            default:   return op;
+            } // switch
+        } // flip
+    } // Generator class
+
+} // CompiledQuery class
@@ -0,0 +1,740 @@
+
+/************************************************************************************
+ * @file DiskBpTreeMap.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides disk-resident B+Tree maps.  Each node is stored in a fixed-size
+ * page of a file and nodes are fetched through a BufferPool, so the tree may be much
+ * larger than the memory given to the pool.  Keys and values are written into pages by
+ * codecs.  Internal node key i separates child i (keys < key i) from child i+1
+ * (keys >= key i), and the leaves are chained left to right for range scans.
+ */
+public class DiskBpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements SortedMap <K, V>
+{
+    /********************************************************************************
+     * This interface encodes keys or values into (and decodes them from) pages.
+     */
+    public interface Codec <T>
+    {
+        int  size (T v);
+        void write (ByteBuffer buf, T v);
+        T    read (ByteBuffer buf);
+    } // Codec interface
+
+    /** The size of a page (one node per page).
+     */
+    public static final int PAGE_SIZE = 8192;
+
+    /** The default maximum number of keys per node.
+     */
+    public static final int ORDER = 64;
+
+    /** Magic number identifying B+Tree files ("BPT1").
+     */
+    private static final int MAGIC = 0x42505431;
+
+    /** The size of a node's page header (isLeaf, nKeys, next).
+     */
+    private static final int NODE_HEADER = 7;
+
+    /********************************************************************************
+     * This inner class holds a node decoded from its page.
+     */
+    private class Node
+    {
+        int       pid;
+        boolean   isLeaf;
+        int       nKeys;
+        int       next = -1;
+        K []      key;
+        Object [] value;
+        int []    child;
+        @SuppressWarnings("unchecked")
+        Node (int _pid, boolean _isLeaf)
+        {
+            pid    = _pid;
+            isLeaf = _isLeaf;
+            key    = (K []) new Comparable [order + 1];
+            if (isLeaf) value = new Object [order + 1];
+            else        child = new int [order + 2];
+        } // constructor
+    } // Node inner class
+
+    /********************************************************************************
+     * This inner class holds the result of splitting a node: the separator key to
+     * insert into the parent and the page of the new right sibling.
+     */
+    private class Split
+    {
+        final K   sep;
+        final int right;
+        Split (K _sep, int _right) { sep = _sep; right = _right; }
+    } // Split inner class
+
+    /** The buffer pool caching the pages of the tree.
+     */
+    private final BufferPool pool;
+
+    /** The codecs for keys and values.
+     */
+    private final Codec <K> keyCodec;
+    private final Codec <V> valCodec;
+
+    /** The maximum number of keys per node.
+     */
+    private final int order;
+
+    /** The page holding the root node.
+     */
+    private int root;
+
+    /** The number of keys in the tree.
+     */
+    private int treeSize;
+
+    /** The value replaced by the last put (null if the key was new).
+     */
+    private V replaced;
+
+    /********************************************************************************
+     * Open (or create) a disk-resident B+Tree map with the default order.
+     * @param path      the path of the page file
+     * @param _keyCodec the codec for keys
+     * @param _valCodec the codec for values
+     * @param frames    the number of buffer pool frames
+     * @throws IOException  if the file cannot be opened or is not a B+Tree file
+     */
+    public DiskBpTreeMap (String path, Codec <K> _keyCodec, Codec <V> _valCodec, int frames)
+           throws IOException
+    {
+        this (path, _keyCodec, _valCodec, frames, ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Open (or create) a disk-resident B+Tree map.  Page 0 holds the tree's meta-data
+     * (root page and size); an existing file is reopened with its contents.
+     * @param path      the path of the page file
+     * @param _keyCodec the codec for keys
+     * @param _valCodec the codec for values
+     * @param frames    the number of buffer pool frames
+     * @param _order    the maximum number of keys per node
+     * @throws IOException  if the file cannot be opened or is not a B+Tree file
+     */
+    public DiskBpTreeMap (String path, Codec <K> _keyCodec, Codec <V> _valCodec, int frames, int _order)
+           throws IOException
+    {
+        keyCodec = _keyCodec;
+        valCodec = _valCodec;
+        order    = _order;
+        pool     = new BufferPool (path, PAGE_SIZE, Math.max (frames, 3));
+
+        if (pool.size () == 0) {
+            pool.allocate ();                                       // meta page
+            root = pool.allocate ();
+            writeNode (new Node (root, true));
+            writeMeta ();
+        } else {
+            ByteBuffer meta = pool.pin (0);
+            int magic = meta.getInt (0);
+            root      = meta.getInt (4);
+            treeSize  = meta.getInt (8);
+            pool.unpin (0, false);
+            if (magic != MAGIC) throw new IOException ("DiskBpTreeMap: not a B+Tree file: " + path);
+        } // if
+    } // constructor
+
+    /********************************************************************************
+     * Return the buffer pool (e.g., for its hit and miss counters).
+     */
+    public BufferPool getBufferPool ()
+    {
+        return pool;
+    } // getBufferPool
+
+    /********************************************************************************
+     * Write all dirty pages to disk.
+     */
+    public void flush ()
+    {
+        pool.flush ();
+    } // flush
+
+    /********************************************************************************
+     * Flush the tree and close its file.
+     * @throws IOException  if the file cannot be closed
+     */
+    public void close ()
+           throws IOException
+    {
+        pool.close ();
+    } // close
+
+    /********************************************************************************
+     * Return null to use the natural order based on the key type.
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return a set view of the entries, read lazily along the leaf chain.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new Range (null, null).entrySet ();
+    } // entrySet
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        K    k = (K) key;
+        Node n = readNode (root);
+        while (! n.isLeaf) n = readNode (n.child [upper (n, k)]);
+        int i = lower (n, k);
+        return (i < n.nKeys && n.key [i].compareTo (k) == 0) ? (V) n.value [i] : null;
+    } // get
+
+    /********************************************************************************
+     * Return whether the map contains the key.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an existing key.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for the key (null if none)
+     */
+    public V put (K key, V value)
+    {
+        replaced = null;
+        Split s = insert (root, key, value);
+        if (s != null) {
+            Node r = new Node (pool.allocate (), false);
+            r.nKeys    = 1;
+            r.key [0]  = s.sep;
+            r.child [0] = root;
+            r.child [1] = s.right;
+            writeNode (r);
+            root = r.pid;
+        } // if
+        if (replaced == null) treeSize++;
+        writeMeta ();
+        return replaced;
+    } // put
+
+    /********************************************************************************
+     * Load entries given in ascending key order into this empty tree, bottom-up: the
+     * leaves are filled left to right, then each internal level is built over the
+     * level below it.  Every page is written once, where a put per entry reads and
+     * rewrites a whole root-to-leaf path.
+     * @param entries  the entries in ascending key order (a repeated key keeps its last value)
+     */
+    @SuppressWarnings("unchecked")
+    public void load (Iterator <? extends Map.Entry <K, V>> entries)
+    {
+        if (treeSize > 0) throw new IllegalStateException ("DiskBpTreeMap: load needs an empty tree");
+        List <K>       keys = new ArrayList <> ();                 // first key of each node
+        List <Integer> pids = new ArrayList <> ();                 // page of each node
+        Node leaf = readNode (root);
+        int  size = NODE_HEADER;
+
+        while (entries.hasNext ()) {
+            Map.Entry <K, V> e = entries.next ();
+            K k = e.getKey ();
+            V v = e.getValue ();
+            int last = leaf.nKeys - 1;
+            if (last >= 0 && leaf.key [last].compareTo (k) == 0) {
+                size += valCodec.size (v) - valCodec.size ((V) leaf.value [last]);
+                leaf.value [last] = v;
+                continue;
+            } // if
+            int need = keyCodec.size (k) + valCodec.size (v);
+            if (leaf.nKeys == order || (leaf.nKeys > 0 && size + need > PAGE_SIZE)) {
+                Node next = new Node (pool.allocate (), true);
+                leaf.next = next.pid;
+                writeNode (leaf);
+                keys.add (leaf.key [0]);
+                pids.add (leaf.pid);
+                leaf = next;
+                size = NODE_HEADER;
+            } // if
+            leaf.key [leaf.nKeys]   = k;
+            leaf.value [leaf.nKeys] = v;
+            leaf.nKeys++;
+            size += need;
+            treeSize++;
+        } // while
+        writeNode (leaf);
+        keys.add (leaf.key [0]);
+        pids.add (leaf.pid);
+
+        while (pids.size () > 1) {
+            List <K>       upKeys = new ArrayList <> ();
+            List <Integer> upPids = new ArrayList <> ();
+            for (int i = 0; i < pids.size (); ) {
+                Node n = new Node (pool.allocate (), false);
+                n.child [0] = pids.get (i);
+                upKeys.add (keys.get (i++));
+                upPids.add (n.pid);
+                size = NODE_HEADER + 4;
+                for ( ; i < pids.size () && n.nKeys < order; i++) {
+                    int need = keyCodec.size (keys.get (i)) + 4;
+                    if (size + need > PAGE_SIZE) break;
+                    n.key [n.nKeys]       = keys.get (i);
+                    n.child [n.nKeys + 1] = pids.get (i);
+                    n.nKeys++;
+                    size += need;
+                } // for
+                if (pids.size () - i == 1 && n.nKeys > 1) {      // leave the last node two children
+                    n.key [--n.nKeys] = null;
+                    i--;
+                } // if
+                writeNode (n);
+            } // for
+            keys = upKeys;
+            pids = upPids;
+        } // while
+        root = pids.get (0);
+        writeMeta ();
+    } // load
+
+    /********************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     */
+    public K firstKey ()
+    {
+        Node n = readNode (root);
+        while (! n.isLeaf) n = readNode (n.child [0]);
+        if (n.nKeys == 0) throw new NoSuchElementException ();
+        return n.key [0];
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     */
+    public K lastKey ()
+    {
+        Node n = readNode (root);
+        while (! n.isLeaf) n = readNode (n.child [n.nKeys]);
+        if (n.nKeys == 0) throw new NoSuchElementException ();
+        return n.key [n.nKeys - 1];
+    } // lastKey
+
+    /********************************************************************************
+     * Return a view of the portion of the map where key < toKey.
+     */
+    public SortedMap <K, V> headMap (K toKey)
+    {
+        return new Range (null, toKey);
+    } // headMap
+
+    /********************************************************************************
+     * Return a view of the portion of the map where fromKey <= key.
+     */
+    public SortedMap <K, V> tailMap (K fromKey)
+    {
+        return new Range (fromKey, null);
+    } // tailMap
+
+    /********************************************************************************
+     * Return a view of the portion of the map where fromKey <= key < toKey.
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        return new Range (fromKey, toKey);
+    } // subMap
+
+    /********************************************************************************
+     * Return the size (number of keys) of the B+Tree map.
+     */
+    public int size ()
+    {
+        return treeSize;
+    } // size
+
+    //----------------------------------------------------------------------------------
+    // Range views
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * This inner class provides a view of the keys in [lo, hi) (null = unbounded) that
+     * is read lazily by descending to the first leaf and following the leaf chain.
+     */
+    private class Range
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        final K lo;
+        final K hi;
+
+        Range (K _lo, K _hi) { lo = _lo; hi = _hi; }
+
+        public Comparator <? super K> comparator () { return null; }
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return new Scan (lo, hi); }
+                public int size ()
+                {
+                    if (lo == null && hi == null) return treeSize;
+                    int n = 0;
+                    for (Iterator <Map.Entry <K, V>> it = iterator (); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+            };
+        } // entrySet
+
+        public V get (Object key)
+        {
+            return inRange (key) ? DiskBpTreeMap.this.get (key) : null;
+        } // get
+
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
+
+        public V put (K key, V value)
+        {
+            if (! inRange (key)) throw new IllegalArgumentException ("key out of range");
+            return DiskBpTreeMap.this.put (key, value);
+        } // put
+
+        public K firstKey ()
+        {
+            Scan it = new Scan (lo, hi);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (Scan it = new Scan (lo, hi); it.hasNext (); ) last = it.next ().getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public SortedMap <K, V> headMap (K toKey)           { return subMap (lo, toKey); }
+        public SortedMap <K, V> tailMap (K fromKey)         { return subMap (fromKey, hi); }
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            K l = (lo == null || (fromKey != null && fromKey.compareTo (lo) > 0)) ? fromKey : lo;
+            K h = (hi == null || (toKey != null && toKey.compareTo (hi) < 0)) ? toKey : hi;
+            return new Range (l, h);
+        } // subMap
+
+        @SuppressWarnings("unchecked")
+        private boolean inRange (Object key)
+        {
+            K k = (K) key;
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+    } // Range inner class
+
+    /********************************************************************************
+     * This inner class iterates over the entries in [lo, hi) leaf by leaf.
+     */
+    private class Scan
+            implements Iterator <Map.Entry <K, V>>
+    {
+        final K hi;
+        Node    leaf;
+        int     i;
+
+        Scan (K lo, K _hi)
+        {
+            hi   = _hi;
+            leaf = readNode (root);
+            if (lo == null) {
+                while (! leaf.isLeaf) leaf = readNode (leaf.child [0]);
+                i = 0;
+            } else {
+                while (! leaf.isLeaf) leaf = readNode (leaf.child [upper (leaf, lo)]);
+                i = lower (leaf, lo);
+            } // if
+            advance ();
+        } // constructor
+
+        private void advance ()
+        {
+            while (leaf != null && i >= leaf.nKeys) {
+                leaf = (leaf.next < 0) ? null : readNode (leaf.next);
+                i    = 0;
+            } // while
+            if (leaf != null && hi != null && leaf.key [i].compareTo (hi) >= 0) leaf = null;
+        } // advance
+
+        public boolean hasNext ()
+        {
+            return leaf != null;
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (leaf == null) throw new NoSuchElementException ();
+            Map.Entry <K, V> e = new AbstractMap.SimpleImmutableEntry <> (leaf.key [i], (V) leaf.value [i]);
+            i++;
+            advance ();
+            return e;
+        } // next
+
+    } // Scan inner class
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Recursive helper function for inserting a key into the subtree at page pid.
+     * @return  the split of the subtree's root, or null if it did not split
+     */
+    @SuppressWarnings("unchecked")
+    private Split insert (int pid, K key, V value)
+    {
+        Node n = readNode (pid);
+        if (n.isLeaf) {
+            int i = lower (n, key);
+            if (i < n.nKeys && n.key [i].compareTo (key) == 0) {
+                replaced = (V) n.value [i];
+                n.value [i] = value;
+                writeNode (n);
+                return null;
+            } // if
+            for (int j = n.nKeys; j > i; j--) {
+                n.key [j]   = n.key [j - 1];
+                n.value [j] = n.value [j - 1];
+            } // for
+            n.key [i]   = key;
+            n.value [i] = value;
+            n.nKeys++;
+        } else {
+            int   i = upper (n, key);
+            Split s = insert (n.child [i], key, value);
+            if (s == null) return null;
+            for (int j = n.nKeys; j > i; j--) {
+                n.key [j]       = n.key [j - 1];
+                n.child [j + 1] = n.child [j];
+            } // for
+            n.key [i]       = s.sep;
+            n.child [i + 1] = s.right;
+            n.nKeys++;
+        } // if
+
+        if (n.nKeys <= order && nodeSize (n) <= PAGE_SIZE) {
+            writeNode (n);
+            return null;
+        } // if
+        return split (n);
+    } // insert
+
+    /********************************************************************************
+     * Split the overfull node n in half, writing both halves.
+     * @return  the separator and the new right sibling
+     */
+    private Split split (Node n)
+    {
+        int  mid   = n.nKeys / 2;
+        Node right = new Node (pool.allocate (), n.isLeaf);
+        K    sep;
+
+        if (n.isLeaf) {
+            right.nKeys = n.nKeys - mid;
+            System.arraycopy (n.key, mid, right.key, 0, right.nKeys);
+            System.arraycopy (n.value, mid, right.value, 0, right.nKeys);
+            right.next = n.next;
+            n.next     = right.pid;
+            sep        = right.key [0];
+        } else {
+            sep         = n.key [mid];
+            right.nKeys = n.nKeys - mid - 1;
+            System.arraycopy (n.key, mid + 1, right.key, 0, right.nKeys);
+            System.arraycopy (n.child, mid + 1, right.child, 0, right.nKeys + 1);
+        } // if
+        n.nKeys = mid;
+        Arrays.fill (n.key, mid, n.key.length, null);
+        if (n.isLeaf) Arrays.fill (n.value, mid, n.value.length, null);
+
+        writeNode (n);
+        writeNode (right);
+        return new Split (sep, right.pid);
+    } // split
+
+    /********************************************************************************
+     * Return the position of the first key in node n that is >= key.
+     */
+    private int lower (Node n, K key)
+    {
+        int lo = 0, hi = n.nKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (n.key [mid].compareTo (key) < 0) lo = mid + 1;
+            else                                 hi = mid;
+        } // while
+        return lo;
+    } // lower
+
+    /********************************************************************************
+     * Return the position of the first key in node n that is > key (the child of an
+     * internal node to descend into).
+     */
+    private int upper (Node n, K key)
+    {
+        int lo = 0, hi = n.nKeys;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (n.key [mid].compareTo (key) <= 0) lo = mid + 1;
+            else                                  hi = mid;
+        } // while
+        return lo;
+    } // upper
+
+    /********************************************************************************
+     * Return the number of bytes needed to store node n.
+     */
+    @SuppressWarnings("unchecked")
+    private int nodeSize (Node n)
+    {
+        int size = NODE_HEADER;
+        for (int i = 0; i < n.nKeys; i++) {
+            size += keyCodec.size (n.key [i]);
+            size += n.isLeaf ? valCodec.size ((V) n.value [i]) : 4;
+        } // for
+        return n.isLeaf ? size : size + 4;
+    } // nodeSize
+
+    /********************************************************************************
+     * Fetch the page pid through the buffer pool and decode its node.
+     */
+    private Node readNode (int pid)
+    {
+        ByteBuffer buf = pool.pin (pid);
+        try {
+            Node n = new Node (pid, buf.get () != 0);
+            n.nKeys = buf.getShort ();
+            n.next  = buf.getInt ();
+            if (n.isLeaf) {
+                for (int i = 0; i < n.nKeys; i++) {
+                    n.key [i]   = keyCodec.read (buf);
+                    n.value [i] = valCodec.read (buf);
+                } // for
+            } else {
+                n.child [0] = buf.getInt ();
+                for (int i = 0; i < n.nKeys; i++) {
+                    n.key [i]       = keyCodec.read (buf);
+                    n.child [i + 1] = buf.getInt ();
+                } // for
+            } // if
+            return n;
+        } finally {
+            pool.unpin (pid, false);
+        } // try
+    } // readNode
+
+    /********************************************************************************
+     * Encode node n into its page.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeNode (Node n)
+    {
+        if (nodeSize (n) > PAGE_SIZE) {
+            throw new IllegalStateException ("DiskBpTreeMap: entries too large for a " + PAGE_SIZE + " byte page");
+        } // if
+        ByteBuffer buf = pool.pin (n.pid);
+        try {
+            buf.put ((byte) (n.isLeaf ? 1 : 0));
+            buf.putShort ((short) n.nKeys);
+            buf.putInt (n.next);
+            if (n.isLeaf) {
+                for (int i = 0; i < n.nKeys; i++) {
+                    keyCodec.write (buf, n.key [i]);
+                    valCodec.write (buf, (V) n.value [i]);
+                } // for
+            } else {
+                buf.putInt (n.child [0]);
+                for (int i = 0; i < n.nKeys; i++) {
+                    keyCodec.write (buf, n.key [i]);
+                    buf.putInt (n.child [i + 1]);
+                } // for
+            } // if
+        } finally {
+            pool.unpin (n.pid, true);
+        } // try
+    } // writeNode
+
+    /********************************************************************************
+     * Write the root page and size into the meta page.
+     */
+    private void writeMeta ()
+    {
+        ByteBuffer meta = pool.pin (0);
+        meta.putInt (0, MAGIC);
+        meta.putInt (4, root);
+        meta.putInt (8, treeSize);
+        pool.unpin (0, true);
+    } // writeMeta
+
+    //----------------------------------------------------------------------------------
+    // Codecs
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return a codec for tuples with the given domains.
+     * @param domain  the attribute domains
+     */
+    public static Codec <Comparable []> tupleCodec (Class [] domain)
+    {
+        TupleCodec tc = new TupleCodec (domain);
+        return new Codec <Comparable []> () {
+            public int size (Comparable [] t)                 { return tc.size (t); }
+            public void write (ByteBuffer buf, Comparable [] t) { tc.write (buf, t); }
+            public Comparable [] read (ByteBuffer buf)        { return tc.read (buf); }
+        };
+    } // tupleCodec
+
+    /********************************************************************************
+     * Return a codec for keys whose attributes have the given domains.
+     * @param domain  the domains of the key attributes
+     */
+    public static Codec <KeyType> keyCodec (Class [] domain)
+    {
+        TupleCodec tc = new TupleCodec (domain);
+        return new Codec <KeyType> () {
+            public int size (KeyType k)                 { return tc.size (k.key); }
+            public void write (ByteBuffer buf, KeyType k) { tc.write (buf, k.key); }
+            public KeyType read (ByteBuffer buf)        { return new KeyType (tc.read (buf)); }
+        };
+    } // keyCodec
+
+    /** A codec for Integer keys or values.
+     */
+    public static final Codec <Integer> INT_CODEC = new Codec <Integer> () {
+        public int size (Integer v)                 { return 4; }
+        public void write (ByteBuffer buf, Integer v) { buf.putInt (v); }
+        public Integer read (ByteBuffer buf)        { return buf.getInt (); }
+    };
+
+} // DiskBpTreeMap class
+
@@ -0,0 +1,127 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskBpTreeMapTest {
+	
+	private static final String PATH = "store" + File.separator + "DiskBpTreeMapTest.idx";
+	
+	/***********************************************************************
+	 * Removes the page file left by a previous test.
+	 */
+	@Before
+	public void setUp() {
+		new File("store").mkdirs();
+		new File(PATH).delete();
+	}
+	
+	/***********************************************************************
+	 * This method creates a disk B+ tree with keys 1..n (value = key squared)
+	 * inserted in a scrambled order through a small buffer pool.
+	 * @return the newly created tree
+	 */
+	public DiskBpTreeMap <Integer, Integer> createTree(int n) throws Exception {
+		DiskBpTreeMap <Integer, Integer> bpt = new DiskBpTreeMap <> (PATH,
+				DiskBpTreeMap.INT_CODEC, DiskBpTreeMap.INT_CODEC, 4, 8);
+		for (int i = 0; i < n; i++) {
+			int k = (int) ((i * 7919L) % n) + 1;
+			bpt.put(k, k * k);
+		}
+		return bpt;
+	}
+
+	/*************************************************************************
+	 * Tests put, get, size, firstKey and lastKey with a tree much larger than the pool
+	 */
+	@Test
+	public void testPutGet() throws Exception {
+		DiskBpTreeMap <Integer, Integer> tree = createTree(2000);
+		
+		assertEquals(2000, tree.size());
+		assertEquals(1, (int) tree.firstKey());
+		assertEquals(2000, (int) tree.lastKey());
+		for (int k = 1; k <= 2000; k++) {
+			assertEquals(k * k, (int) tree.get(k));
+		}
+		assertNull(tree.get(0));
+		assertNull(tree.get(2001));
+		assertTrue(tree.getBufferPool().misses() > 0);
+		assertTrue(tree.getBufferPool().hits() > 0);
+		tree.close();
+	}
+	
+	/*************************************************************************
+	 * Tests that subMap returns the keys in [from, to) in order
+	 */
+	@Test
+	public void testSubMap() throws Exception {
+		DiskBpTreeMap <Integer, Integer> tree = createTree(500);
+		SortedMap <Integer, Integer> sub = tree.subMap(100, 200);
+		
+		int expected = 100;
+		for (Map.Entry <Integer, Integer> e : sub.entrySet()) {
+			assertEquals(expected, (int) e.getKey());
+			assertEquals(expected * expected, (int) e.getValue());
+			expected++;
+		}
+		assertEquals(200, expected);
+		assertEquals(100, sub.size());
+		assertEquals(500, (int) tree.tailMap(499).lastKey());
+		assertEquals(499, (int) tree.tailMap(499).firstKey());
+		assertEquals(10, tree.headMap(11).size());
+		tree.close();
+	}
+	
+	/*************************************************************************
+	 * Tests that a closed tree can be reopened from its file
+	 */
+	@Test
+	public void testReopen() throws Exception {
+		createTree(300).close();
+		DiskBpTreeMap <Integer, Integer> tree = new DiskBpTreeMap <> (PATH,
+				DiskBpTreeMap.INT_CODEC, DiskBpTreeMap.INT_CODEC, 4, 8);
+		
+		assertEquals(300, tree.size());
+		assertEquals(144, (int) tree.get(12));
+		tree.put(12, 0);
+		assertEquals(300, tree.size());
+		assertEquals(0, (int) tree.get(12));
+		tree.close();
+	}
+	
+	/*************************************************************************
+	 * Tests that a bulk load of sorted entries builds a tree that finds every key,
+	 * scans in order, accepts later puts and survives a reopen
+	 */
+	@Test
+	public void testLoad() throws Exception {
+		java.util.TreeMap <Integer, Integer> sorted = new java.util.TreeMap <> ();
+		for (int k = 1; k <= 2000; k++) sorted.put(k, k * k);
+		DiskBpTreeMap <Integer, Integer> tree = new DiskBpTreeMap <> (PATH,
+				DiskBpTreeMap.INT_CODEC, DiskBpTreeMap.INT_CODEC, 4, 8);
+		tree.load(sorted.entrySet().iterator());
+		
+		assertEquals(2000, tree.size());
+		for (int k = 1; k <= 2000; k++) {
+			assertEquals(k * k, (int) tree.get(k));
+		}
+		assertEquals(100, tree.subMap(100, 200).size());
+		assertEquals(100, (int) tree.subMap(100, 200).firstKey());
+		for (int k = 2001; k <= 2100; k++) tree.put(k, 0);
+		tree.put(0, 0);
+		assertEquals(2101, tree.size());
+		assertEquals(0, (int) tree.firstKey());
+		tree.close();
+		
+		tree = new DiskBpTreeMap <> (PATH, DiskBpTreeMap.INT_CODEC, DiskBpTreeMap.INT_CODEC, 4, 8);
+		assertEquals(2101, tree.size());
+		assertEquals(1999 * 1999, (int) tree.get(1999));
+		assertEquals(2101, tree.entrySet().size());
+		tree.close();
+	}
+}
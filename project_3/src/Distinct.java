@@ -0,0 +1,170 @@
+
+/****************************************************************************************
+ * @file  Distinct.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/****************************************************************************************
+ * This class provides duplicate elimination by hashing, e.g., for union.  Each tuple is
+ * mapped to a dedup key (the whole tuple as a list, or just its primary key) and passed
+ * on only the first time its key is seen.
+ *
+ * If the tuples are estimated to fit in the memory budget, one hash set is used and the
+ * first occurrences come out in input order.  With several threads, the keys are
+ * radix partitioned on their hash (scattered into one bucket per partition) and each
+ * thread deduplicates its own partitions, marking the first occurrences, which are
+ * then passed on in input order; no set is shared.  Otherwise the tuples are
+ * partitioned on the hash of their keys into spill files under store/ and each
+ * partition is deduplicated on its own, so the output comes partition by partition.
+ */
+public class Distinct
+{
+    /************************************************************************************
+     * Pass the first tuple with each dedup key to out.
+     *
+     * @param rows     the tuples
+     * @param key      the function giving the dedup key of a tuple
+     * @param domain   the domains of the tuples
+     * @param budget   the memory budget for the hash set in bytes
+     * @param threads  the number of threads
+     * @param out      the consumer of the distinct tuples
+     * @throws IOException  if a spill file cannot be written or read
+     */
+    public static void distinct (List <Comparable []> rows, Function <Comparable [], Object> key,
+                                 Class [] domain, long budget, int threads, Consumer <Comparable []> out)
+           throws IOException
+    {
+        long bytes = HashJoin.estimateBytes (rows, domain);
+        if (bytes > budget) {
+            try {
+                partitionDistinct (rows, key, domain, bytes, budget, 0, out);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause ();
+            } // try
+        } else if (threads > 1) {
+            parallelDistinct (rows, key, threads, out);
+        } else {
+            Set <Object> seen = new HashSet <> ();
+            for (Comparable [] t : rows) if (seen.add (key.apply (t))) out.accept (t);
+        } // if
+    } // distinct
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Pass the first tuple with each dedup key to out, in input order, deduplicating
+     * with the given number of threads (see above).  Each thread first finds the keys
+     * and their partitions (hashing each key once) for a chunk of the tuples and then
+     * scatters the chunk's positions into per-partition buckets, so each partition task
+     * only visits its own tuples, still in input order.
+     */
+    private static void parallelDistinct (List <Comparable []> rows, Function <Comparable [], Object> key,
+                                          int threads, Consumer <Comparable []> out)
+    {
+        int        n     = rows.size ();
+        Object []  keys  = new Object [n];
+        int []     part  = new int [n];
+        boolean [] keep  = new boolean [n];
+        int        bits  = 32 - Integer.numberOfLeadingZeros (Math.max (1, 4 * threads - 1));    // 2^bits >= 4 * threads
+        int        parts = 1 << bits;
+        int [][]   next  = new int [threads][parts];                 // counts, then scatter positions
+        int []     start = new int [parts + 1];                      // bucket p is order [start [p] .. start [p+1])
+        int []     order = new int [n];
+
+        List <Callable <Boolean>> tasks = new ArrayList <> ();
+        for (int c = 0; c < threads; c++) {
+            int chunk = c, lo = (int) ((long) c * n / threads), hi = (int) ((long) (c + 1) * n / threads);
+            tasks.add (() -> {
+                for (int i = lo; i < hi; i++) {
+                    keys [i] = key.apply (rows.get (i));
+                    part [i] = (Objects.hashCode (keys [i]) * 0x9E3779B9) >>> (32 - bits);
+                    next [chunk][part [i]]++;
+                } // for
+                return true;
+            });
+        } // for
+        Parallel.invokeAll (threads, tasks);
+
+        for (int p = 0, pos = 0; p < parts; p++) {                   // chunk c's tuples of p follow chunk c-1's
+            start [p] = pos;
+            for (int c = 0; c < threads; c++) {
+                int count = next [c][p];
+                next [c][p] = pos;
+                pos += count;
+            } // for
+        } // for
+        start [parts] = n;
+
+        tasks.clear ();
+        for (int c = 0; c < threads; c++) {
+            int chunk = c, lo = (int) ((long) c * n / threads), hi = (int) ((long) (c + 1) * n / threads);
+            tasks.add (() -> {
+                for (int i = lo; i < hi; i++) order [next [chunk][part [i]]++] = i;
+                return true;
+            });
+        } // for
+        Parallel.invokeAll (threads, tasks);
+
+        tasks.clear ();
+        for (int p = 0; p < parts; p++) {
+            int lo = start [p], hi = start [p + 1];
+            tasks.add (() -> {
+                Set <Object> seen = new HashSet <> (Math.max (16, (hi - lo) * 4 / 3 + 1));
+                for (int k = lo; k < hi; k++) if (seen.add (keys [order [k]])) keep [order [k]] = true;
+                return true;
+            });
+        } // for
+        Parallel.invokeAll (threads, tasks);
+
+        for (int i = 0; i < n; i++) if (keep [i]) out.accept (rows.get (i));
+    } // parallelDistinct
+
+    /************************************************************************************
+     * Partition the tuples on a hash of their dedup keys into spill files, then pass the
+     * distinct tuples of each partition to out, partitioning a partition again if it is
+     * still over the budget.
+     *
+     * @param rows    the tuples
+     * @param key     the function giving the dedup key of a tuple
+     * @param domain  the domains of the tuples
+     * @param bytes   the estimated in-memory size of the tuples
+     * @param budget  the memory budget in bytes
+     * @param depth   the number of times these tuples have been partitioned
+     * @param out     the consumer of the distinct tuples
+     */
+    private static void partitionDistinct (Iterable <Comparable []> rows, Function <Comparable [], Object> key,
+                                           Class [] domain, long bytes, long budget, int depth,
+                                           Consumer <Comparable []> out)
+            throws IOException
+    {
+        int          n     = (int) Math.min (HashJoin.MAX_FANOUT, Math.max (2, 2 * bytes / Math.max (1, budget) + 1));
+        SpillFile [] parts = new SpillFile [n];
+        try {
+            for (int i = 0; i < n; i++) parts [i] = new SpillFile (domain);
+            for (Comparable [] t : rows) parts [HashJoin.partition (key.apply (t), depth, n)].add (t);
+
+            for (int i = 0; i < n; i++) {
+                SpillFile part = parts [i];
+                long      size = HashJoin.HEAP_FACTOR * part.bytes ();
+                if (size > budget && depth < HashJoin.MAX_DEPTH && part.size () > 1) {
+                    partitionDistinct (part, key, domain, size, budget, depth + 1, out);
+                } else {
+                    Set <Object> seen = new HashSet <> ();
+                    for (Comparable [] t : part) if (seen.add (key.apply (t))) out.accept (t);
+                } // if
+                part.close ();
+            } // for
+        } finally {
+            for (int i = 0; i < n; i++) if (parts [i] != null) parts [i].close ();
+        } // try
+    } // partitionDistinct
+
+} // Distinct class
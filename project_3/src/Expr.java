@@ -0,0 +1,734 @@
+
+/****************************************************************************************
+ * @file  Expr.java
+ */
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/****************************************************************************************
+ * This class provides expressions over the attributes of a tuple: column references,
+ * literals, comparisons, AND, OR, NOT, IN and BETWEEN.  Unlike a lambda, an expression
+ * can be taken apart, so Table.select (Expr) can see which conditions restrict the
+ * primary key and answer them from an index, e.g.,
+ *
+ *     student.select (col ("id").between (100, 200).and (col ("status").eq ("FR")))
+ *
+ * An expression is bound to the attribute names of a table to be evaluated (see bind
+ * and predicate).  Conditions follow SQL's three-valued logic: a comparison with null
+ * is unknown (null), and a tuple qualifies only if its condition is true.
+ */
+public abstract class Expr
+{
+    //----------------------------------------------------------------------------------
+    // Factory Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return a reference to the attribute with the given name.
+     *
+     * @param name  the attribute name
+     */
+    public static Expr col (String name)
+    {
+        return new Col (name);
+    } // col
+
+    /************************************************************************************
+     * Return the literal value.
+     *
+     * @param value  the value (may be null)
+     */
+    public static Expr lit (Comparable value)
+    {
+        return new Lit (value);
+    } // lit
+
+    /************************************************************************************
+     * Return the comparison a op b, where op is "==", "!=", "<", "<=", ">" or ">=".
+     *
+     * @param a   the left operand
+     * @param op  the comparison operator
+     * @param b   the right operand
+     */
+    public static Expr compare (Expr a, String op, Expr b)
+    {
+        return new Cmp (a, op, b);
+    } // compare
+
+    /************************************************************************************
+     * Return a parameter of a prepared query, a value supplied each time the query runs
+     * (see Table.prepare).
+     *
+     * @param index  the position of the parameter among the values, from 0
+     */
+    public static Expr param (int index)
+    {
+        return new Param (index);
+    } // param
+
+    /************************************************************************************
+     * Return the conjunction of the conditions.
+     *
+     * @param conds  the conditions
+     */
+    public static Expr and (Expr... conds)
+    {
+        return new And (Arrays.asList (conds));
+    } // and
+
+    /************************************************************************************
+     * Return the disjunction of the conditions.
+     *
+     * @param conds  the conditions
+     */
+    public static Expr or (Expr... conds)
+    {
+        return new Or (Arrays.asList (conds));
+    } // or
+
+    /************************************************************************************
+     * Return the negation of the condition.
+     *
+     * @param cond  the condition
+     */
+    public static Expr not (Expr cond)
+    {
+        return new Not (cond);
+    } // not
+
+    //----------------------------------------------------------------------------------
+    // Fluent Methods
+    //----------------------------------------------------------------------------------
+
+    /** Return this == value. */
+    public Expr eq (Comparable value) { return new Cmp (this, "==", lit (value)); }
+
+    /** Return this != value. */
+    public Expr ne (Comparable value) { return new Cmp (this, "!=", lit (value)); }
+
+    /** Return this < value. */
+    public Expr lt (Comparable value) { return new Cmp (this, "<", lit (value)); }
+
+    /** Return this <= value. */
+    public Expr le (Comparable value) { return new Cmp (this, "<=", lit (value)); }
+
+    /** Return this > value. */
+    public Expr gt (Comparable value) { return new Cmp (this, ">", lit (value)); }
+
+    /** Return this >= value. */
+    public Expr ge (Comparable value) { return new Cmp (this, ">=", lit (value)); }
+
+    /************************************************************************************
+     * Return the condition that this is one of the values.
+     *
+     * @param values  the values
+     */
+    public Expr in (Comparable... values)
+    {
+        return new In (this, Arrays.asList (values));
+    } // in
+
+    /************************************************************************************
+     * Return the condition low <= this <= high.
+     *
+     * @param low   the lower bound
+     * @param high  the upper bound
+     */
+    public Expr between (Comparable low, Comparable high)
+    {
+        return new Between (this, low, high);
+    } // between
+
+    /************************************************************************************
+     * Return the conjunction of this condition and cond.
+     *
+     * @param cond  the other condition
+     */
+    public Expr and (Expr cond)
+    {
+        return and (this, cond);
+    } // and
+
+    /************************************************************************************
+     * Return the disjunction of this condition and cond.
+     *
+     * @param cond  the other condition
+     */
+    public Expr or (Expr cond)
+    {
+        return or (this, cond);
+    } // or
+
+    //----------------------------------------------------------------------------------
+    // Evaluation and Analysis
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Bind the expression to the given attribute names, returning a function that
+     * evaluates it on a tuple with those attributes.
+     *
+     * @param attribute  the attribute names of the tuples
+     * @throws IllegalArgumentException  if a referenced attribute is not among them
+     */
+    public abstract Function <Comparable [], Comparable> bind (String [] attribute);
+
+    /************************************************************************************
+     * Bind the condition to the given attribute names, returning a predicate that holds
+     * when the condition is true (not false or unknown).
+     *
+     * @param attribute  the attribute names of the tuples
+     */
+    public Predicate <Comparable []> predicate (String [] attribute)
+    {
+        Function <Comparable [], Comparable> f = bind (attribute);
+        return t -> f.apply (t) == Boolean.TRUE;
+    } // predicate
+
+    /************************************************************************************
+     * Return a copy of the expression with each attribute name mapped by f, e.g., to
+     * qualify the names with a table alias.
+     *
+     * @param f  the function mapping attribute names
+     */
+    public abstract Expr rename (UnaryOperator <String> f);
+
+    /************************************************************************************
+     * Return the conjuncts of the condition (the condition itself if it is not an AND).
+     */
+    public List <Expr> conjuncts ()
+    {
+        return Collections.singletonList (this);
+    } // conjuncts
+
+    /************************************************************************************
+     * Return the names of the attributes the expression refers to.
+     */
+    public Set <String> columns ()
+    {
+        Set <String> names = new LinkedHashSet <> ();
+        addColumns (names);
+        return names;
+    } // columns
+
+    /************************************************************************************
+     * Add the names of the attributes the expression refers to.
+     */
+    abstract void addColumns (Set <String> names);
+
+    /************************************************************************************
+     * Compare two non-null values, comparing numbers of different types by value.
+     *
+     * @param a  the first value
+     * @param b  the second value
+     * @return  a negative number, zero or a positive number
+     */
+    @SuppressWarnings ("unchecked")
+    public static int compareValues (Comparable a, Comparable b)
+    {
+        if (a.getClass () != b.getClass () && a instanceof Number && b instanceof Number) {
+            if (integral (a) && integral (b)) return Long.compare (((Number) a).longValue (), ((Number) b).longValue ());
+            return Double.compare (((Number) a).doubleValue (), ((Number) b).doubleValue ());
+        } // if
+        return a.compareTo (b);
+    } // compareValues
+
+    /************************************************************************************
+     * Convert the value to the given domain if that loses nothing (e.g., the Integer 7
+     * to the Long 7, but not the Double 2.5 to an Integer).
+     *
+     * @param v  the value
+     * @param c  the domain
+     * @return  the converted value, or null if it cannot be converted exactly
+     */
+    public static Comparable coerce (Comparable v, Class c)
+    {
+        if (v == null || c.isInstance (v)) return v;
+        if (! (v instanceof Number)) return null;
+        Number n = (Number) v;
+        Comparable w;
+        if      (c == Integer.class) w = n.intValue ();
+        else if (c == Long.class)    w = n.longValue ();
+        else if (c == Short.class)   w = n.shortValue ();
+        else if (c == Byte.class)    w = n.byteValue ();
+        else if (c == Double.class)  w = n.doubleValue ();
+        else if (c == Float.class)   w = n.floatValue ();
+        else return null;
+        return (compareValues (w, v) == 0) ? w : null;
+    } // coerce
+
+    /************************************************************************************
+     * Determine whether the number is of an integral type.
+     */
+    private static boolean integral (Object n)
+    {
+        return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+    } // integral
+
+    /************************************************************************************
+     * Return the position of the attribute, failing if it is not there.
+     */
+    private static int position (String [] attribute, String name)
+    {
+        for (int i = 0; i < attribute.length; i++) if (attribute [i].equals (name)) return i;
+        throw new IllegalArgumentException ("Expr: unknown attribute " + name);
+    } // position
+
+    //----------------------------------------------------------------------------------
+    // Expression Nodes
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * This class provides references to attributes.
+     */
+    public static class Col
+           extends Expr
+    {
+        public final String name;
+
+        Col (String _name)
+        {
+            name = _name;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            int j = position (attribute, name);
+            return t -> t [j];
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return new Col (f.apply (name));
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            names.add (name);
+        } // addColumns
+
+        public String toString ()
+        {
+            return name;
+        } // toString
+    } // Col class
+
+    /************************************************************************************
+     * This class provides literal values.
+     */
+    public static class Lit
+           extends Expr
+    {
+        public final Comparable value;
+
+        Lit (Comparable _value)
+        {
+            value = _value;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            return t -> value;
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return this;
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+        } // addColumns
+
+        public String toString ()
+        {
+            return (value instanceof String) ? "'" + value + "'" : String.valueOf (value);
+        } // toString
+    } // Lit class
+
+    /************************************************************************************
+     * This class provides parameters.  A parameter is bound as if it were an attribute
+     * named ?index, so a prepared query evaluates it on a tuple with the parameter values
+     * appended; elsewhere it is unbound.
+     */
+    public static class Param
+           extends Expr
+    {
+        public final int index;
+
+        Param (int _index)
+        {
+            index = _index;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            int j = Arrays.asList (attribute).indexOf (toString ());
+            if (j < 0) throw new IllegalArgumentException ("Expr: unbound parameter " + this);
+            return t -> t [j];
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return this;
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+        } // addColumns
+
+        public String toString ()
+        {
+            return "?" + index;
+        } // toString
+    } // Param class
+
+    /************************************************************************************
+     * This class provides comparisons.
+     */
+    public static class Cmp
+           extends Expr
+    {
+        public final Expr   left, right;
+        public final String op;
+
+        Cmp (Expr _left, String _op, Expr _right)
+        {
+            if (! Arrays.asList ("==", "!=", "<", "<=", ">", ">=").contains (_op)) {
+                throw new IllegalArgumentException ("Expr: unknown operator " + _op);
+            } // if
+            left  = _left;
+            op    = _op;
+            right = _right;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            Function <Comparable [], Comparable> a = left.bind (attribute), b = right.bind (attribute);
+            String o = op;
+            return t -> {
+                Comparable x = a.apply (t), y = b.apply (t);
+                return (x == null || y == null) ? null : holds (o, compareValues (x, y));
+            };
+        } // bind
+
+        /********************************************************************************
+         * Return this comparison as column op literal (flipping it if the literal is on
+         * the left), or null if it does not have that form.
+         */
+        public Cmp normalized ()
+        {
+            if (left instanceof Col && right instanceof Lit) return this;
+            if (left instanceof Lit && right instanceof Col) return new Cmp (right, flip (op), left);
+            return null;
+        } // normalized
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return new Cmp (left.rename (f), op, right.rename (f));
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            left.addColumns (names);
+            right.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return left + " " + op + " " + right;
+        } // toString
+    } // Cmp class
+
+    /************************************************************************************
+     * This class provides conjunctions.
+     */
+    public static class And
+           extends Expr
+    {
+        public final List <Expr> conds;
+
+        And (List <Expr> _conds)
+        {
+            conds = _conds;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            List <Function <Comparable [], Comparable>> fs = new ArrayList <> ();
+            for (Expr c : conds) fs.add (c.bind (attribute));
+            return t -> {
+                Boolean result = true;
+                for (Function <Comparable [], Comparable> f : fs) {
+                    Comparable v = f.apply (t);
+                    if (v == Boolean.FALSE) return false;
+                    if (v == null) result = null;
+                } // for
+                return result;
+            };
+        } // bind
+
+        public List <Expr> conjuncts ()
+        {
+            List <Expr> list = new ArrayList <> ();
+            for (Expr c : conds) list.addAll (c.conjuncts ());
+            return list;
+        } // conjuncts
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            List <Expr> list = new ArrayList <> ();
+            for (Expr c : conds) list.add (c.rename (f));
+            return new And (list);
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            for (Expr c : conds) c.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return join (conds, " AND ");
+        } // toString
+    } // And class
+
+    /************************************************************************************
+     * This class provides disjunctions.
+     */
+    public static class Or
+           extends Expr
+    {
+        public final List <Expr> conds;
+
+        Or (List <Expr> _conds)
+        {
+            conds = _conds;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            List <Function <Comparable [], Comparable>> fs = new ArrayList <> ();
+            for (Expr c : conds) fs.add (c.bind (attribute));
+            return t -> {
+                Boolean result = false;
+                for (Function <Comparable [], Comparable> f : fs) {
+                    Comparable v = f.apply (t);
+                    if (v == Boolean.TRUE) return true;
+                    if (v == null) result = null;
+                } // for
+                return result;
+            };
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            List <Expr> list = new ArrayList <> ();
+            for (Expr c : conds) list.add (c.rename (f));
+            return new Or (list);
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            for (Expr c : conds) c.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return join (conds, " OR ");
+        } // toString
+    } // Or class
+
+    /************************************************************************************
+     * This class provides negations.
+     */
+    public static class Not
+           extends Expr
+    {
+        public final Expr cond;
+
+        Not (Expr _cond)
+        {
+            cond = _cond;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            Function <Comparable [], Comparable> f = cond.bind (attribute);
+            return t -> {
+                Comparable v = f.apply (t);
+                return (v == null) ? null : (Comparable) (v != Boolean.TRUE);
+            };
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return new Not (cond.rename (f));
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            cond.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return "NOT (" + cond + ")";
+        } // toString
+    } // Not class
+
+    /************************************************************************************
+     * This class provides membership in a list of values.  With a null in the list, a
+     * value not found is unknown rather than false.
+     */
+    public static class In
+           extends Expr
+    {
+        public final Expr               expr;
+        public final List <Comparable> values;
+
+        In (Expr _expr, List <Comparable> _values)
+        {
+            expr   = _expr;
+            values = _values;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            Function <Comparable [], Comparable> f = expr.bind (attribute);
+            boolean hasNull = values.contains (null);
+
+            // values of one type are hashed, so a long list (e.g., from a subquery) is
+            // searched in constant time; a value of another type is compared to each
+            Set <Comparable> set  = new HashSet <> ();
+            Class            type = null;
+            for (Comparable v : values) {
+                if (v == null) continue;
+                if (type == null) type = v.getClass ();
+                else if (type != v.getClass ()) type = Object.class;
+                set.add (v);
+            } // for
+            Class same = type;
+            return t -> {
+                Comparable x = f.apply (t);
+                if (x == null) return null;
+                if (x.getClass () == same) {
+                    if (set.contains (x)) return true;
+                } else {
+                    for (Comparable v : set) if (compareValues (x, v) == 0) return true;
+                } // if
+                return hasNull ? null : (Comparable) false;
+            };
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return new In (expr.rename (f), values);
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            expr.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            List <Expr> lits = new ArrayList <> ();
+            for (Comparable v : values) lits.add (lit (v));
+            return expr + " IN (" + join (lits, ", ") + ")";
+        } // toString
+    } // In class
+
+    /************************************************************************************
+     * This class provides ranges, low <= expr <= high.
+     */
+    public static class Between
+           extends Expr
+    {
+        public final Expr       expr;
+        public final Comparable low, high;
+
+        Between (Expr _expr, Comparable _low, Comparable _high)
+        {
+            expr = _expr;
+            low  = _low;
+            high = _high;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            Function <Comparable [], Comparable> f = expr.bind (attribute);
+            return t -> {
+                Comparable x = f.apply (t);
+                if (x == null || low == null || high == null) return null;
+                return compareValues (x, low) >= 0 && compareValues (x, high) <= 0;
+            };
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            return new Between (expr.rename (f), low, high);
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            expr.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return expr + " BETWEEN " + lit (low) + " AND " + lit (high);
+        } // toString
+    } // Between class
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return whether a comparison with outcome c (negative, zero or positive) satisfies
+     * the operator.
+     */
+    static boolean holds (String op, int c)
+    {
+        switch (op) {
+        case "==": return c == 0;
+        case "!=": return c != 0;
+        case "<":  return c < 0;
+        case "<=": return c <= 0;
+        case ">":  return c > 0;
+        default:   return c >= 0;
+        } // switch
+    } // holds
+
+    /************************************************************************************
+     * Return the operator with its operands swapped (e.g., "<" for ">").
+     */
+    static String flip (String op)
+    {
+        switch (op) {
+        case "<":  return ">";
+        case "<=": return ">=";
+        case ">":  return "<";
+        case ">=": return "<=";
+        default:   return op;
+        } // switch
+    } // flip
+
+    /************************************************************************************
+     * Join the expressions' strings (parenthesizing compound ones) with the separator.
+     */
+    private static String join (List <Expr> exprs, String sep)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (Expr e : exprs) {
+            if (sb.length () > 0) sb.append (sep);
+            boolean compound = e instanceof And || e instanceof Or;
+            sb.append (compound ? "(" + e + ")" : e.toString ());
+        } // for
+        return sb.toString ();
+    } // join
+
+} // Expr class
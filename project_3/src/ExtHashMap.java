@@ -37,6 +37,7 @@ public class ExtHashMap <K, V>
     {
         int  nKeys;
         int localDepth;
+        int localMod;
         int bucketNum;
         K [] key;
         V [] value;
@@ -49,18 +50,6 @@ public class ExtHashMap <K, V>
             value = (V []) Array.newInstance (classV, SLOTS);
         } // constructor
         
-        public void setEqual(Bucket a){
-        	key   = (K []) Array.newInstance (classK, SLOTS);
-            value = (V []) Array.newInstance (classV, SLOTS);
-            
-        	nKeys = a.nKeys;
-        	localDepth = a.localDepth;
-        	for(int j = 0; j < a.nKeys; j++){
-        		key[j] = a.key[j];
-        		value[j] = a.value[j];
-        	} // for
-        } //setEqual
-        
     } // Bucket inner class
 
     /** The hash table storing the buckets (buckets in physical order)
@@ -114,6 +103,7 @@ public class ExtHashMap <K, V>
             newBucket.bucketNum = currentBucket;
             currentBucket++;
             newBucket.localDepth = globalDepth;
+            newBucket.localMod = mod;
             hTable.add(newBucket);
             dir.add(newBucket);
         } //for
@@ -129,7 +119,7 @@ public class ExtHashMap <K, V>
         Set <Map.Entry <K, V>> enSet = new HashSet <> ();
 
         //  Implemented by Ashley Bennett
-        for (Bucket curr : dir) { // iterates through buckets in the directory
+        for (Bucket curr : hTable) { // iterates through buckets in physical order (each once)
             for (int i = 0; i < curr.nKeys; i++) { //iterates through keys in each bucket
               enSet.add(new AbstractMap.SimpleEntry<K, V>(curr.key[i], curr.value[i]));
             } // for
@@ -160,166 +150,115 @@ public class ExtHashMap <K, V>
 
 
     /********************************************************************************
-     * Splits the bucket and disperses its members.
-     * @param Bucket  the bucket to split
+     * Put the key-value pair in the hash table, replacing the value of an existing
+     * key.  A full bucket is split (doubling the directory when the bucket is already
+     * referenced by a single directory entry) until the key's bucket has room.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for the key (null if none)
      */
-     public void split(Bucket b, int index) {
-       // implemented by Ashley Bennett
-       this.count++;
-
-       // if the global depth is less than or equal to the local depth
-       // double the directory
-       if (this.globalDepth <= b.localDepth) {
-            this.globalDepth++;
-            b.localDepth++;
-
-            // duplicate directory
-            // set members in correct bucket
-            for (int j = mod; j < mod * 2; j++) {
-            	dir.add(new Bucket());
-            	if (h(j) != index) {
-            		 dir.set(j, dir.get(h(j)));
-            	} // if
-            	else {
-                	 mod = mod * 2;
-                	 Bucket curr = new Bucket();
-                	 Bucket newBucket = new Bucket();
-                	 newBucket.localDepth = b.localDepth;
-                	 curr.localDepth = globalDepth;
-                	 curr.nKeys = 0;
-                	 newBucket.nKeys = 0;
-                	 
-                	 for (int i = 0; i < b.nKeys; i++) {
-                		 if (h(b.key[i]) >= mod/2) {
-                			 curr.key[curr.nKeys] = b.key[i];
-                			 curr.value[curr.nKeys] = b.value[i];
-                			 curr.nKeys++;
-                		 } // if
-                		 else {
-                			 newBucket.key[newBucket.nKeys] = b.key[i];
-                			 newBucket.value[newBucket.nKeys] = b.value[i];
-                			 newBucket.nKeys++;
-                		 } // else
-                	 } // for
-                	 
-                	 // b becomes the new bucket
-                	 b.setEqual(newBucket);
-                	 dir.set(index + mod/2, curr);
-                	 hTable.add(curr);
-                	 mod = mod/2;
-                	 
-                	 curr.bucketNum = currentBucket;
-                	 currentBucket++;      	 
-                } // else
-           } // for;
-            mod = mod * 2;
-       } // if
-       else {
-    	    b.localDepth++;
-    	    Bucket curr = new Bucket();
-    	    Bucket newBucket = new Bucket();
-        	newBucket.localDepth = b.localDepth;
-        	curr.localDepth = b.localDepth;
-        	curr.nKeys = 0;
-        	newBucket.nKeys = 0;
-        	curr.bucketNum = currentBucket;
-        	currentBucket++;
-        	for (int j = 0; j < b.nKeys; j++) {
-        		if (h(b.key[j]) >= mod/2) {
-        			curr.key[curr.nKeys] = b.key[j];
-        			curr.value[curr.nKeys] = b.value[j];
-        			curr.nKeys++;
-        		} // if
-        		else {
-        			newBucket.key[newBucket.nKeys] = b.key[j];
-        			newBucket.value[newBucket.nKeys] = b.value[j];
-        			newBucket.nKeys++;
-        		} //else
-        	} // for
-        	
-        	// b becomes new bucket
-        	b.setEqual(newBucket);
-        	
-        	// update directory
-        	if (curr.nKeys > 0) {
-        		int index1 = h(curr.key[0]);
-        		while(index1 < dir.size()){
-        			dir.set(index1, curr);
-        			index1 += mod;
-        		} // while
-        	} // if
-        	if (b.nKeys > 0) {
-        		int index1 = h(b.key[0]);
-        		while(index1 < dir.size()){
-        			dir.set(index1, b);
-        			index1 +=mod;
-        		}
-        	}
-        	hTable.add(curr);
-        	if (b.nKeys == (SLOTS+1))
-        		split(b, index);
-        	if (curr.nKeys == (SLOTS+1))
-        		split(curr, index);
-       } // else
-       
-       nBuckets = hTable.size();
-        
+    public V put (K key, V value)
+    {
+        if (key == null) {
+            return null;
+        } // if
+
+        while (true) {
+            Bucket b = dir.get (h (key));
+            count++;
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) {
+                    V old = b.value [j];
+                    b.value [j] = value;
+                    return old;
+                } // if
+            } // for
+            if (b.nKeys < b.key.length) {
+                b.key [b.nKeys]   = key;
+                b.value [b.nKeys] = value;
+                b.nKeys++;
+                return null;
+            } // if
+            if (sameHash (b, key)) {
+                overflow (b);           // no split can separate keys with equal hash codes
+            } else {
+                split (b);
+            } // if
+        } // while
+    } // put
+
+    /********************************************************************************
+     * Split the bucket, moving the keys that differ at the next hash resolution to a
+     * new bucket and pointing half of the bucket's directory entries at it.
+     * @param b  the bucket to split
+     */
+    private void split (Bucket b)
+    {
+        this.count++;
+
+        // the bucket is referenced by one directory entry, so double the directory
+        if (b.localMod == mod) {
+            for (int j = 0; j < mod; j++) dir.add (dir.get (j));
+            mod *= 2;
+            globalDepth++;
+        } // if
+
+        int    r      = hash (b.key [0]) % b.localMod;
+        int    newMod = 2 * b.localMod;
+        Bucket sib    = new Bucket ();
+        sib.localMod   = b.localMod = newMod;
+        sib.localDepth = ++b.localDepth;
+        sib.bucketNum  = currentBucket++;
+        while (sib.key.length < b.key.length) overflow (sib);
+
+        // disperse the keys between the two buckets
+        int n = 0;
+        for (int j = 0; j < b.nKeys; j++) {
+            if (hash (b.key [j]) % newMod == r) {
+                b.key [n]   = b.key [j];
+                b.value [n] = b.value [j];
+                n++;
+            } else {
+                sib.key [sib.nKeys]   = b.key [j];
+                sib.value [sib.nKeys] = b.value [j];
+                sib.nKeys++;
+            } // if
+        } // for
+        for (int j = n; j < b.nKeys; j++) {
+            b.key [j]   = null;
+            b.value [j] = null;
+        } // for
+        b.nKeys = n;
+
+        // update the directory
+        for (int i = r + newMod / 2; i < mod; i += newMod) dir.set (i, sib);
+        hTable.add (sib);
+        nBuckets = hTable.size ();
     } // split
 
     /********************************************************************************
-     * Put the key-value pair in the hash table.
-     * @param key    the key to insert
-     * @param value  the value to insert
-     * @return  null (not the previous value)
+     * Determine whether all keys in the bucket have the same hash code as the key.
      */
-     public V put (K key, V value)
+    private boolean sameHash (Bucket b, K key)
     {
-    	if (key == null) {
-			return null;
-		}
-		
-		int i = h(key);
-		Bucket b = dir.get(i);
-		
-		// Determine if bucket is full
-		if (b.nKeys < SLOTS) {
-			this.count++;
-			
-			b.key[b.nKeys] = key;
-			b.value[b.nKeys] = value;
-			b.nKeys++;
-			
-			return null;
-		}	
-		else {
-			
-			K[] tempK = (K[]) Array.newInstance(classK, SLOTS+1);
-			V[] tempV = (V[]) Array.newInstance(classV, SLOTS+1);
-			
-			for (int j = 0; j < SLOTS; j++) {
-				tempK[j] = b.key[j];
-				tempV[j] = b.value[j];	
-			}
-			
-			tempK[SLOTS] = key;
-			tempV[SLOTS] = value;
-			
-			dir.set(i, new Bucket());
-			
-			Bucket newBucket = new Bucket();
-			
-			hTable.add(newBucket);
-			dir.add(i, newBucket);
-			mod++;
-			nBuckets++;
-			
-			for (int j = 0; j < tempK.length; j++) {
-				put(tempK[j], tempV[j]);
-			}
-		}
-		
-		return null;
-    } // put
+        int hk = hash (key);
+        for (int j = 0; j < b.nKeys; j++) if (hash (b.key [j]) != hk) return false;
+        return true;
+    } // sameHash
+
+    /********************************************************************************
+     * Enlarge the bucket beyond SLOTS to hold keys whose hash codes are all equal.
+     */
+    @SuppressWarnings("unchecked")
+    private void overflow (Bucket b)
+    {
+        K [] k = (K []) Array.newInstance (classK, b.key.length + SLOTS);
+        V [] v = (V []) Array.newInstance (classV, b.key.length + SLOTS);
+        System.arraycopy (b.key, 0, k, 0, b.nKeys);
+        System.arraycopy (b.value, 0, v, 0, b.nKeys);
+        b.key   = k;
+        b.value = v;
+    } // overflow
 
     /********************************************************************************
      * Return the size (SLOTS * number of buckets) of the hash table.
@@ -364,9 +303,18 @@ public class ExtHashMap <K, V>
      */
     private int h (Object key)
     {
-        return key.hashCode () % mod;
+        return hash (key) % mod;
     } // h
 
+    /********************************************************************************
+     * Return the key's hash code with the sign bit cleared.
+     * @param key  the key to hash
+     */
+    private static int hash (Object key)
+    {
+        return key.hashCode () & 0x7FFFFFFF;
+    } // hash
+
     /********************************************************************************
      * The main method used for testing.
      * @param  the command-line arguments (args [0] gives number of keys to insert)
@@ -0,0 +1,252 @@
+
+/****************************************************************************************
+ * @file  ExternalSort.java
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides external merge sorting of tuples.  Tuples are collected in memory
+ * until their estimated size reaches the memory budget, at which point they are sorted
+ * and written out as a run (a SpillFile).  If anything was spilled, the runs are merged
+ * (at most FAN_IN at a time, in several passes if need be) as the result is iterated;
+ * otherwise the result is simply sorted in memory.  The sort is stable, and closing it
+ * deletes its runs.  When only the first k tuples are wanted, top keeps a heap of k
+ * tuples instead.
+ */
+public class ExternalSort
+       implements Iterable <Comparable []>, Closeable
+{
+    /** The maximum number of runs merged at once.
+     */
+    private static final int FAN_IN = 64;
+
+    /** The order of the tuples.
+     */
+    private final Comparator <Comparable []> cmp;
+
+    /** The sorted tuples, if they all fit in memory (else null).
+     */
+    private List <Comparable []> sorted;
+
+    /** The sorted runs on disk, in input order.
+     */
+    private final List <SpillFile> runs = new ArrayList <> ();
+
+    /************************************************************************************
+     * Sort the tuples, spilling sorted runs to disk whenever the tuples held in memory
+     * exceed the budget.
+     *
+     * @param rows    the tuples to sort
+     * @param domain  the domains of the tuples
+     * @param _cmp    the order of the tuples
+     * @param budget  the memory budget in bytes
+     * @throws IOException  if a run cannot be written
+     */
+    public ExternalSort (Iterable <Comparable []> rows, Class [] domain, Comparator <Comparable []> _cmp, long budget)
+           throws IOException
+    {
+        cmp = _cmp;
+        TupleCodec           codec = new TupleCodec (domain);
+        List <Comparable []> buf   = new ArrayList <> ();
+        long                 bytes = 0;
+        try {
+            for (Comparable [] t : rows) {
+                buf.add (t);
+                bytes += HashJoin.HEAP_FACTOR * (4 + codec.size (t));
+                if (bytes > budget && buf.size () > 1) {
+                    buf.sort (cmp);
+                    runs.add (write (buf, domain));
+                    buf   = new ArrayList <> ();
+                    bytes = 0;
+                } // if
+            } // for
+            buf.sort (cmp);
+            if (runs.isEmpty ()) {
+                sorted = buf;
+                return;
+            } // if
+            if (! buf.isEmpty ()) runs.add (write (buf, domain));
+
+            while (runs.size () > FAN_IN) {                   // merge runs until one pass will do
+                List <SpillFile> merged = new ArrayList <> ();
+                for (int i = 0; i < runs.size (); i += FAN_IN) {
+                    List <SpillFile> group = runs.subList (i, Math.min (i + FAN_IN, runs.size ()));
+                    SpillFile        run   = new SpillFile (domain);
+                    for (Iterator <Comparable []> it = merge (group); it.hasNext (); ) run.add (it.next ());
+                    run.finish ();
+                    for (SpillFile f : group) f.close ();
+                    merged.add (run);
+                } // for
+                runs.clear ();
+                runs.addAll (merged);
+            } // while
+        } catch (UncheckedIOException ex) {
+            close ();
+            throw ex.getCause ();
+        } catch (IOException | RuntimeException ex) {
+            close ();
+            throw ex;
+        } // try
+    } // constructor
+
+    /************************************************************************************
+     * Return a comparator ordering tuples on the values at the given positions, in turn,
+     * with nulls first.
+     *
+     * @param cols  the positions of the sort attributes
+     */
+    public static Comparator <Comparable []> on (int [] cols)
+    {
+        return on (cols, new boolean [cols.length]);
+    } // on
+
+    /************************************************************************************
+     * Return a comparator ordering tuples on the values at the given positions, in turn,
+     * each ascending with nulls first or descending with nulls last.
+     *
+     * @param cols        the positions of the sort attributes
+     * @param descending  whether each sort attribute is in descending order
+     */
+    @SuppressWarnings ("unchecked")
+    public static Comparator <Comparable []> on (int [] cols, boolean [] descending)
+    {
+        return (a, b) -> {
+            for (int i = 0; i < cols.length; i++) {
+                int j = cols [i];
+                if (a [j] == b [j]) continue;
+                int c = (a [j] == null) ? -1 : (b [j] == null) ? 1 : a [j].compareTo (b [j]);
+                if (c != 0) return descending [i] ? -c : c;
+            } // for
+            return 0;
+        };
+    } // on
+
+    /************************************************************************************
+     * Return the first k tuples in the given order, as a sort followed by a limit would,
+     * but keeping only a heap of the best k seen so far rather than sorting all of the
+     * tuples: O(n log k) time and O(k) space.  Ties keep their input order.
+     *
+     * @param rows  the tuples
+     * @param cmp   the order of the tuples
+     * @param k     the number of tuples to keep
+     * @return  the first k tuples (fewer if there are fewer), in order
+     */
+    public static List <Comparable []> top (Iterable <Comparable []> rows, Comparator <Comparable []> cmp, int k)
+    {
+        if (k <= 0) return new ArrayList <> ();
+        Comparator <Map.Entry <Long, Comparable []>> order = (e1, e2) -> {
+            int c = cmp.compare (e1.getValue (), e2.getValue ());
+            return (c != 0) ? c : Long.compare (e1.getKey (), e2.getKey ());
+        };
+        PriorityQueue <Map.Entry <Long, Comparable []>> heap = new PriorityQueue <> (k, order.reversed ());
+        long seq = 0;
+        for (Comparable [] t : rows) {
+            if (heap.size () < k) {
+                heap.add (new AbstractMap.SimpleImmutableEntry <> (seq, t));
+            } else if (cmp.compare (t, heap.peek ().getValue ()) < 0) {     // better than the worst kept
+                heap.poll ();
+                heap.add (new AbstractMap.SimpleImmutableEntry <> (seq, t));
+            } // if
+            seq++;
+        } // for
+
+        List <Map.Entry <Long, Comparable []>> best = new ArrayList <> (heap);
+        best.sort (order);
+        List <Comparable []> result = new ArrayList <> (best.size ());
+        for (Map.Entry <Long, Comparable []> e : best) result.add (e.getValue ());
+        return result;
+    } // top
+
+    /************************************************************************************
+     * Return the number of runs spilled to disk (0 if the sort was done in memory).
+     */
+    public int runs ()
+    {
+        return runs.size ();
+    } // runs
+
+    /************************************************************************************
+     * Return an iterator over the tuples in sorted order.  I/O errors are thrown as
+     * UncheckedIOException.
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        return (sorted != null) ? sorted.iterator () : merge (runs);
+    } // iterator
+
+    /************************************************************************************
+     * Delete the runs.
+     *
+     * @throws IOException  if a run cannot be deleted
+     */
+    public void close ()
+           throws IOException
+    {
+        for (SpillFile f : runs) f.close ();
+        runs.clear ();
+        sorted = null;
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Write the (sorted) tuples out as a run.
+     */
+    private static SpillFile write (List <Comparable []> buf, Class [] domain)
+            throws IOException
+    {
+        SpillFile run = new SpillFile (domain);
+        for (Comparable [] t : buf) run.add (t);
+        run.finish ();
+        return run;
+    } // write
+
+    /************************************************************************************
+     * Return an iterator merging the runs.  Ties go to the earlier run, which keeps the
+     * sort stable.
+     *
+     * @param group  the runs to merge
+     */
+    private Iterator <Comparable []> merge (List <SpillFile> group)
+    {
+        List <Iterator <Comparable []>> its  = new ArrayList <> ();
+        for (SpillFile f : group) its.add (f.iterator ());
+        Comparable [][]                 head = new Comparable [its.size ()][];
+        PriorityQueue <Integer>         heap = new PriorityQueue <> ((i, j) -> {
+            int c = cmp.compare (head [i], head [j]);
+            return (c != 0) ? c : Integer.compare (i, j);
+        });
+        for (int i = 0; i < its.size (); i++) {
+            if (its.get (i).hasNext ()) {
+                head [i] = its.get (i).next ();
+                heap.add (i);
+            } // if
+        } // for
+
+        return new Iterator <Comparable []> () {
+            public boolean hasNext ()
+            {
+                return ! heap.isEmpty ();
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (heap.isEmpty ()) throw new NoSuchElementException ();
+                int           i = heap.poll ();
+                Comparable [] t = head [i];
+                if (its.get (i).hasNext ()) {
+                    head [i] = its.get (i).next ();
+                    heap.add (i);
+                } // if
+                return t;
+            } // next
+        };
+    } // merge
+
+} // ExternalSort class
@@ -0,0 +1,69 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+
+public class ExternalSortTest {
+
+	Class [] domain = { Integer.class, String.class };
+	
+	// Makes n tuples with random keys in [0, 100) and their original position as the name
+	private List<Comparable []> randomRows(int n) {
+		Random rand = new Random(42);
+		List<Comparable []> rows = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			rows.add(new Comparable [] { rand.nextInt(100), String.valueOf(i) });
+		}
+		return rows;
+	}
+	
+	// Verifies that a sort within the budget is done in memory and stays stable
+	@Test
+	public void testInMemory() throws Exception {
+		List<Comparable []> rows = randomRows(1000);
+		try (ExternalSort sort = new ExternalSort(rows, domain, ExternalSort.on(new int [] { 0 }), 1L << 20)) {
+			assertEquals(sort.runs(), 0);
+			checkSorted(sort, 1000);
+		}
+	}
+	
+	// Verifies that a sort over the budget spills runs, merges them in order, keeps ties
+	// in input order, and deletes its runs when closed
+	@Test
+	public void testSpill() throws Exception {
+		File store = new File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		List<Comparable []> rows = randomRows(5000);
+		try (ExternalSort sort = new ExternalSort(rows, domain, ExternalSort.on(new int [] { 0 }), 600)) {
+			assertTrue(sort.runs() > 1);
+			assertTrue(sort.runs() <= 64);
+			checkSorted(sort, 5000);
+			checkSorted(sort, 5000);
+		}
+		assertEquals(store.list().length, files);
+	}
+	
+	// Checks that the sort has n tuples, ordered on the key and then on the input position
+	private void checkSorted(ExternalSort sort, int n) {
+		int count = 0;
+		Comparable [] prev = null;
+		for (Comparable [] t : sort) {
+			if (prev != null) {
+				int c = ((Integer) prev[0]).compareTo((Integer) t[0]);
+				assertTrue(c <= 0);
+				if (c == 0) assertTrue(Integer.parseInt((String) prev[1]) < Integer.parseInt((String) t[1]));
+			}
+			prev = t;
+			count++;
+		}
+		assertEquals(count, n);
+	}
+
+}
@@ -0,0 +1,415 @@
+
+/****************************************************************************************
+ * @file  HashJoin.java
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/****************************************************************************************
+ * This class implements the in-memory hash join used by Table.join.  The smaller input
+ * is loaded into a hash table keyed on its join columns and the larger input probes it,
+ * so an equi-join of n and m tuples takes O(n + m) time rather than O(n * m).  Join
+ * keys are the attribute value itself for a single join column and a KeyType for
+ * several; tuples with a null join attribute match nothing.  A single Integer join
+ * column is hashed as a primitive int in an IntHashMap, avoiding boxed keys.
+ *
+ * When the hash table would exceed the memory budget, a Grace hash join is used: both
+ * inputs are partitioned on a hash of the join key into spill files under store/, and
+ * the partitions are joined pair by pair, each small enough to build in memory (one
+ * that is still too big is partitioned again with a different hash).
+ *
+ * The parallel hash join radix partitions both inputs on the top bits of the key's
+ * hash (each thread scattering its own chunk of the input into its own partitions),
+ * then builds and probes each partition as a separate task, so no data structure is
+ * shared between threads and no lock is needed.
+ */
+public class HashJoin
+{
+    /** The estimated ratio of the heap space a tuple takes in a hash table to the size
+     *  of its TupleCodec encoding.
+     */
+    static final int HEAP_FACTOR = 4;
+
+    /** The maximum number of partitions made in one pass.
+     */
+    static final int MAX_FANOUT = 256;
+
+    /** The maximum number of times a partition is partitioned again.
+     */
+    static final int MAX_DEPTH = 3;
+
+    /************************************************************************************
+     * Join the left and right tuples on left [lcols] = right [rcols], passing each
+     * matching pair (the left tuple followed by the right one) to out.  The smaller
+     * input is built into a hash table in memory if its estimated size is within the
+     * budget, otherwise the inputs are joined partition by partition from disk.
+     *
+     * @param left    the left input
+     * @param lcols   the positions of the join attributes in the left tuples
+     * @param ldom    the domains of the left tuples
+     * @param right   the right input
+     * @param rcols   the positions of the join attributes in the right tuples
+     * @param rdom    the domains of the right tuples
+     * @param intKey  whether the join is on a single Integer column
+     * @param budget  the memory budget for the hash table in bytes
+     * @param out     the consumer of the joined tuples
+     * @throws IOException  if a spill file cannot be written or read
+     */
+    public static void join (List <Comparable []> left, int [] lcols, Class [] ldom,
+                             List <Comparable []> right, int [] rcols, Class [] rdom,
+                             boolean intKey, long budget, Consumer <Comparable []> out)
+           throws IOException
+    {
+        boolean buildLeft = left.size () <= right.size ();
+        long    bytes     = buildLeft ? estimateBytes (left, ldom) : estimateBytes (right, rdom);
+        if (bytes <= budget) {
+            join (left, lcols, right, rcols, intKey, out);
+            return;
+        } // if
+
+        try {
+            if (buildLeft) {
+                partitionJoin (left, lcols, ldom, right, rcols, rdom, false, intKey, bytes, budget, 0, out);
+            } else {
+                partitionJoin (right, rcols, rdom, left, lcols, ldom, true, intKey, bytes, budget, 0, out);
+            } // if
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause ();
+        } // try
+    } // join
+
+    /************************************************************************************
+     * Join the left and right tuples in memory, building a hash table over the smaller.
+     *
+     * @param left   the left input
+     * @param lcols  the positions of the join attributes in the left tuples
+     * @param right  the right input
+     * @param rcols  the positions of the join attributes in the right tuples
+     * @param intKey whether the join is on a single Integer column
+     * @param out    the consumer of the joined tuples
+     */
+    public static void join (List <Comparable []> left, int [] lcols,
+                             List <Comparable []> right, int [] rcols, boolean intKey, Consumer <Comparable []> out)
+    {
+        if (intKey) {
+            if (left.size () <= right.size ()) {
+                probeInt (buildInt (left, lcols [0]), right, rcols [0], false, out);
+            } else {
+                probeInt (buildInt (right, rcols [0]), left, lcols [0], true, out);
+            } // if
+        } else if (left.size () <= right.size ()) {
+            probe (build (left, lcols), right, rcols, false, out);
+        } else {
+            probe (build (right, rcols), left, lcols, true, out);
+        } // if
+    } // join
+
+    /************************************************************************************
+     * Join the left and right tuples in memory using the given number of threads (see
+     * above).  The joined tuples are passed to out by the calling thread, partition by
+     * partition.
+     *
+     * @param left     the left input
+     * @param lcols    the positions of the join attributes in the left tuples
+     * @param right    the right input
+     * @param rcols    the positions of the join attributes in the right tuples
+     * @param intKey   whether the join is on a single Integer column
+     * @param threads  the number of threads
+     * @param out      the consumer of the joined tuples
+     */
+    public static void parallelJoin (List <Comparable []> left, int [] lcols,
+                                     List <Comparable []> right, int [] rcols, boolean intKey,
+                                     int threads, Consumer <Comparable []> out)
+    {
+        boolean buildLeft = left.size () <= right.size ();
+        List <Comparable []> bRows = buildLeft ? left : right, pRows = buildLeft ? right : left;
+        int []               bcols = buildLeft ? lcols : rcols, pcols = buildLeft ? rcols : lcols;
+        int bits = 32 - Integer.numberOfLeadingZeros (Math.max (1, 4 * threads - 1));    // 2^bits >= 4 * threads
+
+        List <List <Comparable []> []> bParts = scatter (bRows, bcols, bits, threads);
+        List <List <Comparable []> []> pParts = scatter (pRows, pcols, bits, threads);
+
+        List <Callable <List <Comparable []>>> tasks = new ArrayList <> ();
+        for (int p = 0; p < (1 << bits); p++) {
+            Iterable <Comparable []> b = partition (bParts, p), q = partition (pParts, p);
+            tasks.add (() -> {
+                List <Comparable []> rows = new ArrayList <> ();
+                if (intKey) probeInt (buildInt (b, bcols [0]), q, pcols [0], ! buildLeft, rows::add);
+                else        probe (build (b, bcols), q, pcols, ! buildLeft, rows::add);
+                return rows;
+            });
+        } // for
+        for (List <Comparable []> rows : Parallel.invokeAll (threads, tasks)) rows.forEach (out);
+    } // parallelJoin
+
+    /************************************************************************************
+     * Build a hash table over the tuples keyed on the given columns.  A key with one
+     * tuple maps to the tuple itself and a key with several to a list of them, so
+     * unique keys (the usual case for a primary key) need no list.
+     *
+     * @param rows  the build input
+     * @param cols  the positions of the join attributes
+     * @return  the hash table
+     */
+    @SuppressWarnings ("unchecked")
+    public static Map <Object, Object> build (Iterable <Comparable []> rows, int [] cols)
+    {
+        Map <Object, Object> table = new HashMap <> ();
+        for (Comparable [] t : rows) {
+            Object k = key (t, cols);
+            if (k == null) continue;
+            Object prev = table.putIfAbsent (k, t);
+            if (prev == null) continue;
+            if (prev instanceof Comparable []) {
+                List <Comparable []> dups = new ArrayList <> (2);
+                dups.add ((Comparable []) prev);
+                dups.add (t);
+                table.put (k, dups);
+            } else {
+                ((List <Comparable []>) prev).add (t);
+            } // if
+        } // for
+        return table;
+    } // build
+
+    /************************************************************************************
+     * Probe the hash table with each tuple, adding the joined tuples to out.
+     *
+     * @param table         the hash table built over the other input
+     * @param rows          the probe input
+     * @param cols          the positions of the join attributes in the probe tuples
+     * @param probeIsLeft   whether the probe tuples go first in the joined tuples
+     * @param out           the consumer of the joined tuples
+     */
+    @SuppressWarnings ("unchecked")
+    public static void probe (Map <Object, Object> table, Iterable <Comparable []> rows, int [] cols,
+                              boolean probeIsLeft, Consumer <Comparable []> out)
+    {
+        for (Comparable [] t : rows) {
+            Object k = key (t, cols);
+            if (k == null) continue;
+            Object match = table.get (k);
+            if (match == null) continue;
+            if (match instanceof Comparable []) {
+                out.accept (concat (t, (Comparable []) match, probeIsLeft));
+            } else {
+                for (Comparable [] u : (List <Comparable []>) match) out.accept (concat (t, u, probeIsLeft));
+            } // if
+        } // for
+    } // probe
+
+    /************************************************************************************
+     * Build a hash table over the tuples keyed on the Integer attribute at col (see
+     * build).
+     *
+     * @param rows  the build input
+     * @param col   the position of the join attribute
+     * @return  the hash table
+     */
+    @SuppressWarnings ("unchecked")
+    public static IntHashMap <Object> buildInt (Iterable <Comparable []> rows, int col)
+    {
+        IntHashMap <Object> table = new IntHashMap <> ();
+        for (Comparable [] t : rows) {
+            if (t [col] == null) continue;
+            int    k    = (Integer) t [col];
+            Object prev = table.put (k, t);
+            if (prev == null) continue;
+            if (prev instanceof Comparable []) {
+                List <Comparable []> dups = new ArrayList <> (2);
+                dups.add ((Comparable []) prev);
+                dups.add (t);
+                table.put (k, dups);
+            } else {
+                ((List <Comparable []>) prev).add (t);
+                table.put (k, prev);
+            } // if
+        } // for
+        return table;
+    } // buildInt
+
+    /************************************************************************************
+     * Probe the int keyed hash table with each tuple (see probe).
+     *
+     * @param table         the hash table built over the other input
+     * @param rows          the probe input
+     * @param col           the position of the join attribute in the probe tuples
+     * @param probeIsLeft   whether the probe tuples go first in the joined tuples
+     * @param out           the consumer of the joined tuples
+     */
+    @SuppressWarnings ("unchecked")
+    public static void probeInt (IntHashMap <Object> table, Iterable <Comparable []> rows, int col,
+                                 boolean probeIsLeft, Consumer <Comparable []> out)
+    {
+        for (Comparable [] t : rows) {
+            if (t [col] == null) continue;
+            Object match = table.get ((int) (Integer) t [col]);
+            if (match == null) continue;
+            if (match instanceof Comparable []) {
+                out.accept (concat (t, (Comparable []) match, probeIsLeft));
+            } else {
+                for (Comparable [] u : (List <Comparable []>) match) out.accept (concat (t, u, probeIsLeft));
+            } // if
+        } // for
+    } // probeInt
+
+    /************************************************************************************
+     * Return the join key of the tuple: the attribute value for one join column, else
+     * a KeyType over the join columns (null if any join attribute is null).
+     *
+     * @param t     the tuple
+     * @param cols  the positions of the join attributes
+     */
+    public static Object key (Comparable [] t, int [] cols)
+    {
+        if (cols.length == 1) return t [cols [0]];
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            if ((keyVal [j] = t [cols [j]]) == null) return null;
+        } // for
+        return new KeyType (keyVal);
+    } // key
+
+    /************************************************************************************
+     * Estimate the heap space a hash table over the tuples would take, from the encoded
+     * size of a sample of them.
+     *
+     * @param rows    the tuples
+     * @param domain  the domains of the tuples
+     * @return  the estimated number of bytes
+     */
+    public static long estimateBytes (List <Comparable []> rows, Class [] domain)
+    {
+        int n = rows.size ();
+        if (n == 0) return 0;
+        TupleCodec codec  = new TupleCodec (domain);
+        int        sample = Math.min (n, 100);
+        long       sum    = 0;
+        for (int i = 0; i < sample; i++) sum += 4 + codec.size (rows.get ((int) ((long) i * n / sample)));
+        return HEAP_FACTOR * (sum * n / sample);
+    } // estimateBytes
+
+    /************************************************************************************
+     * Partition the build and probe inputs on a hash of the join key into spill files,
+     * then join each pair of partitions, partitioning a build partition again if it is
+     * still over the budget.
+     *
+     * @param build        the build input
+     * @param bcols        the positions of the join attributes in the build tuples
+     * @param bdom         the domains of the build tuples
+     * @param probe        the probe input
+     * @param pcols        the positions of the join attributes in the probe tuples
+     * @param pdom         the domains of the probe tuples
+     * @param probeIsLeft  whether the probe tuples go first in the joined tuples
+     * @param intKey       whether the join is on a single Integer column
+     * @param bytes        the estimated in-memory size of the build input
+     * @param budget       the memory budget in bytes
+     * @param depth        the number of times these tuples have been partitioned
+     * @param out          the consumer of the joined tuples
+     */
+    private static void partitionJoin (Iterable <Comparable []> build, int [] bcols, Class [] bdom,
+                                       Iterable <Comparable []> probe, int [] pcols, Class [] pdom,
+                                       boolean probeIsLeft, boolean intKey, long bytes, long budget,
+                                       int depth, Consumer <Comparable []> out)
+            throws IOException
+    {
+        int          n      = (int) Math.min (MAX_FANOUT, Math.max (2, 2 * bytes / Math.max (1, budget) + 1));
+        SpillFile [] bParts = new SpillFile [n];
+        SpillFile [] pParts = new SpillFile [n];
+        try {
+            for (int i = 0; i < n; i++) {
+                bParts [i] = new SpillFile (bdom);
+                pParts [i] = new SpillFile (pdom);
+            } // for
+            for (Comparable [] t : build) {
+                Object k = key (t, bcols);
+                if (k != null) bParts [partition (k, depth, n)].add (t);
+            } // for
+            for (Comparable [] t : probe) {
+                Object k = key (t, pcols);
+                if (k != null) pParts [partition (k, depth, n)].add (t);
+            } // for
+
+            for (int i = 0; i < n; i++) {
+                SpillFile b = bParts [i], p = pParts [i];
+                long      size = HEAP_FACTOR * b.bytes ();
+                if (b.size () == 0 || p.size () == 0) {
+                    // nothing joins in this partition
+                } else if (size > budget && depth < MAX_DEPTH && b.size () > 1) {
+                    partitionJoin (b, bcols, bdom, p, pcols, pdom, probeIsLeft, intKey, size, budget, depth + 1, out);
+                } else if (intKey) {
+                    probeInt (buildInt (b, bcols [0]), p, pcols [0], probeIsLeft, out);
+                } else {
+                    probe (build (b, bcols), p, pcols, probeIsLeft, out);
+                } // if
+                b.close ();
+                p.close ();
+            } // for
+        } finally {
+            for (int i = 0; i < n; i++) {
+                if (bParts [i] != null) bParts [i].close ();
+                if (pParts [i] != null) pParts [i].close ();
+            } // for
+        } // try
+    } // partitionJoin
+
+    /************************************************************************************
+     * Radix partition the tuples on the top bits of their join key's hash, one task per
+     * chunk of the input, each filling its own array of partitions.
+     *
+     * @param rows     the tuples
+     * @param cols     the positions of the join attributes
+     * @param bits     the number of bits (2^bits partitions)
+     * @param threads  the number of threads
+     * @return  for each chunk, its partitions
+     */
+    @SuppressWarnings ("unchecked")
+    private static List <List <Comparable []> []> scatter (List <Comparable []> rows, int [] cols, int bits, int threads)
+    {
+        List <Callable <List <Comparable []> []>> tasks = new ArrayList <> ();
+        for (List <Comparable []> chunk : Parallel.chunks (rows, threads)) {
+            tasks.add (() -> {
+                List <Comparable []> [] parts = new List [1 << bits];
+                for (int p = 0; p < parts.length; p++) parts [p] = new ArrayList <> (2 * chunk.size () >> bits);
+                for (Comparable [] t : chunk) {
+                    Object k = key (t, cols);
+                    if (k == null) continue;
+                    parts [(k.hashCode () * 0x9E3779B9) >>> (32 - bits)].add (t);
+                } // for
+                return parts;
+            });
+        } // for
+        return Parallel.invokeAll (threads, tasks);
+    } // scatter
+
+    /************************************************************************************
+     * Return partition p across all the chunks.
+     */
+    private static Iterable <Comparable []> partition (List <List <Comparable []> []> parts, int p)
+    {
+        return () -> parts.stream ().flatMap (chunk -> chunk [p].stream ()).iterator ();
+    } // partition
+
+    /************************************************************************************
+     * Return the partition of the key (which may be null), hashing differently at each
+     * depth so that a partition that is partitioned again actually splits.
+     */
+    static int partition (Object k, int depth, int n)
+    {
+        int h = (Objects.hashCode (k) + depth * 0x61C88647) * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & 0x7FFFFFFF) % n;
+    } // partition
+
+    /************************************************************************************
+     * Concatenate a probe tuple and a build tuple in left-right order.
+     */
+    private static Comparable [] concat (Comparable [] probe, Comparable [] build, boolean probeIsLeft)
+    {
+        return probeIsLeft ? ArrayUtil.concat (probe, build) : ArrayUtil.concat (build, probe);
+    } // concat
+
+} // HashJoin class
@@ -0,0 +1,204 @@
+
+/****************************************************************************************
+ * @file  IntHashMap.java
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/****************************************************************************************
+ * This class provides hash maps from primitive int keys to values using open addressing
+ * with linear probing.  Keys and values are kept in parallel arrays, so looking up a key
+ * neither boxes it nor allocates, and colliding keys sit in neighbouring slots rather
+ * than in chained buckets.  Null values are not allowed (a null value marks an empty
+ * slot).
+ */
+public class IntHashMap <V>
+       implements Serializable
+{
+    /**
+     * Required variable
+     */
+    private static final long serialVersionUID = 1L;
+
+    /** The maximum fraction of slots in use before the arrays are doubled.
+     */
+    private static final double LOAD_FACTOR = 0.5;
+
+    /** The key held in each slot.
+     */
+    private int [] keys;
+
+    /** The value held in each slot (null if the slot is empty).
+     */
+    private Object [] vals;
+
+    /** The number of keys in the map.
+     */
+    private int size = 0;
+
+    /** The number of slots minus one (the number of slots is a power of 2).
+     */
+    private int mask;
+
+    /************************************************************************************
+     * Construct an empty map.
+     */
+    public IntHashMap ()
+    {
+        this (16);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty map with room for the given number of keys.
+     * @param expected  the number of keys expected
+     */
+    public IntHashMap (int expected)
+    {
+        int cap = 2;
+        while (cap * LOAD_FACTOR < expected) cap <<= 1;
+        keys = new int [cap];
+        vals = new Object [cap];
+        mask = cap - 1;
+    } // constructor
+
+    /************************************************************************************
+     * Return the value to which the key is mapped (null if none).
+     * @param key  the key to look up
+     */
+    @SuppressWarnings ("unchecked")
+    public V get (int key)
+    {
+        for (int i = slot (key); ; i = (i + 1) & mask) {
+            Object v = vals [i];
+            if (v == null) return null;
+            if (keys [i] == key) return (V) v;
+        } // for
+    } // get
+
+    /************************************************************************************
+     * Determine whether the key is in the map.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (int key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /************************************************************************************
+     * Put the key-value pair in the map, replacing any previous value for the key.
+     * @param key    the key to insert
+     * @param value  the (non-null) value to insert
+     * @return  the previous value for the key (null if none)
+     */
+    @SuppressWarnings ("unchecked")
+    public V put (int key, V value)
+    {
+        if (value == null) throw new NullPointerException ("IntHashMap: null value");
+        int i = slot (key);
+        for ( ; vals [i] != null; i = (i + 1) & mask) {
+            if (keys [i] == key) {
+                V old = (V) vals [i];
+                vals [i] = value;
+                return old;
+            } // if
+        } // for
+        keys [i] = key;
+        vals [i] = value;
+        if (++size > LOAD_FACTOR * keys.length) grow ();
+        return null;
+    } // put
+
+    /************************************************************************************
+     * Remove the key from the map.  The keys following it in its run of occupied slots
+     * are shifted back, so no tombstones are needed.
+     * @param key  the key to remove
+     * @return  the value the key was mapped to (null if none)
+     */
+    @SuppressWarnings ("unchecked")
+    public V remove (int key)
+    {
+        int i = slot (key);
+        for ( ; vals [i] != null; i = (i + 1) & mask) {
+            if (keys [i] == key) break;
+        } // for
+        V old = (V) vals [i];
+        if (old == null) return null;
+
+        for (int j = (i + 1) & mask; vals [j] != null; j = (j + 1) & mask) {
+            int home = slot (keys [j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {           // j may move back to i
+                keys [i] = keys [j];
+                vals [i] = vals [j];
+                i = j;
+            } // if
+        } // for
+        vals [i] = null;
+        size--;
+        return old;
+    } // remove
+
+    /************************************************************************************
+     * Return the number of keys in the map.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Remove all keys from the map.
+     */
+    public void clear ()
+    {
+        Arrays.fill (vals, null);
+        size = 0;
+    } // clear
+
+    /************************************************************************************
+     * Return the values in the map (in slot order).
+     */
+    @SuppressWarnings ("unchecked")
+    public List <V> values ()
+    {
+        List <V> list = new ArrayList <> (size);
+        for (Object v : vals) if (v != null) list.add ((V) v);
+        return list;
+    } // values
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the home slot of the key.  The key is scrambled (Fibonacci hashing) so that
+     * runs of consecutive keys do not form long runs of occupied slots.
+     */
+    private int slot (int key)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    } // slot
+
+    /************************************************************************************
+     * Double the number of slots and reinsert every key.
+     */
+    private void grow ()
+    {
+        int []    oldKeys = keys;
+        Object [] oldVals = vals;
+        keys = new int [2 * oldKeys.length];
+        vals = new Object [2 * oldVals.length];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldVals [j] == null) continue;
+            int i = slot (oldKeys [j]);
+            while (vals [i] != null) i = (i + 1) & mask;
+            keys [i] = oldKeys [j];
+            vals [i] = oldVals [j];
+        } // for
+    } // grow
+
+} // IntHashMap class
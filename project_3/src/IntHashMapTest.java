@@ -0,0 +1,57 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+
+public class IntHashMapTest {
+
+	IntHashMap<Integer> test;
+	
+	@Before
+	public void setUp() {
+		test = new IntHashMap<>();
+	}
+	
+	// Verifies put and get methods, including growing past the initial capacity
+	@Test
+	public void testPutGet() {
+		for (int i = 0; i < 1000; i++) {
+			assertNull(test.put(i * 7, i));
+		}
+		assertEquals(test.put(14, -2), (Integer) 2);
+		
+		assertEquals(test.size(), 1000);
+		assertEquals((int)test.get(14), -2);
+		assertEquals((int)test.get(6993), 999);
+		assertNull(test.get(15));
+		assertEquals((int)test.get(70), 10);
+		assertTrue(test.containsKey(0));
+		assertFalse(test.containsKey(-7));
+	}
+	
+	// Verifies that removing keys keeps the other keys reachable
+	@Test
+	public void testRemove() {
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random rand = new Random(4370);
+		for (int i = 0; i < 5000; i++) {
+			int k = rand.nextInt(2000) - 1000;
+			if (rand.nextInt(3) == 0) {
+				assertEquals(test.remove(k), expected.remove(k));
+			} else {
+				assertEquals(test.put(k, i), expected.put(k, i));
+			}
+		}
+		
+		assertEquals(test.size(), expected.size());
+		for (int k = -1000; k < 1000; k++) {
+			assertEquals(test.get(k), expected.get(k));
+		}
+	}
+}
@@ -0,0 +1,85 @@
+
+/****************************************************************************************
+ * @file  KeyRange.java
+ */
+
+import java.util.function.Predicate;
+
+/****************************************************************************************
+ * This class provides predicates restricting the primary key of a table to a range,
+ * e.g., id BETWEEN v2 AND v3.  A KeyRange can be tested on tuples like any predicate,
+ * but Table.select recognizes it and answers it from an ordered index (TreeMap or
+ * BpTreeMap), touching only the qualifying entries.  Create one with Table.keyRange.
+ */
+public class KeyRange
+       implements Predicate <Comparable []>
+{
+    /** The positions of the key attributes in the tuples.
+     */
+    final int [] cols;
+
+    /** The lower bound on the key (null for none) and whether it is inclusive.
+     */
+    final KeyType low;
+    final boolean lowIncl;
+
+    /** The upper bound on the key (null for none) and whether it is inclusive.
+     */
+    final KeyType high;
+    final boolean highIncl;
+
+    /************************************************************************************
+     * Construct a range predicate on the key attributes at the given positions.
+     * @param _cols      the positions of the key attributes
+     * @param _low       the lower bound (null for none)
+     * @param _lowIncl   whether the lower bound is inclusive
+     * @param _high      the upper bound (null for none)
+     * @param _highIncl  whether the upper bound is inclusive
+     */
+    KeyRange (int [] _cols, KeyType _low, boolean _lowIncl, KeyType _high, boolean _highIncl)
+    {
+        cols     = _cols;
+        low      = _low;
+        lowIncl  = _lowIncl;
+        high     = _high;
+        highIncl = _highIncl;
+    } // constructor
+
+    /************************************************************************************
+     * Determine whether the tuple's key lies within the range.
+     * @param t  the tuple to test
+     */
+    public boolean test (Comparable [] t)
+    {
+        Comparable [] keyVal = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) keyVal [j] = t [cols [j]];
+        return contains (new KeyType (keyVal));
+    } // test
+
+    /************************************************************************************
+     * Determine whether the key lies within the range.
+     * @param k  the key to test
+     */
+    public boolean contains (KeyType k)
+    {
+        if (low != null) {
+            int c = k.compareTo (low);
+            if (lowIncl ? c < 0 : c <= 0) return false;
+        } // if
+        if (high != null) {
+            int c = k.compareTo (high);
+            if (highIncl ? c > 0 : c >= 0) return false;
+        } // if
+        return true;
+    } // contains
+
+    /************************************************************************************
+     * Convert the range to a string, e.g., "Key ( 100 ) <= key <= Key ( 900 )".
+     */
+    public String toString ()
+    {
+        return (low == null ? "" : low + (lowIncl ? " <= " : " < ")) + "key" +
+               (high == null ? "" : (highIncl ? " <= " : " < ") + high);
+    } // toString
+
+} // KeyRange class
@@ -73,6 +73,19 @@ public class KeyType
         return compareTo (k) == 0;
     } // equals
 
+    /*************************************************************************************
+     * Determine whether this key equals the given object.  Overriding equals (Object)
+     * lets hash maps (which call it) find a key using a different but equal KeyType.
+     * @param obj  the other object (to compare with this)
+     * @return  true if obj is an equal key, false otherwise
+     */
+    @Override
+    public boolean equals (Object obj)
+    {
+        return obj instanceof KeyType && ((KeyType) obj).key.length == key.length &&
+               equals ((KeyType) obj);
+    } // equals
+
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
      * @return  an integer hash code value
@@ -48,7 +48,7 @@ public class LinHashMap <K, V>
         } // constructor
     } // Bucket inner class
 
-    /** The list of buckets making up the hash table.
+    /** The list of buckets making up the hash table (the home bucket of each chain).
      */
     private final List <Bucket> hTable;
 
@@ -68,6 +68,10 @@ public class LinHashMap <K, V>
      */
     private int split = 0;
 
+    /** The number of key-value pairs stored.
+     */
+    private int nEntries = 0;
+
     /********************************************************************************
      * Construct a hash table that uses Linear Hashing.
      * @param classK    the class for keys (K)
@@ -79,14 +83,9 @@ public class LinHashMap <K, V>
         classK = _classK;
         classV = _classV;
         hTable = new ArrayList <> ();
-        mod1   = initSize;
+        mod1   = Math.max (initSize, 1);
         mod2   = 2 * mod1;
-        
-        // adding empty buckets to hash table
-        for(int i=0; i<initSize; i++){
-        	hTable.add(new Bucket(null));
-        }
-        
+        for (int i = 0; i < mod1; i++) hTable.add (new Bucket (null));
     } // constructor
 
     /********************************************************************************
@@ -95,16 +94,13 @@ public class LinHashMap <K, V>
      */
     public Set <Map.Entry <K, V>> entrySet ()
     {
-    	Set <Map.Entry <K, V>> enSet = new HashSet <> ();
-
-    	for( int i=0; i<hTable.size(); i++ ){ // loop through bucket
-    		Bucket temp = hTable.get(i);
-    		for( int j=0; j<temp.nKeys; j++ ){ // loop through values and keys
-    			enSet.add(new AbstractMap.SimpleEntry<>( temp.key[j],temp.value[j]) );
-    			//add keys and values to enSet (hashSet)
-    		}
-    	} // end for loop
-    	return enSet;
+        Set <Map.Entry <K, V>> enSet = new HashSet <> (2 * nEntries + 1);
+        for (Bucket home : hTable) {
+            for (Bucket b = home; b != null; b = b.next) {
+                for (int j = 0; j < b.nKeys; j++) enSet.add (new AbstractMap.SimpleEntry <> (b.key [j], b.value [j]));
+            } // for
+        } // for
+        return enSet;
     } // entrySet
 
     /********************************************************************************
@@ -114,170 +110,113 @@ public class LinHashMap <K, V>
      */
     public V get (Object key)
     {
-    	int i = h (key);
-    	if(i<split){
-    		i=h2(key);
-    	}
-    	Bucket temp = hTable.get(i);
-    	if( temp.nKeys==0 ){ // check if bucket is empty
-    		return null;
-    	}
-    	else{ // get value from given key
-    	   while(temp!=null){
-    		   count++; // add to bucket counter
-    		   for( int j=0; j<temp.nKeys; j++ ){
-    			   if( key.equals(temp.key[j]) ){
-    				   return temp.value[j];
-    			   } // end if
-    		   } // if for loop
-    		   temp = temp.next; // if key not found, try next
-    	   } // end while
-    	} // end else
-
-    	return null; 
+        for (Bucket b = hTable.get (address (key)); b != null; b = b.next) {
+            count++;
+            for (int j = 0; j < b.nKeys; j++) {
+                if (key.equals (b.key [j])) return b.value [j];
+            } // for
+        } // for
+        return null;
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the hash table.
+     * Put the key-value pair in the hash table.  If the key's chain has to grow an
+     * overflow bucket, the bucket at the split pointer is split (its pairs are rehashed
+     * with the high resolution function between it and a new bucket at the end) and
+     * the split pointer advances, starting a new round once every bucket is split.
      * @param key    the key to insert
      * @param value  the value to insert
-     * @return  null (not the previous value)
+     * @return  the previous value for the key (null if it is new)
      */
     public V put (K key, V value)
     {
-       int i = h (key);
-       if(i<split){
-              i=h2(key);
-       }
-       Bucket temp = hTable.get(i);
-       if( temp.nKeys < SLOTS ){ // simple insert, no split
-              temp.key[temp.nKeys] = key;
-              temp.value[temp.nKeys] = value;
-              temp.nKeys++;
-       } // end if
-       
-       else{ // split required
-    	   // out.println("SPLIT HERE!"); // testing for split
-    	   hTable.add(new Bucket(null));
-    	   while(temp.next != null){
-    		   temp = temp.next;
-    	   }
-    	   //check in the last bucket of the chain
-    	   if(temp.nKeys < SLOTS){
-    		   temp.key[temp.nKeys] = key;
-    		   temp.value[temp.nKeys] = value;
-    		   temp.nKeys++;
-    	   }else{ // add to new bucket
-    		   temp.next = new Bucket(null);
-    		   temp = temp.next;
-    		   temp.key[temp.nKeys]=key;
-    		   temp.value[temp.nKeys]=value;
-    		   temp.nKeys++;
-    	   }
+        Bucket b = hTable.get (address (key));
+        for (Bucket c = b; c != null; c = c.next) {
+            for (int j = 0; j < c.nKeys; j++) {
+                if (key.equals (c.key [j])) {
+                    V old = c.value [j];
+                    c.value [j] = value;
+                    return old;
+                } // if
+            } // for
+        } // for
 
-    	   Bucket replaceSplit = new Bucket(null); // bucket to replace split
-    	   Bucket newTemp = new Bucket(null); // new bucket
-    	   temp = hTable.get(split + 1); //the bucket to split
-    	   for(int m = 0; m<temp.nKeys; m++){
-    		   int i2 = h2(temp.key[m]);
-    		   if(i2 == split){ // splitting time
-    			   if(replaceSplit.next ==null){
-    				   replaceSplit.next = new Bucket(null);
-    				   replaceSplit.next = replaceSplit;
-    			   }   
-    			   replaceSplit.key[replaceSplit.nKeys] = temp.key[m];
-    			   replaceSplit.value[replaceSplit.nKeys] = temp.value[m];
-    			   temp.nKeys++;
-    		   } // end if
-    		   else{ // new bucket time
-    			   if(newTemp.next==null){
-    				   newTemp.next = new Bucket(null);
-    				   newTemp = newTemp.next;
-    			   }
-    			   newTemp.key[newTemp.nKeys] = temp.key[m];
-    			   newTemp.value[newTemp.nKeys] = temp.value[m];  	
-    		   } // end else
-    	   } // end for loop
-    	   // update split accordingly if
-    	   if(split == mod1-1){ // mod1 = size, so -1 for index
-    		   split = 0;
-    		   mod1 = mod1*2;
-    		   mod2 = mod1*2;
-    	   }
-    	   else{ // add 1 if split < mod1
-    		   split++;
-    	   }
-       } // end else     
-             
+        nEntries++;
+        if (add (b, key, value)) split ();
         return null;
     } // put
 
     /********************************************************************************
-     * Return the size (SLOTS * number of home buckets) of the hash table. 
+     * Return the number of key-value pairs in the hash table.
      * @return  the size of the hash table
      */
     public int size ()
     {
-        return SLOTS * (mod1 + split);
+        return nEntries;
     } // size
 
+    /********************************************************************************
+     * Add the pair to the first bucket of the chain with a free slot, appending an
+     * overflow bucket if there is none.
+     * @return  whether an overflow bucket was appended
+     */
+    private boolean add (Bucket b, K key, V value)
+    {
+        while (b.nKeys == SLOTS && b.next != null) b = b.next;
+        boolean overflow = b.nKeys == SLOTS;
+        if (overflow) b = b.next = new Bucket (null);
+        b.key [b.nKeys]   = key;
+        b.value [b.nKeys] = value;
+        b.nKeys++;
+        return overflow;
+    } // add
+
+    /********************************************************************************
+     * Split the bucket at the split pointer, moving the pairs whose high resolution
+     * hash differs to a new bucket at the end of the table.
+     */
+    private void split ()
+    {
+        Bucket old = hTable.get (split);
+        Bucket lo  = new Bucket (null), hi = new Bucket (null);
+        hTable.set (split, lo);
+        hTable.add (hi);
+        for (Bucket b = old; b != null; b = b.next) {
+            for (int j = 0; j < b.nKeys; j++) add (h2 (b.key [j]) == split ? lo : hi, b.key [j], b.value [j]);
+        } // for
+        if (++split == mod1) {
+            split = 0;
+            mod1  = mod2;
+            mod2  = 2 * mod1;
+        } // if
+    } // split
+
+    /********************************************************************************
+     * Return the home bucket for the key: by the low resolution hash, unless that
+     * bucket has already been split in this round.
+     */
+    private int address (Object key)
+    {
+        int i = h (key);
+        return (i < split) ? h2 (key) : i;
+    } // address
+
     /********************************************************************************
      * Print the hash table.
      */
     private void print ()
     {
-    	out.println ("Hash Table (Linear Hashing) - Entries shown as Key:Value");
-    	out.println ("-------------------------------------------");
-    	
-    	for(int i=0; i<hTable.size(); i++){
-    		Bucket temp = hTable.get(i);
-    		boolean chain = false;
-    		if( temp.next!=null ){
-    			chain = true; // chain exists if there is a next element
-    		}
-    		if(chain){ // printing chain of buckets
-    			for( int j=0; j<SLOTS; j++ ){
-    				out.print("");
-    				out.print(temp.key[j]);
-    				out.print(":");
-    				out.print(temp.value[j]);
-    				out.print("\t");
-    				if(SLOTS!=j+1){
-    					out.print("\t");
-    				} // end if
-    				else{
-    					out.print(" \t(chain) =>");
-    				} // end else
-    			} // end for loop
-    			for( int j=0; j<SLOTS; j++ ){ // last bucket
-    				out.print("");
-    				out.print(temp.key[j]);
-    				out.print(":");
-    				out.print(temp.value[j]);
-    				out.print("\t");
-    				if(SLOTS!=j+1){
-    					out.print(" \n");
-    				} // end if
-    			} // end for loop
-              } 	// end if chain
-              else{	
-            	  for( int j=0; j<SLOTS; j++ ){ // only bucket
-            		  out.print("");
-            		  out.print(temp.key[j]);
-            		  out.print(":");
-            		  out.print(temp.value[j]);
-            		  out.print("\t");
-            		  if(SLOTS!=j+1){
-            			  if(temp.value[j]==null)
-            				  out.print("");
-            			  else
-            				  out.print("\t"); 
-            		  } // end if
-            	  }	 // end for loop
-            	  out.print(" \n");
-              } // end else	
-       } // end first for loop
-    	out.println ("-------------------------------------------");
+        out.println ("Hash Table (Linear Hashing) - Entries shown as Key:Value");
+        out.println ("-------------------------------------------");
+        for (int i = 0; i < hTable.size (); i++) {
+            out.print (i + ":");
+            for (Bucket b = hTable.get (i); b != null; b = b.next) {
+                if (b != hTable.get (i)) out.print ("\t(chain) =>");
+                for (int j = 0; j < b.nKeys; j++) out.print ("\t" + b.key [j] + ":" + b.value [j]);
+            } // for
+            out.println ();
+        } // for
+        out.println ("-------------------------------------------");
     } // print
 
     /********************************************************************************
@@ -287,7 +226,7 @@ public class LinHashMap <K, V>
      */
     private int h (Object key)
     {
-        return key.hashCode () % mod1;
+        return Math.floorMod (key.hashCode (), mod1);
     } // h
 
     /********************************************************************************
@@ -297,7 +236,7 @@ public class LinHashMap <K, V>
      */
     private int h2 (Object key)
     {
-        return key.hashCode () % mod2;
+        return Math.floorMod (key.hashCode (), mod2);
     } // h2
 
     /********************************************************************************
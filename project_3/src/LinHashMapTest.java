@@ -0,0 +1,52 @@
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+
+public class LinHashMapTest {
+
+	LinHashMap<Integer, Integer> test;
+
+	@Before
+	public void setUp() {
+		test = new LinHashMap<>(Integer.class, Integer.class, 4);
+	}
+
+	// Verifies put and get across many splits, including replacing an existing key
+	@Test
+	public void testPutGet() {
+		for (int i = 0; i < 1000; i++) {
+			assertNull(test.put(i * 7, i));
+		}
+		assertEquals(test.put(14, -2), (Integer) 2);
+
+		assertEquals(test.size(), 1000);
+		assertEquals((int)test.get(14), -2);
+		assertEquals((int)test.get(6993), 999);
+		assertNull(test.get(15));
+		assertTrue(test.containsKey(0));
+		assertFalse(test.containsKey(-7));
+	}
+
+	// Verifies that negative hash codes and random keys all stay reachable
+	@Test
+	public void testRandomKeys() {
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random rand = new Random(7);
+		for (int i = 0; i < 5000; i++) {
+			int key = rand.nextInt();
+			assertEquals(test.put(key, i), expected.put(key, i));
+		}
+		assertEquals(test.size(), expected.size());
+		assertEquals(test.entrySet(), expected.entrySet());
+		for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+			assertEquals(test.get(e.getKey()), e.getValue());
+		}
+	}
+}
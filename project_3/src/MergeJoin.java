@@ -0,0 +1,94 @@
+
+/****************************************************************************************
+ * @file  MergeJoin.java
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/****************************************************************************************
+ * This class provides the sort-merge join.  Both inputs must arrive ordered on their
+ * join attributes (e.g., from the leaf chain of a BpTreeMap on the join key, or from an
+ * ExternalSort), and are advanced in lockstep, so no hash table and no random access is
+ * needed.  For each join value, the matching right tuples are buffered and paired with
+ * every matching left tuple, which handles duplicate join values on both sides; only
+ * one such group is held in memory at a time.  Tuples with a null join attribute never
+ * match.
+ */
+public class MergeJoin
+{
+    /************************************************************************************
+     * Join the ordered left and right tuples on left [lcols] = right [rcols], passing
+     * each matching pair (the left tuple followed by the right one) to out.
+     *
+     * @param left   the left input, ordered on lcols
+     * @param lcols  the positions of the join attributes in the left tuples
+     * @param right  the right input, ordered on rcols
+     * @param rcols  the positions of the join attributes in the right tuples
+     * @param out    the consumer of the joined tuples
+     */
+    public static void join (Iterable <Comparable []> left, int [] lcols,
+                             Iterable <Comparable []> right, int [] rcols, Consumer <Comparable []> out)
+    {
+        Iterator <Comparable []> lit   = left.iterator ();
+        Iterator <Comparable []> rit   = right.iterator ();
+        Comparable []            l     = next (lit, lcols);
+        Comparable []            r     = next (rit, rcols);
+        List <Comparable []>     group = new ArrayList <> ();
+
+        while (l != null && r != null) {
+            int c = compare (l, lcols, r, rcols);
+            if (c < 0) {
+                l = next (lit, lcols);
+            } else if (c > 0) {
+                r = next (rit, rcols);
+            } else {
+                Comparable [] first = r;
+                group.clear ();
+                do {
+                    group.add (r);
+                    r = next (rit, rcols);
+                } while (r != null && compare (r, rcols, first, rcols) == 0);
+                do {
+                    for (Comparable [] u : group) out.accept (ArrayUtil.concat (l, u));
+                    l = next (lit, lcols);
+                } while (l != null && compare (l, lcols, first, rcols) == 0);
+            } // if
+        } // while
+    } // join
+
+    /************************************************************************************
+     * Compare tuple a on acols with tuple b on bcols, attribute by attribute (the order
+     * of KeyType and of ExternalSort.on).  Neither may have a null join attribute.
+     *
+     * @param a      the first tuple
+     * @param acols  the positions of the join attributes in a
+     * @param b      the second tuple
+     * @param bcols  the positions of the join attributes in b
+     * @return  a negative number, zero or a positive number
+     */
+    @SuppressWarnings ("unchecked")
+    public static int compare (Comparable [] a, int [] acols, Comparable [] b, int [] bcols)
+    {
+        for (int j = 0; j < acols.length; j++) {
+            int c = a [acols [j]].compareTo (b [bcols [j]]);
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // compare
+
+    /************************************************************************************
+     * Return the next tuple with no null join attribute (null at the end).
+     */
+    private static Comparable [] next (Iterator <Comparable []> it, int [] cols)
+    {
+        while (it.hasNext ()) {
+            Comparable [] t = it.next ();
+            if (HashJoin.key (t, cols) != null) return t;
+        } // while
+        return null;
+    } // next
+
+} // MergeJoin class
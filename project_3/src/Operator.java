@@ -0,0 +1,554 @@
+
+/****************************************************************************************
+ * @file  Operator.java
+ */
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * This class provides pull-based (Volcano-style) relational operators.  An operator is
+ * opened, asked for one tuple at a time with next until it returns null, and closed.
+ * Operators are chained into a tree (e.g., student.scan ().select (p).project ("name")),
+ * so tuples stream from the scans at the leaves to the root without intermediate tables.
+ * Only the pipeline breakers hold tuples: the build (right) side of a join and of a
+ * minus, and the tuples already seen by a union.  Use toTable or forEach to run a tree.
+ *
+ * The operators are nested classes: Scan, Select, Project, Join, Union and Minus.
+ */
+public abstract class Operator
+       implements Iterable <Comparable []>
+{
+    /** The attribute names of the tuples produced.
+     */
+    protected final String [] attribute;
+
+    /** The domains of the tuples produced.
+     */
+    protected final Class [] domain;
+
+    /************************************************************************************
+     * Construct an operator producing tuples with the given attributes and domains.
+     *
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     */
+    protected Operator (String [] _attribute, Class [] _domain)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+    } // constructor
+
+    /************************************************************************************
+     * Prepare to produce tuples (building any in-memory state, e.g., a hash table).
+     */
+    public abstract void open ();
+
+    /************************************************************************************
+     * Return the next tuple, or null if there are no more.
+     */
+    public abstract Comparable [] next ();
+
+    /************************************************************************************
+     * Release the resources held since open.
+     */
+    public abstract void close ();
+
+    /************************************************************************************
+     * Return the attribute names of the tuples produced.
+     */
+    public String [] attributes ()
+    {
+        return attribute;
+    } // attributes
+
+    /************************************************************************************
+     * Return the domains of the tuples produced.
+     */
+    public Class [] domains ()
+    {
+        return domain;
+    } // domains
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position, or -1 if not found
+     */
+    public int col (String attr)
+    {
+        for (int i = 0; i < attribute.length; i++) {
+            if (attr.equals (attribute [i])) return i;
+        } // for
+        return -1;
+    } // col
+
+    /************************************************************************************
+     * Select the tuples satisfying the predicate.
+     *
+     * #usage student.scan ().select (t -> t[0].equals (7))
+     *
+     * @param predicate  the check condition for tuples
+     */
+    public Operator select (Predicate <Comparable []> predicate)
+    {
+        return new Select (this, predicate);
+    } // select
+
+    /************************************************************************************
+     * Project the tuples onto the given attributes.
+     *
+     * #usage movie.scan ().project ("title year")
+     *
+     * @param attributes  the attributes to project onto
+     */
+    public Operator project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /************************************************************************************
+     * Equi-join these tuples with those of right on attributes1 = attributes2, hashing
+     * the right tuples.  Attributes of right also produced here get a "2" appended.
+     *
+     * #usage transcript.scan ().join ("studId", "id", student.scan ())
+     *
+     * @param attributes1  the join attributes of these tuples
+     * @param attributes2  the join attributes of the right tuples
+     * @param right        the right (build) input
+     */
+    public Operator join (String attributes1, String attributes2, Operator right)
+    {
+        return new Join (this, match (attributes1.split (" ")), right, right.match (attributes2.split (" ")));
+    } // join
+
+    /************************************************************************************
+     * Union these tuples with those of right, eliminating duplicate tuples.
+     *
+     * #usage movie.scan ().union (cinema.scan ())
+     *
+     * @param right  the right input
+     */
+    public Operator union (Operator right)
+    {
+        return new Union (this, right);
+    } // union
+
+    /************************************************************************************
+     * Produce these tuples except those also produced by right.
+     *
+     * #usage movie.scan ().minus (cinema.scan ())
+     *
+     * @param right  the right input
+     */
+    public Operator minus (Operator right)
+    {
+        return new Minus (this, right);
+    } // minus
+
+    /************************************************************************************
+     * Run the operator, passing each tuple to the sink.
+     *
+     * @param sink  the consumer of the tuples
+     */
+    public void forEach (Consumer <? super Comparable []> sink)
+    {
+        open ();
+        try {
+            for (Comparable [] t; (t = next ()) != null; ) sink.accept (t);
+        } finally {
+            close ();
+        } // try
+    } // forEach
+
+    /************************************************************************************
+     * Run the operator, collecting its tuples in a new table.
+     *
+     * @param name  the name of the table
+     * @param key   the primary key of the table
+     * @return  the table
+     */
+    public Table toTable (String name, String [] key)
+    {
+        List <Comparable []> rows = new ArrayList <> ();
+        forEach (rows::add);
+        return new Table (name, attribute, domain, key, rows);
+    } // toTable
+
+    /************************************************************************************
+     * Return an iterator that opens the operator, pulls its tuples and closes it after
+     * the last one.
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        open ();
+        return new Iterator <Comparable []> () {
+            private Comparable [] t = advance ();
+
+            private Comparable [] advance ()
+            {
+                Comparable [] u = Operator.this.next ();
+                if (u == null) Operator.this.close ();
+                return u;
+            } // advance
+
+            public boolean hasNext ()
+            {
+                return t != null;
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (t == null) throw new NoSuchElementException ();
+                Comparable [] u = t;
+                t = advance ();
+                return u;
+            } // next
+        };
+    } // iterator
+
+    /************************************************************************************
+     * Return the positions of the given attributes.
+     *
+     * @param column  the attribute names
+     */
+    int [] match (String [] column)
+    {
+        int [] colPos = new int [column.length];
+        for (int j = 0; j < column.length; j++) {
+            colPos [j] = col (column [j]);
+            if (colPos [j] < 0) out.println ("match: domain not found for " + column [j]);
+        } // for
+        return colPos;
+    } // match
+
+    //----------------------------------------------------------------------------------
+    // Operators
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * This class scans a list of tuples, e.g., those of a table (see Table.scan).
+     */
+    public static class Scan
+           extends Operator
+    {
+        private final Iterable <Comparable []> rows;
+        private Iterator <Comparable []>       it;
+
+        /********************************************************************************
+         * Construct a scan of the tuples.
+         *
+         * @param _attribute  the attribute names
+         * @param _domain     the attribute domains
+         * @param _rows       the tuples
+         */
+        public Scan (String [] _attribute, Class [] _domain, Iterable <Comparable []> _rows)
+        {
+            super (_attribute, _domain);
+            rows = _rows;
+        } // constructor
+
+        public void open ()
+        {
+            it = rows.iterator ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            return it.hasNext () ? it.next () : null;
+        } // next
+
+        public void close ()
+        {
+            it = null;
+        } // close
+    } // Scan class
+
+    /************************************************************************************
+     * This class passes on the tuples of its input that satisfy a predicate.
+     */
+    public static class Select
+           extends Operator
+    {
+        private final Operator                  input;
+        private final Predicate <Comparable []> predicate;
+
+        /********************************************************************************
+         * Construct a selection.
+         *
+         * @param _input      the input
+         * @param _predicate  the check condition for tuples
+         */
+        public Select (Operator _input, Predicate <Comparable []> _predicate)
+        {
+            super (_input.attribute, _input.domain);
+            input     = _input;
+            predicate = _predicate;
+        } // constructor
+
+        public void open ()
+        {
+            input.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            for (Comparable [] t; (t = input.next ()) != null; ) {
+                if (predicate.test (t)) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close ()
+        {
+            input.close ();
+        } // close
+    } // Select class
+
+    /************************************************************************************
+     * This class keeps only the given attributes of the tuples of its input.
+     */
+    public static class Project
+           extends Operator
+    {
+        private final Operator input;
+        private final int []   cols;
+
+        /********************************************************************************
+         * Construct a projection.
+         *
+         * @param _input  the input
+         * @param attrs   the attributes to project onto
+         */
+        public Project (Operator _input, String [] attrs)
+        {
+            this (_input, attrs, _input.match (attrs));
+        } // constructor
+
+        private Project (Operator _input, String [] attrs, int [] _cols)
+        {
+            super (attrs, columns (_input.domain, _cols));
+            input = _input;
+            cols  = _cols;
+        } // constructor
+
+        public void open ()
+        {
+            input.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            Comparable [] t = input.next ();
+            if (t == null) return null;
+            Comparable [] u = new Comparable [cols.length];
+            for (int j = 0; j < cols.length; j++) u [j] = t [cols [j]];
+            return u;
+        } // next
+
+        public void close ()
+        {
+            input.close ();
+        } // close
+    } // Project class
+
+    /************************************************************************************
+     * This class equi-joins its left and right inputs.  Open reads the right input into
+     * a hash table (see HashJoin.build), then the left tuples stream through, each
+     * producing its matches in turn.
+     */
+    public static class Join
+           extends Operator
+    {
+        private final Operator left, right;
+        private final int []   lcols, rcols;
+
+        private Map <Object, Object> table;
+        private Comparable []        probe;
+        private Object               matches;
+        private int                  pos;
+
+        /********************************************************************************
+         * Construct a join on left [_lcols] = right [_rcols].
+         *
+         * @param _left   the left (probe) input
+         * @param _lcols  the positions of the join attributes in the left tuples
+         * @param _right  the right (build) input
+         * @param _rcols  the positions of the join attributes in the right tuples
+         */
+        public Join (Operator _left, int [] _lcols, Operator _right, int [] _rcols)
+        {
+            super (ArrayUtil.concat (_left.attribute, disambiguate (_right.attribute, _left.attribute)),
+                   ArrayUtil.concat (_left.domain, _right.domain));
+            left  = _left;
+            lcols = _lcols;
+            right = _right;
+            rcols = _rcols;
+        } // constructor
+
+        public void open ()
+        {
+            table = HashJoin.build (right, rcols);
+            left.open ();
+            matches = null;
+        } // open
+
+        @SuppressWarnings ("unchecked")
+        public Comparable [] next ()
+        {
+            while (true) {
+                if (matches instanceof List) {
+                    List <Comparable []> list = (List <Comparable []>) matches;
+                    if (pos < list.size ()) return ArrayUtil.concat (probe, list.get (pos++));
+                } else if (matches != null) {
+                    Comparable [] u = (Comparable []) matches;
+                    matches = null;
+                    return ArrayUtil.concat (probe, u);
+                } // if
+
+                if ((probe = left.next ()) == null) return null;
+                Object k = HashJoin.key (probe, lcols);
+                matches  = (k == null) ? null : table.get (k);
+                pos      = 0;
+            } // while
+        } // next
+
+        public void close ()
+        {
+            left.close ();
+            table   = null;
+            matches = null;
+        } // close
+    } // Join class
+
+    /************************************************************************************
+     * This class produces the tuples of its left input and then of its right input,
+     * skipping any tuple already produced.
+     */
+    public static class Union
+           extends Operator
+    {
+        private final Operator left, right;
+
+        private Set <List <Comparable>> seen;
+        private Operator                current;
+
+        /********************************************************************************
+         * Construct a union.
+         *
+         * @param _left   the left input
+         * @param _right  the right input (with the same domains)
+         */
+        public Union (Operator _left, Operator _right)
+        {
+            super (_left.attribute, _left.domain);
+            left  = _left;
+            right = _right;
+        } // constructor
+
+        public void open ()
+        {
+            seen    = new HashSet <> ();
+            current = left;
+            left.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            while (true) {
+                Comparable [] t = current.next ();
+                if (t == null) {
+                    if (current == right) return null;
+                    left.close ();
+                    current = right;
+                    right.open ();
+                } else if (seen.add (Arrays.asList (t))) {
+                    return t;
+                } // if
+            } // while
+        } // next
+
+        public void close ()
+        {
+            if (current != null) current.close ();
+            seen = null;
+        } // close
+    } // Union class
+
+    /************************************************************************************
+     * This class produces the tuples of its left input that its right input does not.
+     * Open reads the right input into a hash set, then the left tuples stream through.
+     */
+    public static class Minus
+           extends Operator
+    {
+        private final Operator left, right;
+
+        private Set <List <Comparable>> set;
+
+        /********************************************************************************
+         * Construct a difference.
+         *
+         * @param _left   the left input
+         * @param _right  the right input (with the same domains)
+         */
+        public Minus (Operator _left, Operator _right)
+        {
+            super (_left.attribute, _left.domain);
+            left  = _left;
+            right = _right;
+        } // constructor
+
+        public void open ()
+        {
+            set = new HashSet <> ();
+            for (Comparable [] t : right) set.add (Arrays.asList (t));
+            left.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            for (Comparable [] t; (t = left.next ()) != null; ) {
+                if (! set.contains (Arrays.asList (t))) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close ()
+        {
+            left.close ();
+            set = null;
+        } // close
+    } // Minus class
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the domains at the given positions.
+     */
+    private static Class [] columns (Class [] dom, int [] cols)
+    {
+        Class [] d = new Class [cols.length];
+        for (int j = 0; j < cols.length; j++) d [j] = dom [cols [j]];
+        return d;
+    } // columns
+
+    /************************************************************************************
+     * Return the names with "2" appended to those that also appear in others.
+     */
+    private static String [] disambiguate (String [] names, String [] others)
+    {
+        String [] result = names.clone ();
+        for (int j = 0; j < names.length; j++) {
+            if (Arrays.asList (others).contains (names [j])) result [j] = names [j] + "2";
+        } // for
+        return result;
+    } // disambiguate
+
+} // Operator class
@@ -0,0 +1,60 @@
+
+/****************************************************************************************
+ * @file  Parallel.java
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/****************************************************************************************
+ * This class provides helpers for running the parts of an operator as tasks on a
+ * fork/join pool with a given number of threads and gathering their results in order.
+ */
+class Parallel
+{
+    /************************************************************************************
+     * Run the tasks on a fork/join pool with the given number of threads and return
+     * their results in task order.  An exception thrown by a task is rethrown.
+     *
+     * @param threads  the number of threads
+     * @param tasks    the tasks to run
+     * @return  the results of the tasks
+     */
+    public static <T> List <T> invokeAll (int threads, List <Callable <T>> tasks)
+    {
+        ForkJoinPool pool = new ForkJoinPool (Math.max (1, threads));
+        try {
+            List <T> results = new ArrayList <> (tasks.size ());
+            for (Future <T> f : pool.invokeAll (tasks)) results.add (f.get ());
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new CancellationException ("Parallel: interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause ();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new CompletionException (cause);
+        } finally {
+            pool.shutdown ();
+        } // try
+    } // invokeAll
+
+    /************************************************************************************
+     * Split the list into n contiguous chunks of (nearly) equal size.
+     *
+     * @param list  the list to split
+     * @param n     the number of chunks
+     * @return  the chunks (views of the list)
+     */
+    public static <T> List <List <T>> chunks (List <T> list, int n)
+    {
+        n = Math.max (1, Math.min (n, list.size ()));
+        List <List <T>> result = new ArrayList <> (n);
+        for (int i = 0; i < n; i++) {
+            result.add (list.subList ((int) ((long) i * list.size () / n), (int) ((long) (i + 1) * list.size () / n)));
+        } // for
+        return result;
+    } // chunks
+
+} // Parallel class
@@ -30,7 +30,7 @@ public class PerformanceTesting
 			System.out.println("Point Select - TableScan");
 			System.out.println("Time - " + duration + " ms");
 			
-			for (int index = 0;index <= 3;index ++)
+			for (int index = 0;index <= 4;index ++)
 			{
 				startTime = System.nanoTime();
 				temp = tables[0].select(new KeyType(studentID), index);
@@ -50,6 +50,10 @@ public class PerformanceTesting
 						break;
 					case 3:
 						System.out.println("ExtHashMap");
+						break;
+					case 4:
+						System.out.println("IntHashMap");
+						break;
 					default:
 						break;
 				}
@@ -57,13 +61,81 @@ public class PerformanceTesting
 			}
 			
 			startTime = System.nanoTime();
-			temp = tables[0].join("id", "studId", tables[1], 0);
+			temp = tables[0].nestedLoopJoin("id", "studId", tables[1]);
 			endTime = System.nanoTime();
 			duration = (endTime - startTime) / 1000000.0;
 			System.out.println("Join - Nested Loop Join");
 			System.out.println("Time - " + duration + " ms");
 			
-			for (int index = 0;index <= 3; index ++)
+			startTime = System.nanoTime();
+			temp = tables[0].join("id", "studId", tables[1], 0);
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join - Hash Join");
+			System.out.println("Time - " + duration + " ms");
+			
+			startTime = System.nanoTime();
+			temp = tables[0].mergeJoin("id", "studId", tables[1]);
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join - Sort-Merge Join");
+			System.out.println("Time - " + duration + " ms");
+			
+			startTime = System.nanoTime();
+			temp = tables[0].join("id", "studId", tables[1], 0).project("name crsCode");
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join + Project - Materialized");
+			System.out.println("Time - " + duration + " ms");
+			
+			startTime = System.nanoTime();
+			temp = tables[1].scan().join("studId", "id", tables[0].scan()).project("name crsCode")
+			                .toTable("pipeline", new String [] { "name", "crsCode" });
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join + Project - Pipelined");
+			System.out.println("Time - " + duration + " ms");
+			
+			int firstId = (Integer) tables[0].getTuple(0)[0];
+			startTime = System.nanoTime();
+			temp = tables[1].join("studId", "id", tables[0], 0).select(t -> t[4].equals(firstId), 0);
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join + Select - As Written");
+			System.out.println("Time - " + duration + " ms");
+
+			tables[0].statistics();		// gathered ahead of time, as by ANALYZE
+			tables[1].statistics();
+			startTime = System.nanoTime();
+			temp = new Query().from(tables[1], "t").from(tables[0], "s")
+			                  .where(Expr.compare(Expr.col("studId"), "==", Expr.col("s.id")))
+			                  .where(Expr.col("s.id").eq(firstId)).execute();
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join + Select - Optimized");
+			System.out.println("Time - " + duration + " ms");
+
+			Sql sql = new Sql (tables[0], tables[1]);
+			String query3 = "SELECT name FROM Student JOIN Transcript ON Transcript.studId = Student.id WHERE Student.id = ?";
+			for (int run = 0; run <= 1; run ++)
+			{
+				startTime = System.nanoTime();
+				temp = sql.execute(query3, firstId);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("SQL Join + Select - " + (run == 0 ? "Parsed and Planned" : "Cached Plan"));
+				System.out.println("Time - " + duration + " ms");
+			}
+
+			int threads = Runtime.getRuntime().availableProcessors();
+			startTime = System.nanoTime();
+			temp = tables[0].join("id", "studId", tables[1], 0, threads);
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Join - Parallel Hash Join (" + threads + " threads)");
+			System.out.println("Time - " + duration + " ms");
+			
+			for (int index = 0;index <= 4; index ++)
 			{
 				startTime = System.nanoTime();
 				temp = tables[0].indexJoin(tables[1], index);
@@ -84,6 +156,10 @@ public class PerformanceTesting
 						break;
 					case 3:
 						System.out.println("ExtHashMap");
+						break;
+					case 4:
+						System.out.println("IntHashMap");
+						break;
 					default:
 						break;
 				}
@@ -95,7 +171,7 @@ public class PerformanceTesting
 				startTime = System.nanoTime();
 				if (index == 1)
 				{
-					tables[0].bpIndex.subMap(new KeyType(studentID), new KeyType(studentID2)).entrySet().forEach(e -> e.getValue());
+					temp = tables[0].select(tables[0].keyRange(new KeyType(studentID), true, new KeyType(studentID2), true), index);
 				}
 				else {
 					temp = tables[0].select(t -> t[0].compareTo(studentID) >= 0 && t[0].compareTo(studentID2) <= 0, index);
@@ -120,6 +196,132 @@ public class PerformanceTesting
 				System.out.println("Time - " + duration + " ms");
 			}
 			
+			int low = Math.min(studentID, studentID2), high = Math.max(studentID, studentID2);
+			for (int mode = 0; mode <= 2; mode ++)
+			{
+				startTime = System.nanoTime();
+				for (int rep = 0; rep < 100; rep ++)
+				{
+					if (mode == 2)
+					{
+						temp = tables[2].select(VectorPredicate.compare(0, ">=", low).and(VectorPredicate.compare(0, "<=", high)));
+					}
+					else {
+						temp = tables[mode * 2].select(t -> (Integer) t[0] >= low && (Integer) t[0] <= high, 0);
+					}
+				}
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0 / 100;
+				System.out.print("Scan Select - ");
+				switch(mode)
+				{
+					case 0:
+						System.out.println("Row Store");
+						break;
+					case 1:
+						System.out.println("Column Store, Row at a Time");
+						break;
+					case 2:
+						System.out.println("Column Store, Vectorized");
+						break;
+					default:
+						break;
+				}
+				System.out.println("Time - " + duration + " ms");
+			}
+
+			Expr range = Expr.col("id").between(low, high).and(Expr.col("status").ne("XX"));
+			startTime = System.nanoTime();
+			temp = tables[0].select(range);
+			endTime = System.nanoTime();
+			duration = (endTime - startTime) / 1000000.0;
+			System.out.println("Expr Select - " + tables[0].explain(range));
+			System.out.println("Time - " + duration + " ms");
+
+			PreparedQuery byId = tables[0].prepare(Expr.compare(Expr.col("id"), "==", Expr.param(0)), "name");
+			for (int mode = 0; mode <= 1; mode ++)
+			{
+				startTime = System.nanoTime();
+				for (int rep = 0; rep < 1000; rep ++)
+				{
+					temp = (mode == 0) ? tables[0].select(Expr.col("id").eq(studentID), "name") : byId.execute(studentID);
+				}
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0 / 1000;
+				System.out.println("Point Select + Project - " + (mode == 0 ? "Expr" : "Prepared"));
+				System.out.println("Time - " + duration + " ms");
+			}
+
+			Expr filter = Expr.col("status").eq("FR").and(Expr.col("name").ne("XX"));
+			String [] studentAttrs = { "id", "name", "address", "status" };
+			Class [] studentDomain = { Integer.class, String.class, String.class, String.class };
+			for (int mode = 0; mode <= 1; mode ++)
+			{
+				CompiledQuery query = (mode == 0) ? CompiledQuery.interpret(filter, new int [] { 1, 0 }, studentAttrs)
+				                                  : CompiledQuery.compile(filter, new int [] { 1, 0 }, studentAttrs, studentDomain);
+				startTime = System.nanoTime();
+				for (int rep = 0; rep < 100; rep ++)
+				{
+					query.run(tables[0].tuples, new ArrayList <> ());
+				}
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0 / 100;
+				System.out.println("Select + Project - " + (mode == 0 ? "Interpreted" : "Compiled"));
+				System.out.println("Time - " + duration + " ms");
+			}
+
+			Table half =tables[0].select(t -> (Integer) t[0] % 2 == 0, 0);
+			for (int workers = 1; workers <= threads; workers *= 2)
+			{
+				startTime = System.nanoTime();
+				temp = tables[0].minus(half, workers);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("Minus - Hash Set (" + workers + " threads)");
+				System.out.println("Time - " + duration + " ms");
+			}
+			
+			for (int workers = 1; workers <= threads; workers *= 2)
+			{
+				startTime = System.nanoTime();
+				temp = tables[0].union(half, false, workers);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("Union - Hash Set (" + workers + " threads)");
+				System.out.println("Time - " + duration + " ms");
+			}
+			
+			for (int workers = 1; workers <= threads; workers *= 2)
+			{
+				startTime = System.nanoTime();
+				temp = tables[1].groupBy("studId", "count(*) min(crsCode) max(grade)", workers);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("Group By - Hash Aggregation (" + workers + " threads)");
+				System.out.println("Time - " + duration + " ms");
+			}
+			
+			for (int mode = 0; mode <= 1; mode ++)
+			{
+				startTime = System.nanoTime();
+				temp = (mode == 0) ? tables[1].orderBy("grade desc studId") : tables[1].orderBy("grade desc studId", 100);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("Order By - " + (mode == 0 ? "External Merge Sort" : "Top 100 Heap"));
+				System.out.println("Time - " + duration + " ms");
+			}
+
+			for (int mode = 0; mode <= 1; mode ++)
+			{
+				startTime = System.nanoTime();
+				temp = (mode == 0) ? tables[0].minus(tables[0].join("id", "studId", tables[1], 0).project("id name address status"))
+				                   : tables[0].antiJoin("id", "studId", tables[1], true);
+				endTime = System.nanoTime();
+				duration = (endTime - startTime) / 1000000.0;
+				System.out.println("Not In - " + (mode == 0 ? "Join + Project + Minus" : "Anti Join"));
+				System.out.println("Time - " + duration + " ms");
+			}
+
 			System.out.println("--------\n");
 		}
 	}
@@ -170,17 +372,19 @@ public class PerformanceTesting
         Table students = new Table("Student", "id name address status", "Integer String String String", "id");
         Table transcripts = new Table("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester");
         
-        for (Comparable [] tup : resultTest[0])
-        {
-        	students.insert(tup);
-        }
+        // maintain every index type up front so that index builds are not timed
+        students.setIndexes(false, Table.TREE_MAP, Table.BP_TREE_MAP, Table.LIN_HASH_MAP, Table.EXT_HASH_MAP, Table.INT_HASH_MAP);
+        transcripts.setIndexes(false, Table.TREE_MAP, Table.BP_TREE_MAP, Table.LIN_HASH_MAP, Table.EXT_HASH_MAP, Table.INT_HASH_MAP);
+
+        students.bulkInsert(resultTest[0]);
+        transcripts.bulkInsert(resultTest[4]);
         
-        for (Comparable [] tup : resultTest[4])
-        {
-        	transcripts.insert(tup);
-        }
+        // a column-store copy of the students for the vectorized scans
+        Table columnStudents = new Table("Student", "id name address status", "Integer String String String", "id", true);
+        columnStudents.setIndexes(false);
+        columnStudents.bulkInsert(resultTest[0]);
         
-        Table tableArray[] = {students, transcripts};
+        Table tableArray[] = {students, transcripts, columnStudents};
         return tableArray;
 	}
 }
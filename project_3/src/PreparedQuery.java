@@ -0,0 +1,343 @@
+
+/****************************************************************************************
+ * @file  PreparedQuery.java
+ */
+
+import java.util.*;
+import java.util.function.Function;
+
+/****************************************************************************************
+ * This class provides selections prepared to be run many times, e.g., the point and
+ * range lookups an application issues at a high rate:
+ *
+ *     PreparedQuery byId = student.prepare (Expr.compare (col ("id"), "==", param (0)), "name");
+ *     Table t = byId.execute (75);
+ *
+ * Preparing does the work select (Expr, String) would repeat on every call: it resolves
+ * the attribute names to positions, chooses the access path (a key lookup, a key range
+ * or a scan, as AccessPath does but with parameters as well as literals for the key
+ * values) and binds the rest of the condition.  Running the query then only looks up
+ * its tuples, tests them and projects them.  A prepared query is immutable, so any
+ * number of threads may run it at once.
+ *
+ * The residual condition is bound against the table's attributes followed by ?0, ?1,
+ * ... (see Expr.Param), so it is tested on each tuple with the parameter values
+ * appended.
+ */
+public class PreparedQuery
+{
+    /** The slot of an operand that is absent.
+     */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /** The table queried.
+     */
+    private final Table table;
+
+    /** The number of the table's attributes and of the parameters.
+     */
+    private final int width, params;
+
+    /** The domains of the table's attributes and the positions of its key attributes.
+     */
+    private final Class [] domain;
+    private final int []   keyCols;
+
+    /** The literals among the key values (an operand's slot is a parameter's index if it
+     *  is at least 0, else -1 - the position of a literal here).
+     */
+    private final Comparable [] lits;
+
+    /** The slots of the key values for a point lookup (null if not a point access).
+     */
+    private final int [] point;
+
+    /** The slots of the range bounds (NONE for an open bound) and whether they are
+     *  inclusive, for a range access.
+     */
+    private final int     low, high;
+    private final boolean lowIncl, highIncl;
+
+    /** The index type for a range access.
+     */
+    private final int indexType;
+
+    /** The residual and the whole condition, bound (null if there is no residual).
+     */
+    private final Function <Comparable [], Comparable> residual, full;
+
+    /** The description of the access path.
+     */
+    private final String path;
+
+    /** The name, attributes, positions (null for all), domains and key of the result.
+     */
+    private final String    name;
+    private final String [] attrs;
+    private final int []    cols;
+    private final Class []  dom;
+    private final String [] newKey;
+
+    /************************************************************************************
+     * Prepare a selection (see Table.prepare).
+     *
+     * @param _table      the table
+     * @param attribute   the table's attribute names
+     * @param _domain     the table's attribute domains
+     * @param _keyCols    the positions of the table's key attributes
+     * @param points      whether the table can look up keys
+     * @param _indexType  the index type for range accesses
+     * @param condition   the selection condition
+     * @param _name       the name of the result
+     * @param _attrs      the attributes of the result
+     * @param _cols       their positions (null for all)
+     * @param _dom        their domains
+     * @param _newKey     the key of the result
+     */
+    PreparedQuery (Table _table, String [] attribute, Class [] _domain, int [] _keyCols, boolean points,
+                   int _indexType, Expr condition, String _name, String [] _attrs, int [] _cols,
+                   Class [] _dom, String [] _newKey)
+    {
+        table     = _table;
+        width     = attribute.length;
+        params    = params (condition);
+        domain    = _domain;
+        keyCols   = _keyCols;
+        indexType = _indexType;
+        name      = _name;
+        attrs     = _attrs;
+        cols      = _cols;
+        dom       = _dom;
+        newKey    = _newKey;
+
+        // find the conjuncts comparing a key attribute with a parameter or literal
+        List <Comparable> literals = new ArrayList <> ();
+        List <Expr>       rest     = new ArrayList <> ();
+        int []            eq       = new int [keyCols.length];
+        Expr []           eqExpr   = new Expr [keyCols.length];
+        Expr              lowExpr  = null, highExpr = null;
+        int               lo = NONE, hi = NONE;
+        boolean           loIncl = false, hiIncl = false;
+        Arrays.fill (eq, NONE);
+        for (Expr c : condition.conjuncts ()) {
+            if (c instanceof Expr.Cmp) {
+                Expr.Cmp cmp = (Expr.Cmp) c;
+                Expr     l   = cmp.left, r = cmp.right;
+                String   op  = cmp.op;
+                if (r instanceof Expr.Col && ! (l instanceof Expr.Col)) {
+                    l  = cmp.right;
+                    r  = cmp.left;
+                    op = Expr.flip (op);
+                } // if
+                int k = (l instanceof Expr.Col) ? keyPosition (((Expr.Col) l).name, attribute) : -1;
+                if (k >= 0 && (r instanceof Expr.Lit || r instanceof Expr.Param)) {
+                    if (op.equals ("==") && eq [k] == NONE) {
+                        eq [k] = slot (r, literals);
+                        eqExpr [k] = c;
+                        continue;
+                    } // if
+                    boolean upper = op.startsWith ("<");
+                    if (keyCols.length == 1 && ! op.equals ("==") && ! op.equals ("!=") &&
+                            (upper ? highExpr : lowExpr) == null) {
+                        if (upper) { hi = slot (r, literals); hiIncl = op.equals ("<="); highExpr = c; }
+                        else       { lo = slot (r, literals); loIncl = op.equals (">="); lowExpr  = c; }
+                        continue;
+                    } // if
+                } // if
+            } else if (c instanceof Expr.Between && keyCols.length == 1 && lowExpr == null && highExpr == null) {
+                Expr.Between b = (Expr.Between) c;
+                if (b.expr instanceof Expr.Col && keyPosition (((Expr.Col) b.expr).name, attribute) == 0) {
+                    lo = slot (Expr.lit (b.low), literals);
+                    hi = slot (Expr.lit (b.high), literals);
+                    loIncl = hiIncl = true;
+                    lowExpr = highExpr = c;
+                    continue;
+                } // if
+            } // if
+            rest.add (c);
+        } // for
+
+        boolean isPoint = points && ! Arrays.asList (eqExpr).contains (null);
+        if (isPoint) {
+            if (lowExpr != null) rest.add (lowExpr);
+            if (highExpr != null && highExpr != lowExpr) rest.add (highExpr);
+            lo = hi = NONE;
+        } else {
+            for (Expr e : eqExpr) if (e != null) rest.add (e);
+        } // if
+        point    = isPoint ? eq : null;
+        low      = lo;
+        high     = hi;
+        lowIncl  = loIncl;
+        highIncl = hiIncl;
+        lits     = literals.toArray (new Comparable [0]);
+
+        // bind the conditions to the attributes followed by the parameters
+        String [] names = Arrays.copyOf (attribute, width + params);
+        for (int i = 0; i < params; i++) names [width + i] = Expr.param (i).toString ();
+        Expr residue = rest.isEmpty () ? null : (rest.size () == 1) ? rest.get (0)
+                                                                   : Expr.and (rest.toArray (new Expr [0]));
+        residual = (residue == null) ? null : residue.bind (names);
+        full     = condition.bind (names);
+
+        String access = isPoint ? "lookup " + Arrays.toString (slots (eq)) : (lo != NONE || hi != NONE)
+                      ? "range " + (lo == NONE ? "" : operand (lo) + (loIncl ? " <= " : " < ")) + "key" +
+                                   (hi == NONE ? "" : (hiIncl ? " <= " : " < ") + operand (hi))
+                      : "scan";
+        path = (residue == null) ? access : access + ", filter " + residue;
+    } // constructor
+
+    /************************************************************************************
+     * Run the query with the given parameter values.
+     *
+     * #usage byId.execute (75)
+     *
+     * @param values  the values of the parameters ?0, ?1, ...
+     * @return  a table with the selected tuples, projected
+     */
+    public Table execute (Comparable... values)
+    {
+        if (values.length < params) {
+            throw new IllegalArgumentException ("execute: expected " + params + " parameter values");
+        } // if
+        List <Comparable []>                 in   = null;
+        Function <Comparable [], Comparable> test = residual;
+
+        if (point != null) {
+            Comparable [] k = new Comparable [point.length];
+            for (int j = 0; j < k.length; j++) {
+                Comparable v = arg (point [j], values);
+                k [j] = (v == null) ? null : Expr.coerce (v, domain [keyCols [j]]);
+                if (k [j] == null) in = Collections.emptyList ();     // equals no key value
+            } // for
+            if (in == null) {
+                Comparable [] t = table.find (new KeyType (k));
+                in = (t == null) ? Collections.emptyList () : Collections.singletonList (t);
+            } // if
+        } else if (low != NONE || high != NONE) {
+            Comparable lo = (low == NONE) ? null : arg (low, values);
+            Comparable hi = (high == NONE) ? null : arg (high, values);
+            Class      c  = domain [keyCols [0]];
+            if ((low != NONE && lo == null) || (high != NONE && hi == null)) {
+                in = Collections.emptyList ();                          // a null bound is unknown
+            } else if ((lo != null && Expr.coerce (lo, c) == null) || (hi != null && Expr.coerce (hi, c) == null)) {
+                in   = table.tuples;                                    // bounds of another type
+                test = full;
+            } else {
+                in = table.range (lo == null ? null : new KeyType (Expr.coerce (lo, c)), lowIncl,
+                                  hi == null ? null : new KeyType (Expr.coerce (hi, c)), highIncl, indexType);
+            } // if
+        } else {
+            in = table.tuples;
+        } // if
+
+        // test each tuple with the parameter values appended, in one reused buffer
+        Comparable [] buffer = null;
+        if (test != null && params > 0) {
+            buffer = new Comparable [width + params];
+            System.arraycopy (values, 0, buffer, width, params);
+        } // if
+        List <Comparable []> rows = new ArrayList <> ();
+        for (Comparable [] t : in) {
+            if (test != null) {
+                if (buffer != null) System.arraycopy (t, 0, buffer, 0, width);
+                if (test.apply (buffer == null ? t : buffer) != Boolean.TRUE) continue;
+            } // if
+            if (cols == null) {
+                rows.add (t);
+            } else {
+                Comparable [] u = new Comparable [cols.length];
+                for (int j = 0; j < u.length; j++) u [j] = t [cols [j]];
+                rows.add (u);
+            } // if
+        } // for
+        return new Table (name, attrs, dom, newKey, rows);
+    } // execute
+
+    /************************************************************************************
+     * Return the number of parameter values the query takes.
+     */
+    public int params ()
+    {
+        return params;
+    } // params
+
+    /************************************************************************************
+     * Describe how the query finds its tuples, e.g., "range ?0 <= key <= ?1, filter
+     * status == 'FR'".
+     */
+    public String toString ()
+    {
+        return path;
+    } // toString
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the value of the operand in the given slot.
+     */
+    private Comparable arg (int slot, Comparable [] values)
+    {
+        return (slot >= 0) ? values [slot] : lits [-1 - slot];
+    } // arg
+
+    /************************************************************************************
+     * Return the slot of a parameter or literal operand, adding a literal to the list.
+     */
+    private static int slot (Expr e, List <Comparable> literals)
+    {
+        if (e instanceof Expr.Param) return ((Expr.Param) e).index;
+        literals.add (((Expr.Lit) e).value);
+        return -literals.size ();
+    } // slot
+
+    /************************************************************************************
+     * Return the operands in the given slots as strings.
+     */
+    private String [] slots (int [] s)
+    {
+        String [] ops = new String [s.length];
+        for (int j = 0; j < s.length; j++) ops [j] = operand (s [j]);
+        return ops;
+    } // slots
+
+    /************************************************************************************
+     * Return the operand in the given slot as a string.
+     */
+    private String operand (int slot)
+    {
+        return (slot >= 0) ? Expr.param (slot).toString () : Expr.lit (lits [-1 - slot]).toString ();
+    } // operand
+
+    /************************************************************************************
+     * Return the position among the key attributes of the named attribute (-1 if it is
+     * not a key attribute).
+     */
+    private int keyPosition (String name, String [] attribute)
+    {
+        for (int k = 0; k < keyCols.length; k++) if (attribute [keyCols [k]].equals (name)) return k;
+        return -1;
+    } // keyPosition
+
+    /************************************************************************************
+     * Return the number of parameters of the expression (one more than the highest
+     * parameter index).
+     */
+    private static int params (Expr e)
+    {
+        if (e instanceof Expr.Param) return ((Expr.Param) e).index + 1;
+        if (e instanceof Expr.Cmp)   return Math.max (params (((Expr.Cmp) e).left), params (((Expr.Cmp) e).right));
+        if (e instanceof Expr.Not)   return params (((Expr.Not) e).cond);
+        if (e instanceof Expr.In)    return params (((Expr.In) e).expr);
+        if (e instanceof Expr.Between) return params (((Expr.Between) e).expr);
+        if (e instanceof Expr.And || e instanceof Expr.Or) {
+            int n = 0;
+            for (Expr c : (e instanceof Expr.And) ? ((Expr.And) e).conds : ((Expr.Or) e).conds) n = Math.max (n, params (c));
+            return n;
+        } // if
+        return 0;
+    } // params
+
+} // PreparedQuery class
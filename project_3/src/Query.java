@@ -0,0 +1,630 @@
+
+/****************************************************************************************
+ * @file  Query.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides select-from-where queries over several tables, planned by a
+ * cost-based optimizer rather than run in the order they are written, e.g., query 4
+ *
+ *     new Query ().from (student, "s").from (transcript, "t").from (teaching, "te").from (professor, "p")
+ *                 .where (Expr.compare (col ("s.id"), "==", col ("t.studId"))) ...
+ *                 .where (col ("p.name").eq ("name3")).select ("s.name").execute ()
+ *
+ * Attribute names may be qualified by a table's alias ("s.id") or left unqualified if
+ * only one table has them.  The where conditions are split into conjuncts:
+ *
+ *   - a conjunct on one table is pushed down to that table's scan, where Table.select
+ *     answers it, from an index if it restricts the key (see AccessPath);
+ *   - an equality between attributes of two tables is a join edge;
+ *   - any other conjunct is tested right after the join that brings its tables
+ *     together.
+ *
+ * The join order is chosen by dynamic programming over the subsets of the tables
+ * (greedily beyond MAX_DP tables), avoiding Cartesian products where the edges allow,
+ * with result sizes estimated from each table's Statistics: a filtered table keeps
+ * rows * selectivity tuples, and a join on a = b keeps 1 / max (distinct (a),
+ * distinct (b)) of the pairs.  Each join gets the cheapest applicable algorithm:
+ * an index join probing a table's key index, a merge join of two tables read in key
+ * order, a hash join, or (for tiny inputs) a nested loop join.
+ */
+public class Query
+{
+    /** The largest number of tables joined in the order found by dynamic programming
+     *  (beyond it the order is found greedily).
+     */
+    private static final int MAX_DP = 12;
+
+    /** The aliases of the tables, and the tables.
+     */
+    private final List <String> aliases = new ArrayList <> ();
+    private final List <Table>  tables  = new ArrayList <> ();
+
+    /** The where conditions (all must hold).
+     */
+    private final List <Expr> where = new ArrayList <> ();
+
+    /** The attributes to return (null for all).
+     */
+    private String [] columns;
+
+    /************************************************************************************
+     * Add a table to the query under its own name.
+     *
+     * @param table  the table
+     * @return  this query
+     */
+    public Query from (Table table)
+    {
+        return from (table, table.getName ());
+    } // from
+
+    /************************************************************************************
+     * Add a table to the query under the given alias.
+     *
+     * @param table  the table
+     * @param alias  the alias qualifying the table's attribute names
+     * @return  this query
+     */
+    public Query from (Table table, String alias)
+    {
+        if (aliases.contains (alias)) throw new IllegalArgumentException ("Query: duplicate alias " + alias);
+        aliases.add (alias);
+        tables.add (table);
+        return this;
+    } // from
+
+    /************************************************************************************
+     * Add a condition the result must satisfy.
+     *
+     * @param condition  the condition
+     * @return  this query
+     */
+    public Query where (Expr condition)
+    {
+        where.add (condition);
+        return this;
+    } // where
+
+    /************************************************************************************
+     * Set the attributes to return.
+     *
+     * @param attributes  the attribute names, separated by spaces
+     * @return  this query
+     */
+    public Query select (String attributes)
+    {
+        columns = attributes.trim ().split (" +");
+        return this;
+    } // select
+
+    /************************************************************************************
+     * Run the query.
+     *
+     * @return  the result (null if a join failed)
+     */
+    public Table execute ()
+    {
+        return plan ().execute ();
+    } // execute
+
+    /************************************************************************************
+     * Describe the plan the query would run, one operator per line.
+     */
+    public String explain ()
+    {
+        return plan ().toString ();
+    } // explain
+
+    /************************************************************************************
+     * Find the cheapest plan for the query (see above).
+     *
+     * @return  the plan
+     */
+    public Plan plan ()
+    {
+        int n = tables.size ();
+        if (n == 0) throw new IllegalArgumentException ("Query: no tables");
+
+        List <List <Expr>> pushed = new ArrayList <> ();
+        for (int i = 0; i < n; i++) pushed.add (new ArrayList <> ());
+        List <Expr.Cmp> edges  = new ArrayList <> ();
+        List <Expr>     others = new ArrayList <> ();
+        for (Expr w : where) {
+            for (Expr c : w.rename (this::qualify).conjuncts ()) {
+                int mask = mask (c);
+                if (Integer.bitCount (mask) <= 1) {
+                    int    i      = (mask == 0) ? 0 : Integer.numberOfTrailingZeros (mask);
+                    String prefix = aliases.get (i) + ".";
+                    pushed.get (i).add (c.rename (a -> a.startsWith (prefix) ? a.substring (prefix.length ()) : a));
+                } else if (Integer.bitCount (mask) == 2 && c instanceof Expr.Cmp && ((Expr.Cmp) c).op.equals ("==") &&
+                           ((Expr.Cmp) c).left instanceof Expr.Col && ((Expr.Cmp) c).right instanceof Expr.Col) {
+                    edges.add ((Expr.Cmp) c);
+                } else {
+                    others.add (c);
+                } // if
+            } // for
+        } // for
+
+        List <Plan> scans = new ArrayList <> ();
+        for (int i = 0; i < n; i++) {
+            List <Expr> f = pushed.get (i);
+            Expr filter = f.isEmpty () ? null : (f.size () == 1) ? f.get (0) : Expr.and (f.toArray (new Expr [0]));
+            scans.add (new Scan (1 << i, aliases.get (i), tables.get (i), filter));
+        } // for
+
+        Plan top = (n <= MAX_DP) ? dynamic (scans, edges, others) : greedy (scans, edges, others);
+        return (columns == null) ? top : new Project (top, qualify (columns));
+    } // plan
+
+    //----------------------------------------------------------------------------------
+    // Join Ordering
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Find the cheapest join of the scans by dynamic programming: the best plan for a
+     * set of tables is the cheapest join of the best plans for two halves of it.  Only
+     * halves linked by an edge are joined, and sets the edges do not connect are
+     * skipped, unless the query itself needs a Cartesian product.
+     */
+    private Plan dynamic (List <Plan> scans, List <Expr.Cmp> edges, List <Expr> others)
+    {
+        int    n    = scans.size ();
+        Plan [] best = new Plan [1 << n];
+        for (int i = 0; i < n; i++) best [1 << i] = scans.get (i);
+
+        boolean product = ! connected (edges, (1 << n) - 1);
+        for (int mask = 1; mask < (1 << n); mask++) {
+            if (Integer.bitCount (mask) < 2 || ! product && ! connected (edges, mask)) continue;
+            for (int pass = 0; pass < 2 && best [mask] == null; pass++) {
+                for (int s = (mask - 1) & mask; s > 0; s = (s - 1) & mask) {
+                    Plan l = best [s], r = best [mask ^ s];
+                    if (l == null || r == null || pass == 0 && ! linked (edges, s, mask ^ s)) continue;
+                    Plan p = join (l, r, edges, others);
+                    if (best [mask] == null || p.cost < best [mask].cost) best [mask] = p;
+                } // for
+            } // for
+        } // for
+        return best [(1 << n) - 1];
+    } // dynamic
+
+    /************************************************************************************
+     * Find a cheap join of the scans greedily, repeatedly making the cheapest join of
+     * two plans (linked by an edge, if any are).
+     */
+    private Plan greedy (List <Plan> scans, List <Expr.Cmp> edges, List <Expr> others)
+    {
+        List <Plan> plans = new ArrayList <> (scans);
+        while (plans.size () > 1) {
+            Plan    best       = null;
+            boolean bestLinked = false;
+            for (Plan l : plans) {
+                for (Plan r : plans) {
+                    if (l == r) continue;
+                    boolean linked = linked (edges, l.mask, r.mask);
+                    if (bestLinked && ! linked) continue;
+                    Plan p = join (l, r, edges, others);
+                    if (best == null || linked && ! bestLinked || p.cost < best.cost) {
+                        best       = p;
+                        bestLinked = linked;
+                    } // if
+                } // for
+            } // for
+            Join j = (Join) best;
+            plans.remove (j.left);
+            plans.remove (j.right);
+            plans.add (best);
+        } // while
+        return plans.get (0);
+    } // greedy
+
+    /************************************************************************************
+     * Return the cheapest way of joining l and r: on the edges between them, with the
+     * other conjuncts they complete tested on the result.
+     */
+    private Plan join (Plan l, Plan r, List <Expr.Cmp> edges, List <Expr> others)
+    {
+        List <String> lcols = new ArrayList <> (), rcols = new ArrayList <> ();
+        for (Expr.Cmp e : edges) {
+            int m1 = mask (e.left), m2 = mask (e.right);
+            String a = ((Expr.Col) e.left).name, b = ((Expr.Col) e.right).name;
+            if ((l.mask & m1) != 0 && (r.mask & m2) != 0) { lcols.add (a); rcols.add (b); }
+            if ((l.mask & m2) != 0 && (r.mask & m1) != 0) { lcols.add (b); rcols.add (a); }
+        } // for
+        if (r instanceof Scan) keyOrder ((Scan) r, rcols, lcols);
+
+        int         both    = l.mask | r.mask;
+        List <Expr> residue = new ArrayList <> ();
+        for (Expr c : others) {
+            int m = mask (c);
+            if ((m & both) == m && (m & l.mask) != m && (m & r.mask) != m) residue.add (c);
+        } // for
+        Expr filter = residue.isEmpty () ? null : (residue.size () == 1) ? residue.get (0)
+                                                : Expr.and (residue.toArray (new Expr [0]));
+
+        String [] lc   = lcols.toArray (new String [0]), rc = rcols.toArray (new String [0]);
+        double    sel  = 1;
+        for (int j = 0; j < lc.length; j++) sel /= Math.max (l.distinct (lc [j]), r.distinct (rc [j]));
+        double    rows = l.rows * r.rows * sel;
+        double    out  = rows * Math.pow (Statistics.GUESS, residue.size ());
+
+        if (lc.length == 0) {
+            return new Join (Join.PRODUCT, l, r, lc, rc, filter, -1, out, l.cost + r.cost + l.rows * r.rows);
+        } // if
+        double small = Math.min (l.rows, r.rows), large = Math.max (l.rows, r.rows);
+        Join   best  = new Join (Join.HASH, l, r, lc, rc, filter, -1, out, l.cost + r.cost + 2 * small + large + rows);
+        double loops = l.cost + r.cost + l.rows * (r.rows + 1);      // r is rescanned per l tuple
+        if (loops < best.cost) best = new Join (Join.NESTED_LOOP, l, r, lc, rc, filter, -1, out, loops);
+
+        int index = (r instanceof Scan) ? ((Scan) r).indexType (rc) : -1;
+        if (index >= 0 && l.cost + 2 * l.rows + rows < best.cost) {
+            best = new Join (Join.INDEX, l, r, lc, rc, filter, index, out, l.cost + 2 * l.rows + rows);
+        } // if
+        if (l instanceof Scan && r instanceof Scan && ((Scan) l).ordered (lc) && ((Scan) r).ordered (rc) &&
+                l.cost + r.cost + l.rows + r.rows + rows < best.cost) {
+            best = new Join (Join.MERGE, l, r, lc, rc, filter, -1, out, l.cost + r.cost + l.rows + r.rows + rows);
+        } // if
+        return best;
+    } // join
+
+    /************************************************************************************
+     * Reorder the join attributes so that r's are in the order of its key, if they are
+     * its key, so that r's key index can be probed.
+     */
+    private static void keyOrder (Scan r, List <String> rcols, List <String> lcols)
+    {
+        List <String> key = Arrays.asList (r.key ());
+        if (rcols.size () != key.size () || ! rcols.containsAll (key)) return;
+        List <String> l = new ArrayList <> ();
+        for (String k : key) l.add (lcols.get (rcols.indexOf (k)));
+        rcols.clear ();
+        rcols.addAll (key);
+        lcols.clear ();
+        lcols.addAll (l);
+    } // keyOrder
+
+    /************************************************************************************
+     * Determine whether the edges among the tables in mask connect them all.
+     */
+    private boolean connected (List <Expr.Cmp> edges, int mask)
+    {
+        int reached = Integer.lowestOneBit (mask);
+        for (boolean grew = true; grew; ) {
+            grew = false;
+            for (Expr.Cmp e : edges) {
+                int m = mask (e);
+                if ((m & mask) == m && (m & reached) != 0 && (m & reached) != m) {
+                    reached |= m;
+                    grew     = true;
+                } // if
+            } // for
+        } // for
+        return reached == mask;
+    } // connected
+
+    /************************************************************************************
+     * Determine whether an edge links the tables in mask s with those in mask r.
+     */
+    private boolean linked (List <Expr.Cmp> edges, int s, int r)
+    {
+        for (Expr.Cmp e : edges) {
+            int m1 = mask (e.left), m2 = mask (e.right);
+            if ((s & m1) != 0 && (r & m2) != 0 || (s & m2) != 0 && (r & m1) != 0) return true;
+        } // for
+        return false;
+    } // linked
+
+    //----------------------------------------------------------------------------------
+    // Name Resolution
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Qualify the attribute name with the alias of the one table that has it.
+     *
+     * @throws IllegalArgumentException  if no table or several tables have it
+     */
+    private String qualify (String name)
+    {
+        int dot = name.indexOf ('.');
+        if (dot > 0 && aliases.contains (name.substring (0, dot))) {
+            Table t = tables.get (aliases.indexOf (name.substring (0, dot)));
+            if (t.col (name.substring (dot + 1)) >= 0) return name;
+            throw new IllegalArgumentException ("Query: unknown attribute " + name);
+        } // if
+        String found = null;
+        for (int i = 0; i < tables.size (); i++) {
+            if (tables.get (i).col (name) < 0) continue;
+            if (found != null) throw new IllegalArgumentException ("Query: ambiguous attribute " + name);
+            found = aliases.get (i) + "." + name;
+        } // for
+        if (found == null) throw new IllegalArgumentException ("Query: unknown attribute " + name);
+        return found;
+    } // qualify
+
+    /************************************************************************************
+     * Qualify each of the attribute names.
+     */
+    private String [] qualify (String [] names)
+    {
+        String [] q = new String [names.length];
+        for (int j = 0; j < names.length; j++) q [j] = qualify (names [j]);
+        return q;
+    } // qualify
+
+    /************************************************************************************
+     * Return the set of tables (as a bit mask over their positions) the qualified
+     * expression refers to.
+     */
+    private int mask (Expr e)
+    {
+        int mask = 0;
+        for (String c : e.columns ()) mask |= 1 << aliases.indexOf (c.substring (0, c.indexOf ('.')));
+        return mask;
+    } // mask
+
+    //----------------------------------------------------------------------------------
+    // Plans
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * This class provides physical plans: trees of operators with their estimated
+     * result sizes and costs (roughly, the number of tuples touched).
+     */
+    public static abstract class Plan
+    {
+        /** The tables the plan covers, as a bit mask over their positions.
+         */
+        final int mask;
+
+        /** The estimated number of result tuples and the estimated cost.
+         */
+        public final double rows, cost;
+
+        Plan (int _mask, double _rows, double _cost)
+        {
+            mask = _mask;
+            rows = _rows;
+            cost = _cost;
+        } // constructor
+
+        /********************************************************************************
+         * Run the plan.
+         *
+         * @return  the result (null if a join failed)
+         */
+        public abstract Table execute ();
+
+        /********************************************************************************
+         * Return the estimated number of distinct values of the (qualified) attribute
+         * in the result.
+         */
+        abstract double distinct (String attr);
+
+        /********************************************************************************
+         * Append the plan to sb, one operator per line, indented below its parent.
+         */
+        abstract void explain (StringBuilder sb, String indent);
+
+        /********************************************************************************
+         * Convert the plan to a string, one operator per line.
+         */
+        public String toString ()
+        {
+            StringBuilder sb = new StringBuilder ();
+            explain (sb, "");
+            return sb.toString ();
+        } // toString
+
+        /********************************************************************************
+         * Return the estimates as a string.
+         */
+        String estimates ()
+        {
+            return String.format (" (rows %.0f, cost %.0f)", rows, cost);
+        } // estimates
+    } // Plan class
+
+    /************************************************************************************
+     * This class provides scans of a table, with the conjuncts pushed down to it.
+     */
+    static class Scan
+           extends Plan
+    {
+        final String     alias;
+        final Table      table;
+        final Expr       filter;
+        final Statistics stats;
+
+        Scan (int mask, String _alias, Table _table, Expr _filter)
+        {
+            this (mask, _alias, _table, _filter, _table.statistics ());
+        } // constructor
+
+        private Scan (int mask, String _alias, Table _table, Expr _filter, Statistics _stats)
+        {
+            super (mask, (_filter == null) ? _stats.rows : _stats.rows * _stats.selectivity (_filter, _table.getAttributes ()),
+                   (_filter == null || _table.explain (_filter).startsWith ("scan")) ? _stats.rows
+                   : 1 + _stats.rows * _stats.selectivity (_filter, _table.getAttributes ()));
+            alias  = _alias;
+            table  = _table;
+            filter = _filter;
+            stats  = _stats;
+        } // constructor
+
+        public Table execute ()
+        {
+            return ((filter == null) ? table : table.select (filter)).rename (alias + ".");
+        } // execute
+
+        double distinct (String attr)
+        {
+            int j = table.col (attr.substring (alias.length () + 1));
+            return Math.max (1, Math.min (stats.distinct (j), rows));
+        } // distinct
+
+        /********************************************************************************
+         * Return the qualified names of the table's key attributes.
+         */
+        String [] key ()
+        {
+            String [] key = table.getKey ();
+            for (int j = 0; j < key.length; j++) key [j] = alias + "." + key [j];
+            return key;
+        } // key
+
+        /********************************************************************************
+         * Return the type of an index of the table that can be probed on the given
+         * attributes (-1 if there is none, or the table is filtered).
+         */
+        int indexType (String [] attrs)
+        {
+            if (filter != null || ! Arrays.equals (attrs, key ())) return -1;
+            for (int type : new int [] { Table.INT_HASH_MAP, Table.EXT_HASH_MAP, Table.TREE_MAP, Table.BP_TREE_MAP }) {
+                if (table.hasIndex (type)) return type;
+            } // for
+            return -1;
+        } // indexType
+
+        /********************************************************************************
+         * Determine whether the table can be read in the order of the given attributes
+         * without sorting (from an ordered index on its key).
+         */
+        boolean ordered (String [] attrs)
+        {
+            return filter == null && Arrays.equals (attrs, key ()) &&
+                   (table.hasIndex (Table.BP_TREE_MAP) || table.hasIndex (Table.TREE_MAP));
+        } // ordered
+
+        void explain (StringBuilder sb, String indent)
+        {
+            sb.append (indent).append ("scan ").append (table.getName ()).append (" as ").append (alias);
+            if (filter != null) sb.append (": ").append (table.explain (filter));
+            sb.append (estimates ()).append ('\n');
+        } // explain
+    } // Scan class
+
+    /************************************************************************************
+     * This class provides joins of two plans.
+     */
+    static class Join
+           extends Plan
+    {
+        static final String NESTED_LOOP = "nested loop join";
+        static final String INDEX       = "index join";
+        static final String HASH        = "hash join";
+        static final String MERGE       = "merge join";
+        static final String PRODUCT     = "product";
+
+        final String    method;
+        final Plan      left, right;
+        final String [] lcols, rcols;
+        final Expr      filter;
+        final int       indexType;
+
+        Join (String _method, Plan _left, Plan _right, String [] _lcols, String [] _rcols, Expr _filter,
+              int _indexType, double rows, double cost)
+        {
+            super (_left.mask | _right.mask, rows, cost);
+            method    = _method;
+            left      = _left;
+            right     = _right;
+            lcols     = _lcols;
+            rcols     = _rcols;
+            filter    = _filter;
+            indexType = _indexType;
+        } // constructor
+
+        public Table execute ()
+        {
+            Table l = left.execute (), r = right.execute ();
+            if (l == null || r == null) return null;
+            String a1 = String.join (" ", lcols), a2 = String.join (" ", rcols);
+            Table  t;
+            switch (method) {
+            case NESTED_LOOP: t = l.nestedLoopJoin (a1, a2, r);     break;
+            case INDEX:       t = l.join (a1, a2, r, indexType);     break;
+            case HASH:        t = l.join (a1, a2, r, 0);             break;
+            case MERGE:       t = l.mergeJoin (a1, a2, r);           break;
+            default:          t = l.product (r);                     break;
+            } // switch
+            return (t == null || filter == null) ? t : t.select (filter.predicate (t.getAttributes ()), 0);
+        } // execute
+
+        double distinct (String attr)
+        {
+            String alias = attr.substring (0, attr.indexOf ('.'));
+            double d     = covers (left, alias) ? left.distinct (attr) : right.distinct (attr);
+            return Math.max (1, Math.min (d, rows));
+        } // distinct
+
+        void explain (StringBuilder sb, String indent)
+        {
+            sb.append (indent).append (method);
+            for (int j = 0; j < lcols.length; j++) {
+                sb.append (j == 0 ? " " : " AND ").append (lcols [j]).append (" = ").append (rcols [j]);
+            } // for
+            if (filter != null) sb.append (", filter ").append (filter);
+            sb.append (estimates ()).append ('\n');
+            left.explain (sb, indent + "  ");
+            right.explain (sb, indent + "  ");
+        } // explain
+
+        /********************************************************************************
+         * Determine whether the plan covers the table with the given alias.
+         */
+        private static boolean covers (Plan p, String alias)
+        {
+            if (p instanceof Scan)    return ((Scan) p).alias.equals (alias);
+            if (p instanceof Project) return covers (((Project) p).child, alias);
+            return covers (((Join) p).left, alias) || covers (((Join) p).right, alias);
+        } // covers
+    } // Join class
+
+    /************************************************************************************
+     * This class provides the projection of a plan onto the selected attributes.
+     */
+    static class Project
+           extends Plan
+    {
+        final Plan      child;
+        final String [] columns;
+
+        Project (Plan _child, String [] _columns)
+        {
+            super (_child.mask, _child.rows, _child.cost + _child.rows);
+            child   = _child;
+            columns = _columns;
+        } // constructor
+
+        public Table execute ()
+        {
+            Table t = child.execute ();
+            if (t == null) return null;
+            t = t.project (String.join (" ", columns));
+
+            // name the result's attributes as SQL does, without their aliases unless
+            // that makes two of them the same
+            String [] names = t.getAttributes ();
+            Set <String> seen = new HashSet <> ();
+            for (int j = 0; j < names.length; j++) {
+                names [j] = names [j].substring (names [j].indexOf ('.') + 1);
+                if (! seen.add (names [j])) return t;
+            } // for
+            return t.rename (names);
+        } // execute
+
+        double distinct (String attr)
+        {
+            return child.distinct (attr);
+        } // distinct
+
+        void explain (StringBuilder sb, String indent)
+        {
+            sb.append (indent).append ("project ").append (String.join (" ", columns)).append (estimates ()).append ('\n');
+            child.explain (sb, indent + "  ");
+        } // explain
+    } // Project class
+
+} // Query class
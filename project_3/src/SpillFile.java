@@ -0,0 +1,164 @@
+
+/****************************************************************************************
+ * @file  SpillFile.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/****************************************************************************************
+ * This class provides temporary files of tuples for operators whose inputs do not fit
+ * in memory (e.g., the partitions of a Grace hash join or the runs of an external
+ * sort).  Tuples are appended sequentially, each as a length followed by its TupleCodec
+ * encoding, and are read back in the same order by iterating the file.  The file lives
+ * in the store directory and is deleted when closed.
+ */
+public class SpillFile
+       implements Iterable <Comparable []>, Closeable
+{
+    /** The path of the file.
+     */
+    private final Path path;
+
+    /** The codec for the tuples.
+     */
+    private final TupleCodec codec;
+
+    /** The stream appending to the file (null once writing is finished).
+     */
+    private DataOutputStream out;
+
+    /** A buffer for encoding a tuple.
+     */
+    private ByteBuffer buf = ByteBuffer.allocate (1024);
+
+    /** The number of tuples and the number of bytes written.
+     */
+    private long count = 0;
+    private long bytes = 0;
+
+    /************************************************************************************
+     * Create an empty spill file for tuples with the given domains.
+     * @param domain  the attribute domains of the tuples
+     * @throws IOException  if the file cannot be created
+     */
+    public SpillFile (Class [] domain)
+           throws IOException
+    {
+        new File (Table.DIR).mkdirs ();
+        codec = new TupleCodec (domain);
+        path  = Files.createTempFile (Paths.get (Table.DIR), "spill", ".tmp");
+        out   = new DataOutputStream (new BufferedOutputStream (Files.newOutputStream (path), 1 << 16));
+    } // constructor
+
+    /************************************************************************************
+     * Append a tuple to the file.
+     * @param t  the tuple to append
+     * @throws IOException  if the tuple cannot be written
+     */
+    public void add (Comparable [] t)
+           throws IOException
+    {
+        int len = codec.size (t);
+        if (buf.capacity () < len) buf = ByteBuffer.allocate (Math.max (len, 2 * buf.capacity ()));
+        buf.clear ();
+        codec.write (buf, t);
+        out.writeInt (len);
+        out.write (buf.array (), 0, len);
+        count++;
+        bytes += 4 + len;
+    } // add
+
+    /************************************************************************************
+     * Return the number of tuples in the file.
+     */
+    public long size ()
+    {
+        return count;
+    } // size
+
+    /************************************************************************************
+     * Return the number of bytes in the file.
+     */
+    public long bytes ()
+    {
+        return bytes;
+    } // bytes
+
+    /************************************************************************************
+     * Finish writing the file, so that it can be read.
+     * @throws IOException  if the file cannot be flushed
+     */
+    public void finish ()
+           throws IOException
+    {
+        if (out == null) return;
+        out.close ();
+        out = null;
+    } // finish
+
+    /************************************************************************************
+     * Return an iterator reading the tuples back in the order they were added.  Writing
+     * is finished first.  I/O errors are thrown as UncheckedIOException.
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        try {
+            finish ();
+            return new Reader (new DataInputStream (new BufferedInputStream (Files.newInputStream (path), 1 << 16)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // iterator
+
+    /************************************************************************************
+     * Close and delete the file.
+     * @throws IOException  if the file cannot be deleted
+     */
+    public void close ()
+           throws IOException
+    {
+        if (out != null) out.close ();
+        out = null;
+        Files.deleteIfExists (path);
+    } // close
+
+    /************************************************************************************
+     * This inner class reads the tuples of the file in order.
+     */
+    private class Reader
+            implements Iterator <Comparable []>
+    {
+        private final DataInputStream in;
+        private long   left = count;
+        private byte [] bytes = new byte [1024];
+
+        Reader (DataInputStream _in)
+        {
+            in = _in;
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            return left > 0;
+        } // hasNext
+
+        public Comparable [] next ()
+        {
+            if (left == 0) throw new NoSuchElementException ();
+            try {
+                int len = in.readInt ();
+                if (bytes.length < len) bytes = new byte [Math.max (len, 2 * bytes.length)];
+                in.readFully (bytes, 0, len);
+                if (--left == 0) in.close ();
+                return codec.read (ByteBuffer.wrap (bytes, 0, len));
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+        } // next
+    } // Reader inner class
+
+} // SpillFile class
@@ -0,0 +1,1031 @@
+
+/****************************************************************************************
+ * @file  Sql.java
+ */
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/****************************************************************************************
+ * This class provides a SQL front-end to the tables: it parses a SELECT statement,
+ * binds its names to the tables registered with it and plans it as a Query, e.g.,
+ *
+ *     Sql sql = new Sql (student, transcript);
+ *     sql.execute ("SELECT name FROM Student JOIN Transcript ON id = studId WHERE crsCode = ?", "cs4370")
+ *
+ * The supported subset is
+ *
+ *     SELECT * | column, ...
+ *     FROM   table [[AS] alias] | (select) [AS] alias, ... [[INNER] JOIN ... [ON condition]] ...
+ *     [WHERE condition]
+ *
+ * where a condition combines comparisons (=, <>, !=, <, <=, >, >=), [NOT] BETWEEN,
+ * [NOT] IN (a list of literals or a subquery) and [NOT] EXISTS (subquery) with AND, OR,
+ * NOT and parentheses.  An operand is a column, a literal (a number, a 'string', NULL,
+ * TRUE or FALSE), a positional parameter (?) or a variable (@name) assigned by
+ * SET @name = literal.  A column [NOT] IN (subquery) or [NOT] EXISTS conjunct of WHERE
+ * runs as a semi-join (anti-join) of its table, and the subquery of an EXISTS may be
+ * correlated with one outer table by equalities, e.g.,
+ *
+ *     SELECT name FROM Student s WHERE NOT EXISTS (SELECT * FROM Transcript t WHERE t.studId = s.id)
+ *
+ * As in MySQL, table and column names are not case-sensitive.  A statement that
+ * cannot be parsed or bound throws an IllegalArgumentException.
+ *
+ * Statements are cached by their normalized text (tokens separated by single spaces,
+ * keywords and names in one case), so a repeated statement is not parsed again, and
+ * so are the plans of statements without subqueries, keyed also by their parameter
+ * values (as values, so 5, 5L and '5' differ), so it is not planned again either.  A
+ * plan reads its tables when it runs, so it stays correct as they change; registering
+ * a table clears the plan cache.
+ */
+public class Sql
+{
+    /** The number of statements and plans to cache.
+     */
+    private static final int CACHE_SIZE = 256;
+
+    /** The tables, by their names in lower case.
+     */
+    private final Map <String, Table> catalog = new HashMap <> ();
+
+    /** The values of the variables, by their names in lower case.
+     */
+    private final Map <String, Comparable> vars = new HashMap <> ();
+
+    /** The parsed statements, by their normalized text.
+     */
+    private final Map <String, Statement> parsed = lru ();
+
+    /** The plans, by their normalized text and parameter values.
+     */
+    private final Map <List <Object>, Query.Plan> plans = lru ();
+
+    /** The number of statements parsed and planned (for testing the caches).
+     */
+    private int parses = 0, plannings = 0;
+
+    /************************************************************************************
+     * Construct a SQL front-end over the given tables.
+     *
+     * @param tables  the tables, known by their names
+     */
+    public Sql (Table... tables)
+    {
+        for (Table t : tables) register (t);
+    } // constructor
+
+    /************************************************************************************
+     * Make the table known by its name, replacing any other table of that name.
+     *
+     * @param table  the table
+     */
+    public synchronized void register (Table table)
+    {
+        catalog.put (table.getName ().toLowerCase (), table);
+        plans.clear ();
+    } // register
+
+    /************************************************************************************
+     * Set the value of a variable, as SET @name = value does.
+     *
+     * @param name   the variable name (with or without the @)
+     * @param value  the value
+     */
+    public synchronized void set (String name, Comparable value)
+    {
+        vars.put (name.replaceFirst ("^@", "").toLowerCase (), value);
+    } // set
+
+    /************************************************************************************
+     * Run the statement.
+     *
+     * #usage sql.execute ("SELECT name FROM Student WHERE id BETWEEN ? AND ?", 100, 200)
+     *
+     * @param sql     the statement (SELECT or SET)
+     * @param params  the values of its ? parameters, in order
+     * @return  the result of a SELECT (null for a SET or if a join failed)
+     */
+    public synchronized Table execute (String sql, Comparable... params)
+    {
+        List <Token> tokens = tokenize (sql);
+        if (! tokens.isEmpty () && tokens.get (tokens.size () - 1).is (";")) tokens.remove (tokens.size () - 1);
+        return execute (tokens, params);
+    } // execute
+
+    /************************************************************************************
+     * Run each statement of a script, e.g., the SET and SELECT statements of a file of
+     * queries, separated by semicolons.
+     *
+     * @param script  the statements
+     * @return  the results of the SELECT statements, in order
+     */
+    public synchronized List <Table> script (String script)
+    {
+        List <Table> results   = new ArrayList <> ();
+        List <Token> statement = new ArrayList <> ();
+        List <Token> tokens    = tokenize (script);
+        tokens.add (new Token (Token.SYMBOL, ";"));
+        for (Token t : tokens) {
+            if (! t.is (";")) {
+                statement.add (t);
+            } else if (! statement.isEmpty ()) {
+                Table result = execute (statement, new Comparable [0]);
+                if (! statement.get (0).is ("SET")) results.add (result);
+                statement = new ArrayList <> ();
+            } // if
+        } // for
+        return results;
+    } // script
+
+    /************************************************************************************
+     * Describe the plan the SELECT statement would run, one operator per line.
+     *
+     * @param sql     the statement
+     * @param params  the values of its ? parameters, in order
+     */
+    public synchronized String explain (String sql, Comparable... params)
+    {
+        List <Token> tokens = tokenize (sql);
+        if (! tokens.isEmpty () && tokens.get (tokens.size () - 1).is (";")) tokens.remove (tokens.size () - 1);
+        Statement s = parse (tokens);
+        if (! (s instanceof Select)) throw new IllegalArgumentException ("Sql: only a SELECT has a plan");
+        return bind ((Select) s, params, new ArrayList <> (), new boolean [] { true }).explain ();
+    } // explain
+
+    /************************************************************************************
+     * Return the statement in normalized form: its tokens separated by single spaces,
+     * with keywords in upper case and names in lower case.
+     *
+     * @param sql  the statement
+     */
+    public static String normalize (String sql)
+    {
+        return normalize (tokenize (sql));
+    } // normalize
+
+    /************************************************************************************
+     * Return the number of statements parsed so far (cache misses).
+     */
+    public int parses ()
+    {
+        return parses;
+    } // parses
+
+    /************************************************************************************
+     * Return the number of plans made so far (cache misses).
+     */
+    public int plannings ()
+    {
+        return plannings;
+    } // plannings
+
+    //----------------------------------------------------------------------------------
+    // Execution
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Run the statement given by its tokens.
+     */
+    private Table execute (List <Token> tokens, Comparable [] params)
+    {
+        String    key = normalize (tokens);
+        Statement s   = parse (tokens);
+        if (s instanceof Assign) {
+            Assign a = (Assign) s;
+            vars.put (a.var, a.value);
+            return null;
+        } // if
+
+        List <Comparable> used   = new ArrayList <> ();
+        boolean []        simple = { true };
+        Query             q      = bind ((Select) s, params, used, simple);
+        if (! simple [0]) return q.execute ();
+
+        List <Object> planKey = Arrays.asList (key, used);          // the values keep their types
+        Query.Plan    plan    = plans.get (planKey);
+        if (plan == null) {
+            plannings++;
+            plan = q.plan ();
+            plans.put (planKey, plan);
+        } // if
+        return plan.execute ();
+    } // execute
+
+    /************************************************************************************
+     * Run a subquery (never from a cached plan, as its tables are read when the outer
+     * statement is bound).
+     */
+    private Table subquery (Select s, Comparable [] params, List <Comparable> used)
+    {
+        return bind (s, params, used, new boolean [] { true }).execute ();
+    } // subquery
+
+    //----------------------------------------------------------------------------------
+    // Binding
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Bind the SELECT statement's names to the tables and its parameters to their
+     * values, giving the query to plan.
+     *
+     * @param s       the statement
+     * @param params  the values of the ? parameters
+     * @param used    collects the parameter values used, in order
+     * @param simple  set to false if the statement has a subquery
+     */
+    private Query bind (Select s, Comparable [] params, List <Comparable> used, boolean [] simple)
+    {
+        return bind (s, params, used, simple, null);
+    } // bind
+
+    /************************************************************************************
+     * Bind the SELECT statement (see bind (s, params, used, simple)).  A conjunct of its
+     * WHERE clause that is [NOT] IN (subquery) or [NOT] EXISTS (subquery) is applied
+     * to the table it filters as a semi- or anti-join (see reduce).  For the subquery of
+     * an EXISTS, corr gives the outer tables: its equalities between an inner and an
+     * outer column are collected there instead, and the inner columns are selected.
+     *
+     * @param corr  the correlation with the outer statement (null for none)
+     */
+    private Query bind (Select s, Comparable [] params, List <Comparable> used, boolean [] simple,
+                        Correlation corr)
+    {
+        Query         q       = new Query ();
+        List <String> aliases = new ArrayList <> ();
+        List <Table>  tables  = new ArrayList <> ();
+        for (From f : s.from) {
+            Table t;
+            if (f.sub != null) {
+                simple [0] = false;
+                t = subquery (f.sub, params, used);
+                if (t == null) throw new IllegalArgumentException ("Sql: subquery " + f.alias + " failed");
+            } else {
+                t = catalog.get (f.table.toLowerCase ());
+                if (t == null) throw new IllegalArgumentException ("Sql: unknown table " + f.table);
+            } // if
+            String alias = (f.alias != null) ? f.alias : t.getName ();
+            for (String a : aliases) {
+                if (a.equalsIgnoreCase (alias)) throw new IllegalArgumentException ("Sql: duplicate alias " + alias);
+            } // for
+            aliases.add (alias);
+            tables.add (t);
+        } // for
+
+        List <Expr> where = new ArrayList <> ();
+        if (s.where != null) {
+            for (Expr c : s.where.conjuncts ()) {
+                if (corr != null && corr.add (c, aliases, tables)) continue;
+                if (reduce (c, aliases, tables, params, used)) simple [0] = false;
+                else where.add (c);
+            } // for
+        } // if
+
+        for (int i = 0; i < tables.size (); i++) q.from (tables.get (i), aliases.get (i));
+        for (Expr c : where) q.where (bind (c, aliases, tables, params, used, simple));
+        if (corr != null && ! corr.inner.isEmpty ()) {
+            q.select (String.join (" ", corr.inner));
+        } else if (s.columns != null) {
+            StringBuilder sb = new StringBuilder ();
+            for (String c : s.columns) sb.append (resolve (c, aliases, tables)).append (' ');
+            q.select (sb.toString ());
+        } // if
+        return q;
+    } // bind
+
+    /************************************************************************************
+     * Reduce a conjunct "column [NOT] IN (subquery)" or "[NOT] EXISTS (subquery)" of the
+     * WHERE clause to a semi-join (or anti-join) of the table it filters with the
+     * subquery's result, replacing that table in tables (see Table.semiJoin).  NOT IN
+     * keeps its SQL null semantics; an EXISTS subquery may refer to the columns of one
+     * outer table, in equalities with its own columns.
+     *
+     * @return  whether the conjunct was reduced
+     */
+    private boolean reduce (Expr c, List <String> aliases, List <Table> tables, Comparable [] params,
+                            List <Comparable> used)
+    {
+        boolean negated = c instanceof Expr.Not;
+        Expr    e       = negated ? ((Expr.Not) c).cond : c;
+
+        if (e instanceof InSelect && ((InSelect) e).expr instanceof Expr.Col) {
+            InSelect in  = (InSelect) e;
+            String   col = resolve (((Expr.Col) in.expr).name, aliases, tables);
+            int      dot = col.indexOf ('.');
+            int      i   = aliases.indexOf (col.substring (0, dot));
+            Table    sub = subquery (in.sub, params, used);
+            if (sub == null) throw new IllegalArgumentException ("Sql: subquery failed");
+            if (sub.getAttributes ().length != 1) throw new IllegalArgumentException ("Sql: IN subquery must return one column");
+            String attr1 = col.substring (dot + 1), attr2 = sub.getAttributes () [0];
+            Table  t     = tables.get (i);
+            tables.set (i, negated ? t.antiJoin (attr1, attr2, sub, true) : t.semiJoin (attr1, attr2, sub));
+            return true;
+        } // if
+
+        if (e instanceof Exists) {
+            Correlation corr = new Correlation (aliases, tables);
+            Table       sub  = bind (((Exists) e).sub, params, used, new boolean [] { true }, corr).execute ();
+            if (sub == null) throw new IllegalArgumentException ("Sql: subquery failed");
+            if (corr.outer.isEmpty ()) {                        // uncorrelated: true or false for every tuple
+                if (sub.tuples.isEmpty () != negated) tables.set (0, tables.get (0).select (t -> false, 0));
+                return true;
+            } // if
+            int           i     = -1;
+            StringBuilder attr1 = new StringBuilder ();
+            for (String col : corr.outer) {
+                int dot = col.indexOf ('.');
+                int j   = aliases.indexOf (col.substring (0, dot));
+                if (i >= 0 && j != i) throw new IllegalArgumentException ("Sql: EXISTS correlated with more than one table");
+                i = j;
+                attr1.append (col.substring (dot + 1)).append (' ');
+            } // for
+            String attr2 = String.join (" ", sub.getAttributes ());
+            Table  t     = tables.get (i);
+            tables.set (i, negated ? t.antiJoin (attr1.toString ().trim (), attr2, sub)
+                                   : t.semiJoin (attr1.toString ().trim (), attr2, sub));
+            return true;
+        } // if
+        return false;
+    } // reduce
+
+    /************************************************************************************
+     * Bind the names and parameters of the condition.
+     */
+    private Expr bind (Expr e, List <String> aliases, List <Table> tables, Comparable [] params,
+                       List <Comparable> used, boolean [] simple)
+    {
+        if (e instanceof Expr.Col) {
+            return Expr.col (resolve (((Expr.Col) e).name, aliases, tables));
+        } else if (e instanceof Expr.Lit) {
+            return Expr.lit (value (((Expr.Lit) e).value, params, used));
+        } else if (e instanceof Expr.Cmp) {
+            Expr.Cmp c = (Expr.Cmp) e;
+            return Expr.compare (bind (c.left, aliases, tables, params, used, simple), c.op,
+                                 bind (c.right, aliases, tables, params, used, simple));
+        } else if (e instanceof Expr.And || e instanceof Expr.Or) {
+            List <Expr> conds = (e instanceof Expr.And) ? ((Expr.And) e).conds : ((Expr.Or) e).conds;
+            Expr []     bound = new Expr [conds.size ()];
+            for (int i = 0; i < bound.length; i++) bound [i] = bind (conds.get (i), aliases, tables, params, used, simple);
+            return (e instanceof Expr.And) ? Expr.and (bound) : Expr.or (bound);
+        } else if (e instanceof Expr.Not) {
+            return Expr.not (bind (((Expr.Not) e).cond, aliases, tables, params, used, simple));
+        } else if (e instanceof Expr.In) {
+            Expr.In           in     = (Expr.In) e;
+            List <Comparable> values = new ArrayList <> ();
+            for (Comparable v : in.values) values.add (value (v, params, used));
+            return new Expr.In (bind (in.expr, aliases, tables, params, used, simple), values);
+        } else if (e instanceof Expr.Between) {
+            Expr.Between b = (Expr.Between) e;
+            return bind (b.expr, aliases, tables, params, used, simple).between (value (b.low, params, used),
+                                                                                  value (b.high, params, used));
+        } else if (e instanceof Exists) {
+            throw new IllegalArgumentException ("Sql: EXISTS is supported only as a conjunct of WHERE");
+        } else if (e instanceof InSelect) {
+            InSelect in = (InSelect) e;
+            simple [0] = false;
+            Table t = subquery (in.sub, params, used);
+            if (t == null) throw new IllegalArgumentException ("Sql: subquery failed");
+            if (t.getAttributes ().length != 1) throw new IllegalArgumentException ("Sql: IN subquery must return one column");
+            List <Comparable> values = new ArrayList <> ();
+            for (Comparable [] tup : t.tuples) values.add (tup [0]);
+            return new Expr.In (bind (in.expr, aliases, tables, params, used, simple), values);
+        } // if
+        throw new IllegalArgumentException ("Sql: cannot bind " + e);
+    } // bind
+
+    /************************************************************************************
+     * Resolve a column name, qualified or not, to "alias.attribute" with the names
+     * spelled as the tables spell them.
+     */
+    private static String resolve (String name, List <String> aliases, List <Table> tables)
+    {
+        String found = find (name, aliases, tables);
+        if (found == null) throw new IllegalArgumentException ("Sql: unknown column " + name);
+        return found;
+    } // resolve
+
+    /************************************************************************************
+     * Resolve a column name as resolve does, returning null if no table has it.
+     */
+    private static String find (String name, List <String> aliases, List <Table> tables)
+    {
+        int    dot   = name.indexOf ('.');
+        String qual  = (dot < 0) ? null : name.substring (0, dot);
+        String attr  = name.substring (dot + 1);
+        String found = null;
+        for (int i = 0; i < tables.size (); i++) {
+            if (qual != null && ! qual.equalsIgnoreCase (aliases.get (i))) continue;
+            for (String a : tables.get (i).getAttributes ()) {
+                if (! a.equalsIgnoreCase (attr)) continue;
+                if (found != null) throw new IllegalArgumentException ("Sql: ambiguous column " + name);
+                found = aliases.get (i) + "." + a;
+            } // for
+        } // for
+        return found;
+    } // find
+
+    /************************************************************************************
+     * Return the value of a literal, or of the parameter it stands for.
+     */
+    private Comparable value (Comparable v, Comparable [] params, List <Comparable> used)
+    {
+        if (! (v instanceof Param)) return v;
+        Param p = (Param) v;
+        if (p.var != null) {
+            if (! vars.containsKey (p.var)) throw new IllegalArgumentException ("Sql: no value for @" + p.var);
+            v = vars.get (p.var);
+        } else {
+            if (p.index >= params.length) throw new IllegalArgumentException ("Sql: no value for parameter " + (p.index + 1));
+            v = params [p.index];
+        } // if
+        used.add (v);
+        return v;
+    } // value
+
+    //----------------------------------------------------------------------------------
+    // Parsing
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Parse the statement given by its tokens, or find it in the cache.
+     */
+    private Statement parse (List <Token> tokens)
+    {
+        String    key = normalize (tokens);
+        Statement s   = parsed.get (key);
+        if (s == null) {
+            parses++;
+            s = new Parser (tokens).statement ();
+            parsed.put (key, s);
+        } // if
+        return s;
+    } // parse
+
+    /************************************************************************************
+     * This class provides a recursive-descent parser for the statements.
+     */
+    private static class Parser
+    {
+        private final List <Token> tokens;
+        private int                pos    = 0;
+        private int                params = 0;
+
+        Parser (List <Token> _tokens)
+        {
+            tokens = _tokens;
+        } // constructor
+
+        /** statement := SET @var = literal | select */
+        Statement statement ()
+        {
+            Statement s;
+            if (accept ("SET")) {
+                Token v = next ();
+                if (v.kind != Token.VAR) throw error ("a variable", v);
+                expect ("=");
+                Comparable value = literal ();
+                if (value instanceof Param) throw error ("a literal", tokens.get (pos - 1));
+                s = new Assign (v.text.toLowerCase (), value);
+            } else {
+                s = select ();
+            } // if
+            if (pos < tokens.size ()) throw error ("the end", peek ());
+            return s;
+        } // statement
+
+        /** select := SELECT columns FROM from (, from | [INNER] JOIN from [ON cond])* [WHERE cond] */
+        Select select ()
+        {
+            expect ("SELECT");
+            List <String> columns = null;
+            if (! accept ("*")) {
+                columns = new ArrayList <> ();
+                do columns.add (column ()); while (accept (","));
+            } // if
+
+            expect ("FROM");
+            List <From> from  = new ArrayList <> ();
+            List <Expr> conds = new ArrayList <> ();
+            from.add (from ());
+            while (true) {
+                if (accept (",")) {
+                    from.add (from ());
+                } else if (peek ().is ("JOIN") || peek ().is ("INNER")) {
+                    accept ("INNER");
+                    expect ("JOIN");
+                    from.add (from ());
+                    if (accept ("ON")) conds.add (or ());
+                } else {
+                    break;
+                } // if
+            } // while
+            if (accept ("WHERE")) conds.add (or ());
+
+            Expr where = conds.isEmpty () ? null : (conds.size () == 1) ? conds.get (0)
+                                                                     : Expr.and (conds.toArray (new Expr [0]));
+            return new Select (columns, from, where);
+        } // select
+
+        /** from := table [[AS] alias] | ( select ) [AS] alias */
+        From from ()
+        {
+            if (accept ("(")) {
+                Select sub = select ();
+                expect (")");
+                accept ("AS");
+                return new From (null, sub, name ("an alias"));
+            } // if
+            String table = name ("a table");
+            String alias = null;
+            if (accept ("AS")) alias = name ("an alias");
+            else if (peek ().kind == Token.NAME && ! keyword (peek ())) alias = next ().text;
+            return new From (table, null, alias);
+        } // from
+
+        /** or := and (OR and)* */
+        Expr or ()
+        {
+            List <Expr> conds = new ArrayList <> ();
+            do conds.add (and ()); while (accept ("OR"));
+            return (conds.size () == 1) ? conds.get (0) : Expr.or (conds.toArray (new Expr [0]));
+        } // or
+
+        /** and := not (AND not)* */
+        Expr and ()
+        {
+            List <Expr> conds = new ArrayList <> ();
+            do conds.add (not ()); while (accept ("AND"));
+            return (conds.size () == 1) ? conds.get (0) : Expr.and (conds.toArray (new Expr [0]));
+        } // and
+
+        /** not := NOT not | EXISTS (select) | ( or ) | operand (op operand | [NOT] BETWEEN .. AND .. | [NOT] IN (..)) */
+        Expr not ()
+        {
+            if (accept ("NOT")) return Expr.not (not ());
+            if (accept ("EXISTS")) {
+                expect ("(");
+                Expr e = new Exists (select ());
+                expect (")");
+                return e;
+            } // if
+            if (accept ("(")) {
+                Expr e = or ();
+                expect (")");
+                return e;
+            } // if
+
+            Expr  left = operand ();
+            Token op   = next ();
+            switch ((op.kind == Token.SYMBOL) ? op.text : "") {
+            case "=":  return Expr.compare (left, "==", operand ());
+            case "<>":
+            case "!=": return Expr.compare (left, "!=", operand ());
+            case "<": case "<=": case ">": case ">=":
+                return Expr.compare (left, op.text, operand ());
+            } // switch
+
+            boolean negated = op.is ("NOT");
+            if (negated) op = next ();
+            Expr e;
+            if (op.is ("BETWEEN")) {
+                Comparable low = literal ();
+                expect ("AND");
+                e = new Expr.Between (left, low, literal ());
+            } else if (op.is ("IN")) {
+                expect ("(");
+                if (peek ().is ("SELECT")) {
+                    e = new InSelect (left, select ());
+                } else {
+                    List <Comparable> values = new ArrayList <> ();
+                    do values.add (literal ()); while (accept (","));
+                    e = new Expr.In (left, values);
+                } // if
+                expect (")");
+            } else {
+                throw error ("a comparison, BETWEEN or IN", op);
+            } // if
+            return negated ? Expr.not (e) : e;
+        } // not
+
+        /** operand := column | literal */
+        Expr operand ()
+        {
+            return (peek ().kind == Token.NAME && ! keyword (peek ())) ? Expr.col (column ())
+                                                                     : Expr.lit (literal ());
+        } // operand
+
+        /** column := name [. name] */
+        String column ()
+        {
+            String name = name ("a column");
+            return accept (".") ? name + "." + name ("a column") : name;
+        } // column
+
+        /** literal := number | string | NULL | TRUE | FALSE | ? | @var */
+        Comparable literal ()
+        {
+            boolean minus = accept ("-");
+            Token   t     = next ();
+            switch (t.kind) {
+            case Token.NUMBER: return number (minus ? "-" + t.text : t.text);
+            case Token.STRING: if (! minus) return t.text; break;
+            case Token.PARAM:  if (! minus) return new Param (params++, null); break;
+            case Token.VAR:    if (! minus) return new Param (-1, t.text.toLowerCase ()); break;
+            case Token.NAME:
+                if (minus) break;
+                if (t.is ("NULL"))  return null;
+                if (t.is ("TRUE"))  return true;
+                if (t.is ("FALSE")) return false;
+            } // switch
+            throw error ("a value", t);
+        } // literal
+
+        /** Return a name that is not a keyword. */
+        String name (String what)
+        {
+            Token t = next ();
+            if (t.kind != Token.NAME || keyword (t)) throw error (what, t);
+            return t.text;
+        } // name
+
+        Token peek ()
+        {
+            return (pos < tokens.size ()) ? tokens.get (pos) : Token.END;
+        } // peek
+
+        Token next ()
+        {
+            Token t = peek ();
+            if (pos < tokens.size ()) pos++;
+            return t;
+        } // next
+
+        boolean accept (String text)
+        {
+            if (! peek ().is (text)) return false;
+            pos++;
+            return true;
+        } // accept
+
+        void expect (String text)
+        {
+            if (! accept (text)) throw error (text, peek ());
+        } // expect
+
+        IllegalArgumentException error (String expected, Token found)
+        {
+            return new IllegalArgumentException ("Sql: expected " + expected + " at " +
+                                                 (found == Token.END ? "the end" : "'" + found.text + "'"));
+        } // error
+    } // Parser class
+
+    /************************************************************************************
+     * Return the value of a numeric literal: an Integer if it fits, else a Long, or a
+     * Double if it has a fraction or exponent.
+     */
+    private static Comparable number (String text)
+    {
+        if (text.matches ("-?[0-9]+")) {
+            try {
+                long v = Long.parseLong (text);
+                return (v == (int) v) ? (Comparable) (int) v : (Comparable) v;
+            } catch (NumberFormatException ex) {
+                // too long for a Long
+            } // try
+        } // if
+        return Double.parseDouble (text);
+    } // number
+
+    //----------------------------------------------------------------------------------
+    // Tokenizing
+    //----------------------------------------------------------------------------------
+
+    /** The keywords, which cannot be names.
+     */
+    private static final Set <String> KEYWORDS = new HashSet <> (Arrays.asList (
+        "SELECT", "FROM", "WHERE", "JOIN", "INNER", "ON", "AS", "AND", "OR", "NOT", "IN",
+        "EXISTS", "BETWEEN", "SET", "NULL", "TRUE", "FALSE"));
+
+    private static boolean keyword (Token t)
+    {
+        return t.kind == Token.NAME && KEYWORDS.contains (t.text.toUpperCase ());
+    } // keyword
+
+    /************************************************************************************
+     * Split the text into tokens, skipping white space and -- and /* comments.
+     */
+    private static List <Token> tokenize (String sql)
+    {
+        List <Token> tokens = new ArrayList <> ();
+        int          n      = sql.length ();
+        for (int i = 0; i < n; ) {
+            char c = sql.charAt (i);
+            if (Character.isWhitespace (c)) {
+                i++;
+            } else if (sql.startsWith ("--", i) || c == '#') {
+                while (i < n && sql.charAt (i) != '\n') i++;
+            } else if (sql.startsWith ("/*", i)) {
+                int end = sql.indexOf ("*/", i + 2);
+                i = (end < 0) ? n : end + 2;
+            } else if (Character.isLetter (c) || c == '_' || c == '@') {
+                int start = i++;
+                while (i < n && (Character.isLetterOrDigit (sql.charAt (i)) || sql.charAt (i) == '_')) i++;
+                tokens.add ((c == '@') ? new Token (Token.VAR, sql.substring (start + 1, i))
+                                       : new Token (Token.NAME, sql.substring (start, i)));
+            } else if (Character.isDigit (c) || (c == '.' && i + 1 < n && Character.isDigit (sql.charAt (i + 1)))) {
+                int start = i;
+                while (i < n && (Character.isDigit (sql.charAt (i)) || sql.charAt (i) == '.')) i++;
+                if (i < n && (sql.charAt (i) == 'e' || sql.charAt (i) == 'E')) {
+                    i++;
+                    if (i < n && (sql.charAt (i) == '+' || sql.charAt (i) == '-')) i++;
+                    while (i < n && Character.isDigit (sql.charAt (i))) i++;
+                } // if
+                tokens.add (new Token (Token.NUMBER, sql.substring (start, i)));
+            } else if (c == '\'' || c == '"' || c == '`') {
+                StringBuilder sb = new StringBuilder ();
+                for (i++; ; i++) {
+                    if (i >= n) throw new IllegalArgumentException ("Sql: unterminated " + c);
+                    if (sql.charAt (i) == c) {
+                        if (i + 1 < n && sql.charAt (i + 1) == c) i++;
+                        else break;
+                    } // if
+                    sb.append (sql.charAt (i));
+                } // for
+                i++;
+                tokens.add (new Token ((c == '\'') ? Token.STRING : Token.NAME, sb.toString ()));
+            } else if (c == '?') {
+                tokens.add (new Token (Token.PARAM, "?"));
+                i++;
+            } else {
+                String op = (i + 1 < n) ? sql.substring (i, i + 2) : "";
+                if (op.equals ("<=") || op.equals (">=") || op.equals ("<>") || op.equals ("!=")) {
+                    tokens.add (new Token (Token.SYMBOL, op));
+                    i += 2;
+                } else if ("=<>(),.*;-".indexOf (c) >= 0) {
+                    tokens.add (new Token (Token.SYMBOL, String.valueOf (c)));
+                    i++;
+                } else {
+                    throw new IllegalArgumentException ("Sql: unexpected character '" + c + "'");
+                } // if
+            } // if
+        } // for
+        return tokens;
+    } // tokenize
+
+    /************************************************************************************
+     * Return the tokens in normalized form (see normalize (String)).
+     */
+    private static String normalize (List <Token> tokens)
+    {
+        StringBuilder sb = new StringBuilder ();
+        for (Token t : tokens) {
+            if (sb.length () > 0) sb.append (' ');
+            switch (t.kind) {
+            case Token.NAME:   sb.append (keyword (t) ? t.text.toUpperCase () : t.text.toLowerCase ()); break;
+            case Token.STRING: sb.append ('\'').append (t.text.replace ("'", "''")).append ('\''); break;
+            case Token.VAR:    sb.append ('@').append (t.text.toLowerCase ()); break;
+            default:           sb.append (t.text);
+            } // switch
+        } // for
+        return sb.toString ();
+    } // normalize
+
+    /************************************************************************************
+     * Return a map that keeps the CACHE_SIZE entries most recently used.
+     */
+    private static <K, V> Map <K, V> lru ()
+    {
+        return new LinkedHashMap <K, V> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry <K, V> eldest)
+            {
+                return size () > CACHE_SIZE;
+            } // removeEldestEntry
+        };
+    } // lru
+
+    //----------------------------------------------------------------------------------
+    // Syntax Classes
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * This class provides tokens.
+     */
+    private static class Token
+    {
+        static final int NAME = 0, NUMBER = 1, STRING = 2, VAR = 3, PARAM = 4, SYMBOL = 5;
+        static final Token END = new Token (SYMBOL, "");
+
+        final int    kind;
+        final String text;
+
+        Token (int _kind, String _text)
+        {
+            kind = _kind;
+            text = _text;
+        } // constructor
+
+        /** Return whether this is the given keyword or symbol. */
+        boolean is (String s)
+        {
+            return (kind == NAME) ? text.equalsIgnoreCase (s) : kind == SYMBOL && text.equals (s);
+        } // is
+    } // Token class
+
+    /** A parsed statement. */
+    private interface Statement { }
+
+    /************************************************************************************
+     * This class provides parsed SET statements.
+     */
+    private static class Assign
+            implements Statement
+    {
+        final String     var;
+        final Comparable value;
+
+        Assign (String _var, Comparable _value)
+        {
+            var   = _var;
+            value = _value;
+        } // constructor
+    } // Assign class
+
+    /************************************************************************************
+     * This class provides parsed SELECT statements.  Their names are as written and their
+     * parameters are Params until they are bound.
+     */
+    private static class Select
+            implements Statement
+    {
+        final List <String> columns;        // null for *
+        final List <From>   from;
+        final Expr          where;          // null if none
+
+        Select (List <String> _columns, List <From> _from, Expr _where)
+        {
+            columns = _columns;
+            from    = _from;
+            where   = _where;
+        } // constructor
+    } // Select class
+
+    /************************************************************************************
+     * This class provides the tables of a FROM clause: named tables or subqueries.
+     */
+    private static class From
+    {
+        final String table;                 // null for a subquery
+        final Select sub;                   // null for a named table
+        final String alias;                 // null for none
+
+        From (String _table, Select _sub, String _alias)
+        {
+            table = _table;
+            sub   = _sub;
+            alias = _alias;
+        } // constructor
+    } // From class
+
+    /************************************************************************************
+     * This class provides the parameters (? or @var) of a parsed statement, standing in
+     * for their values among its literals until it is bound.
+     */
+    private static class Param
+            implements Comparable <Object>
+    {
+        final int    index;                 // the position of a ?
+        final String var;                   // the name of a @var, else null
+
+        Param (int _index, String _var)
+        {
+            index = _index;
+            var   = _var;
+        } // constructor
+
+        public int compareTo (Object o)
+        {
+            throw new UnsupportedOperationException ("Sql: unbound parameter");
+        } // compareTo
+
+        public String toString ()
+        {
+            return (var != null) ? "@" + var : "?";
+        } // toString
+    } // Param class
+
+    /************************************************************************************
+     * This class provides IN (subquery) conditions, replaced by an IN list of the
+     * subquery's values when the statement is bound.
+     */
+    private static class InSelect
+            extends Expr
+    {
+        final Expr   expr;
+        final Select sub;
+
+        InSelect (Expr _expr, Select _sub)
+        {
+            expr = _expr;
+            sub  = _sub;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            throw new UnsupportedOperationException ("Sql: unbound subquery");
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            throw new UnsupportedOperationException ("Sql: unbound subquery");
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+            expr.addColumns (names);
+        } // addColumns
+
+        public String toString ()
+        {
+            return expr + " IN (SELECT ...)";
+        } // toString
+    } // InSelect class
+
+    /************************************************************************************
+     * This class provides EXISTS (subquery) conditions, applied as semi-joins when the
+     * statement is bound.
+     */
+    private static class Exists
+            extends Expr
+    {
+        final Select sub;
+
+        Exists (Select _sub)
+        {
+            sub = _sub;
+        } // constructor
+
+        public Function <Comparable [], Comparable> bind (String [] attribute)
+        {
+            throw new UnsupportedOperationException ("Sql: unbound subquery");
+        } // bind
+
+        public Expr rename (UnaryOperator <String> f)
+        {
+            throw new UnsupportedOperationException ("Sql: unbound subquery");
+        } // rename
+
+        void addColumns (Set <String> names)
+        {
+        } // addColumns
+
+        public String toString ()
+        {
+            return "EXISTS (SELECT ...)";
+        } // toString
+    } // Exists class
+
+    /************************************************************************************
+     * This class provides the correlation of an EXISTS subquery with the tables of the
+     * outer statement: the pairs of inner and outer columns it equates.
+     */
+    private static class Correlation
+    {
+        final List <String> aliases;                    // of the outer tables
+        final List <Table>  tables;
+        final List <String> inner = new ArrayList <> ();
+        final List <String> outer = new ArrayList <> ();
+
+        Correlation (List <String> _aliases, List <Table> _tables)
+        {
+            aliases = _aliases;
+            tables  = _tables;
+        } // constructor
+
+        /********************************************************************************
+         * Add the conjunct if it equates an inner column (of the given tables) with an
+         * outer one, returning whether it does.
+         */
+        boolean add (Expr c, List <String> innerAliases, List <Table> innerTables)
+        {
+            if (! (c instanceof Expr.Cmp)) return false;
+            Expr.Cmp cmp = (Expr.Cmp) c;
+            if (! cmp.op.equals ("==") || ! (cmp.left instanceof Expr.Col) || ! (cmp.right instanceof Expr.Col)) return false;
+            String left  = ((Expr.Col) cmp.left).name, right = ((Expr.Col) cmp.right).name;
+            String in1   = find (left, innerAliases, innerTables), in2 = find (right, innerAliases, innerTables);
+            String out1  = (in1 == null) ? find (left, aliases, tables) : null;
+            String out2  = (in2 == null) ? find (right, aliases, tables) : null;
+            if (in1 != null && out2 != null) {
+                inner.add (in1);
+                outer.add (out2);
+            } else if (in2 != null && out1 != null) {
+                inner.add (in2);
+                outer.add (out1);
+            } else {
+                return false;
+            } // if
+            return true;
+        } // add
+    } // Correlation class
+
+} // Sql class
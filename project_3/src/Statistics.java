@@ -0,0 +1,178 @@
+
+/****************************************************************************************
+ * @file  Statistics.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides the statistics a query optimizer needs about a table: its number
+ * of tuples and, per attribute, the number of distinct values and the smallest and
+ * largest value.  From them it estimates the selectivity of a condition (the fraction
+ * of the tuples satisfying it) in the usual way: 1 / distinct for equality, linear
+ * interpolation between the smallest and largest value for a numeric range, products
+ * for AND, and fixed guesses where the statistics say nothing.  Get a table's
+ * statistics with Table.statistics.
+ */
+public class Statistics
+{
+    /** The selectivity assumed for a condition the statistics cannot estimate.
+     */
+    static final double GUESS = 1.0 / 3;
+
+    /** The number of tuples.
+     */
+    public final int rows;
+
+    /** The number of distinct (non-null) values of each attribute.
+     */
+    private final int [] distinct;
+
+    /** The smallest and largest value of each attribute (null if it has none).
+     */
+    private final Comparable [] min, max;
+
+    /************************************************************************************
+     * Compute the statistics of the tuples in one pass.
+     *
+     * @param tuples  the tuples
+     * @param width   the number of attributes
+     */
+    @SuppressWarnings ("unchecked")
+    Statistics (List <Comparable []> tuples, int width)
+    {
+        List <Set <Comparable>> values = new ArrayList <> ();
+        for (int j = 0; j < width; j++) values.add (new HashSet <> ());
+        min = new Comparable [width];
+        max = new Comparable [width];
+
+        int n = 0;
+        for (Comparable [] t : tuples) {
+            n++;
+            for (int j = 0; j < width; j++) {
+                Comparable v = t [j];
+                if (v == null || ! values.get (j).add (v)) continue;
+                if (min [j] == null || v.compareTo (min [j]) < 0) min [j] = v;
+                if (max [j] == null || v.compareTo (max [j]) > 0) max [j] = v;
+            } // for
+        } // for
+        rows     = n;
+        distinct = new int [width];
+        for (int j = 0; j < width; j++) distinct [j] = values.get (j).size ();
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of distinct values of the attribute at position j.
+     *
+     * @param j  the position of the attribute
+     */
+    public int distinct (int j)
+    {
+        return distinct [j];
+    } // distinct
+
+    /************************************************************************************
+     * Return the smallest value of the attribute at position j (null if none).
+     *
+     * @param j  the position of the attribute
+     */
+    public Comparable min (int j)
+    {
+        return min [j];
+    } // min
+
+    /************************************************************************************
+     * Return the largest value of the attribute at position j (null if none).
+     *
+     * @param j  the position of the attribute
+     */
+    public Comparable max (int j)
+    {
+        return max [j];
+    } // max
+
+    /************************************************************************************
+     * Estimate the fraction of the tuples satisfying the condition.
+     *
+     * @param cond       the condition
+     * @param attribute  the attribute names of the tuples
+     * @return  the estimated selectivity, between 0 and 1
+     */
+    public double selectivity (Expr cond, String [] attribute)
+    {
+        if (cond instanceof Expr.And) {
+            double s = 1;
+            for (Expr c : ((Expr.And) cond).conds) s *= selectivity (c, attribute);
+            return s;
+        } else if (cond instanceof Expr.Or) {
+            double s = 0;
+            for (Expr c : ((Expr.Or) cond).conds) s += (1 - s) * selectivity (c, attribute);
+            return s;
+        } else if (cond instanceof Expr.Not) {
+            return 1 - selectivity (((Expr.Not) cond).cond, attribute);
+        } else if (cond instanceof Expr.In) {
+            Expr.In in = (Expr.In) cond;
+            int     j   = position (in.expr, attribute);
+            return (j < 0) ? GUESS : Math.min (1, in.values.size () * equality (j));
+        } else if (cond instanceof Expr.Between) {
+            Expr.Between b = (Expr.Between) cond;
+            int          j = position (b.expr, attribute);
+            return (j < 0) ? GUESS : range (j, b.low, b.high);
+        } else if (cond instanceof Expr.Cmp && ((Expr.Cmp) cond).normalized () != null) {
+            Expr.Cmp   c = ((Expr.Cmp) cond).normalized ();
+            int        j = position (c.left, attribute);
+            Comparable v = ((Expr.Lit) c.right).value;
+            if (j < 0 || v == null) return (v == null) ? 0 : GUESS;
+            switch (c.op) {
+            case "==": return equality (j);
+            case "!=": return 1 - equality (j);
+            case "<": case "<=": return range (j, null, v);
+            default:             return range (j, v, null);
+            } // switch
+        } else if (cond instanceof Expr.Cmp && ((Expr.Cmp) cond).op.equals ("==")) {
+            Expr.Cmp c  = (Expr.Cmp) cond;
+            int      j1 = position (c.left, attribute), j2 = position (c.right, attribute);
+            if (j1 >= 0 && j2 >= 0) return 1.0 / Math.max (1, Math.max (distinct [j1], distinct [j2]));
+        } // if
+        return GUESS;
+    } // selectivity
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the selectivity of the attribute at position j equaling a value.
+     */
+    private double equality (int j)
+    {
+        return 1.0 / Math.max (1, distinct [j]);
+    } // equality
+
+    /************************************************************************************
+     * Return the selectivity of the attribute at position j lying between low and high
+     * (a null bound is open), interpolating if the attribute is numeric.
+     */
+    private double range (int j, Comparable low, Comparable high)
+    {
+        if (! (min [j] instanceof Number) || (low != null && ! (low instanceof Number)) ||
+                                            (high != null && ! (high instanceof Number))) return GUESS;
+        double lo   = ((Number) min [j]).doubleValue (), hi = ((Number) max [j]).doubleValue ();
+        double from = (low == null) ? lo : Math.max (lo, ((Number) low).doubleValue ());
+        double to   = (high == null) ? hi : Math.min (hi, ((Number) high).doubleValue ());
+        if (to < from) return 0;
+        return (hi == lo) ? 1 : Math.min (1, (to - from) / (hi - lo) + equality (j));
+    } // range
+
+    /************************************************************************************
+     * Return the position of the attribute the expression refers to (-1 if it is not a
+     * reference to one of the attributes).
+     */
+    private static int position (Expr e, String [] attribute)
+    {
+        if (! (e instanceof Expr.Col)) return -1;
+        for (int j = 0; j < attribute.length; j++) if (attribute [j].equals (((Expr.Col) e).name)) return j;
+        return -1;
+    } // position
+
+} // Statistics class
@@ -6,7 +6,10 @@
  */
 
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -29,16 +32,34 @@ public class Table
 
 	/** Relative path for storage directory
      */
-    private static final String DIR = "store" + File.separator;
+    static final String DIR = "store" + File.separator;
 
     /** Filename extension for database files
      */
     private static final String EXT = ".dbf";
 
+    /** Filename extension for write-ahead log files
+     */
+    private static final String LOG = ".wal";
+
+    /** Index types, used to configure which indexes a table maintains (setIndexes) and
+     *  to choose the index an operation uses (indexType).
+     */
+    public static final int TREE_MAP     = 0;
+    public static final int BP_TREE_MAP  = 1;
+    public static final int LIN_HASH_MAP = 2;
+    public static final int EXT_HASH_MAP = 3;
+    public static final int INT_HASH_MAP = 4;
+
     /** Counter for naming temporary tables.
      */
     private static int count = 0;
 
+    /** The memory budget (in bytes) for the in-memory state of an operator, e.g., the
+     *  hash table of a join.  Operators that would exceed it spill to files in store/.
+     */
+    private static long memoryBudget = 64L << 20;
+
     /** Table name.
      */
     private final String name;
@@ -54,7 +75,8 @@ public class Table
      */
     private final Class [] domain;
 
-    /** Collection of tuples (data storage).
+    /** Collection of tuples (data storage): an ArrayList for row storage or a
+     *  ColumnStore for column storage.
      */
     public final List <Comparable []> tuples;
 
@@ -62,13 +84,40 @@ public class Table
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple number).
+    /** Indexes into tuples (map key to tuple), one per index type.  An index is null
+     *  when the table does not maintain it (see setIndexes).
      */
-    private final Map <KeyType, Comparable []> index;
-    public final BpTreeMap <KeyType, Comparable[]> bpIndex;
-    private final ExtHashMap <KeyType, Comparable[]> extIndex;
-    private final LinHashMap <KeyType, Comparable[]> linIndex;
-    
+    private Map <KeyType, Comparable []> index;
+    public SortedMap <KeyType, Comparable[]> bpIndex;
+    private Map <KeyType, Comparable[]> extIndex;
+    private Map <KeyType, Comparable[]> linIndex;
+
+    /** Index on a primary key that is a single Integer attribute, keyed by primitive int
+     *  (null if the key is not such an attribute or the index is not maintained).
+     */
+    private IntHashMap <Comparable []> intIndex;
+
+    /** The number of buffer pool frames of the B+Tree index when it is on disk.
+     */
+    private int diskFrames;
+
+    /** Whether an index that is not maintained is built (and then maintained) the first
+     *  time an operation asks for it.
+     */
+    private boolean lazy;
+
+    /** The positions of the key attributes (found on first use).
+     */
+    private transient int [] keyCols;
+
+    /** Write-ahead log of inserts since the last save (null if not logging).
+     */
+    private transient WriteAheadLog log;
+
+    /** Statistics on the tuples (computed on first use, and again once inserts have
+     *  changed the number of tuples).
+     */
+    private transient Statistics stats;
 
     //----------------------------------------------------------------------------------
     // Constructors
@@ -83,21 +132,38 @@ public class Table
      * @param _key        the primary key
      */
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    {
+        this (_name, _attribute, _domain, _key, false);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, choosing between row
+     * storage (a list of tuples) and column storage (one primitive vector per attribute,
+     * without indexes; see setIndexes).
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param columnar    whether to store the tuples column-wise (see ColumnStore)
+     */
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                  boolean columnar)
     {
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = new TreeMap <KeyType, Comparable []> ();
-        bpIndex   = new BpTreeMap <KeyType, Comparable []> (KeyType.class, Comparable [].class);
-        extIndex  = new ExtHashMap <KeyType, Comparable []> (KeyType.class, Comparable [].class, 4);
-        linIndex  = new LinHashMap <KeyType, Comparable []> (KeyType.class, Comparable [].class, 4);
-        
+        tuples    = columnar ? new ColumnStore (_domain) : new ArrayList <> ();
+        index     = columnar ? null : new TreeMap <KeyType, Comparable []> ();
+        intIndex  = (! columnar && intKeyCol () >= 0) ? new IntHashMap <> () : null;
+        lazy      = ! columnar;
     } // constructor
 
     /************************************************************************************
      * Construct a table from the meta-data specifications and data in _tuples list.
+     * Such (derived) tables start without indexes; one is built if an operation needs it,
+     * so _key must be unique in _tuples.
      *
      * @param _name       the name of the relation
      * @param _attribute  the string containing attributes names
@@ -113,10 +179,7 @@ public class Table
         domain    = _domain;
         key       = _key;
         tuples    = _tuples;
-        index     = new TreeMap <KeyType, Comparable []> ();
-        bpIndex   = new BpTreeMap <KeyType, Comparable []> (KeyType.class, Comparable [].class);
-        extIndex  = new ExtHashMap <KeyType, Comparable []> (KeyType.class, Comparable [].class, 4);
-        linIndex  = new LinHashMap <KeyType, Comparable []> (KeyType.class, Comparable [].class, 4);
+        lazy      = ! (_tuples instanceof ColumnStore);
     } // constructor
 
     /************************************************************************************
@@ -133,10 +196,36 @@ public class Table
         //out.println ("DDL> create table " + name + " (" + attributes + ")");
     } // constructor
 
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, choosing between row
+     * and column storage.
+     *
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param columnar    whether to store the tuples column-wise (see ColumnStore)
+     */
+    public Table (String name, String attributes, String domains, String _key, boolean columnar)
+    {
+        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "), columnar);
+    } // constructor
+
     //----------------------------------------------------------------------------------
     // Public Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Return a scan of this table, the leaf of a pipeline of operators (see Operator).
+     *
+     * #usage movie.scan ().select (t -> t[1].equals (1977)).project ("title")
+     *
+     * @return  an operator producing this table's tuples
+     */
+    public Operator scan ()
+    {
+        return new Operator.Scan (attribute, domain, tuples);
+    } // scan
+
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
      * Check whether the original key is included in the projection.
@@ -153,19 +242,73 @@ public class Table
         Class []  colDomain = extractDom (match (attrs), domain);
         String [] newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
 
+        if (isColumnar ()) {
+            ColumnStore store = (ColumnStore) tuples;
+            return new Table (name + count++, attrs, colDomain, newKey, store.project (match (attrs)));
+        } // if
+
         List <Comparable []> rows = new ArrayList <> ();
+        int []               cols = match (attrs);
 
         // Implemented by Tiffany Chong
         
         tuples.stream ().forEachOrdered( (tuple) -> {// look through tuples
-        	rows.add( extract (tuple, attrs)); // extract (see private method) desired content/columns from tuples and add these to rows (result)
+        	rows.add( extract (tuple, cols)); // extract (see private method) desired content/columns from tuples and add these to rows (result)
         });   
 
         return new Table (name + count++, attrs, colDomain, newKey, rows);
     } // project
 
     /************************************************************************************
-     * Select the tuples satisfying the given predicate (Boolean function).
+     * Return this table with each attribute name prefixed, e.g., "s." to qualify them
+     * with a table alias.  The result shares this table's tuples and indexes, so it
+     * costs nothing to make.
+     *
+     * #usage student.rename ("s.")
+     *
+     * @param prefix  the prefix for the attribute names
+     * @return  the renamed table
+     */
+    public Table rename (String prefix)
+    {
+        String [] attrs = new String [attribute.length];
+        for (int j = 0; j < attrs.length; j++) attrs [j] = prefix + attribute [j];
+        return rename (attrs);
+    } // rename
+
+    /************************************************************************************
+     * Return this table with its attributes given new names, position by position.  The
+     * result shares this table's tuples and indexes, so it costs nothing to make.
+     *
+     * #usage student.rename (new String [] { "sid", "sname", "addr", "st" })
+     *
+     * @param names  the new attribute names
+     * @return  the renamed table
+     */
+    public synchronized Table rename (String [] names)
+    {
+        if (names.length != attribute.length) {
+            throw new IllegalArgumentException ("rename: expected " + attribute.length + " names");
+        } // if
+        String [] newKey = new String [key.length];
+        for (int j = 0; j < newKey.length; j++) newKey [j] = names [col (key [j])];
+
+        Table renamed = new Table (name, names.clone (), domain, newKey, tuples);
+        renamed.index    = index;
+        renamed.bpIndex  = bpIndex;
+        renamed.linIndex = linIndex;
+        renamed.extIndex = extIndex;
+        renamed.intIndex = intIndex;
+        renamed.lazy     = lazy;
+        renamed.stats    = stats;
+        return renamed;
+    } // rename
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate (Boolean function).  With a
+     * non-zero indexType, a key range predicate (see keyRange) is answered from an
+     * ordered index, while other predicates are tested on each tuple of the index of
+     * that type (the int key index for INT_HASH_MAP when the key is a single Integer).
      *
      * #usage movie.select (t -> t[movie.col("year")].equals (1977))
      *
@@ -176,28 +319,32 @@ public class Table
     {
         //out.println ("RA> " + name + ".select (" + predicate + ")");
 
-    	if (indexType == 0)
+    	if (indexType == 0 && isColumnar ())
+    	{
+    		return new Table (name + count++, attribute, domain, key, scan (predicate));
+    	}
+    	else if (indexType == 0)
     	{
     		return new Table (name + count++, attribute, domain, key,
                    tuples.stream ().filter (t -> predicate.test (t))
                                    .collect (Collectors.toList ()));
     	}
+    	else if (predicate instanceof KeyRange && Arrays.equals (((KeyRange) predicate).cols, keyCols ()))
+    	{
+    		KeyRange range = (KeyRange) predicate;
+    		return select (range.low, range.lowIncl, range.high, range.highIncl, indexType);
+    	}
     	else
     	{
-    		List <Comparable []> rows = new ArrayList <> ();
-    		for (KeyType k : index.keySet())
+    		List <Comparable []> rows = newRows (domain);
+    		IntHashMap <Comparable []> ints = (indexType == INT_HASH_MAP) ? intIndexOrBuild () : null;
+    		Collection <Comparable []> all = (ints != null) ? ints.values ()
+    		        : indexOrBuild (indexType >= BP_TREE_MAP && indexType <= EXT_HASH_MAP ? indexType : TREE_MAP).values ();
+    		for (Comparable [] t : all)
     		{
-    			Comparable [] key = {(Integer) k.key[0]};
-    			if (predicate.test(key))
+    			if (predicate.test(t))
     			{
-    				if (indexType == 1)
-    				{
-    					rows.add(bpIndex.get(k));
-    				}
-    				else
-    				{
-    					rows.add(linIndex.get(k));
-    				}
+    				rows.add(t);
     			}
     		}
     		
@@ -205,46 +352,257 @@ public class Table
     	}
     } // select
 
+    /************************************************************************************
+     * Select the tuples satisfying the given vector predicate.  A column-store table is
+     * filtered a batch of rows at a time over its column vectors (see Batch), and only
+     * the qualifying rows are copied out; a row-store table tests each tuple.
+     *
+     * #usage student.select (VectorPredicate.compare (student.col ("id"), ">=", 100))
+     *
+     * @param predicate  the check condition for tuples
+     * @return  a table with tuples satisfying the predicate
+     */
+    public Table select (VectorPredicate predicate)
+    {
+        if (! isColumnar ()) return select ((Predicate <Comparable []>) predicate, 0);
+
+        ColumnStore store = (ColumnStore) tuples;
+        Batch       batch = new Batch (store);
+        int []      pos   = new int [Batch.SIZE];
+        int         n     = 0;
+
+        for (int start = 0; batch.reset (start); start += Batch.SIZE) {
+            predicate.filter (batch);
+            if (n + batch.n > pos.length) pos = Arrays.copyOf (pos, Math.max (2 * pos.length, n + batch.n));
+            System.arraycopy (batch.sel, 0, pos, n, batch.n);
+            n += batch.n;
+        } // for
+
+        return new Table (name + count++, attribute, domain, key, store.gather (pos, n));
+    } // select
+
+    /************************************************************************************
+     * Select the tuples satisfying the given condition.  The conjuncts that restrict
+     * the primary key are answered from an index (see AccessPath): equality on the key
+     * or IN by lookups, and comparisons or BETWEEN on the key by an ordered range
+     * select.  The remaining conjuncts are tested on the tuples found.  Without such
+     * conjuncts (or a suitable index), a column-store table is filtered with vector
+     * predicates and a row-store table is scanned.
+     *
+     * #usage student.select (col ("id").between (100, 200).and (col ("status").eq ("FR")))
+     *
+     * @param condition  the check condition for tuples
+     * @return  a table with tuples satisfying the condition
+     */
+    public Table select (Expr condition)
+    {
+        return select (condition, null);
+    } // select
+
+    /************************************************************************************
+     * Select the tuples satisfying the given condition, as above, and project them onto
+     * the given attributes in the same pass.  On a row-store table, the residual
+     * condition and the projection are compiled into one loop (see CompiledQuery) when
+     * at least CompiledQuery.getThreshold () tuples are to be tested.
+     *
+     * #usage student.select (col ("status").eq ("FR"), "id name")
+     *
+     * @param condition   the check condition for tuples
+     * @param attributes  the attributes to project onto (null for all)
+     * @return  a table with the projections of the tuples satisfying the condition
+     */
+    public Table select (Expr condition, String attributes)
+    {
+        String []  attrs  = (attributes == null) ? attribute : attributes.split (" ");
+        int []     cols   = (attributes == null) ? null : match (attrs);
+        Class []   dom    = (cols == null) ? domain : extractDom (cols, domain);
+        String []  newKey = (cols == null || Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
+        AccessPath path   = access (condition);
+        Expr       rest   = path.residual ();
+
+        List <Comparable []> in;
+        if (path.points != null) {
+            in = new ArrayList <> ();
+            for (KeyType k : path.points) {
+                Comparable [] t = find (k);
+                if (t != null) in.add (t);
+            } // for
+        } else if (path.range != null) {
+            KeyRange range = path.range;
+            in = select (range.low, range.lowIncl, range.high, range.highIncl,
+                         hasIndex (BP_TREE_MAP) ? BP_TREE_MAP : TREE_MAP).tuples;
+        } else if (isColumnar () && rest != null) {
+            VectorPredicate vp = null;
+            for (Expr c : path.residual) {
+                VectorPredicate p = vector (c);
+                vp = (vp == null) ? p : vp.and (p);
+            } // for
+            Table found = select (vp);
+            return (cols == null) ? found : found.project (attributes);
+        } else {
+            in = tuples;
+        } // if
+
+        List <Comparable []> rows = newRows (dom);
+        CompiledQuery.of (rest == null ? Expr.and () : rest, cols, attribute, domain, in.size ()).run (in, rows);
+        return new Table (name + count++, attrs, dom, newKey, rows);
+    } // select
+
+    /************************************************************************************
+     * Describe how select (condition) would find its tuples, e.g., "range 100 <= key
+     * <= 200, filter status == 'FR'".
+     *
+     * @param condition  the check condition for tuples
+     * @return  the access path as a string
+     */
+    public String explain (Expr condition)
+    {
+        return access (condition).toString ();
+    } // explain
+
+    /************************************************************************************
+     * Prepare select (condition, attributes) to be run many times with different values
+     * for its parameters (see Expr.param).  The attribute names are resolved and the
+     * access path chosen once, so running the prepared query does no string work.
+     *
+     * #usage PreparedQuery q = student.prepare (Expr.compare (col ("id"), "==", param (0)), "name")
+     *
+     * @param condition   the selection condition, which may have parameters
+     * @param attributes  the attributes to keep, separated by spaces (null for all)
+     * @return  the prepared query
+     */
+    public PreparedQuery prepare (Expr condition, String attributes)
+    {
+        String [] attrs = (attributes == null) ? attribute : attributes.split (" ");
+        int []    cols  = null;
+        if (attributes != null) {
+            cols = new int [attrs.length];
+            for (int j = 0; j < attrs.length; j++) {
+                cols [j] = col (attrs [j]);
+                if (cols [j] < 0) throw new IllegalArgumentException ("prepare: unknown attribute " + attrs [j]);
+            } // for
+        } // if
+        Class []  dom    = (cols == null) ? domain : extractDom (cols, domain);
+        String [] newKey = (cols == null || Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
+        boolean   points = lazy || hasIndex (TREE_MAP) || hasIndex (BP_TREE_MAP) || hasIndex (EXT_HASH_MAP) ||
+                           hasIndex (INT_HASH_MAP);
+        int       type   = hasIndex (BP_TREE_MAP) ? BP_TREE_MAP : TREE_MAP;
+        return new PreparedQuery (this, attribute, domain, keyCols (), points, type, condition,
+                                  name + count++, attrs, cols, dom, newKey);
+    } // prepare
+
+    /************************************************************************************
+     * Select the tuples whose primary key lies between low and high (a null bound is
+     * open).  An ordered index is used to touch only the qualifying entries: the B+Tree
+     * (indexType 1) walks its leaf chain from low, while the other index types use the
+     * TreeMap (hash indexes cannot answer ranges).  If the table has no such index and
+     * does not build indexes lazily, the tuples are scanned.
+     *
+     * #usage student.select (new KeyType (100), true, new KeyType (900), true, 1)
+     *
+     * @param low        the lower bound on the key
+     * @param lowIncl    whether the lower bound is inclusive
+     * @param high       the upper bound on the key
+     * @param highIncl   whether the upper bound is inclusive
+     * @param indexType  which type of index to use
+     * @return  a table with the tuples whose keys are in the range, in key order
+     */
+    public Table select (KeyType low, boolean lowIncl, KeyType high, boolean highIncl, int indexType)
+    {
+        return new Table (name + count++, attribute, domain, key, range (low, lowIncl, high, highIncl, indexType));
+    } // select
+
+    /************************************************************************************
+     * Return the tuples whose keys are in the range from low to high, in key order (see
+     * select (low, lowIncl, high, highIncl, indexType)).
+     */
+    List <Comparable []> range (KeyType low, boolean lowIncl, KeyType high, boolean highIncl, int indexType)
+    {
+        KeyRange             range = keyRange (low, lowIncl, high, highIncl);
+        List <Comparable []> rows  = newRows (domain);
+        Map <KeyType, Comparable []> idx = getIndex (indexType == BP_TREE_MAP ? BP_TREE_MAP : TREE_MAP);
+
+        if (idx == null) {
+            for (Comparable [] t : tuples) if (range.test (t)) rows.add (t);
+        } else if (low != null && high != null && low.compareTo (high) > 0) {
+            // empty range
+        } else if (idx instanceof BpTreeMap) {
+            rows.addAll (((BpTreeMap <KeyType, Comparable []>) idx).subMap (low, lowIncl, high, highIncl).values ());
+        } else if (idx instanceof NavigableMap) {
+            NavigableMap <KeyType, Comparable []> nav = (NavigableMap <KeyType, Comparable []>) idx;
+            if (low != null && high != null) nav = nav.subMap (low, lowIncl, high, highIncl);
+            else if (low != null)             nav = nav.tailMap (low, lowIncl);
+            else if (high != null)            nav = nav.headMap (high, highIncl);
+            rows.addAll (nav.values ());
+        } else {                                                  // e.g., a DiskBpTreeMap
+            SortedMap <KeyType, Comparable []> sorted = (SortedMap <KeyType, Comparable []>) idx;
+            for (Map.Entry <KeyType, Comparable []> e : (low == null ? sorted : sorted.tailMap (low)).entrySet ()) {
+                if (high != null && e.getKey ().compareTo (high) > 0) break;
+                if (range.contains (e.getKey ())) rows.add (e.getValue ());
+            } // for
+        } // if
+        return rows;
+    } // range
+
+    /************************************************************************************
+     * Make a predicate restricting this table's primary key to the range from low to
+     * high (a null bound is open).  Passed to select (predicate, indexType) with a
+     * non-zero indexType, it is answered by an indexed range select.
+     *
+     * #usage student.select (student.keyRange (new KeyType (100), true, new KeyType (900), true), 1)
+     *
+     * @param low       the lower bound on the key
+     * @param lowIncl   whether the lower bound is inclusive
+     * @param high      the upper bound on the key
+     * @param highIncl  whether the upper bound is inclusive
+     * @return  the key range predicate
+     */
+    public KeyRange keyRange (KeyType low, boolean lowIncl, KeyType high, boolean highIncl)
+    {
+        return new KeyRange (keyCols (), low, lowIncl, high, highIncl);
+    } // keyRange
+
     /************************************************************************************
      * Select the tuples satisfying the given key predicate (key = value).  Use an index
      * (Map) to retrieve the tuple with the given key value.
      *
      * @param keyVal  the given key value
      * @param indexType which type of index to use
-     * @return  a table with the tuple satisfying the key predicate
+     * @return  a table with the tuple satisfying the key predicate (empty if none)
      */
     public Table select (KeyType keyVal, int indexType)
     {
         //out.println ("RA> " + name + ".select (" + keyVal + ")");
 
-        List <Comparable []> rows = new ArrayList <> ();
+        List <Comparable []> rows = newRows (domain);
 
         //  Implemented by Michael Bottone
-        Comparable[] result;
-        if (indexType == 0)
-        {
-        	result = index.get(keyVal); // Use the index map to retrieve the tuple for the given key
-        }
-        else if (indexType == 1)
+        Comparable[] result = null;
+        Map <KeyType, Comparable []> idx = null;
+        if (indexType == INT_HASH_MAP && keyVal.key.length == 1 && keyVal.key[0] instanceof Integer)
         {
-        	result = bpIndex.get(keyVal);
+        	result = lookup((Integer) keyVal.key[0]); // Probe the int key index (no KeyType hashing)
         }
-        else if (indexType == 2)
+        else if ((idx = getIndex (indexType)) != null)
         {
-        	result = linIndex.get(keyVal);
+        	result = idx.get(keyVal); // Use the index map to retrieve the tuple for the given key
         }
         else
         {
-        	result = extIndex.get(keyVal);
+        	for (Comparable [] t : tuples) // No index: scan for the key
+        	{
+        		if (keyOf (t).compareTo (keyVal) == 0) { result = t; break; }
+        	}
         }
         
-        rows.add(result); // Add the returned tuple to the returned result
+        if (result != null) rows.add(result); // Add the returned tuple (if any) to the returned result
 
         return new Table (name + count++, attribute, domain, key, rows);
     } // select
 
     /************************************************************************************
-     * Union this table and table2.  Check that the two tables are compatible.
+     * Union this table and table2.  Check that the two tables are compatible.  Duplicate
+     * tuples (equal attribute by attribute) are eliminated by hashing (see Distinct).
      *
      * #usage movie.union (show)
      *
@@ -252,29 +610,75 @@ public class Table
      * @return  a table representing the union
      */
     public Table union (Table table2)
+    {
+        return union (table2, false, 1);
+    } // union
+
+    /************************************************************************************
+     * Union this table and table2, eliminating tuples with the same primary key (byKey)
+     * or the same values for all attributes, using the given number of threads for the
+     * duplicate elimination.  Check that the two tables are compatible.  A union by
+     * value may hold two tuples with the same key, so it is keyed on all attributes.
+     *
+     * #usage movie.union (show, true, 8)
+     *
+     * @param table2   the rhs table in the union operation
+     * @param byKey    whether tuples are duplicates when their keys are equal
+     * @param threads  the number of threads
+     * @return  a table representing the union
+     */
+    public Table union (Table table2, boolean byKey, int threads)
     {
         out.println ("RA> " + name + ".union (" + table2.name + ")");
-        if (! compatible (table2)) return null;
 
-        List <Comparable []> rows = new ArrayList <> ();
+        List <Comparable []> rows = newRows (domain);
+        if (! union (table2, byKey, threads, rows::add)) return null;
 
-        //  Implemented by Michael Bottone
+        return new Table (name + count++, attribute, domain, byKey ? key : attribute, rows);
+    } // union
 
-        rows.addAll(tuples); // Add the tuples from the first table to the result
-        for (Map.Entry<KeyType, Comparable[]> e : table2.index.entrySet()) // Look through the keys of the second table
-        {
-        	 // If the first table doesn't have a tuple for the given key, add that row to the result.
-        	if (index.get(e.getKey()) == null) {
-        		rows.add(e.getValue());
-        	}
-        }
+    /************************************************************************************
+     * Union this table and table2, passing each distinct tuple to the sink rather than
+     * collecting them in a table (see union (table2, byKey, threads)).  Tuples come in
+     * order, this table's first, unless the inputs exceed the memory budget, in which
+     * case they are deduplicated partition by partition from disk.
+     *
+     * #usage movie.union (show, false, 1, rows::add)
+     *
+     * @param table2   the rhs table in the union operation
+     * @param byKey    whether tuples are duplicates when their keys are equal
+     * @param threads  the number of threads
+     * @param sink     the consumer of the distinct tuples
+     * @return  whether the union completed
+     */
+    public boolean union (Table table2, boolean byKey, int threads, Consumer <Comparable []> sink)
+    {
+        if (! compatible (table2)) return false;
+
+        Function <Comparable [], Object> dedupKey = Arrays::asList;
+        if (byKey) {
+            int [] cols = keyCols ();
+            dedupKey = t -> {
+                Comparable [] keyVal = new Comparable [cols.length];
+                for (int j = 0; j < cols.length; j++) keyVal [j] = t [cols [j]];
+                return Arrays.asList (keyVal);
+            };
+        } // if
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        try {
+            Distinct.distinct (concat (tuples, table2.tuples), dedupKey, domain, memoryBudget, threads, sink);
+            return true;
+        } catch (IOException ex) {
+            out.println ("union: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
     } // union
 
     /************************************************************************************
      * Take the difference of this table and table2.  Check that the two tables are
-     * compatible.
+     * compatible.  Each tuple of this table is looked up once in table2 (see contains),
+     * rather than compared with every tuple of table2.
      *
      * #usage movie.minus (show)
      *
@@ -282,74 +686,216 @@ public class Table
      * @return  a table representing the difference
      */
     public Table minus (Table table2)
+    {
+        return minus (table2, 1);
+    } // minus
+
+    /************************************************************************************
+     * Take the difference of this table and table2 using the given number of threads,
+     * each looking up its own chunk of this table's tuples in table2.  The tuples stay
+     * in their original order.
+     *
+     * #usage movie.minus (show, 8)
+     *
+     * @param table2   The rhs table in the minus operation
+     * @param threads  the number of threads
+     * @return  a table representing the difference
+     */
+    public Table minus (Table table2, int threads)
     {
         out.println ("RA> " + name + ".minus (" + table2.name + ")");
         if (! compatible (table2)) return null;
 
+        List <Comparable []>      rows = newRows (domain);
+        Predicate <Comparable []> in2  = table2.contains (threads);
+
+        if (threads <= 1) {
+            for (Comparable [] t : tuples) if (! in2.test (t)) rows.add (t);
+        } else {
+            List <Callable <List <Comparable []>>> tasks = new ArrayList <> ();
+            for (List <Comparable []> chunk : Parallel.chunks (tuples, threads)) {
+                tasks.add (() -> {
+                    List <Comparable []> part = new ArrayList <> ();
+                    for (Comparable [] t : chunk) if (! in2.test (t)) part.add (t);
+                    return part;
+                });
+            } // for
+            for (List <Comparable []> part : Parallel.invokeAll (threads, tasks)) rows.addAll (part);
+        } // if
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // minus
+
+    /************************************************************************************
+     * Group the tuples on the given attributes and compute the aggregates of each group
+     * (see Aggregate).  An aggregate is written function(attribute) or count(*), where
+     * the function is count, sum, avg, min or max; the result's attributes are the
+     * grouping attributes followed by the aggregates, named as written.
+     *
+     * #usage transcript.groupBy ("studId", "count(*) max(grade)")
+     *
+     * @param attributes  the grouping attributes, separated by spaces (empty for one group)
+     * @param aggregates  the aggregates, separated by spaces
+     * @return  a table with one tuple per group
+     */
+    public Table groupBy (String attributes, String aggregates)
+    {
+        return groupBy (attributes, aggregates, 1);
+    } // groupBy
+
+    /************************************************************************************
+     * Group the tuples and compute the aggregates of each group (see groupBy (attributes,
+     * aggregates)) using the given number of threads, each aggregating its own chunk of
+     * the tuples before the partial aggregates are merged.  If the groups exceed the
+     * memory budget, their partial aggregates are spilled to disk and merged partition by
+     * partition.
+     *
+     * #usage transcript.groupBy ("crsCode semester", "count(*)", 8)
+     *
+     * @param attributes  the grouping attributes, separated by spaces (empty for one group)
+     * @param aggregates  the aggregates, separated by spaces
+     * @param threads     the number of threads
+     * @return  a table with one tuple per group (null if a spill file failed)
+     */
+    public Table groupBy (String attributes, String aggregates, int threads)
+    {
+        out.println ("RA> " + name + ".groupBy (" + attributes + ", " + aggregates + ")");
+
+        String [] groups = attributes.trim ().isEmpty () ? new String [0] : attributes.trim ().split (" +");
+        String [] aggs   = aggregates.trim ().split (" +");
+        String [] fns    = new String [aggs.length];
+        int []    cols   = new int [aggs.length];
+        int []    gcols  = new int [groups.length];
+        for (int j = 0; j < groups.length; j++) {
+            gcols [j] = col (groups [j]);
+            if (gcols [j] < 0) throw new IllegalArgumentException ("groupBy: unknown attribute " + groups [j]);
+        } // for
+        for (int i = 0; i < aggs.length; i++) {
+            int open = aggs [i].indexOf ('(');
+            if (open <= 0 || ! aggs [i].endsWith (")")) throw new IllegalArgumentException ("groupBy: bad aggregate " + aggs [i]);
+            String fn  = aggs [i].substring (0, open).toLowerCase ();
+            String arg = aggs [i].substring (open + 1, aggs [i].length () - 1);
+            fns [i]  = (arg.equals ("*") && fn.equals ("count")) ? "count(*)" : fn;
+            cols [i] = arg.equals ("*") ? -1 : col (arg);
+            if (cols [i] < 0 && ! fns [i].equals ("count(*)")) {
+                throw new IllegalArgumentException ("groupBy: unknown attribute in " + aggs [i]);
+            } // if
+        } // for
+
+        Aggregate            agg  = new Aggregate (gcols, fns, cols, domain);
         List <Comparable []> rows = new ArrayList <> ();
+        try {
+            agg.aggregate (tuples, memoryBudget, threads, rows::add);
+        } catch (IOException ex) {
+            out.println ("groupBy: IO Exception");
+            ex.printStackTrace ();
+            return null;
+        } // try
 
-        //  Implemented by Ashley Bennett
-
-        for (Comparable[] tuple : tuples) {
-        	
-        	boolean exists = true;
-
-        	//checks if the tuple exists in table 2
-        	for (Comparable[] tuple1 : table2.tuples) {
-        	  
-        		exists = true;
-        		
-        		for (int i = 0;i < tuple.length;i ++)
-        		{
-        			Comparable v1 = tuple[i];
-        			Comparable v2 = tuple1[i];
-        		  
-        			exists = exists && (v1.compareTo(v2) == 0);
-        		}
-        	  
-        		if (exists) {
-        			break;
-        		}
-        	} //for
+        String [] attrs = ArrayUtil.concat (groups, aggs);
+        return new Table (name + count++, attrs, agg.resultDomain (), (groups.length > 0) ? groups : attrs, rows);
+    } // groupBy
 
-        	//if the tuple doesn't exist in table 2, its added to the row list
-        	if (!exists) {
-        		rows.add(tuple);
-        	}
-        } //for
+    /************************************************************************************
+     * Sort the tuples on the given attributes, each followed by "desc" if it is to be in
+     * descending order (nulls last) rather than ascending (nulls first).  The sort is an
+     * external merge sort (see ExternalSort), spilling sorted runs to store/ if the
+     * tuples exceed the memory budget; ascending order on the primary key is read from
+     * an ordered index if the table maintains one.  Ties keep their order.
+     *
+     * #usage student.orderBy ("status name desc").print ()
+     *
+     * @param attributes  the sort attributes, separated by spaces
+     * @return  a table with the tuples in order (null if a run failed)
+     */
+    public Table orderBy (String attributes)
+    {
+        out.println ("RA> " + name + ".orderBy (" + attributes + ")");
+
+        List <Comparable []> rows = newRows (domain);
+        if (! orderBy (attributes, rows::add)) return null;
 
         return new Table (name + count++, attribute, domain, key, rows);
-    } // minus
+    } // orderBy
+
+    /************************************************************************************
+     * Sort the tuples on the given attributes (see orderBy (attributes)), passing them
+     * to the sink in order rather than collecting them in a table.
+     *
+     * #usage student.orderBy ("id desc", rows::add)
+     *
+     * @param attributes  the sort attributes, separated by spaces
+     * @param sink        the consumer of the sorted tuples
+     * @return  whether the sort completed
+     */
+    public boolean orderBy (String attributes, Consumer <Comparable []> sink)
+    {
+        boolean []               desc  = new boolean [attributes.trim ().split (" +").length];
+        int []                   cols  = sortCols (attributes, desc);
+        Iterable <Comparable []> in    = contains (desc, true) ? null : ordered (cols);
+        if (in != null) {
+            in.forEach (sink);
+            return true;
+        } // if
+        try (ExternalSort sort = new ExternalSort (tuples, domain, ExternalSort.on (cols, desc), memoryBudget)) {
+            sort.forEach (sink);
+            return true;
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("orderBy: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+    } // orderBy
+
+    /************************************************************************************
+     * Return the first limit tuples in order of the given attributes, as ORDER BY ...
+     * LIMIT does (see orderBy (attributes)).  Rather than sorting every tuple, a heap of
+     * the best limit tuples seen so far is kept (see ExternalSort.top), or the tuples
+     * are read from an ordered key index if there is one.
+     *
+     * #usage student.orderBy ("id desc", 100)
+     *
+     * @param attributes  the sort attributes, separated by spaces
+     * @param limit       the number of tuples to return
+     * @return  a table with the first limit tuples in order
+     */
+    public Table orderBy (String attributes, int limit)
+    {
+        out.println ("RA> " + name + ".orderBy (" + attributes + ", " + limit + ")");
+
+        boolean []               desc = new boolean [attributes.trim ().split (" +").length];
+        int []                   cols = sortCols (attributes, desc);
+        Iterable <Comparable []> in   = contains (desc, true) ? null : ordered (cols);
+        List <Comparable []>     rows = newRows (domain);
+        if (in != null) {
+            for (Iterator <Comparable []> it = in.iterator (); rows.size () < limit && it.hasNext (); ) rows.add (it.next ());
+        } else {
+            rows.addAll (ExternalSort.top (tuples, ExternalSort.on (cols, desc), limit));
+        } // if
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // orderBy
 
     public Table indexJoin (Table table2, int indexType)
     {
-    	List <Comparable []> rows = new ArrayList <> ();
+    	List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
     	
-    	Map <KeyType, Comparable []> firstIndex;
-    	Map <KeyType, Comparable []> secondIndex;
+        if (indexType == INT_HASH_MAP && intKeyCol () >= 0 && table2.intKeyCol () >= 0) {
+            IntHashMap <Comparable []> second = table2.intIndexOrBuild ();
+            int                        col1   = intKeyCol ();
+            for (Comparable [] t : tuples) {
+                if (t [col1] == null) continue;                         // a null key joins nothing
+                Comparable [] u = second.get ((Integer) t [col1]);
+                if (u != null) rows.add (ArrayUtil.concat (t, u));
+            } // for
+            return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                              ArrayUtil.concat (domain, table2.domain), key, rows);
+        } // if
     	
-    	if (indexType == 0)
-    	{
-    		firstIndex = index;
-    		secondIndex = table2.index;
-    	}
-    	else if (indexType == 1)
-    	{
-    		firstIndex = bpIndex;
-    		secondIndex = table2.bpIndex;
-    	}
-    	else if (indexType == 2)
-    	{
-    		firstIndex = linIndex;
-    		secondIndex = table2.linIndex;
-    	}
-    	else
-    	{
-    		firstIndex = extIndex;
-    		secondIndex = table2.extIndex;
-    	}
+    	Map <KeyType, Comparable []> firstIndex = indexOrBuild (indexType);
+    	Map <KeyType, Comparable []> secondIndex = table2.indexOrBuild (indexType);
     	
-    	for (KeyType key : index.keySet())
+    	for (KeyType key : indexOrBuild (TREE_MAP).keySet())
     	{
         	Comparable [] tuple = firstIndex.get(key);
         	Comparable [] tuple2 = secondIndex.get(key);
@@ -362,10 +908,68 @@ public class Table
     	return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
                 ArrayUtil.concat (domain, table2.domain), key, rows);
     }
+
+    /************************************************************************************
+     * Join this table and table2 on their primary keys using indexes of the given type,
+     * like indexJoin (table2, indexType), but with the index lookups split among the
+     * given number of threads (see Parallel).
+     *
+     * #usage student.indexJoin (transcript, 1, 8)
+     *
+     * @param table2     the rhs table in the join operation
+     * @param indexType  which index to use
+     * @param threads    the number of threads
+     * @return  a table with the joined tuples
+     */
+    public Table indexJoin (Table table2, int indexType, int threads)
+    {
+        if (threads <= 1) return indexJoin (table2, indexType);
+        List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
+        List <Callable <List <Comparable []>>> tasks = new ArrayList <> ();
+
+        if (indexType == INT_HASH_MAP && intKeyCol () >= 0 && table2.intKeyCol () >= 0) {
+            IntHashMap <Comparable []> second = table2.intIndexOrBuild ();
+            int                        col1   = intKeyCol ();
+            for (List <Comparable []> chunk : Parallel.chunks (tuples, threads)) {
+                tasks.add (() -> {
+                    List <Comparable []> part = new ArrayList <> ();
+                    for (Comparable [] t : chunk) {
+                        if (t [col1] == null) continue;
+                        Comparable [] u = second.get ((Integer) t [col1]);
+                        if (u != null) part.add (ArrayUtil.concat (t, u));
+                    } // for
+                    return part;
+                });
+            } // for
+        } else {
+            Map <KeyType, Comparable []> first  = indexOrBuild (indexType);
+            Map <KeyType, Comparable []> second = table2.indexOrBuild (indexType);
+            List <KeyType>               keys   = new ArrayList <> (indexOrBuild (TREE_MAP).keySet ());
+            for (List <KeyType> chunk : Parallel.chunks (keys, threads)) {
+                tasks.add (() -> {
+                    List <Comparable []> part = new ArrayList <> ();
+                    for (KeyType k : chunk) {
+                        Comparable [] u = second.get (k);
+                        if (u != null) part.add (ArrayUtil.concat (first.get (k), u));
+                    } // for
+                    return part;
+                });
+            } // for
+        } // if
+
+        for (List <Comparable []> part : Parallel.invokeAll (threads, tasks)) rows.addAll (part);
+        return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
+                                          ArrayUtil.concat (domain, table2.domain), key, rows);
+    } // indexJoin
+
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Tuples from both tables
      * are compared requiring attributes1 to equal attributes2.  Disambiguate attribute
-     * names by append "2" to the end of any duplicate attribute name.
+     * names by append "2" to the end of any duplicate attribute name.  The smaller table
+     * is loaded into a hash table on its join attributes and the other probes it (see
+     * HashJoin), except that with a non-zero indexType, when attributes2 is the primary
+     * key of table2, table2's index of that type is probed instead.  If the hash table
+     * would exceed the memory budget, both tables are partitioned to disk first.
      *
      * #usage movie.join ("studioNo", "name", studio)
      *
@@ -381,40 +985,366 @@ public class Table
 
         String [] t_attrs = attributes1.split (" ");
         String [] u_attrs = attributes2.split (" ");
+        int []    cols1   = match (t_attrs);
+        int []    cols2   = table2.match (u_attrs);
 
-        List <Comparable []> rows = new ArrayList <> ();
+        List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
 
-        //  Implemented by Jared McReynolds
-            
+        if (indexType == 0 || ! Arrays.equals (u_attrs, table2.key) || ! table2.probe (tuples, cols1, indexType, rows)) {
+            if (! hashJoin (cols1, table2, cols2, rows::add)) return null;
+        } // if
+
+        String [] names2 = table2.disambiguate (attribute);
+        return new Table (name + count++, ArrayUtil.concat (attribute, names2),
+                                          ArrayUtil.concat (domain, table2.domain), joinKey (table2, names2), rows);
+    } // join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using the given number of
+     * threads.  With a usable index (see join (attributes1, attributes2, table2,
+     * indexType)), the probes of table2's index are split among the threads; otherwise
+     * both tables are radix partitioned on the join attributes and the partitions are
+     * built and probed in parallel (see HashJoin.parallelJoin).  Joins over the memory
+     * budget are done from disk by a single thread.
+     *
+     * #usage student.join ("id", "studId", transcript, 0, 8)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param indexType    which index to use (0 for a hash join)
+     * @param threads      the number of threads
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table join (String attributes1, String attributes2, Table table2, int indexType, int threads)
+    {
+        if (threads <= 1) return join (attributes1, attributes2, table2, indexType);
+        String [] u_attrs = attributes2.split (" ");
+        int []    cols1   = match (attributes1.split (" "));
+        int []    cols2   = table2.match (u_attrs);
+
+        List <Comparable []> rows   = newRows (ArrayUtil.concat (domain, table2.domain));
+        boolean              intKey = cols1.length == 1 && domain [cols1 [0]] == Integer.class &&
+                                                           table2.domain [cols2 [0]] == Integer.class;
+        boolean indexed = indexType != 0 && Arrays.equals (u_attrs, table2.key) &&
+                          (indexType == INT_HASH_MAP ? table2.intIndex () != null : table2.getIndex (indexType) != null);
+
+        if (indexed) {
+            List <Callable <List <Comparable []>>> tasks = new ArrayList <> ();
+            for (List <Comparable []> chunk : Parallel.chunks (tuples, threads)) {
+                tasks.add (() -> {
+                    List <Comparable []> part = new ArrayList <> ();
+                    table2.probe (chunk, cols1, indexType, part);
+                    return part;
+                });
+            } // for
+            for (List <Comparable []> part : Parallel.invokeAll (threads, tasks)) rows.addAll (part);
+        } else if (Math.min (HashJoin.estimateBytes (tuples, domain), HashJoin.estimateBytes (table2.tuples, table2.domain)) <= memoryBudget) {
+            HashJoin.parallelJoin (tuples, cols1, table2.tuples, cols2, intKey, threads, rows::add);
+        } else if (! hashJoin (cols1, table2, cols2, rows::add)) {
+            return null;
+        } // if
+
+        String [] names2 = table2.disambiguate (attribute);
+        return new Table (name + count++, ArrayUtil.concat (attribute, names2),
+                                          ArrayUtil.concat (domain, table2.domain), joinKey (table2, names2), rows);
+    } // join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join", passing each joined tuple
+     * to the sink rather than collecting them in a table, so that the result need not
+     * fit in memory.  Inputs too big for the memory budget are joined from disk.
+     *
+     * #usage transcript.join ("crsCode semester", "crsCode semester", teaching, rows::add)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param sink         the consumer of the joined tuples
+     * @return  whether the join completed
+     */
+    public boolean join (String attributes1, String attributes2, Table table2, Consumer <Comparable []> sink)
+    {
+        return hashJoin (match (attributes1.split (" ")), table2, table2.match (attributes2.split (" ")), sink);
+    } // join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using the sort-merge join
+     * (see MergeJoin).  A table joined on its primary key is read in order from its
+     * B+Tree (or TreeMap) index when it maintains one; otherwise it is sorted on the
+     * join attributes, spilling sorted runs to disk if it exceeds the memory budget
+     * (see ExternalSort).  Duplicate join values on either side are handled.
+     *
+     * #usage student.mergeJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table mergeJoin (String attributes1, String attributes2, Table table2)
+    {
+        List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
+        if (! mergeJoin (attributes1, attributes2, table2, rows::add)) return null;
+
+        String [] names2 = table2.disambiguate (attribute);
+        return new Table (name + count++, ArrayUtil.concat (attribute, names2),
+                                          ArrayUtil.concat (domain, table2.domain), joinKey (table2, names2), rows);
+    } // mergeJoin
+
+    /************************************************************************************
+     * Join this table and table2 using the sort-merge join, passing each joined tuple to
+     * the sink (see mergeJoin (attributes1, attributes2, table2)).  The tuples are passed
+     * in order of the join attributes.
+     *
+     * #usage student.mergeJoin ("id", "studId", transcript, rows::add)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param sink         the consumer of the joined tuples
+     * @return  whether the join completed
+     */
+    public boolean mergeJoin (String attributes1, String attributes2, Table table2, Consumer <Comparable []> sink)
+    {
+        int []                   cols1 = match (attributes1.split (" "));
+        int []                   cols2 = table2.match (attributes2.split (" "));
+        Iterable <Comparable []> in1   = ordered (cols1);
+        Iterable <Comparable []> in2   = table2.ordered (cols2);
+
+        try (ExternalSort sort1 = (in1 == null) ? new ExternalSort (tuples, domain, ExternalSort.on (cols1), memoryBudget) : null;
+             ExternalSort sort2 = (in2 == null) ? new ExternalSort (table2.tuples, table2.domain, ExternalSort.on (cols2), memoryBudget) : null) {
+            MergeJoin.join ((in1 != null) ? in1 : sort1, cols1, (in2 != null) ? in2 : sort2, cols2, sink);
+            return true;
+        } catch (IOException | UncheckedIOException ex) {
+            out.println ("mergeJoin: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+    } // mergeJoin
+
+    /************************************************************************************
+     * Semi-join this table and table2: return the tuples of this table whose attributes1
+     * equal attributes2 of some tuple of table2, each once, as for IN (SELECT ...) and
+     * EXISTS.  Only the join values of table2 are loaded into a hash set, and the result
+     * has the columns of this table, so no concatenated tuples are built.  A null never
+     * matches, so tuples with a null join value are not returned.
+     *
+     * #usage student.semiJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the semi-join operation
+     * @return  a table with the tuples of this table having a match in table2
+     */
+    public Table semiJoin (String attributes1, String attributes2, Table table2)
+    {
+        out.println ("RA> " + name + ".semiJoin (" + attributes1 + ", " + attributes2 + ", " + table2.name + ")");
+
+        int []       cols1 = match (attributes1.split (" "));
+        int []       cols2 = table2.match (attributes2.split (" "));
+        Set <Object> keys  = table2.keySet (cols2, null);
+
+        List <Comparable []> rows = newRows (domain);
+        for (Comparable [] t : tuples) {
+            Object k = HashJoin.key (t, cols1);
+            if (k != null && keys.contains (k)) rows.add (t);
+        } // for
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // semiJoin
+
+    /************************************************************************************
+     * Anti-join this table and table2: return the tuples of this table whose attributes1
+     * equal attributes2 of no tuple of table2, as for NOT EXISTS.  A null never matches,
+     * so tuples with a null join value are returned.
+     *
+     * #usage student.antiJoin ("id", "studId", transcript)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join operation
+     * @return  a table with the tuples of this table having no match in table2
+     */
+    public Table antiJoin (String attributes1, String attributes2, Table table2)
+    {
+        return antiJoin (attributes1, attributes2, table2, false);
+    } // antiJoin
+
+    /************************************************************************************
+     * Anti-join this table and table2 (see antiJoin (attributes1, attributes2, table2)).
+     * With notIn, follow the SQL semantics of NOT IN (SELECT ...) instead: a tuple is
+     * returned only when its comparison with every tuple of table2 is known to be false,
+     * so a null on either side that might stand for a matching value drops the tuple
+     * (e.g., a single null in table2 makes the result empty), while an empty table2
+     * returns every tuple.
+     *
+     * #usage student.antiJoin ("id", "studId", transcript, true)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join operation
+     * @param notIn        whether to apply the null semantics of NOT IN
+     * @return  a table with the tuples of this table having no match in table2
+     */
+    public Table antiJoin (String attributes1, String attributes2, Table table2, boolean notIn)
+    {
+        out.println ("RA> " + name + ".antiJoin (" + attributes1 + ", " + attributes2 + ", " + table2.name + ")");
+
+        int []               cols1   = match (attributes1.split (" "));
+        int []               cols2   = table2.match (attributes2.split (" "));
+        List <Comparable []> partial = new ArrayList <> ();
+        Set <Object>         keys    = table2.keySet (cols2, notIn ? partial : null);
+
+        List <Comparable []> rows = newRows (domain);
+        if (notIn && cols1.length == 1 && ! partial.isEmpty ()) {
+            return new Table (name + count++, attribute, domain, key, rows);   // x NOT IN (.., null) is never true
+        } // if
+
+        for (Comparable [] t : tuples) {
+            Object k = HashJoin.key (t, cols1);
+            if (k != null) {
+                if (keys.contains (k) || notIn && anyMatch (t, cols1, partial, cols2)) continue;
+            } else if (notIn && anyMatch (t, cols1, table2.tuples, cols2)) {
+                continue;
+            } // if
+            rows.add (t);
+        } // for
+
+        return new Table (name + count++, attribute, domain, key, rows);
+    } // antiJoin
+
+    /************************************************************************************
+     * Collect the values of this table's attributes at cols into a hash set for a semi-
+     * or anti-join (see HashJoin.key).  Tuples with a null among them are left out of the
+     * set and, when partial is given, added to it instead.
+     *
+     * @param cols     the positions of the join attributes
+     * @param partial  the list to receive the tuples with nulls (may be null)
+     * @return  the set of join values without nulls
+     */
+    private Set <Object> keySet (int [] cols, List <Comparable []> partial)
+    {
+        Set <Object> keys = new HashSet <> (tuples.size () * 4 / 3 + 1);
+        for (Comparable [] u : tuples) {
+            Object k = HashJoin.key (u, cols);
+            if (k != null) keys.add (k);
+            else if (partial != null) partial.add (u);
+        } // for
+        return keys;
+    } // keySet
+
+    /************************************************************************************
+     * Determine whether tuple t might match any of the tuples, i.e., whether for one of
+     * them each pair of compared values is equal or has a null, stopping at the first.
+     *
+     * @param t       the tuple to compare
+     * @param cols1   the positions of its compared attributes
+     * @param tuples  the tuples to compare it with
+     * @param cols2   the positions of their compared attributes
+     * @return  whether some comparison is not known to be false
+     */
+    private static boolean anyMatch (Comparable [] t, int [] cols1, List <Comparable []> tuples, int [] cols2)
+    {
+        for (Comparable [] u : tuples) {
+            boolean match = true;
+            for (int j = 0; match && j < cols1.length; j++) {
+                Comparable a = t [cols1 [j]], b = u [cols2 [j]];
+                match = a == null || b == null || a.equals (b);
+            } // for
+            if (match) return true;
+        } // for
+        return false;
+    } // anyMatch
+
+    /************************************************************************************
+     * Set the memory budget for the in-memory state of an operator (e.g., the hash
+     * table of a join); operators that would exceed it spill to temporary files.
+     *
+     * #usage Table.setMemoryBudget (256L << 20)
+     *
+     * @param bytes  the budget in bytes
+     */
+    public static void setMemoryBudget (long bytes)
+    {
+        memoryBudget = bytes;
+    } // setMemoryBudget
+
+    /************************************************************************************
+     * Get the memory budget for the in-memory state of an operator.
+     *
+     * @return  the budget in bytes
+     */
+    public static long getMemoryBudget ()
+    {
+        return memoryBudget;
+    } // getMemoryBudget
+
+    /************************************************************************************
+     * Form the Cartesian product of this table and table2, pairing every tuple of this
+     * table with every tuple of table2.
+     *
+     * #usage movie.product (cinema)
+     *
+     * @param table2  the rhs table in the product operation
+     * @return  a table with every pair of tuples
+     */
+    public Table product (Table table2)
+    {
+        List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
+        for (Comparable [] t : tuples) {
+            for (Comparable [] u : table2.tuples) rows.add (ArrayUtil.concat (t, u));
+        } // for
+
+        String [] names2 = table2.disambiguate (attribute);
+        return new Table (name + count++, ArrayUtil.concat (attribute, names2),
+                                          ArrayUtil.concat (domain, table2.domain), joinKey (table2, names2), rows);
+    } // product
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using nested loops, i.e.,
+     * comparing every pair of tuples.  Kept for performance testing against join.
+     *
+     * #usage movie.nestedLoopJoin ("studioNo", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table nestedLoopJoin (String attributes1, String attributes2, Table table2)
+    {
+        String [] t_attrs = attributes1.split (" ");
+        String [] u_attrs = attributes2.split (" ");
+
+        List <Comparable []> rows = newRows (ArrayUtil.concat (domain, table2.domain));
+        int []               cols1 = match (t_attrs);
+        int []               cols2 = table2.match (u_attrs);
+
+        //  Implemented by Jared McReynolds
+            
         //loop through both tables and finding the attribute names that match
     	this.tuples.stream()
     	.forEach(y -> table2.tuples.stream()
     		.filter(m -> {
-    			for(int i = 0; i < t_attrs.length; i++){
-    				if(!y[this.col(t_attrs[i])].equals(m[table2.col(u_attrs[i])])){
+    			for(int i = 0; i < cols1.length; i++){
+    				if(!y[cols1[i]].equals(m[cols2[i]])){
     					return false;
     				}
     			};
     			return true;
     		}).forEach(m -> rows.add(ArrayUtil.concat(y,m))));
     	
-    		//appending 2 onto the duplicate attribute names
-    		String[] tempAttributeArray = table2.attribute;
-    		for(int i = 0; i < this.attribute.length; i++){
-    			for(int j = 0; j< table2.attribute.length; j++){
-    				if(this.attribute[i].equals(table2.attribute[j])){
-    					tempAttributeArray[j] = table2.attribute[j] + "2";
-    				}
-    			}
-    		}
-        return new Table (name + count++, ArrayUtil.concat (attribute, tempAttributeArray),
-                                          ArrayUtil.concat (domain, table2.domain), key, rows);
-    } // join
+        String [] names2 = table2.disambiguate (attribute);
+        return new Table (name + count++, ArrayUtil.concat (attribute, names2),
+                                          ArrayUtil.concat (domain, table2.domain), joinKey (table2, names2), rows);
+    } // nestedLoopJoin
 
     /************************************************************************************
      * Join this table and table2 by performing an "natural join".  Tuples from both tables
      * are compared requiring common attributes to be equal.  The duplicate column is also
-     * eliminated.
+     * eliminated.  The join and projection run as one pipeline (see Operator), so no
+     * intermediate table is built.
      *
      * #usage movieStar.join (starsIn)
      *
@@ -425,8 +1355,6 @@ public class Table
     {
         out.println ("RA> " + name + ".join (" + table2.name + ")");
 
-        List <Comparable []> rows = new ArrayList <> ();
-        
         String attrs = "";
         
         //  Implemented by Jared McReynolds
@@ -456,11 +1384,221 @@ public class Table
         // Convert list to a string
         String addString = totalList.toString();
         addString = addString.substring(1, addString.length() - 1).replaceAll(",", " ");
-        	
-        return this.join(attrs, attrs, table2, 0).project(attrs + addString);
-        
+
+        String [] projAttrs = (attrs + addString).trim ().split (" +");
+        return scan ().join (attrs.trim (), attrs.trim (), table2.scan ())
+                      .project (String.join (" ", projAttrs))
+                      .toTable (name + count++, joinKey (table2, table2.attribute));
     } // join
 
+    /************************************************************************************
+     * Return this table's attribute names with "2" appended to those that also appear
+     * in the given attribute names (for naming the columns of a join).  This table's
+     * own attribute array is left unchanged.
+     *
+     * @param others  the attribute names of the other (lhs) table
+     * @return  the disambiguated attribute names
+     */
+    private String [] disambiguate (String [] others)
+    {
+        //appending 2 onto the duplicate attribute names
+        String [] names = attribute.clone ();
+        for (int i = 0; i < others.length; i++) {
+            for (int j = 0; j < attribute.length; j++) {
+                if (others [i].equals (attribute [j])) names [j] = attribute [j] + "2";
+            } // for
+        } // for
+        return names;
+    } // disambiguate
+
+    /************************************************************************************
+     * Return the key of a join (or product) of this table and table2: this table's key
+     * followed by table2's, named as in the result.  A tuple of either table may pair
+     * with many tuples of the other, so only the two keys together are unique, and an
+     * index built on the result must not collapse tuples sharing one of them.
+     *
+     * @param table2  the rhs table
+     * @param names2  the names of table2's attributes in the result
+     * @return  the key of the result
+     */
+    private String [] joinKey (Table table2, String [] names2)
+    {
+        Set <String> newKey = new LinkedHashSet <> (Arrays.asList (key));
+        for (int j : table2.match (table2.key)) newKey.add (names2 [j]);
+        return newKey.toArray (new String [0]);
+    } // joinKey
+
+    /************************************************************************************
+     * Hash join this table and table2 on cols1 = cols2 (see HashJoin).
+     *
+     * @param cols1   the positions of the join attributes in this table
+     * @param table2  the rhs table
+     * @param cols2   the positions of the join attributes in table2
+     * @param sink    the consumer of the joined tuples
+     * @return  whether the join completed (false after an I/O error)
+     */
+    private boolean hashJoin (int [] cols1, Table table2, int [] cols2, Consumer <Comparable []> sink)
+    {
+        boolean intKey = cols1.length == 1 && domain [cols1 [0]] == Integer.class &&
+                                             table2.domain [cols2 [0]] == Integer.class;
+        try {
+            HashJoin.join (tuples, cols1, domain, table2.tuples, cols2, table2.domain, intKey, memoryBudget, sink);
+            return true;
+        } catch (IOException ex) {
+            out.println ("join: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+    } // hashJoin
+
+    /************************************************************************************
+     * Return this table's tuples in order of the attributes at cols, read from an ordered
+     * primary key index (B+Tree first, then TreeMap) that the table maintains.
+     *
+     * @param cols  the positions of the attributes
+     * @return  the ordered tuples, or null if cols is not the key or there is no such index
+     */
+    private synchronized Iterable <Comparable []> ordered (int [] cols)
+    {
+        if (! Arrays.equals (cols, keyCols ())) return null;
+        if (bpIndex != null) return bpIndex.values ();
+        return (index instanceof SortedMap) ? index.values () : null;
+    } // ordered
+
+    /************************************************************************************
+     * Resolve the sort attributes of orderBy, each optionally followed by "asc" or
+     * "desc", to their positions, marking the descending ones.
+     *
+     * @param attributes  the sort attributes, separated by spaces
+     * @param desc        set to whether each sort attribute is descending (at least as
+     *                    long as the number of attributes)
+     * @return  the positions of the sort attributes
+     */
+    private int [] sortCols (String attributes, boolean [] desc)
+    {
+        List <Integer> cols = new ArrayList <> ();
+        for (String a : attributes.trim ().split (" +")) {
+            if (! cols.isEmpty () && (a.equalsIgnoreCase ("asc") || a.equalsIgnoreCase ("desc"))) {
+                desc [cols.size () - 1] = a.equalsIgnoreCase ("desc");
+                continue;
+            } // if
+            int j = col (a);
+            if (j < 0) throw new IllegalArgumentException ("orderBy: unknown attribute " + a);
+            cols.add (j);
+        } // for
+        int [] result = new int [cols.size ()];
+        for (int i = 0; i < result.length; i++) result [i] = cols.get (i);
+        return result;
+    } // sortCols
+
+    /************************************************************************************
+     * Return whether the flags include the given value.
+     */
+    private static boolean contains (boolean [] flags, boolean value)
+    {
+        for (boolean f : flags) if (f == value) return true;
+        return false;
+    } // contains
+
+    /************************************************************************************
+     * Return a read-only view of list1 followed by list2.
+     */
+    private static List <Comparable []> concat (List <Comparable []> list1, List <Comparable []> list2)
+    {
+        return new AbstractList <Comparable []> () {
+            public Comparable [] get (int i)
+            {
+                return (i < list1.size ()) ? list1.get (i) : list2.get (i - list1.size ());
+            } // get
+
+            public int size ()
+            {
+                return list1.size () + list2.size ();
+            } // size
+        };
+    } // concat
+
+    /************************************************************************************
+     * Return a test of whether a tuple (of a compatible table) is in this table, i.e.,
+     * equals one of its tuples attribute by attribute.  If the table maintains a hash or
+     * TreeMap index on its primary key, the tuple's key is looked up in it and the tuple
+     * found compared in full (which assumes, as for any primary key, that no two tuples
+     * share a key).  Otherwise a hash set of all the tuples is built, by the given number
+     * of threads.  The test may be used by several threads at once.
+     *
+     * @param threads  the number of threads building the hash set
+     * @return  the membership test
+     */
+    private Predicate <Comparable []> contains (int threads)
+    {
+        IntHashMap <Comparable []>   ints;
+        Map <KeyType, Comparable []> idx;
+        synchronized (this) {
+            ints = intIndex;
+            idx  = (extIndex != null) ? extIndex : index;
+        } // synchronized
+
+        if (ints != null) {
+            int col = intKeyCol ();
+            return t -> t [col] != null && Arrays.equals (ints.get ((Integer) t [col]), t);
+        } // if
+        if (idx != null) {
+            int [] cols = keyCols ();
+            return t -> {
+                Object k = HashJoin.key (t, cols);
+                return k != null && Arrays.equals (idx.get ((k instanceof KeyType) ? (KeyType) k : new KeyType ((Comparable) k)), t);
+            };
+        } // if
+
+        Set <List <Comparable>> set;
+        if (threads <= 1) {
+            set = new HashSet <> ();
+            for (Comparable [] t : tuples) set.add (Arrays.asList (t));
+        } else {
+            Set <List <Comparable>>   shared = ConcurrentHashMap.newKeySet (tuples.size ());
+            List <Callable <Boolean>> tasks  = new ArrayList <> ();
+            for (List <Comparable []> chunk : Parallel.chunks (tuples, threads)) {
+                tasks.add (() -> {
+                    for (Comparable [] t : chunk) shared.add (Arrays.asList (t));
+                    return true;
+                });
+            } // for
+            Parallel.invokeAll (threads, tasks);
+            set = shared;
+        } // if
+        return t -> set.contains (Arrays.asList (t));
+    } // contains
+
+    /************************************************************************************
+     * Join the tuples of table1 with this table by looking up their values at cols1 in
+     * this table's primary key index of the given type (index nested loop join).
+     *
+     * @param tuples1    the tuples of the lhs table
+     * @param cols1      the positions in table1 of the attributes equal to this key
+     * @param indexType  the type of index to probe
+     * @param rows       the list receiving the joined tuples
+     * @return  whether the index exists (if not, nothing is added)
+     */
+    private boolean probe (List <Comparable []> tuples1, int [] cols1, int indexType, List <Comparable []> rows)
+    {
+        if (indexType == INT_HASH_MAP && intIndex () != null) {
+            for (Comparable [] t : tuples1) {
+                Comparable [] u = (t [cols1 [0]] == null) ? null : intIndex.get ((Integer) t [cols1 [0]]);
+                if (u != null) rows.add (ArrayUtil.concat (t, u));
+            } // for
+            return true;
+        } // if
+        Map <KeyType, Comparable []> idx = (indexType == INT_HASH_MAP) ? null : getIndex (indexType);
+        if (idx == null) return false;
+        for (Comparable [] t : tuples1) {
+            Object k = HashJoin.key (t, cols1);
+            if (k == null) continue;
+            Comparable [] u = idx.get ((k instanceof KeyType) ? (KeyType) k : new KeyType ((Comparable) k));
+            if (u != null) rows.add (ArrayUtil.concat (t, u));
+        } // for
+        return true;
+    } // probe
+
     /************************************************************************************
      * Return the column position for the given attribute name.
      *
@@ -488,21 +1626,261 @@ public class Table
     {
         //out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
-        if (typeCheck (tup)) {
-            tuples.add (tup);
-            Comparable [] keyVal = new Comparable [key.length];
-            int []        cols   = match (key);
-            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            index.put (new KeyType (keyVal), tup);
-            bpIndex.put(new KeyType (keyVal), tup);
-            extIndex.put(new KeyType (keyVal), tup);
-            linIndex.put(new KeyType (keyVal), tup);
-            return true;
-        } else {
-            return false;
+        WriteAheadLog wal;
+        long          lsn;
+        synchronized (this) {
+            if (! typeCheck (tup)) return false;
+            apply (tup);
+            wal = log;
+            lsn = (wal == null) ? 0 : wal.append (tup);
+        } // synchronized
+
+        if (wal != null) {
+            try {
+                wal.commit (lsn);                          // group commit, outside the lock
+            } catch (IOException ex) {
+                out.println ("insert: IO Exception");
+                ex.printStackTrace ();
+                undo (tup);
+                return false;
+            } // try
         } // if
+        return true;
     } // insert
 
+    /************************************************************************************
+     * Insert many tuples at once.  Into an empty table, the tuples are added, sorted on
+     * the primary key (linear for input already in key order) and the B+Tree index (if
+     * maintained) is built bottom-up by BpTreeMap.bulkLoad, rather than by one
+     * root-to-leaf put per tuple.  Otherwise the tuples are inserted one at a time.
+     *
+     * #usage student.bulkInsert (resultTest [0])
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted (those passing the type check)
+     */
+    public int bulkInsert (Comparable [][] tups)
+    {
+        if (! tuples.isEmpty () || (bpIndex != null && ! (bpIndex instanceof BpTreeMap)) || log != null) {
+            int n = 0;
+            for (Comparable [] tup : tups) if (insert (tup)) n++;
+            return n;
+        } // if
+
+        int n = 0;
+        List <Map.Entry <KeyType, Comparable []>> sorted = new ArrayList <> (bpIndex == null ? 0 : tups.length);
+        synchronized (this) {
+            for (Comparable [] tup : tups) {
+                if (! typeCheck (tup)) continue;
+                KeyType k = keyOf (tup);
+                tuples.add (tup);
+                if (index != null)    index.put (k, tup);
+                if (extIndex != null) extIndex.put (k, tup);
+                if (linIndex != null) linIndex.put (k, tup);
+                if (intIndex != null) intIndex.put ((Integer) tup [intKeyCol ()], tup);
+                if (bpIndex != null)  sorted.add (new AbstractMap.SimpleImmutableEntry <> (k, tup));
+                n++;
+            } // for
+            if (bpIndex != null) bulkLoad ((BpTreeMap <KeyType, Comparable []>) bpIndex, sorted);
+        } // synchronized
+        return n;
+    } // bulkInsert
+
+    /************************************************************************************
+     * Choose the indexes this table maintains.  The given index types are built now (if
+     * not already present) and kept up to date by every insert, while the others are
+     * dropped.  If lazy, an index that is not maintained is built the first time an
+     * operation asks for it (and maintained from then on); otherwise such operations
+     * scan the tuples or build a throwaway index.  Calling setIndexes (false) gives a
+     * table with no indexes at all.  INT_HASH_MAP only applies to tables whose primary
+     * key is a single Integer attribute.  A column-store table never maintains an index
+     * (its entries would keep every tuple boxed, undoing the column storage), so for it
+     * the index types are ignored and lazy is false: its selects run on the column
+     * vectors, and joins and lookups scan it or build a throwaway index.
+     *
+     * #usage student.setIndexes (false, Table.TREE_MAP, Table.BP_TREE_MAP)
+     *
+     * @param _lazy       whether to build missing indexes on first use
+     * @param indexTypes  the types of the indexes to maintain
+     * @throws IllegalArgumentException  if an index type is unknown
+     */
+    public synchronized void setIndexes (boolean _lazy, int... indexTypes)
+    {
+        for (int type : indexTypes) {
+            if (type < TREE_MAP || type > INT_HASH_MAP) {
+                throw new IllegalArgumentException ("setIndexes: unknown index type " + type);
+            } // if
+        } // for
+        if (isColumnar ()) {
+            _lazy      = false;
+            indexTypes = new int [0];
+        } // if
+        boolean [] keep = new boolean [INT_HASH_MAP + 1];
+        for (int type : indexTypes) keep [type] = true;
+        for (int type = TREE_MAP; type <= EXT_HASH_MAP; type++) {
+            if (! keep [type]) setIndex (type, null);
+            else if (getIndex (type) == null) setIndex (type, buildIndex (type));
+        } // for
+        if (! keep [INT_HASH_MAP]) intIndex = null;
+        else if (intIndex == null && intKeyCol () >= 0) intIndex = buildIntIndex ();
+        lazy = _lazy;
+    } // setIndexes
+
+    /************************************************************************************
+     * Determine whether this table currently maintains an index of the given type.
+     *
+     * @param indexType  the type of index (e.g., Table.BP_TREE_MAP)
+     * @return  whether the index exists and is kept up to date by inserts
+     */
+    public synchronized boolean hasIndex (int indexType)
+    {
+        switch (indexType) {
+        case TREE_MAP:     return index != null;
+        case BP_TREE_MAP:  return bpIndex != null;
+        case LIN_HASH_MAP: return linIndex != null;
+        case INT_HASH_MAP: return intIndex != null;
+        default:           return extIndex != null;
+        } // switch
+    } // hasIndex
+
+    /************************************************************************************
+     * Return statistics on this table's tuples (see Statistics), computing them if the
+     * number of tuples has changed since they were last computed.
+     *
+     * @return  the statistics
+     */
+    public synchronized Statistics statistics ()
+    {
+        if (stats == null || stats.rows != tuples.size ()) stats = new Statistics (tuples, attribute.length);
+        return stats;
+    } // statistics
+
+    /************************************************************************************
+     * Look up the tuple with the given key in a table whose primary key is a single
+     * Integer attribute.  With the int key index (INT_HASH_MAP) maintained (or built
+     * lazily), the lookup neither boxes the key nor allocates.  Without it the key
+     * column is scanned, a column store's without boxing, rather than building an
+     * index for a single lookup.
+     *
+     * #usage student.lookup (12345)
+     *
+     * @param keyVal  the key value
+     * @return  the tuple with that key (null if none)
+     */
+    public Comparable [] lookup (int keyVal)
+    {
+        IntHashMap <Comparable []> ints = intIndex ();
+        if (ints != null) return ints.get (keyVal);
+        int col = intKeyCol ();
+        if (col < 0) return indexOrBuild (TREE_MAP).get (new KeyType (keyVal));
+
+        if (isColumnar ()) {
+            ColumnStore store = (ColumnStore) tuples;
+            int []      keys  = store.ints (col);
+            for (int i = 0; i < store.size (); i++) {
+                if (keys [i] == keyVal && ! store.isNull (i, col)) return store.get (i);
+            } // for
+            return null;
+        } // if
+        for (Comparable [] t : tuples) {
+            if (t [col] != null && (Integer) t [col] == keyVal) return t;
+        } // for
+        return null;
+    } // lookup
+
+    /************************************************************************************
+     * Open this table's write-ahead log (store/<name>.wal), first replaying any records
+     * left in it since the last save.  From then on every insert is logged and is
+     * durable when insert returns; concurrent inserts share log forces (group commit).
+     *
+     * #usage student.openLog ()
+     *
+     * @return  whether the log was opened
+     */
+    public synchronized boolean openLog ()
+    {
+        if (log != null) return true;
+        try {
+            new File (DIR).mkdirs ();
+            String path = DIR + name + LOG;
+            Map <KeyType, Comparable []> seen = indexOrBuild (TREE_MAP);
+            WriteAheadLog.replay (path, domain, tup -> {
+                KeyType k = keyOf (tup);
+                if (seen.get (k) == null) {                         // redo is idempotent
+                    apply (tup);
+                    seen.put (k, tup);
+                } // if
+            });
+            log = new WriteAheadLog (path, domain);
+            return true;
+        } catch (IOException ex) {
+            out.println ("openLog: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+    } // openLog
+
+    /************************************************************************************
+     * Get the write-ahead log of this table (null if the log is not open).
+     *
+     * @return  the table's log
+     */
+    public WriteAheadLog getLog ()
+    {
+        return log;
+    } // getLog
+
+    /************************************************************************************
+     * Move this table's B+Tree index (indexType 1) to disk.  The index is rebuilt in the
+     * file store/<name>.idx and its nodes are cached in a buffer pool with the given
+     * number of frames, so the index no longer has to fit in memory.
+     *
+     * #usage student.useDiskIndex (256)
+     *
+     * @param frames  the number of buffer pool frames (pages) to cache
+     * @return  whether the disk index was created
+     */
+    public boolean useDiskIndex (int frames)
+    {
+        try {
+            new File (DIR).mkdirs ();
+            String path = DIR + name + ".idx";
+            Class [] keyDomain = extractDom (match (key), domain);
+            synchronized (this) {
+                if (bpIndex instanceof DiskBpTreeMap) {
+                    ((DiskBpTreeMap <KeyType, Comparable []>) bpIndex).close ();
+                    bpIndex = null;
+                } // if
+                new File (path).delete ();
+                DiskBpTreeMap <KeyType, Comparable []> disk = new DiskBpTreeMap <> (path,
+                    DiskBpTreeMap.keyCodec (keyDomain), DiskBpTreeMap.tupleCodec (domain), frames);
+                disk.load (sortedByKey ());
+                bpIndex    = disk;
+                diskFrames = frames;
+            } // synchronized
+            return true;
+        } catch (IOException ex) {
+            out.println ("useDiskIndex: IO Exception");
+            ex.printStackTrace ();
+            return false;
+        } // try
+    } // useDiskIndex
+
+    /************************************************************************************
+     * Return the tuples keyed and in ascending key order, read straight from the TreeMap
+     * index when the table has one and sorted otherwise.
+     *
+     * @return  an iterator over the (key, tuple) entries in key order
+     */
+    private Iterator <Map.Entry <KeyType, Comparable []>> sortedByKey ()
+    {
+        if (index instanceof SortedMap) return index.entrySet ().iterator ();
+        List <Map.Entry <KeyType, Comparable []>> entries = new ArrayList <> (tuples.size ());
+        for (Comparable [] tup : tuples) entries.add (new AbstractMap.SimpleEntry <> (keyOf (tup), tup));
+        entries.sort (Map.Entry.comparingByKey ());
+        return entries.iterator ();
+    } // sortedByKey
+
     /************************************************************************************
      * Get the name of the table.
      *
@@ -512,7 +1890,37 @@ public class Table
     {
         return name;
     } // getName
+
+    /************************************************************************************
+     * Get the names of the attributes.
+     *
+     * @return  a copy of the attribute names
+     */
+    public String [] getAttributes ()
+    {
+        return attribute.clone ();
+    } // getAttributes
+
+    /************************************************************************************
+     * Get the names of the primary key attributes.
+     *
+     * @return  a copy of the key attribute names
+     */
+    public String [] getKey ()
+    {
+        return key.clone ();
+    } // getKey
     
+    /************************************************************************************
+     * Determine whether this table stores its tuples column-wise (see ColumnStore).
+     *
+     * @return  whether the tuples are kept in a column store
+     */
+    public boolean isColumnar ()
+    {
+        return tuples instanceof ColumnStore;
+    } // isColumnar
+
     /********************
      * Get the length of the table
      * 
@@ -566,14 +1974,16 @@ public class Table
     {
         out.println ("\n Index for " + name);
         out.println ("-------------------");
-        for (Map.Entry <KeyType, Comparable []> e : index.entrySet ()) {
+        for (Map.Entry <KeyType, Comparable []> e : indexOrBuild (TREE_MAP).entrySet ()) {
             out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
         } // for
         out.println ("-------------------");
     } // printIndex
 
     /************************************************************************************
-     * Load the table with the given name into memory.
+     * Load the table with the given name into memory.  The table file is memory mapped
+     * and decoded page by page (see TableFile).  If the table has a write-ahead log, the
+     * inserts logged since the last save are replayed and the log is reopened.
      *
      * @param name  the name of the table to load
      */
@@ -581,28 +1991,31 @@ public class Table
     {
         Table tab = null;
         try {
-            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
-            tab = (Table) ois.readObject ();
-            ois.close ();
+            tab = TableFile.read (DIR + name + EXT);
+            if (new File (DIR + name + LOG).exists ()) tab.openLog ();
         } catch (IOException ex) {
             out.println ("load: IO Exception");
             ex.printStackTrace ();
-        } catch (ClassNotFoundException ex) {
-            out.println ("load: Class Not Found Exception");
-            ex.printStackTrace ();
         } // try
         return tab;
     } // load
 
     /************************************************************************************
-     * Save this table in a file.
+     * Save this table in a file, using the page-based binary format of TableFile.  The
+     * file is written and forced under a temporary name and then renamed, and serves as
+     * a checkpoint: once the rename is forced too, the write-ahead log (if open) is
+     * emptied.
      */
-    public void save ()
+    public synchronized void save ()
     {
         try {
-            ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
+            new File (DIR).mkdirs ();
+            Path file = Paths.get (DIR + name + EXT);
+            Path temp = Paths.get (DIR + name + EXT + ".tmp");
+            TableFile.write (temp.toString (), name, attribute, domain, key, isColumnar (), tuples);
+            Files.move (temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            TableFile.syncDirectory (Paths.get (DIR));         // the rename is durable before the log is emptied
+            if (log != null) log.truncate ();
         } catch (IOException ex) {
             out.println ("save: IO Exception");
             ex.printStackTrace ();
@@ -613,6 +2026,278 @@ public class Table
     // Private Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Apply an insert to the in-memory structures: the tuple list and the indexes this
+     * table maintains (all sharing one key object).
+     *
+     * @param tup  the (type checked) tuple to insert
+     */
+    private void apply (Comparable [] tup)
+    {
+        tuples.add (tup);
+        if (intIndex != null) intIndex.put ((Integer) tup [intKeyCol ()], tup);
+        if (index == null && bpIndex == null && extIndex == null && linIndex == null) return;
+        KeyType k = keyOf (tup);
+        if (index != null)    index.put (k, tup);
+        if (bpIndex != null)  bpIndex.put (k, tup);
+        if (extIndex != null) extIndex.put (k, tup);
+        if (linIndex != null) linIndex.put (k, tup);
+    } // apply
+
+    /************************************************************************************
+     * Undo an applied insert whose log record could not be made durable: remove the
+     * tuple (the last one equal to it) and rebuild the indexes this table maintains,
+     * which cannot simply drop its key, as an earlier tuple may have had the same key.
+     *
+     * @param tup  the inserted tuple
+     */
+    private synchronized void undo (Comparable [] tup)
+    {
+        for (int i = tuples.size () - 1; i >= 0; i--) {
+            Comparable [] t = tuples.get (i);
+            if (t == tup || Arrays.equals (t, tup)) {
+                tuples.remove (i);
+                break;
+            } // if
+        } // for
+        reindex ();
+    } // undo
+
+    /************************************************************************************
+     * Rebuild the indexes this table maintains from its tuples, e.g., after tuples were
+     * added to (or removed from) the tuple list directly rather than inserted.  Each is
+     * built in one pass, a B+Tree bottom-up (see buildIndex).
+     */
+    synchronized void reindex ()
+    {
+        if (intIndex != null) intIndex = buildIntIndex ();
+        for (int type = TREE_MAP; type <= EXT_HASH_MAP; type++) {
+            if (type == BP_TREE_MAP && bpIndex instanceof DiskBpTreeMap) useDiskIndex (diskFrames);
+            else if (hasIndex (type)) setIndex (type, buildIndex (type));
+        } // for
+    } // reindex
+
+    /************************************************************************************
+     * Return the primary key of the tuple.
+     *
+     * @param tup  the tuple
+     * @return  the tuple's key
+     */
+    private KeyType keyOf (Comparable [] tup)
+    {
+        int [] keyCols = keyCols ();
+        Comparable [] keyVal = new Comparable [keyCols.length];
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [keyCols [j]];
+        return new KeyType (keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Analyze the condition into an access path, falling back to a scan when the path
+     * needs an index the table neither maintains nor builds lazily.
+     *
+     * @param condition  the selection condition
+     * @return  the access path
+     */
+    private AccessPath access (Expr condition)
+    {
+        AccessPath path = AccessPath.analyze (condition, key, keyCols (), domain);
+        boolean    ok   = (path.points != null) ? lazy || hasIndex (TREE_MAP) || hasIndex (BP_TREE_MAP) ||
+                                                   hasIndex (EXT_HASH_MAP) || hasIndex (INT_HASH_MAP)
+                        : (path.range != null)  ? lazy || hasIndex (TREE_MAP) || hasIndex (BP_TREE_MAP)
+                        : true;
+        return ok ? path : AccessPath.scan (condition);
+    } // access
+
+    /************************************************************************************
+     * Find the tuple with the given key in an index, or by a scan if the table has none
+     * (e.g., its indexes were dropped after a query chose a point lookup).
+     *
+     * @param keyVal  the key value
+     * @return  the tuple with that key (null if there is none)
+     */
+    Comparable [] find (KeyType keyVal)
+    {
+        IntHashMap <Comparable []> ints = (keyVal.key [0] instanceof Integer) ? intIndex () : null;
+        if (ints != null) return ints.get ((Integer) keyVal.key [0]);
+        for (int type : new int [] { TREE_MAP, BP_TREE_MAP, EXT_HASH_MAP }) {
+            if (hasIndex (type)) return getIndex (type).get (keyVal);
+        } // for
+        Map <KeyType, Comparable []> idx = getIndex (TREE_MAP);
+        if (idx != null) return idx.get (keyVal);
+        for (Comparable [] t : tuples) if (keyOf (t).compareTo (keyVal) == 0) return t;
+        return null;
+    } // find
+
+    /************************************************************************************
+     * Turn a conjunct into a vector predicate: a comparison of an attribute with a
+     * literal of its own type is compared over the column vectors, anything else is
+     * tested row by row.
+     *
+     * @param c  the conjunct
+     * @return  the vector predicate
+     */
+    private VectorPredicate vector (Expr c)
+    {
+        Expr.Cmp cmp = (c instanceof Expr.Cmp) ? ((Expr.Cmp) c).normalized () : null;
+        if (cmp != null) {
+            int        j = col (((Expr.Col) cmp.left).name);
+            Comparable v = (j < 0) ? null : Expr.coerce (((Expr.Lit) cmp.right).value, domain [j]);
+            if (v != null) return VectorPredicate.compare (j, cmp.op, v);
+        } // if
+        return VectorPredicate.of (c.predicate (attribute));
+    } // vector
+
+    /************************************************************************************
+     * Return the positions of the primary key attributes.
+     */
+    private int [] keyCols ()
+    {
+        if (keyCols == null) keyCols = match (key);
+        return keyCols;
+    } // keyCols
+
+    /************************************************************************************
+     * Return the position of the primary key if it is a single Integer attribute, else -1.
+     */
+    private int intKeyCol ()
+    {
+        if (key.length != 1) return -1;
+        int [] keyCols = keyCols ();
+        return (keyCols [0] >= 0 && domain [keyCols [0]] == Integer.class) ? keyCols [0] : -1;
+    } // intKeyCol
+
+    /************************************************************************************
+     * Get the int key index, building it if the table builds indexes lazily.
+     *
+     * @return  the index, or null if there is none (or the key is not a single Integer)
+     */
+    private synchronized IntHashMap <Comparable []> intIndex ()
+    {
+        if (intIndex == null && lazy && intKeyCol () >= 0) intIndex = buildIntIndex ();
+        return intIndex;
+    } // intIndex
+
+    /************************************************************************************
+     * Get the int key index, building a throwaway one if the table has none.
+     *
+     * @return  the index, or null if the key is not a single Integer
+     */
+    private IntHashMap <Comparable []> intIndexOrBuild ()
+    {
+        IntHashMap <Comparable []> ints = intIndex ();
+        return (ints != null || intKeyCol () < 0) ? ints : buildIntIndex ();
+    } // intIndexOrBuild
+
+    /************************************************************************************
+     * Build an int key index over the current tuples.
+     *
+     * @return  the new index
+     */
+    private IntHashMap <Comparable []> buildIntIndex ()
+    {
+        int                        col  = intKeyCol ();
+        IntHashMap <Comparable []> ints = new IntHashMap <> (tuples.size ());
+        for (Comparable [] tup : tuples) ints.put ((Integer) tup [col], tup);
+        return ints;
+    } // buildIntIndex
+
+    /************************************************************************************
+     * Get the index of the given type.  If the table does not maintain it but builds
+     * indexes lazily, it is built now and maintained from then on.
+     *
+     * @param indexType  the type of index
+     * @return  the index, or null if it is neither maintained nor built lazily
+     */
+    private synchronized Map <KeyType, Comparable []> getIndex (int indexType)
+    {
+        Map <KeyType, Comparable []> idx;
+        switch (indexType) {
+        case TREE_MAP:     idx = index;    break;
+        case BP_TREE_MAP:  idx = bpIndex;  break;
+        case LIN_HASH_MAP: idx = linIndex; break;
+        default:           idx = extIndex; break;
+        } // switch
+        if (idx == null && lazy) {
+            idx = buildIndex (indexType);
+            setIndex (indexType, idx);
+        } // if
+        return idx;
+    } // getIndex
+
+    /************************************************************************************
+     * Get the index of the given type, building a throwaway one if the table has none.
+     *
+     * @param indexType  the type of index
+     * @return  the index
+     */
+    private Map <KeyType, Comparable []> indexOrBuild (int indexType)
+    {
+        Map <KeyType, Comparable []> idx = getIndex (indexType);
+        return (idx != null) ? idx : buildIndex (indexType);
+    } // indexOrBuild
+
+    /************************************************************************************
+     * Set (or with null, drop) the index of the given type.
+     */
+    @SuppressWarnings ("unchecked")
+    private void setIndex (int indexType, Map <KeyType, Comparable []> idx)
+    {
+        switch (indexType) {
+        case TREE_MAP:     index    = idx; break;
+        case BP_TREE_MAP:  bpIndex  = (SortedMap <KeyType, Comparable []>) idx; break;
+        case LIN_HASH_MAP: linIndex = idx; break;
+        default:           extIndex = idx; break;
+        } // switch
+    } // setIndex
+
+    /************************************************************************************
+     * Build an index of the given type over the current tuples.  A B+Tree is loaded
+     * bottom-up from the tuples sorted on the key.
+     *
+     * @param indexType  the type of index
+     * @return  the new index
+     */
+    private Map <KeyType, Comparable []> buildIndex (int indexType)
+    {
+        switch (indexType) {
+        case TREE_MAP:
+            Map <KeyType, Comparable []> tree = new TreeMap <> ();
+            for (Comparable [] tup : tuples) tree.put (keyOf (tup), tup);
+            return tree;
+        case BP_TREE_MAP:
+            BpTreeMap <KeyType, Comparable []> bp = new BpTreeMap <> (KeyType.class, Comparable [].class);
+            List <Map.Entry <KeyType, Comparable []>> entries = new ArrayList <> (tuples.size ());
+            for (Comparable [] tup : tuples) entries.add (new AbstractMap.SimpleImmutableEntry <> (keyOf (tup), tup));
+            bulkLoad (bp, entries);
+            return bp;
+        default:
+            Map <KeyType, Comparable []> hash = (indexType == LIN_HASH_MAP)
+                ? new LinHashMap <> (KeyType.class, Comparable [].class, 4)
+                : new ExtHashMap <> (KeyType.class, Comparable [].class, 4);
+            for (Comparable [] tup : tuples) hash.put (keyOf (tup), tup);
+            return hash;
+        } // switch
+    } // buildIndex
+
+    /************************************************************************************
+     * Sort the entries on their keys and bulk load them into the (empty) B+Tree.  For
+     * duplicate keys, the last entry wins (as with put).
+     *
+     * @param bp       the B+Tree to load
+     * @param entries  the entries to load (reordered)
+     */
+    private static void bulkLoad (BpTreeMap <KeyType, Comparable []> bp,
+                                  List <Map.Entry <KeyType, Comparable []>> entries)
+    {
+        entries.sort (Map.Entry.comparingByKey ());                 // stable
+        int n = 0;
+        for (Map.Entry <KeyType, Comparable []> e : entries) {
+            if (n > 0 && entries.get (n - 1).getKey ().compareTo (e.getKey ()) == 0) n--;
+            entries.set (n++, e);
+        } // for
+        bp.bulkLoad (entries.subList (0, n).iterator ());
+    } // bulkLoad
+
     /************************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e., have
      * the same number of attributes each with the same corresponding domain.
@@ -635,6 +2320,45 @@ public class Table
         return true;
     } // compatible
 
+    /************************************************************************************
+     * Create an empty list for the result of an operator, using the same kind of storage
+     * (row or column) as this table.
+     *
+     * @param dom  the domains of the result's attributes
+     * @return  an empty list of tuples
+     */
+    private List <Comparable []> newRows (Class [] dom)
+    {
+        return isColumnar () ? new ColumnStore (dom) : new ArrayList <> ();
+    } // newRows
+
+    /************************************************************************************
+     * Scan the column store of this table for the rows satisfying the predicate.  Each
+     * row is materialized into a single reused buffer, and the qualifying rows are
+     * gathered column by column, so no tuple is allocated per row.  The predicate must
+     * therefore not hold on to the tuple it is given.
+     *
+     * @param predicate  the check condition for tuples
+     * @return  a column store holding the qualifying rows
+     */
+    private ColumnStore scan (Predicate <Comparable []> predicate)
+    {
+        ColumnStore   store = (ColumnStore) tuples;
+        Comparable [] buf   = new Comparable [attribute.length];
+        int []        pos   = new int [16];
+        int           n     = 0;
+
+        for (int i = 0; i < store.size (); i++) {
+            store.fill (i, buf);
+            if (predicate.test (buf)) {
+                if (n == pos.length) pos = Arrays.copyOf (pos, 2 * n);
+                pos [n++] = i;
+            } // if
+        } // for
+
+        return store.gather (pos, n);
+    } // scan
+
     /************************************************************************************
      * Match the column and attribute names to determine the domains.
      *
@@ -662,17 +2386,17 @@ public class Table
     } // match
 
     /************************************************************************************
-     * Extract the attributes specified by the column array from tuple t.
+     * Extract the attributes at the given positions (found once with match) from
+     * tuple t.
      *
      * @param t       the tuple to extract from
-     * @param column  the array of column names
+     * @param colPos  the positions of the columns
      * @return  a smaller tuple extracted from tuple t
      */
-    private Comparable [] extract (Comparable [] t, String [] column)
+    private static Comparable [] extract (Comparable [] t, int [] colPos)
     {
-        Comparable [] tup = new Comparable [column.length];
-        int [] colPos = match (column);
-        for (int j = 0; j < column.length; j++) tup [j] = t [colPos [j]];
+        Comparable [] tup = new Comparable [colPos.length];
+        for (int j = 0; j < colPos.length; j++) tup [j] = t [colPos [j]];
         return tup;
     } // extract
 
@@ -0,0 +1,318 @@
+
+/****************************************************************************************
+ * @file  TableFile.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * This class reads and writes tables in a page-based binary file format.  The file
+ * starts with a header (padded to whole pages) holding the schema, followed by
+ * fixed-size slotted data pages:
+ *
+ *  | nSlots (short) | freeEnd (short) | slot 0: offset, length (shorts) | ... |
+ *  |                  free space                   | ... | tuple 1 | tuple 0 |
+ *
+ * Tuples are encoded by a TupleCodec built from the table's domains, so Strings take
+ * only as many bytes as they need.  Files are written through a FileChannel and read
+ * back by memory mapping the data pages.
+ */
+public class TableFile
+{
+    /** The size of a page in bytes.
+     */
+    public static final int PAGE_SIZE = 8192;
+
+    /** Magic number identifying table files ("DBF1").
+     */
+    private static final int MAGIC = 0x44424631;
+
+    /** The size of the page header (slot count and free space pointer).
+     */
+    private static final int PAGE_HEADER = 4;
+
+    /** The size of a slot directory entry (offset and length).
+     */
+    private static final int SLOT = 4;
+
+    /** The maximum number of pages mapped at once when reading.
+     */
+    private static final int MAP_PAGES = 1 << 16;
+
+    /************************************************************************************
+     * Write the table's schema and tuples to the file at the given path, forcing them to
+     * disk before returning.
+     *
+     * @param path       the path of the file to (over)write
+     * @param name       the name of the relation
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param key        the primary key
+     * @param columnar   whether the table uses column storage
+     * @param tuples     the tuples to write
+     * @throws IOException  if the file cannot be written or a tuple does not fit in a page
+     */
+    public static void write (String path, String name, String [] attribute, Class [] domain,
+                              String [] key, boolean columnar, List <Comparable []> tuples)
+           throws IOException
+    {
+        TupleCodec codec  = new TupleCodec (domain);
+        ByteBuffer header = encodeHeader (name, attribute, domain, key, columnar);
+        int        hPages = header.capacity () / PAGE_SIZE;
+
+        try (FileChannel ch = FileChannel.open (Paths.get (path), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out     = ByteBuffer.allocateDirect (64 * PAGE_SIZE);
+            ByteBuffer page    = ByteBuffer.allocate (PAGE_SIZE);
+            ByteBuffer scratch = ByteBuffer.allocate (PAGE_SIZE);
+            int        nPages  = 0;
+            ch.position ((long) hPages * PAGE_SIZE);
+            clearPage (page);
+
+            for (Comparable [] t : tuples) {
+                scratch.clear ();
+                int len = codec.size (t);
+                if (len + PAGE_HEADER + SLOT > PAGE_SIZE) {
+                    throw new IOException ("TableFile: tuple too large for a page: " + Arrays.toString (t));
+                } // if
+                codec.write (scratch, t);
+                if (! addToPage (page, scratch.array (), len)) {
+                    nPages += flushPage (ch, out, page);
+                    addToPage (page, scratch.array (), len);
+                } // if
+            } // for
+            if (page.getShort (0) > 0) nPages += flushPage (ch, out, page);
+            out.flip ();
+            while (out.hasRemaining ()) ch.write (out);
+
+            header.putLong (16, tuples.size ());
+            header.putInt (24, nPages);
+            header.rewind ();
+            ch.position (0);
+            while (header.hasRemaining ()) ch.write (header);
+            ch.force (true);
+        } // try
+    } // write
+
+    /************************************************************************************
+     * Force the directory to disk, so that a file just created or renamed in it is not
+     * lost in a crash.  Platforms that cannot open a directory (e.g., Windows) skip it.
+     *
+     * @param dir  the path of the directory
+     * @throws IOException  if the directory cannot be forced
+     */
+    public static void syncDirectory (Path dir)
+           throws IOException
+    {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open (dir, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            return;
+        } // try
+        try (FileChannel c = ch) {
+            c.force (true);
+        } // try
+    } // syncDirectory
+
+    /************************************************************************************
+     * Read the table stored in the file at the given path.  The data pages are memory
+     * mapped and each tuple is decoded and added to a new table, whose indexes are then
+     * built once.  The tuples were checked when they were written, so they are not type
+     * checked again (and may hold nulls, as derived tables can).
+     *
+     * @param path  the path of the file to read
+     * @return  the table stored in the file
+     * @throws IOException  if the file cannot be read or is not a table file
+     */
+    public static Table read (String path)
+           throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (Paths.get (path), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate (PAGE_SIZE);
+            while (head.hasRemaining () && ch.read (head) >= 0);
+            head.flip ();
+            if (head.getInt (0) != MAGIC || head.getInt (8) != PAGE_SIZE) {
+                throw new IOException ("TableFile: not a table file: " + path);
+            } // if
+            int  hPages = head.getInt (4);
+            long nTups  = head.getLong (16);
+            int  nPages = head.getInt (24);
+
+            if (hPages > 1) {
+                head = ByteBuffer.allocate (hPages * PAGE_SIZE);
+                while (head.hasRemaining () && ch.read (head, head.position ()) >= 0);
+                head.flip ();
+            } // if
+            head.position (28);
+            String    name      = getString (head);
+            boolean   columnar  = head.get () != 0;
+            String [] attribute = new String [head.getInt ()];
+            Class []  domain    = new Class [attribute.length];
+            for (int j = 0; j < attribute.length; j++) {
+                attribute [j] = getString (head);
+                domain [j]    = findClass (getString (head));
+            } // for
+            String [] key = new String [head.getInt ()];
+            for (int j = 0; j < key.length; j++) key [j] = getString (head);
+
+            Table      table = new Table (name, attribute, domain, key, columnar);
+            TupleCodec codec = new TupleCodec (domain);
+            long       read  = 0;
+
+            for (int p = 0; p < nPages; p += MAP_PAGES) {
+                int n = Math.min (MAP_PAGES, nPages - p);
+                MappedByteBuffer map = ch.map (FileChannel.MapMode.READ_ONLY,
+                                               (long) (hPages + p) * PAGE_SIZE, (long) n * PAGE_SIZE);
+                for (int q = 0; q < n; q++) {
+                    int base   = q * PAGE_SIZE;
+                    int nSlots = map.getShort (base) & 0xFFFF;
+                    for (int s = 0; s < nSlots; s++) {
+                        int off = map.getShort (base + PAGE_HEADER + s * SLOT) & 0xFFFF;
+                        map.position (base + off);
+                        table.tuples.add (codec.read (map));
+                        read++;
+                    } // for
+                } // for
+            } // for
+
+            if (read != nTups) {
+                throw new IOException ("TableFile: expected " + nTups + " tuples, found " + read);
+            } // if
+            table.reindex ();
+            return table;
+        } // try
+    } // read
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Encode the file header, padded to a whole number of pages.  The counts at offsets
+     * 16 (tuples) and 24 (data pages) are filled in once all tuples have been written.
+     */
+    private static ByteBuffer encodeHeader (String name, String [] attribute, Class [] domain,
+                                            String [] key, boolean columnar)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        try (DataOutputStream dos = new DataOutputStream (bytes)) {
+            dos.writeInt (MAGIC);
+            dos.writeInt (0);                           // header pages (set below)
+            dos.writeInt (PAGE_SIZE);
+            dos.writeInt (0);                           // reserved
+            dos.writeLong (0L);                         // number of tuples
+            dos.writeInt (0);                           // number of data pages
+            putString (dos, name);
+            dos.writeByte (columnar ? 1 : 0);
+            dos.writeInt (attribute.length);
+            for (int j = 0; j < attribute.length; j++) {
+                putString (dos, attribute [j]);
+                putString (dos, domain [j].getSimpleName ());
+            } // for
+            dos.writeInt (key.length);
+            for (String k : key) putString (dos, k);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);        // cannot happen for a byte array
+        } // try
+
+        int        hPages = (bytes.size () + PAGE_SIZE - 1) / PAGE_SIZE;
+        ByteBuffer header = ByteBuffer.allocate (hPages * PAGE_SIZE);
+        header.put (bytes.toByteArray ());
+        header.putInt (4, hPages);
+        return header;
+    } // encodeHeader
+
+    /************************************************************************************
+     * Reset the page to an empty slotted page.
+     */
+    private static void clearPage (ByteBuffer page)
+    {
+        Arrays.fill (page.array (), (byte) 0);
+        page.putShort (0, (short) 0);
+        page.putShort (2, (short) PAGE_SIZE);
+    } // clearPage
+
+    /************************************************************************************
+     * Add an encoded tuple to the page, placing the bytes at the end of the free space
+     * and a new slot after the existing ones.
+     *
+     * @return  whether the tuple fit in the page
+     */
+    private static boolean addToPage (ByteBuffer page, byte [] tuple, int len)
+    {
+        int nSlots  = page.getShort (0) & 0xFFFF;
+        int freeEnd = page.getShort (2) & 0xFFFF;
+        int slotEnd = PAGE_HEADER + (nSlots + 1) * SLOT;
+        if (freeEnd - len < slotEnd) return false;
+
+        int off = freeEnd - len;
+        System.arraycopy (tuple, 0, page.array (), off, len);
+        page.putShort (PAGE_HEADER + nSlots * SLOT, (short) off);
+        page.putShort (PAGE_HEADER + nSlots * SLOT + 2, (short) len);
+        page.putShort (0, (short) (nSlots + 1));
+        page.putShort (2, (short) off);
+        return true;
+    } // addToPage
+
+    /************************************************************************************
+     * Append the page to the output buffer (writing the buffer out when it is full) and
+     * reset the page.
+     *
+     * @return  1 (the number of pages flushed)
+     */
+    private static int flushPage (FileChannel ch, ByteBuffer out, ByteBuffer page)
+            throws IOException
+    {
+        if (out.remaining () < PAGE_SIZE) {
+            out.flip ();
+            while (out.hasRemaining ()) ch.write (out);
+            out.clear ();
+        } // if
+        out.put (page.array (), 0, PAGE_SIZE);
+        clearPage (page);
+        return 1;
+    } // flushPage
+
+    /************************************************************************************
+     * Write a length-prefixed UTF-8 string.
+     */
+    private static void putString (DataOutputStream dos, String s)
+            throws IOException
+    {
+        byte [] b = s.getBytes (StandardCharsets.UTF_8);
+        dos.writeInt (b.length);
+        dos.write (b);
+    } // putString
+
+    /************************************************************************************
+     * Read a string written by putString.
+     */
+    private static String getString (ByteBuffer buf)
+    {
+        byte [] b = new byte [buf.getInt ()];
+        buf.get (b);
+        return new String (b, StandardCharsets.UTF_8);
+    } // getString
+
+    /************************************************************************************
+     * Find the "java.lang" class with the given simple name.
+     */
+    private static Class findClass (String className)
+            throws IOException
+    {
+        try {
+            return Class.forName ("java.lang." + className);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException ("TableFile: unknown domain " + className, ex);
+        } // try
+    } // findClass
+
+} // TableFile class
+
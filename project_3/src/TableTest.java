@@ -87,6 +87,50 @@ public class TableTest
 		
 		assertEquals(movie_select.getTableLength(), 1);
 		assertEquals(starWars[0], "Star_Wars");
+		assertEquals(movie.select(new KeyType("Star_Trek", 1979), 0).getTableLength(), 0);
+	}
+
+	/**
+	 * Tests that a predicate select scans the index each index type names and finds the
+	 * same tuples with every one.
+	 */
+	@Test
+	public void testSelectByIndexType()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		for (int i = 0; i < 300; i++) student.insert(new Comparable [] { i, "Student_" + i });
+		java.util.Set <String> expected = tupleSet(student.select(t -> (Integer) t[0] % 7 == 0, Table.TREE_MAP));
+		assertEquals(expected.size(), 43);
+		for (int index : new int [] { Table.BP_TREE_MAP, Table.LIN_HASH_MAP, Table.EXT_HASH_MAP, Table.INT_HASH_MAP }) {
+			assertEquals(tupleSet(student.select(t -> (Integer) t[0] % 7 == 0, index)), expected);
+		}
+	}
+
+	/**
+	 * Tests that indexes built on a join result keep every tuple, although the result
+	 * repeats values of each input's key.
+	 */
+	@Test
+	public void testJoinResultKey()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table transcript = new Table ("transcript", "studId crsCode", "Integer String", "studId crsCode");
+		student.insert(new Comparable [] { 1, "Ann" });
+		student.insert(new Comparable [] { 2, "Bob" });
+		transcript.insert(new Comparable [] { 1, "CS4370" });
+		transcript.insert(new Comparable [] { 1, "CS4380" });
+		transcript.insert(new Comparable [] { 2, "CS4370" });
+		Table join = student.join("id", "studId", transcript, 0);
+		
+		assertArrayEquals(join.getKey(), new String [] { "id", "studId", "crsCode" });
+		assertEquals(join.orderBy("id").getTableLength(), 3);
+		join.select(new KeyType(1), 0);
+		assertEquals(join.orderBy("id").getTableLength(), 3);
+		assertEquals(join.select(Expr.col("id").eq(1)).getTableLength(), 2);
+		assertEquals(join.select(Expr.col("id").between(1, 2)).getTableLength(), 3);
+		assertEquals(join.minus(student.join("id", "studId", transcript, 0)).getTableLength(), 0);
+		assertEquals(student.product(transcript).select(t -> true, Table.TREE_MAP).getTableLength(), 6);
+		assertArrayEquals(student.union(student.select(t -> true, 0), false, 1).getKey(), student.getAttributes());
 	}
 	
 	/**
@@ -102,6 +146,53 @@ public class TableTest
 		assertEquals(union.getTableLength(), 5);
 	}
 	
+	/**
+	 * Tests that union eliminates duplicates by whole tuple or by key, streams its
+	 * result, gives the same tuples in the same order in parallel, and gives the same
+	 * tuples when deduplicating from disk (cleaning up its spill files).
+	 */
+	@Test
+	public void testHashUnion()
+	{
+		Table movie = this.createMovieTable();
+		Table cinema = this.createCinemaTable();
+		cinema.insert(new Comparable [] { "Star_Wars", 1977, 121, "sciFi", "Fox", 12345 });
+		cinema.insert(new Comparable [] { "Rocky", 1985, 200, "action", "Universal", 12125 });
+		assertEquals(movie.union(cinema).getTableLength(), 6);
+		assertEquals(movie.union(cinema, true, 1).getTableLength(), 5);
+		long [] n = { 0 };
+		assertTrue(movie.union(cinema, false, 1, t -> n[0]++));
+		assertEquals(n[0], 6);
+		
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table alumni = new Table ("alumni", "id name", "Integer String", "id");
+		for (int i = 0; i < 1000; i++) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			alumni.insert(new Comparable [] { 2 * i, (i % 2 == 0) ? "Student_" + (2 * i) : "Alumnus" });
+		}
+		Table union = student.union(alumni);
+		assertEquals(union.getTableLength(), 1000 + 750);
+		for (boolean byKey : new boolean [] { false, true }) {
+			Table seq = student.union(alumni, byKey, 1);
+			Table par = student.union(alumni, byKey, 4);
+			assertEquals(par.getTableLength(), seq.getTableLength());
+			for (int i = 0; i < seq.getTableLength(); i++) assertArrayEquals(par.getTuple(i), seq.getTuple(i));
+		}
+		
+		long budget = Table.getMemoryBudget();
+		java.io.File store = new java.io.File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		try {
+			Table.setMemoryBudget(1000);
+			assertEquals(tupleSet(student.union(alumni, false, 4)), tupleSet(union));
+			assertEquals(student.union(alumni, true, 1).getTableLength(), 1500);
+		} finally {
+			Table.setMemoryBudget(budget);
+		}
+		assertEquals(store.list().length, files);
+	}
+	
 	/**
 	 * Tests the minus method.
 	 */
@@ -115,6 +206,965 @@ public class TableTest
 		assertEquals(minus.getTableLength(), 2);
 	}
 	
+	/**
+	 * Tests that minus compares whole tuples, whether table2 is looked up by its key
+	 * index or through a hash set, and that the parallel minus gives the same tuples
+	 * in the same order.
+	 */
+	@Test
+	public void testHashMinus()
+	{
+		Table movie = this.createMovieTable();
+		Table cinema = this.createCinemaTable();
+		cinema.insert(new Comparable [] { "Star_Wars", 1977, 121, "sciFi", "Fox", 12345 });
+		assertEquals(movie.minus(cinema).getTableLength(), 2);
+		assertEquals(movie.minus(cinema.project("title year length genre studioName producerNo")).getTableLength(), 2);
+		assertEquals(movie.minus(new Table ("empty", "title year length genre studioName producerNo",
+		             "String Integer Integer String String Integer", "title year")).getTableLength(), 4);
+		
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table dropped = new Table ("dropped", "id name", "Integer String", "id");
+		for (int i = 0; i < 1000; i++) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			if (i % 3 == 0) dropped.insert(new Comparable [] { i, (i % 2 == 0) ? "Student_" + i : "Other" });
+		}
+		Table minus = student.minus(dropped);
+		assertEquals(minus.getTableLength(), 1000 - 167);
+		Table derived = dropped.project("id name");
+		for (int threads = 1; threads <= 4; threads += 3) {
+			for (Table t : new Table [] { student.minus(dropped, threads), student.minus(derived, threads) }) {
+				assertEquals(t.getTableLength(), minus.getTableLength());
+				for (int i = 0; i < t.getTableLength(); i++) assertArrayEquals(t.getTuple(i), minus.getTuple(i));
+			}
+		}
+	}
+	
+	/**
+	 * Tests that a column-store table answers project, select and union like a row-store one.
+	 */
+	@Test
+	public void testColumnar()
+	{
+		Table movie = new Table ("movie", "title year length genre studioName producerNo",
+                "String Integer Integer String String Integer", "title year", true);
+		Table rowMovie = this.createMovieTable();
+		for (int i = 0; i < rowMovie.getTableLength(); i++) {
+			movie.insert (rowMovie.getTuple(i));
+		}
+		
+		assertTrue(movie.isColumnar());
+		assertEquals(movie.getTableLength(), 4);
+		assertArrayEquals(rowMovie.getTuple(2), movie.getTuple(2));
+		
+		Table movie_project = movie.project ("year genre");
+		assertTrue(movie_project.isColumnar());
+		assertEquals(movie_project.getTuple(3)[0], 1978);
+		assertEquals(movie_project.getTuple(3)[1], "action");
+		
+		Table movie_select = movie.select(t -> t[movie.col("genre")].equals("sciFi"), 0);
+		assertEquals(movie_select.getTableLength(), 2);
+		assertEquals(movie_select.getTuple(1)[0], "Star_Wars_2");
+		
+		Table union = movie.union(this.createCinemaTable());
+		assertEquals(union.getTableLength(), 5);
+		
+		// no index keeps boxed tuples alive; key lookups scan the columns
+		movie.setIndexes(true, Table.TREE_MAP, Table.BP_TREE_MAP);
+		assertFalse(movie.hasIndex(Table.TREE_MAP));
+		assertFalse(movie.hasIndex(Table.BP_TREE_MAP));
+		assertEquals(movie.select(new KeyType("Rocky", 1985), 0).getTuple(0)[2], 200);
+		assertEquals(movie.select(new KeyType("Rocky", 1986), 0).getTableLength(), 0);
+		
+		// derived columnar tables may hold nulls in any column
+		ColumnStore store = new ColumnStore (new Class [] { Integer.class, Long.class, Double.class, String.class });
+		for (int i = 0; i < 200; i++) {
+			store.add(new Comparable [] { (i % 3 == 0) ? null : i, (i % 5 == 0) ? null : (long) i,
+			                              (i % 7 == 0) ? null : i * 0.5, (i % 2 == 0) ? null : "S" + i });
+		}
+		assertArrayEquals(store.get(0), new Comparable [] { null, null, null, null });
+		assertArrayEquals(store.get(1), new Comparable [] { 1, 1L, 0.5, "S1" });
+		assertTrue(store.isNull(3, 0) && ! store.isNull(4, 0) && store.isNull(4, 3));
+		Table nulls = new Table ("nulls", new String [] { "a", "b", "c", "d" },
+		                         new Class [] { Integer.class, Long.class, Double.class, String.class }, new String [] { "a" }, store);
+		assertEquals(nulls.select(VectorPredicate.compare(0, ">=", 0)).getTableLength(), 200 - 67);
+		assertEquals(nulls.select(VectorPredicate.compare(1, "!=", 7L)).getTableLength(), 200 - 40 - 1);
+		assertEquals(nulls.select(VectorPredicate.compare(2, "<", 1000.0)).getTableLength(), 200 - 29);
+		assertEquals(nulls.select(VectorPredicate.compare(0, "<", 3L)).getTableLength(), 2);
+		for (Comparable wide : new Comparable [] { 3.5, 1L << 40 }) {
+			try {
+				nulls.select(VectorPredicate.compare(0, "<", wide));
+				fail("literal " + wide + " narrowed to an int");
+			} catch (IllegalArgumentException ex) {
+			}
+		}
+		Table projected = nulls.project("c a");
+		for (int i = 0; i < 200; i++) {
+			assertArrayEquals(projected.getTuple(i), new Comparable [] { store.get(i)[2], store.get(i)[0] });
+		}
+		store.remove(0);
+		assertArrayEquals(store.get(0), new Comparable [] { 1, 1L, 0.5, "S1" });
+		assertTrue(store.isNull(2, 0) && store.isNull(4, 1));
+	}
+	
+	/**
+	 * Tests that vectorized selects on a column-store table, across several batches and
+	 * on int, long, double and dictionary coded columns, give the same tuples in the
+	 * same order as testing each row of a row-store table.
+	 */
+	@Test
+	public void testVectorSelect()
+	{
+		Table rows = new Table ("account", "id owner balance opened", "Integer String Double Long", "id");
+		Table cols = new Table ("account", "id owner balance opened", "Integer String Double Long", "id", true);
+		for (int i = 0; i < 3000; i++) {
+			Comparable [] t = { i, "Owner_" + (i % 37), (i % 101) * 1.5, 1000000000000L + i % 7 };
+			rows.insert(t);
+			cols.insert(t);
+		}
+		VectorPredicate [] preds = {
+			VectorPredicate.compare(0, ">=", 1000).and(VectorPredicate.compare(0, "<", 2500)),
+			VectorPredicate.compare(1, "==", "Owner_5"),
+			VectorPredicate.compare(1, "!=", "Owner_5"),
+			VectorPredicate.compare(1, "<", "Owner_2"),
+			VectorPredicate.compare(1, "==", "Nobody"),
+			VectorPredicate.compare(2, ">", 100.0).and(VectorPredicate.compare(3, "<=", 1000000000003L)),
+			VectorPredicate.of(t -> ((Integer) t[0]) % 3 == 0).and(VectorPredicate.compare(1, ">=", "Owner_30"))
+		};
+		for (VectorPredicate p : preds) {
+			Table expected = rows.select(p, 0);
+			Table actual = cols.select(p);
+			assertTrue(actual.isColumnar());
+			assertEquals(actual.getTableLength(), expected.getTableLength());
+			for (int i = 0; i < expected.getTableLength(); i++) assertArrayEquals(actual.getTuple(i), expected.getTuple(i));
+			assertEquals(rows.select(p).getTableLength(), expected.getTableLength());
+		}
+		assertEquals(cols.select(preds[1]).getTableLength(), 81);
+	}
+
+	/**
+	 * Tests that selects on expressions give the same tuples as the equivalent lambdas,
+	 * whether answered by key lookups, key ranges, scans or vector predicates, and that
+	 * key conjuncts are turned into index accesses with the rest left as a filter.
+	 */
+	@Test
+	public void testExprSelect()
+	{
+		Table rows = new Table ("account", "id owner balance", "Integer String Double", "id");
+		Table cols = new Table ("account", "id owner balance", "Integer String Double", "id", true);
+		rows.setIndexes(false, Table.TREE_MAP, Table.BP_TREE_MAP);
+		cols.setIndexes(false);
+		for (int i = 0; i < 500; i++) {
+			Comparable [] t = { i, (i % 50 == 0) ? "Nobody" : "Owner_" + (i % 7), (i % 13) * 2.5 };
+			rows.insert(t);
+			cols.insert(t);
+		}
+		Expr id = Expr.col("id"), owner = Expr.col("owner"), balance = Expr.col("balance");
+		Expr [] conds = {
+			id.eq(42),
+			id.eq(42L).and(owner.eq("Owner_1")),
+			id.in(3, 7, 7, 900, 2.5),
+			id.between(100, 120).and(balance.gt(10.0)),
+			id.ge(100).and(id.lt(200)).and(id.gt(150)).and(Expr.compare(Expr.lit(170), ">=", id)),
+			Expr.or(owner.eq("Owner_3"), balance.le(5)),
+			Expr.not(owner.eq("Owner_3")),
+			owner.in("Owner_2", null),
+			id.gt(2.5).and(balance.ne(0)),
+			id.eq(null)
+		};
+		for (Expr c : conds) {
+			java.util.function.Predicate <Comparable []> p = c.predicate(new String [] { "id", "owner", "balance" });
+			java.util.Set <String> expected = tupleSet(rows.select(p, 0));
+			assertEquals(c.toString(), expected, tupleSet(rows.select(c)));
+			assertEquals(c.toString(), expected, tupleSet(cols.select(c)));
+		}
+		assertEquals(rows.select(conds[0]).getTableLength(), 1);
+		assertEquals(rows.select(conds[2]).getTableLength(), 2);
+		assertEquals(rows.select(conds[4]).getTableLength(), 20);
+		assertEquals(rows.select(conds[6]).getTableLength(), 430);
+		assertEquals(rows.select(conds[9]).getTableLength(), 0);
+		assertTrue(rows.explain(conds[1]).startsWith("lookup"));
+		assertEquals(rows.explain(conds[3]), "range Key ( 100 ) <= key <= Key ( 120 ), filter balance > 10.0");
+		assertEquals(rows.explain(conds[4]), "range Key ( 150 ) < key <= Key ( 170 )");
+		assertTrue(rows.explain(conds[5]).startsWith("scan"));
+		assertTrue(rows.explain(conds[8]).startsWith("scan"));
+		assertTrue(cols.explain(conds[3]).startsWith("scan"));
+	}
+
+	/**
+	 * Tests that compiled conditions agree with interpreted ones, including on null
+	 * attributes, negations and mixed numeric types, and that a large select and
+	 * project runs compiled and gives the same tuples as select followed by project.
+	 */
+	@Test
+	public void testCompiledQuery()
+	{
+		String [] attrs = { "id", "name", "score", "grade", "big" };
+		Class [] dom = { Integer.class, String.class, Double.class, Character.class, Long.class };
+		java.util.List <Comparable []> rows = new java.util.ArrayList <> ();
+		for (int i = 0; i < 200; i++) {
+			rows.add(new Comparable [] { (i % 17 == 0) ? null : i, (i % 11 == 0) ? null : "N\"" + (i % 9) + "\n\u00e9",
+			                             (i % 13 == 0) ? null : i * 0.5, (char) ('A' + i % 5), (long) i << 33 });
+		}
+		Expr id = Expr.col("id"), name = Expr.col("name"), score = Expr.col("score"), grade = Expr.col("grade"), big = Expr.col("big");
+		Comparable [] many = new Comparable [5000], names = new Comparable [20];
+		for (int i = 0; i < many.length; i++) many[i] = (i % 2 == 0) ? (Comparable) (long) (3 * i) : (Comparable) (3.0 * i);
+		for (int i = 0; i < names.length; i++) names[i] = "N\"" + (i % 4) + "\n\u00e9";
+		Expr [] conds = {
+			id.in(many),
+			Expr.not(id.in(many)),
+			name.in(names).and(Expr.not(score.in(many))),
+			id.ge(50).and(id.lt(150L)),
+			Expr.not(id.gt(2.5).or(name.eq("N\"3\n\u00e9"))),
+			score.between(10, 40.5).and(grade.ne('C')),
+			Expr.not(score.between(10, 40.5)),
+			id.in(3, 4L, 5.0, 6.5, null),
+			Expr.not(id.in(3, 4, 5)),
+			Expr.not(id.in(3, null)),
+			name.lt("N\"5").and(big.ge(50L << 33)),
+			Expr.compare(id, "<", score).or(Expr.compare(Expr.lit(100), "==", id)),
+			Expr.not(Expr.and(id.eq(null), grade.eq('A'))),
+			Expr.or(),
+			Expr.and()
+		};
+		int [] cols = { 1, 0 };
+		for (Expr c : conds) {
+			CompiledQuery compiled = CompiledQuery.compile(c, cols, attrs, dom);
+			CompiledQuery interpreted = CompiledQuery.interpret(c, cols, attrs);
+			assertTrue(c.toString(), compiled.isCompiled());
+			java.util.List <Comparable []> expected = new java.util.ArrayList <> (), actual = new java.util.ArrayList <> ();
+			interpreted.run(rows, expected);
+			compiled.run(rows, actual);
+			assertEquals(c.toString(), expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) assertArrayEquals(expected.get(i), actual.get(i));
+			for (Comparable [] t : rows) assertEquals(c.toString(), interpreted.test(t), compiled.test(t));
+		}
+
+		many[1] = 1.5;
+		CompiledQuery fallback = CompiledQuery.compile(id.in(many), cols, attrs, dom);
+		assertFalse(fallback.isCompiled());
+		assertEquals(fallback.fallback(), "compile: IN list value 1.5");
+		assertNull(CompiledQuery.interpret(id.in(many), cols, attrs).fallback());
+		
+		Table student = new Table ("student", "id name status", "Integer String String", "id");
+		for (int i = 0; i < 20100; i++) {
+			student.insert(new Comparable [] { i, "Name_" + (i % 1000), (i % 4 == 0) ? "FR" : "SO" });
+		}
+		Expr cond = Expr.col("status").eq("FR").and(Expr.col("name").ne("Name_8"));
+		int threshold = CompiledQuery.getThreshold();
+		CompiledQuery.setThreshold(20000);
+		assertTrue(CompiledQuery.of(cond, null, new String [] { "id", "name", "status" },
+		                            new Class [] { Integer.class, String.class, String.class }, student.getTableLength()).isCompiled());
+		Table fused = student.select(cond, "name id");
+		CompiledQuery.setThreshold(threshold);
+		Table twoPass = student.select(cond).project("name id");
+		assertEquals(fused.getTableLength(), twoPass.getTableLength());
+		for (int i = 0; i < fused.getTableLength(); i++) assertArrayEquals(fused.getTuple(i), twoPass.getTuple(i));
+		assertEquals(fused.getTableLength(), 20100 / 4 - 21);
+	}
+
+	/**
+	 * Tests that a four-way query (query 4: students taught by a given professor) gives
+	 * the same names as joining by hand, that the selective filter on Professor is
+	 * pushed down and joined first, and that unresolvable attribute names are rejected.
+	 */
+	@Test
+	public void testQueryPlanner()
+	{
+		Table student = new Table ("Student", "id name address status", "Integer String String String", "id");
+		Table professor = new Table ("Professor", "id name deptId", "Integer String String", "id");
+		Table teaching = new Table ("Teaching", "crsCode semester profId", "String String Integer", "crsCode semester");
+		Table transcript = new Table ("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester");
+		for (int i = 0; i < 300; i++) student.insert(new Comparable [] { i, "Name_" + i, "Addr_" + i, "FR" });
+		for (int i = 0; i < 30; i++) professor.insert(new Comparable [] { i, "Prof_" + i, "Dept_" + (i % 4) });
+		for (int i = 0; i < 90; i++) teaching.insert(new Comparable [] { "Crs_" + (i / 3), "S" + (i % 3), i % 30 });
+		for (int i = 0; i < 2000; i++) transcript.insert(new Comparable [] { i % 300, "Crs_" + (i * 7 % 90 / 3), "S" + (i * 7 % 3), "A" });
+
+		java.util.Set <String> expected = new java.util.TreeSet <> ();
+		for (Comparable [] p : professor.tuples) {
+			if (! p[1].equals("Prof_3")) continue;
+			for (Comparable [] te : teaching.tuples) {
+				if (! te[2].equals(p[0])) continue;
+				for (Comparable [] tr : transcript.tuples) {
+					if (tr[1].equals(te[0]) && tr[2].equals(te[1])) expected.add("Name_" + tr[0]);
+				}
+			}
+		}
+		assertFalse(expected.isEmpty());
+
+		Query q = new Query ().from(student, "s").from(transcript, "t").from(teaching, "te").from(professor, "p")
+		                      .where(Expr.compare(Expr.col("s.id"), "==", Expr.col("studId")))
+		                      .where(Expr.and(Expr.compare(Expr.col("t.crsCode"), "==", Expr.col("te.crsCode")),
+		                                      Expr.compare(Expr.col("t.semester"), "==", Expr.col("te.semester")),
+		                                      Expr.compare(Expr.col("profId"), "==", Expr.col("p.id")),
+		                                      Expr.col("p.name").eq("Prof_3")))
+		                      .select("s.name");
+		Table result = q.execute();
+		java.util.Set <String> actual = new java.util.TreeSet <> ();
+		for (Comparable [] t : result.tuples) actual.add((String) t[0]);
+		assertEquals(expected, actual);
+
+		String plan = q.explain();
+		assertTrue(plan, plan.contains("scan Professor as p: scan, filter name == 'Prof_3'"));
+		assertTrue(plan, plan.indexOf("scan Professor") < plan.indexOf("scan Transcript"));
+		assertTrue(plan, plan.indexOf("scan Professor") < plan.indexOf("scan Student"));
+		assertTrue(plan, plan.contains("index join t.studId = s.id"));
+
+		try {
+			new Query ().from(student).from(professor).where(Expr.col("name").eq("x")).explain();
+			fail("ambiguous attribute accepted");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage().startsWith("Query: ambiguous"));
+		}
+		Table product = new Query ().from(professor, "p1").from(professor, "p2")
+		                            .where(Expr.col("p1.id").lt(2)).where(Expr.col("p2.id").lt(3)).execute();
+		assertEquals(product.getTableLength(), 6);
+	}
+	
+	/**
+	 * Tests ORDER BY: in memory, from the key index, spilling runs to disk, and the top-K
+	 * path, all agreeing with a sort done by hand.
+	 */
+	@Test
+	public void testOrderBy()
+	{
+		Table student = new Table ("Student", "id name address status", "Integer String String String", "id");
+		java.util.Random random = new java.util.Random (4370);
+		java.util.List <Comparable []> tuples = new java.util.ArrayList <> ();
+		for (int i = 0; i < 2000; i++) {
+			Comparable [] t = { (i * 7919) % 1000003, "Name_" + random.nextInt(300), "Addr_" + i, (i % 3 == 0) ? "FR" : "SO" };
+			student.insert(t);
+			tuples.add(t);
+		}
+		java.util.Comparator <Comparable []> byStatusNameDesc = java.util.Comparator
+		        .comparing((Comparable [] t) -> (String) t[3]).thenComparing((Comparable [] t) -> (String) t[1], java.util.Comparator.reverseOrder());
+		java.util.List <Comparable []> expected = new java.util.ArrayList <> (tuples);
+		expected.sort(byStatusNameDesc);		// stable, as orderBy is
+
+		Table sorted = student.orderBy("status name desc");
+		assertEquals(sorted.getTableLength(), expected.size());
+		for (int i = 0; i < expected.size(); i++) assertArrayEquals(sorted.getTuple(i), expected.get(i));
+
+		Table top = student.orderBy("status name DESC", 25);
+		assertEquals(top.getTableLength(), 25);
+		for (int i = 0; i < 25; i++) assertArrayEquals(top.getTuple(i), expected.get(i));
+		assertEquals(student.orderBy("id", 5000).getTableLength(), expected.size());
+
+		expected.sort(java.util.Comparator.comparing((Comparable [] t) -> (Integer) t[0]));
+		Table byId = student.orderBy("id");
+		Table byIdDesc = student.orderBy("id desc", 10);
+		Table firstIds = student.orderBy("id asc", 10);
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(byIdDesc.getTuple(i), expected.get(expected.size() - 1 - i));
+			assertArrayEquals(firstIds.getTuple(i), expected.get(i));
+		}
+		for (int i = 0; i < expected.size(); i++) assertArrayEquals(byId.getTuple(i), expected.get(i));
+
+		long budget = Table.getMemoryBudget();
+		java.io.File store = new java.io.File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		try {
+			Table.setMemoryBudget(2000);
+			Table spilled = student.orderBy("address desc");
+			for (int i = 1; i < spilled.getTableLength(); i++) {
+				assertTrue(((String) spilled.getTuple(i - 1)[2]).compareTo((String) spilled.getTuple(i)[2]) > 0);
+			}
+			assertEquals(spilled.getTableLength(), expected.size());
+		} finally {
+			Table.setMemoryBudget(budget);
+		}
+		assertEquals(store.list().length, files);
+
+		try {
+			student.orderBy("grade");
+			fail("unknown attribute accepted");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage().startsWith("orderBy:"));
+		}
+	}
+
+	/**
+	 * Tests hash aggregation: sequential, parallel and spilling to disk agree with the
+	 * aggregates computed by hand, and nulls are ignored as in SQL.
+	 */
+	@Test
+	public void testGroupBy() throws Exception
+	{
+		Table transcript = new Table ("Transcript", "studId crsCode semester credits", "Integer String String Double", "studId crsCode semester");
+		for (int i = 0; i < 3000; i++) transcript.insert(new Comparable [] { i % 700, "Crs_" + (i % 13), "S" + (i / 700), (double) (i % 5) });
+
+		java.util.Map <Integer, long []> counts = new java.util.HashMap <> ();
+		java.util.Map <Integer, Double> sums = new java.util.HashMap <> ();
+		for (Comparable [] t : transcript.tuples) {
+			counts.computeIfAbsent((Integer) t[0], k -> new long [1])[0]++;
+			sums.merge((Integer) t[0], (Double) t[3], Double::sum);
+		}
+
+		Table result = transcript.groupBy("studId", "count(*) sum(credits) avg(credits) min(crsCode) MAX(semester)");
+		assertArrayEquals(result.getAttributes(), new String [] { "studId", "count(*)", "sum(credits)", "avg(credits)", "min(crsCode)", "MAX(semester)" });
+		assertEquals(result.getTableLength(), 700);
+		java.util.Map <Object, java.util.List <Comparable>> expected = new java.util.HashMap <> ();
+		for (Comparable [] t : result.tuples) {
+			int id = (Integer) t[0];
+			assertEquals(t[1], counts.get(id)[0]);
+			assertEquals((Double) t[2], sums.get(id), 1e-9);
+			assertEquals((Double) t[3], sums.get(id) / counts.get(id)[0], 1e-9);
+			expected.put(t[0], java.util.Arrays.asList(t));
+		}
+
+		long budget = Table.getMemoryBudget();
+		java.io.File store = new java.io.File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		try {
+			Table.setMemoryBudget(4 << 10);
+			for (int threads : new int [] { 1, 4 }) {
+				Table other = transcript.groupBy("studId", "count(*) sum(credits) avg(credits) min(crsCode) MAX(semester)", threads);
+				assertEquals(other.getTableLength(), 700);
+				for (Comparable [] t : other.tuples) {
+					java.util.List <Comparable> e = expected.get(t[0]);
+					assertEquals(e.subList(0, 2), java.util.Arrays.asList(t).subList(0, 2));
+					assertEquals((Double) e.get(2), (Double) t[2], 1e-9);
+					assertEquals(e.subList(4, 6), java.util.Arrays.asList(t).subList(4, 6));
+				}
+			}
+		} finally {
+			Table.setMemoryBudget(budget);
+		}
+		assertEquals(store.list().length, files);
+		assertEquals(transcript.groupBy("studId", "count(*)", 4).getTableLength(), 700);
+		assertEquals(transcript.groupBy("crsCode semester", "count(*)").getTableLength(), 13 * 5);
+
+		Table empty = new Table ("Empty", "a b", "Integer Integer", "a");
+		Table all = empty.groupBy("", "count(*) sum(b)");
+		assertEquals(all.getTableLength(), 1);
+		assertEquals(all.getTuple(0)[0], 0L);
+		assertNull(all.getTuple(0)[1]);
+
+		Aggregate agg = new Aggregate (new int [] { 0 }, new String [] { "count(*)", "count", "sum", "max" }, new int [] { -1, 1, 1, 1 },
+		                               new Class [] { String.class, Integer.class });
+		java.util.List <Comparable []> rows = new java.util.ArrayList <> ();
+		agg.aggregate(java.util.Arrays.asList(new Comparable [] { "x", 1 }, new Comparable [] { "x", null },
+		                                      new Comparable [] { "y", null }, new Comparable [] { null, 5 }), 1 << 20, 1, rows::add);
+		rows.sort(java.util.Comparator.comparing(t -> String.valueOf(t[0])));
+		assertArrayEquals(rows.get(0), new Comparable [] { null, 1L, 1L, 5L, 5 });
+		assertArrayEquals(rows.get(1), new Comparable [] { "x", 2L, 1L, 1L, 1 });
+		assertArrayEquals(rows.get(2), new Comparable [] { "y", 1L, 0L, null, null });
+		try {
+			transcript.groupBy("studId", "sum(crsCode)");
+			fail("sum of strings accepted");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage().startsWith("Aggregate:"));
+		}
+	}
+
+	/**
+	 * Tests prepared queries: key lookups and ranges with parameters, a residual with a
+	 * parameter, and many threads running one prepared query.
+	 */
+	@Test
+	public void testPreparedQuery() throws Exception
+	{
+		Table student = new Table ("Student", "id name address status", "Integer String String String", "id");
+		Table transcript = new Table ("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester");
+		for (int i = 0; i < 500; i++) student.insert(new Comparable [] { i, "Name_" + i, "Addr_" + i, (i % 2 == 0) ? "FR" : "SO" });
+		for (int i = 0; i < 500; i++) transcript.insert(new Comparable [] { i % 50, "Crs_" + (i / 50), "S1", "A" });
+
+		PreparedQuery byId = student.prepare(Expr.compare(Expr.col("id"), "==", Expr.param(0)), "name");
+		assertEquals(byId.toString(), "lookup [?0]");
+		assertEquals(byId.params(), 1);
+		assertEquals(byId.execute(75).getAttributes()[0], "name");
+		assertEquals(byId.execute(75).getTuple(0)[0], "Name_75");
+		assertEquals(byId.execute(75L).getTuple(0)[0], "Name_75");
+		assertEquals(byId.execute(2.5).getTableLength(), 0);
+		assertEquals(byId.execute(9999).getTableLength(), 0);
+		try {
+			byId.execute();
+			fail("missing parameter accepted");
+		} catch (IllegalArgumentException ex) {
+			assertTrue(ex.getMessage().startsWith("execute:"));
+		}
+
+		PreparedQuery range = student.prepare(Expr.and(Expr.compare(Expr.param(0), "<=", Expr.col("id")),
+		                                               Expr.compare(Expr.col("id"), "<", Expr.param(1)),
+		                                               Expr.compare(Expr.col("status"), "==", Expr.param(2))), "id status");
+		assertEquals(range.toString(), "range ?0 <= key < ?1, filter status == ?2");
+		Table result = range.execute(100, 200, "FR");
+		assertEquals(result.getTableLength(), 50);
+		for (Comparable [] t : result.tuples) assertTrue((Integer) t[0] % 2 == 0 && (Integer) t[0] >= 100 && (Integer) t[0] < 200);
+		assertEquals(range.execute(100.5, 103, "SO").getTableLength(), 1);
+		assertEquals(range.execute(100, null, "SO").getTableLength(), 0);
+
+		PreparedQuery byKey = transcript.prepare(Expr.and(Expr.col("semester").eq("S1"), Expr.col("crsCode").eq("Crs_3"),
+		                                                  Expr.compare(Expr.col("studId"), "==", Expr.param(0))), null);
+		assertEquals(byKey.toString(), "lookup [?0, 'Crs_3', 'S1']");
+		assertEquals(byKey.execute(7).getTuple(0)[0], 7);
+
+		// a point lookup prepared while indexes existed scans once they are dropped
+		student.setIndexes(false);
+		assertEquals(byId.execute(75).getTuple(0)[0], "Name_75");
+		assertEquals(byId.execute(9999).getTableLength(), 0);
+		assertEquals(range.execute(100, 200, "FR").getTableLength(), 50);
+		student.setIndexes(true, Table.TREE_MAP);
+
+		PreparedQuery scan = student.prepare(Expr.compare(Expr.col("name"), "==", Expr.param(0)), "id");
+		assertEquals(scan.toString(), "scan, filter name == ?0");
+		java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(4);
+		java.util.List <java.util.concurrent.Future <Boolean>> checks = new java.util.ArrayList <> ();
+		for (int i = 0; i < 200; i++) {
+			int id = i;
+			checks.add(pool.submit(() -> byId.execute(id).getTuple(0)[0].equals("Name_" + id) &&
+			                             scan.execute("Name_" + id).getTuple(0)[0].equals(id)));
+		}
+		for (java.util.concurrent.Future <Boolean> check : checks) assertTrue(check.get());
+		pool.shutdown();
+	}
+
+	/**
+	 * Tests the SQL front-end on the course queries, in both their original and new forms.
+	 */
+	@Test
+	public void testSql()
+	{
+		Table student = new Table ("Student", "id name address status", "Integer String String String", "id");
+		Table professor = new Table ("Professor", "id name deptId", "Integer String String", "id");
+		Table course = new Table ("Course", "crsCode deptId crsName descr", "String String String String", "crsCode");
+		Table teaching = new Table ("Teaching", "crsCode semester profId", "String String Integer", "crsCode semester");
+		Table transcript = new Table ("Transcript", "studId crsCode semester grade", "Integer String String String", "studId crsCode semester");
+		for (int i = 0; i < 300; i++) student.insert(new Comparable [] { i, "Name_" + i, "Addr_" + i, "FR" });
+		for (int i = 0; i < 30; i++) professor.insert(new Comparable [] { i, "Prof_" + i, "Dept_" + (i % 4) });
+		for (int i = 0; i < 30; i++) course.insert(new Comparable [] { "Crs_" + i, "Dept_" + (i % 3), "Course " + i, "-" });
+		for (int i = 0; i < 90; i++) teaching.insert(new Comparable [] { "Crs_" + (i / 3), "S" + (i % 3), i % 30 });
+		for (int i = 0; i < 2000; i++) transcript.insert(new Comparable [] { i % 300, "Crs_" + (i * 7 % 90 / 3), "S" + (i * 7 % 3), "A" });
+		Sql sql = new Sql (student, professor, course, teaching, transcript);
+
+		// query 1, with a parameter; a repeat, however it is spaced and cased, is neither parsed nor planned again
+		Table result = sql.execute("SELECT name FROM Student WHERE id = ?", 75);
+		assertEquals(result.getAttributes()[0], "name");
+		assertEquals(result.getTableLength(), 1);
+		assertEquals(result.getTuple(0)[0], "Name_75");
+		int parses = sql.parses(), plannings = sql.plannings();
+		result = sql.execute("select  NAME\n from student where ID=?;", 75);
+		assertEquals(result.getTuple(0)[0], "Name_75");
+		assertEquals(sql.parses(), parses);
+		assertEquals(sql.plannings(), plannings);
+		assertEquals(sql.execute("SELECT name FROM Student WHERE id = ?", 76).getTuple(0)[0], "Name_76");
+		assertEquals(sql.parses(), parses);
+		assertEquals(sql.plannings(), plannings + 1);
+
+		// query 2, in both forms, with variables
+		java.util.List <Table> results = sql.script("SET @v2 = 100; SET @v3 = 200;\n" +
+		                                            "SELECT name FROM Student WHERE id BETWEEN @v2 AND @v3;\n" +
+		                                            "-- the original form\n" +
+		                                            "SELECT name FROM Student WHERE id >= @v2 AND id <= @v3;");
+		assertEquals(results.size(), 2);
+		assertEquals(results.get(0).getTableLength(), 101);
+		assertEquals(names(results.get(0)), names(results.get(1)));
+		assertTrue(sql.explain("SELECT name FROM Student WHERE id BETWEEN @v2 AND @v3").contains("range"));
+
+		// query 3, as a join and with IN (subquery)
+		sql.set("@v4", "Crs_5");
+		java.util.Set <String> expected = new java.util.TreeSet <> ();
+		for (Comparable [] tr : transcript.tuples) if (tr[1].equals("Crs_5")) expected.add("Name_" + tr[0]);
+		assertFalse(expected.isEmpty());
+		assertEquals(names(sql.execute("SELECT name FROM Student JOIN Transcript ON Transcript.studId = Student.id " +
+		                               "WHERE Transcript.crsCode = @v4")), expected);
+		assertEquals(names(sql.execute("SELECT name FROM Student WHERE id IN (SELECT studId FROM Transcript WHERE crsCode = @v4)")),
+		             expected);
+
+		// query 4, as joins and with nested derived tables (whose names differ in case)
+		sql.set("v5", "Prof_3");
+		expected.clear();
+		for (Comparable [] te : teaching.tuples) {
+			if (! te[2].equals(3)) continue;
+			for (Comparable [] tr : transcript.tuples) {
+				if (tr[1].equals(te[0]) && tr[2].equals(te[1])) expected.add("Name_" + tr[0]);
+			}
+		}
+		assertFalse(expected.isEmpty());
+		assertEquals(names(sql.execute("SELECT Student.name FROM Student JOIN Transcript ON Transcript.studId = Student.id " +
+		                               "JOIN Teaching ON Teaching.crsCode = Transcript.crsCode AND Teaching.semester = Transcript.semester " +
+		                               "JOIN Professor ON Professor.id = Teaching.profId WHERE Professor.name = @v5")), expected);
+		assertEquals(names(sql.execute("SELECT name FROM Student, (SELECT studId FROM Transcript, " +
+		                               "(SELECT crsCode, semester FROM Professor JOIN Teaching " +
+		                               "WHERE Professor.name = @v5 AND Professor.id = Teaching.profID) as alias " +
+		                               "WHERE Transcript.crsCode = alias.crsCode AND Transcript.semester = alias.semester) as alias1 " +
+		                               "WHERE Student.id = alias1.studID")), expected);
+
+		// query 5, with NOT IN (subquery)
+		sql.script("SET @v6 = 'Dept_1'; SET @v7 = 'Dept_2'");
+		java.util.Set <Integer> taken1 = new java.util.HashSet <> (), taken2 = new java.util.HashSet <> ();
+		for (Comparable [] tr : transcript.tuples) {
+			int crs = Integer.parseInt(((String) tr[1]).substring(4));
+			if (crs % 3 == 1) taken1.add((Integer) tr[0]);
+			if (crs % 3 == 2) taken2.add((Integer) tr[0]);
+		}
+		expected.clear();
+		for (Integer id : taken1) if (! taken2.contains(id)) expected.add("Name_" + id);
+		assertEquals(names(sql.execute("SELECT name FROM Student, (SELECT studID FROM Transcript, Course " +
+		                               "WHERE deptId = @v6 AND Transcript.crsCode = Course.crsCode AND studID NOT IN " +
+		                               "(SELECT studId FROM Transcript, Course WHERE deptID = @v7 AND Transcript.crsCode = Course.crsCode)) as alias " +
+		                               "WHERE Student.id = alias.studId")), expected);
+
+		// [NOT] EXISTS, correlated with the outer table
+		expected.clear();
+		for (Integer id : taken2) expected.add("Name_" + id);
+		String took2 = "EXISTS (SELECT * FROM Transcript t, Course c WHERE t.studId = s.id AND t.crsCode = c.crsCode AND c.deptId = @v7)";
+		assertEquals(names(sql.execute("SELECT name FROM Student s WHERE " + took2)), expected);
+		java.util.Set <String> others = names(sql.execute("SELECT name FROM Student s WHERE NOT " + took2));
+		assertEquals(others.size(), 300 - expected.size());
+		others.retainAll(expected);
+		assertTrue(others.isEmpty());
+
+		// cached plans are keyed by the parameter values themselves, not their text
+		Table pair = new Table ("Pair", "id name", "Integer String", "id");
+		String [] pairNames = { "a, b", "c", "a", "b, c" };
+		for (int i = 0; i < pairNames.length; i++) pair.insert(new Comparable [] { i + 1, pairNames[i] });
+		Sql pairSql = new Sql (pair);
+		String either = "SELECT name FROM Pair WHERE name = ? OR name = ?";
+		assertEquals(names(pairSql.execute(either, "a, b", "c")), new java.util.TreeSet <> (java.util.Arrays.asList("a, b", "c")));
+		assertEquals(names(pairSql.execute(either, "a", "b, c")), new java.util.TreeSet <> (java.util.Arrays.asList("a", "b, c")));
+		plannings = pairSql.plannings();
+		pairSql.execute("SELECT name FROM Pair WHERE id = ?", 3);
+		pairSql.execute("SELECT name FROM Pair WHERE id = ?", 3L);
+		assertEquals(pairSql.plannings(), plannings + 2);
+
+		String [] bad = { "SELECT name FROM Nobody", "SELECT nobody FROM Student", "SELECT name FROM Student, Professor",
+		                  "SELECT name FROM Student WHERE id = @unset", "SELECT name FROM Student GROUP BY name" };
+		for (String s : bad) {
+			try {
+				sql.execute(s);
+				fail("accepted " + s);
+			} catch (IllegalArgumentException ex) {
+				assertTrue(ex.getMessage(), ex.getMessage().startsWith("Sql: "));
+			}
+		}
+	}
+
+	/**
+	 * Return the set of the first column's values.
+	 */
+	private java.util.Set <String> names(Table table)
+	{
+		java.util.Set <String> names = new java.util.TreeSet <> ();
+		for (Comparable [] t : table.tuples) names.add((String) t[0]);
+		return names;
+	}
+	
+	/**
+	 * Tests that a table saved to its page file loads back with the same tuples and index.
+	 */
+	@Test
+	public void testSaveLoad()
+	{
+		Table movie = this.createMovieTable();
+		movie.insert(new Comparable [] { "Am\u00e9lie", 2001, 122, "comedy", "UGC", 55555 });
+		movie.save();
+		Table loaded = Table.load("movie");
+		
+		assertEquals(loaded.getName(), "movie");
+		assertEquals(loaded.getTableLength(), 5);
+		for (int i = 0; i < 5; i++) {
+			assertArrayEquals(movie.getTuple(i), loaded.getTuple(i));
+		}
+		assertEquals(loaded.select(new KeyType("Rocky", 1985), 0).getTuple(0)[2], 200);
+		
+		// a derived table may hold nulls, which the file stores and loads back
+		java.util.List <Comparable []> rows = new java.util.ArrayList <> ();
+		rows.add(new Comparable [] { 1, "one" });
+		rows.add(new Comparable [] { 2, null });
+		new Table ("withNulls", new String [] { "id", "name" }, new Class [] { Integer.class, String.class },
+		           new String [] { "id" }, rows).save();
+		Table nulls = Table.load("withNulls");
+		assertEquals(nulls.getTableLength(), 2);
+		assertArrayEquals(nulls.getTuple(1), new Comparable [] { 2, null });
+		assertArrayEquals(nulls.select(new KeyType(2), 0).getTuple(0), new Comparable [] { 2, null });
+		new java.io.File("store/withNulls.dbf").delete();
+	}
+	
+	/**
+	 * Tests point selects through the B+Tree index after moving it to disk.
+	 */
+	@Test
+	public void testDiskIndex()
+	{
+		Table movie = this.createMovieTable();
+		assertTrue(movie.useDiskIndex(4));
+		
+		Table movie_select = movie.select(new KeyType("Rambo", 1978), 1);
+		assertEquals(movie_select.getTuple(0)[4], "Universal");
+		assertEquals(movie.bpIndex.firstKey().compareTo(new KeyType("Rambo", 1978)), 0);
+		assertEquals(movie.bpIndex.size(), 4);
+	}
+	
+	/**
+	 * Tests choosing which indexes a table maintains, including no index and lazy builds.
+	 */
+	@Test
+	public void testIndexConfig()
+	{
+		Table movie = this.createMovieTable();
+		assertTrue(movie.hasIndex(Table.TREE_MAP));
+		assertFalse(movie.hasIndex(Table.BP_TREE_MAP));
+		
+		// lazily built on first use, then maintained by inserts
+		assertEquals(movie.select(new KeyType("Rambo", 1978), Table.BP_TREE_MAP).getTuple(0)[4], "Universal");
+		assertTrue(movie.hasIndex(Table.BP_TREE_MAP));
+		movie.insert(new Comparable [] { "Alien", 1979, 117, "sciFi", "Fox", 23456 });
+		assertEquals(movie.bpIndex.firstKey().compareTo(new KeyType("Alien", 1979)), 0);
+		
+		// no index at all: selects fall back to scanning
+		movie.setIndexes(false);
+		assertFalse(movie.hasIndex(Table.TREE_MAP));
+		assertNull(movie.bpIndex);
+		movie.insert(new Comparable [] { "Aliens", 1986, 137, "sciFi", "Fox", 23456 });
+		assertEquals(movie.select(new KeyType("Aliens", 1986), Table.TREE_MAP).getTuple(0)[2], 137);
+		assertFalse(movie.hasIndex(Table.TREE_MAP));
+		
+		// derived tables carry no indexes
+		Table movie_select = movie.select(t -> t[movie.col("genre")].equals("sciFi"), 0);
+		assertFalse(movie_select.hasIndex(Table.TREE_MAP));
+		assertFalse(movie_select.hasIndex(Table.EXT_HASH_MAP));
+		
+		// an unknown index type is rejected rather than replaced by another
+		try {
+			movie.setIndexes(false, 7);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			assertFalse(movie.hasIndex(Table.INT_HASH_MAP));
+		}
+	}
+	
+	/**
+	 * Tests the int key index picked for a single Integer primary key, and hash index
+	 * lookups with a key object other than the one inserted.
+	 */
+	@Test
+	public void testIntIndex()
+	{
+		Table producer = new Table ("producer", "id name", "Integer String", "id");
+		for (int i = 0; i < 100; i++) {
+			producer.insert(new Comparable [] { 1000 + i, "Producer_" + i });
+		}
+		assertTrue(producer.hasIndex(Table.INT_HASH_MAP));
+		assertEquals(producer.lookup(1042)[1], "Producer_42");
+		assertNull(producer.lookup(42));
+		assertEquals(producer.select(new KeyType(1077), Table.INT_HASH_MAP).getTuple(0)[1], "Producer_77");
+		assertEquals(producer.select(new KeyType(1077), Table.LIN_HASH_MAP).getTuple(0)[1], "Producer_77");
+		assertEquals(producer.select(new KeyType(1077), Table.EXT_HASH_MAP).getTuple(0)[1], "Producer_77");
+		assertEquals(producer.indexJoin(producer, Table.INT_HASH_MAP).getTableLength(), 100);
+		
+		// a null join key joins nothing
+		java.util.List <Comparable []> ids = new java.util.ArrayList <> ();
+		ids.add(new Comparable [] { null });
+		ids.add(new Comparable [] { 1001 });
+		Table left = new Table ("left", new String [] { "id" }, new Class [] { Integer.class }, new String [] { "id" }, ids);
+		assertEquals(left.indexJoin(producer, Table.INT_HASH_MAP).getTableLength(), 1);
+		assertEquals(left.indexJoin(producer, Table.INT_HASH_MAP, 4).getTableLength(), 1);
+		
+		// without the int key index, lookups scan the key column
+		Table columns = new Table ("producerCols", "id name", "Integer String", "id", true);
+		for (int i = 0; i < 100; i++) {
+			columns.insert(new Comparable [] { 1000 + i, "Producer_" + i });
+		}
+		assertEquals(columns.lookup(1042)[1], "Producer_42");
+		assertNull(columns.lookup(42));
+		assertFalse(columns.hasIndex(Table.INT_HASH_MAP));
+		producer.setIndexes(false, Table.TREE_MAP);
+		assertEquals(producer.lookup(1099)[1], "Producer_99");
+		assertNull(producer.lookup(1100));
+		assertFalse(producer.hasIndex(Table.INT_HASH_MAP));
+		
+		Table movie = this.createMovieTable();
+		assertFalse(movie.hasIndex(Table.INT_HASH_MAP));
+		assertEquals(movie.select(new KeyType("Rocky", 1985), Table.EXT_HASH_MAP).getTuple(0)[2], 200);
+	}
+	
+	/**
+	 * Tests range selects on the key through the ordered indexes and key range predicates.
+	 */
+	@Test
+	public void testRangeSelect()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		for (int i = 1000; i > 0; i--) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+		}
+		
+		Table between = student.select(new KeyType(100), true, new KeyType(900), true, Table.BP_TREE_MAP);
+		assertEquals(between.getTableLength(), 801);
+		assertEquals(between.getTuple(0)[0], 100);
+		assertEquals(between.getTuple(800)[0], 900);
+		
+		Table open = student.select(new KeyType(100), false, new KeyType(900), false, Table.TREE_MAP);
+		assertEquals(open.getTableLength(), 799);
+		assertEquals(open.getTuple(0)[0], 101);
+		assertEquals(student.select(null, true, new KeyType(10), false, Table.BP_TREE_MAP).getTableLength(), 9);
+		assertEquals(student.select(new KeyType(995), true, null, true, Table.TREE_MAP).getTableLength(), 6);
+		assertEquals(student.select(new KeyType(900), true, new KeyType(100), true, Table.BP_TREE_MAP).getTableLength(), 0);
+		
+		// a key range predicate is routed to the range select, or tested on each tuple in a scan
+		KeyRange range = student.keyRange(new KeyType(100), true, new KeyType(900), true);
+		assertEquals(student.select(range, Table.BP_TREE_MAP).getTableLength(), 801);
+		assertEquals(student.select(range, 0).getTableLength(), 801);
+		
+		assertTrue(student.useDiskIndex(4));
+		assertEquals(student.select(range, Table.BP_TREE_MAP).getTableLength(), 801);
+		assertEquals(student.select(new KeyType(100), false, new KeyType(900), false, Table.BP_TREE_MAP).getTableLength(), 799);
+		
+		// rebuilding closes the open index file before replacing it
+		assertTrue(student.useDiskIndex(8));
+		assertEquals(student.select(range, Table.BP_TREE_MAP).getTableLength(), 801);
+	}
+	
+	/**
+	 * Tests that concurrent logged inserts share log forces and are replayed after a restart.
+	 */
+	@Test
+	public void testWriteAheadLog() throws Exception
+	{
+		new java.io.File("store/movieLog.wal").delete();
+		new java.io.File("store/movieLog.dbf").delete();
+		Table movie = new Table ("movieLog", "title year length genre studioName producerNo",
+                "String Integer Integer String String Integer", "title year");
+		assertTrue(movie.openLog());
+		movie.insert(new Comparable [] { "Star_Wars", 1977, 124, "sciFi", "Fox", 12345 });
+		movie.save();
+		
+		Thread [] writers = new Thread [8];
+		for (int w = 0; w < writers.length; w++) {
+			int id = w;
+			writers[w] = new Thread(() -> {
+				for (int i = 0; i < 50; i++) {
+					movie.insert(new Comparable [] { "Film_" + id, 2000 + i, 90, "drama", "Indie", id });
+				}
+			});
+			writers[w].start();
+		}
+		for (Thread w : writers) w.join();
+		assertEquals(movie.getTableLength(), 401);
+		assertTrue(movie.getLog().forces() < 400);
+		
+		// restart: the checkpoint holds one tuple, the log the other 400
+		Table recovered = Table.load("movieLog");
+		assertEquals(recovered.getTableLength(), 401);
+		assertEquals(recovered.select(new KeyType("Film_3", 2049), 0).getTuple(0)[5], 3);
+		
+		// an insert whose log record cannot be forced is undone
+		recovered.getLog().close();
+		assertFalse(recovered.insert(new Comparable [] { "Lost", 2001, 90, "drama", "Indie", 9 }));
+		assertEquals(recovered.getTableLength(), 401);
+		assertEquals(recovered.select(new KeyType("Lost", 2001), 0).getTableLength(), 0);
+		
+		// one leader's force covers every record appended before it
+		new java.io.File("store/groupCommit.wal").delete();
+		WriteAheadLog wal = new WriteAheadLog ("store/groupCommit.wal", new Class [] { Integer.class });
+		long [] lsn = new long [100];
+		for (int i = 0; i < lsn.length; i++) lsn[i] = wal.append(new Comparable [] { i });
+		Thread [] committers = new Thread [8];
+		for (int w = 0; w < committers.length; w++) {
+			int id = w;
+			committers[w] = new Thread(() -> {
+				try {
+					for (int i = id; i < lsn.length; i += committers.length) wal.commit(lsn[i]);
+				} catch (java.io.IOException ex) {
+					throw new java.io.UncheckedIOException(ex);
+				}
+			});
+			committers[w].start();
+		}
+		for (Thread w : committers) w.join();
+		assertEquals(wal.forces(), 1);
+		wal.close();
+		assertEquals(WriteAheadLog.replay("store/groupCommit.wal", new Class [] { Integer.class }, t -> {}), 100);
+		new java.io.File("store/groupCommit.wal").delete();
+	}
+	
+	/**
+	 * Tests that a failed log write poisons the log: no committer of a record in the
+	 * failed batch (or a later one) is told it is durable, and the torn write is cut off.
+	 */
+	@Test
+	public void testWriteAheadLogFailure() throws Exception
+	{
+		String path = "store/failingLog.wal";
+		new java.io.File(path).delete();
+		Class [] domain = { Integer.class };
+		FailingChannel channel = new FailingChannel (java.nio.channels.FileChannel.open(java.nio.file.Paths.get(path),
+				java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.READ,
+				java.nio.file.StandardOpenOption.WRITE));
+		WriteAheadLog wal = new WriteAheadLog (channel, domain);
+		wal.commit(wal.append(new Comparable [] { 0 }));
+		
+		long first  = wal.append(new Comparable [] { 1 });
+		long second = wal.append(new Comparable [] { 2 });
+		channel.failing = true;
+		try {
+			wal.commit(second);
+			fail("failed write reported durable");
+		} catch (java.io.IOException ex) {
+		}
+		channel.failing = false;
+		try {
+			wal.commit(first);
+			fail("record of the failed batch reported durable");
+		} catch (java.io.IOException ex) {
+		}
+		try {
+			wal.commit(wal.append(new Comparable [] { 3 }));
+			fail("poisoned log accepted a commit");
+		} catch (java.io.IOException ex) {
+		}
+		try {
+			wal.close();
+			fail("poisoned log flushed on close");
+		} catch (java.io.IOException ex) {
+			assertFalse(channel.isOpen());
+		}
+		
+		java.util.List <Comparable> replayed = new java.util.ArrayList <> ();
+		assertEquals(WriteAheadLog.replay(path, domain, t -> replayed.add(t[0])), 1);
+		assertEquals(replayed, java.util.Arrays.asList(0));
+		new java.io.File(path).delete();
+	}
+	
+	/**
+	 * A file channel that, while failing, writes part of a buffer and then throws.
+	 */
+	private static class FailingChannel extends java.nio.channels.FileChannel
+	{
+		private final java.nio.channels.FileChannel file;
+		volatile boolean failing = false;
+		
+		FailingChannel(java.nio.channels.FileChannel file) { this.file = file; }
+		
+		public int write(java.nio.ByteBuffer src) throws java.io.IOException
+		{
+			if (! failing) return file.write(src);
+			java.nio.ByteBuffer part = src.duplicate();
+			part.limit(part.position() + part.remaining() / 2);
+			src.position(src.position() + file.write(part));
+			throw new java.io.IOException("injected write failure");
+		}
+		
+		public int read(java.nio.ByteBuffer dst) throws java.io.IOException { return file.read(dst); }
+		public long read(java.nio.ByteBuffer [] dsts, int offset, int length) throws java.io.IOException { return file.read(dsts, offset, length); }
+		public long write(java.nio.ByteBuffer [] srcs, int offset, int length) throws java.io.IOException { return file.write(srcs, offset, length); }
+		public long position() throws java.io.IOException { return file.position(); }
+		public java.nio.channels.FileChannel position(long p) throws java.io.IOException { file.position(p); return this; }
+		public long size() throws java.io.IOException { return file.size(); }
+		public java.nio.channels.FileChannel truncate(long size) throws java.io.IOException { file.truncate(size); return this; }
+		public void force(boolean metaData) throws java.io.IOException { file.force(metaData); }
+		public long transferTo(long p, long n, java.nio.channels.WritableByteChannel target) throws java.io.IOException { return file.transferTo(p, n, target); }
+		public long transferFrom(java.nio.channels.ReadableByteChannel src, long p, long n) throws java.io.IOException { return file.transferFrom(src, p, n); }
+		public int read(java.nio.ByteBuffer dst, long p) throws java.io.IOException { return file.read(dst, p); }
+		public int write(java.nio.ByteBuffer src, long p) throws java.io.IOException { return file.write(src, p); }
+		public java.nio.MappedByteBuffer map(MapMode mode, long p, long n) throws java.io.IOException { return file.map(mode, p, n); }
+		public java.nio.channels.FileLock lock(long p, long n, boolean shared) throws java.io.IOException { return file.lock(p, n, shared); }
+		public java.nio.channels.FileLock tryLock(long p, long n, boolean shared) throws java.io.IOException { return file.tryLock(p, n, shared); }
+		protected void implCloseChannel() throws java.io.IOException { file.close(); }
+	}
+	
 	/**
 	 * Tests the equi join method.
 	 */
@@ -131,6 +1181,239 @@ public class TableTest
 		assertEquals(studioName.compareTo(name), 0);
 	}
 	
+	/**
+	 * Tests that the hash join matches the nested loop join, with duplicate join values
+	 * on both sides, and leaves the attribute names of the rhs table alone.
+	 */
+	@Test
+	public void testHashJoin()
+	{
+		Table movie = this.createMovieTable();
+		Table cinema = this.createCinemaTable();
+		Table hJoin = movie.join("studioName", "studioName", cinema, 0);
+		Table nJoin = movie.nestedLoopJoin("studioName", "studioName", cinema);
+		
+		assertEquals(hJoin.getTableLength(), 4);
+		assertEquals(nJoin.getTableLength(), 4);
+		assertEquals(hJoin.col("studioName2"), 10);
+		assertEquals(cinema.col("studioName"), 4);
+		
+		Table mJoin = movie.join("title year", "title year", cinema, 0);
+		assertEquals(mJoin.getTableLength(), 2);
+		Table iJoin = movie.join("title year", "title year", cinema, Table.BP_TREE_MAP);
+		assertEquals(iJoin.getTableLength(), 2);
+		assertEquals(iJoin.getTuple(0)[0].compareTo(iJoin.getTuple(0)[6]), 0);
+	}
+	
+	/**
+	 * Tests that a join over the memory budget, done partition by partition from disk,
+	 * gives the same result as the in-memory hash join and cleans up its spill files.
+	 */
+	@Test
+	public void testGraceJoin()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table transcript = new Table ("transcript", "studId crsCode grade", "Integer String String", "studId crsCode");
+		for (int i = 0; i < 500; i++) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			for (int c = 0; c < 3; c++) {
+				transcript.insert(new Comparable [] { (i * 7) % 600, "CS" + (4000 + c), "A" });
+			}
+		}
+		Table inMemory = student.join("id", "studId", transcript, 0);
+		
+		long budget = Table.getMemoryBudget();
+		java.io.File store = new java.io.File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		try {
+			Table.setMemoryBudget(1000);
+			Table spilled = student.join("id", "studId", transcript, 0);
+			assertEquals(spilled.getTableLength(), inMemory.getTableLength());
+			
+			java.util.Set <String> expected = new java.util.HashSet <> ();
+			java.util.Set <String> actual = new java.util.HashSet <> ();
+			for (int i = 0; i < inMemory.getTableLength(); i++) expected.add(java.util.Arrays.toString(inMemory.getTuple(i)));
+			for (int i = 0; i < spilled.getTableLength(); i++) actual.add(java.util.Arrays.toString(spilled.getTuple(i)));
+			assertEquals(actual, expected);
+			
+			long [] n = { 0 };
+			assertTrue(transcript.join("crsCode studId", "crsCode studId", transcript, t -> n[0]++));
+			assertEquals(n[0], transcript.getTableLength());
+		} finally {
+			Table.setMemoryBudget(budget);
+		}
+		assertEquals(store.list().length, files);
+	}
+	
+	/**
+	 * Tests that the parallel hash join and parallel index join give the same tuples as
+	 * the sequential ones.
+	 */
+	@Test
+	public void testParallelJoin()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table transcript = new Table ("transcript", "studId crsCode grade", "Integer String String", "studId crsCode");
+		Table advisor = new Table ("advisor", "id prof", "Integer String", "id");
+		for (int i = 0; i < 500; i++) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			if (i % 3 == 0) advisor.insert(new Comparable [] { i, "Prof_" + (i % 7) });
+			for (int c = 0; c < 3; c++) {
+				transcript.insert(new Comparable [] { (i * 7) % 600, "CS" + (4000 + c), "A" });
+			}
+		}
+		assertEquals(tupleSet(student.join("id", "studId", transcript, 0, 4)),
+		             tupleSet(student.join("id", "studId", transcript, 0)));
+		assertEquals(tupleSet(transcript.join("crsCode grade", "crsCode grade", transcript, 0, 3)),
+		             tupleSet(transcript.join("crsCode grade", "crsCode grade", transcript, 0)));
+		assertEquals(tupleSet(transcript.join("studId", "id", student, Table.TREE_MAP, 4)),
+		             tupleSet(transcript.join("studId", "id", student, Table.TREE_MAP)));
+		for (int index : new int [] { Table.TREE_MAP, Table.BP_TREE_MAP, Table.LIN_HASH_MAP, Table.EXT_HASH_MAP, Table.INT_HASH_MAP }) {
+			assertEquals(tupleSet(student.indexJoin(advisor, index, 4)),
+			             tupleSet(student.indexJoin(advisor, index)));
+		}
+		assertEquals(student.indexJoin(advisor, Table.INT_HASH_MAP, 4).getTableLength(), 167);
+	}
+	
+	/**
+	 * Tests that the sort-merge join matches the hash join, reading key-ordered tables
+	 * from their B+Tree index, sorting the others (in memory and from disk), and pairing
+	 * duplicate join values on both sides.
+	 */
+	@Test
+	public void testMergeJoin()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table transcript = new Table ("transcript", "studId crsCode grade", "Integer String String", "studId crsCode");
+		student.setIndexes(false, Table.BP_TREE_MAP);
+		for (int i = 499; i >= 0; i--) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			for (int c = 0; c < 3; c++) {
+				transcript.insert(new Comparable [] { (i * 7) % 600, "CS" + (4000 + c), "A" });
+			}
+		}
+		assertEquals(tupleSet(student.mergeJoin("id", "studId", transcript)),
+		             tupleSet(student.join("id", "studId", transcript, 0)));
+		Table mJoin = transcript.mergeJoin("crsCode grade", "crsCode grade", transcript);
+		assertEquals(mJoin.getTableLength(), 3 * 500 * 500);
+		
+		long budget = Table.getMemoryBudget();
+		java.io.File store = new java.io.File("store");
+		store.mkdirs();
+		int files = store.list().length;
+		try {
+			Table.setMemoryBudget(1000);
+			Table sJoin = transcript.mergeJoin("studId", "id", student);
+			assertEquals(tupleSet(sJoin), tupleSet(transcript.join("studId", "id", student, 0)));
+			for (int i = 1; i < sJoin.getTableLength(); i++) {
+				assertTrue(sJoin.getTuple(i - 1)[0].compareTo(sJoin.getTuple(i)[0]) <= 0);
+			}
+		} finally {
+			Table.setMemoryBudget(budget);
+		}
+		assertEquals(store.list().length, files);
+	}
+	
+	/**
+	 * Tests that the semi-join and anti-join return the tuples of the left table once,
+	 * agreeing with a join and projection and with minus, and that nulls follow the SQL
+	 * semantics of IN and NOT EXISTS (never matching) and of NOT IN (unknown).
+	 */
+	@Test
+	public void testSemiJoin()
+	{
+		Table student = new Table ("student", "id name", "Integer String", "id");
+		Table transcript = new Table ("transcript", "studId crsCode grade", "Integer String String", "studId crsCode");
+		for (int i = 0; i < 500; i++) {
+			student.insert(new Comparable [] { i, "Student_" + i });
+			for (int c = 0; c < 3; c++) {
+				transcript.insert(new Comparable [] { (i * 7) % 600, "CS" + (4000 + c), "A" });
+			}
+		}
+		Table semi = student.semiJoin("id", "studId", transcript);
+		Table anti = student.antiJoin("id", "studId", transcript);
+		assertArrayEquals(semi.getAttributes(), student.getAttributes());
+		assertEquals(semi.getTableLength(), tupleSet(semi).size());
+		assertEquals(tupleSet(semi), tupleSet(student.join("id", "studId", transcript, 0).project("id name")));
+		assertEquals(tupleSet(anti), tupleSet(student.minus(semi)));
+		assertEquals(semi.getTableLength() + anti.getTableLength(), 500);
+		
+		String [] attrs = { "a", "b" };
+		Class [] dom = { Integer.class, Integer.class };
+		java.util.List <Comparable []> rows1 = new java.util.ArrayList <> (), rows2 = new java.util.ArrayList <> ();
+		rows1.add(new Comparable [] { 1, 10 });
+		rows1.add(new Comparable [] { 2, 20 });
+		rows1.add(new Comparable [] { null, 30 });
+		rows1.add(new Comparable [] { 3, null });
+		rows2.add(new Comparable [] { 1, 10 });
+		rows2.add(new Comparable [] { 4, null });
+		Table r = new Table ("r", attrs, dom, attrs, rows1);
+		Table s = new Table ("s", attrs, dom, attrs, rows2);
+		Table empty = new Table ("empty", attrs, dom, attrs, new java.util.ArrayList <> ());
+		
+		assertEquals(tupleSet(r.semiJoin("a", "a", s)), tuples("[1, 10]"));
+		assertEquals(tupleSet(r.antiJoin("a", "a", s)), tuples("[2, 20]", "[null, 30]", "[3, null]"));
+		assertEquals(tupleSet(r.antiJoin("a", "a", s, true)), tuples("[2, 20]", "[3, null]"));
+		assertEquals(tupleSet(r.antiJoin("b", "b", s)), tuples("[2, 20]", "[null, 30]", "[3, null]"));
+		assertEquals(r.antiJoin("b", "b", s, true).getTableLength(), 0);
+		assertEquals(tupleSet(r.semiJoin("a b", "a b", s)), tuples("[1, 10]"));
+		assertEquals(tupleSet(r.antiJoin("a b", "a b", s, true)), tuples("[2, 20]", "[3, null]"));
+		assertEquals(r.antiJoin("a", "a", empty, true).getTableLength(), 4);
+	}
+	
+	/**
+	 * Return the set of the tuples written as by Arrays.toString.
+	 */
+	private java.util.Set <String> tuples(String... tuples)
+	{
+		return new java.util.HashSet <> (java.util.Arrays.asList(tuples));
+	}
+	
+	/**
+	 * Tests that pipelines of operators give the same tuples as the table operators,
+	 * and that the natural join (run as a pipeline) keeps every non-common attribute.
+	 */
+	@Test
+	public void testPipeline()
+	{
+		Table movie = this.createMovieTable();
+		Table cinema = this.createCinemaTable();
+		
+		Table selected = movie.scan().select(t -> t[movie.col("genre")].equals("action")).project("title year")
+		                          .toTable("selected", new String [] { "title", "year" });
+		assertEquals(tupleSet(selected),
+		             tupleSet(movie.select(t -> t[movie.col("genre")].equals("action"), 0).project("title year")));
+		assertEquals(movie.scan().union(cinema.scan()).toTable("u", new String [] { "title", "year" }).getTableLength(), 5);
+		assertEquals(movie.scan().minus(cinema.scan()).toTable("m", new String [] { "title", "year" }).getTableLength(), 2);
+		
+		Operator join = movie.scan().join("studioName", "studioName", cinema.scan());
+		assertEquals(join.col("studioName2"), 10);
+		assertEquals(tupleSet(join.toTable("j", new String [] { "title", "year" })),
+		             tupleSet(movie.join("studioName", "studioName", cinema, 0)));
+		int n = 0;
+		for (Comparable [] t : join) n++;
+		assertEquals(n, 4);
+		
+		Table studio = new Table ("studio", "studioName address", "String String", "studioName");
+		studio.insert(new Comparable [] { "Fox", "Los_Angeles" });
+		studio.insert(new Comparable [] { "Universal", "Universal_City" });
+		Table natural = movie.join(studio);
+		assertEquals(natural.getTableLength(), 4);
+		assertEquals(natural.col("address"), 6);
+		assertEquals(natural.col("producerNo"), 5);
+	}
+	
+	/**
+	 * Returns the tuples of the table as a set of strings.
+	 */
+	private java.util.Set <String> tupleSet(Table table)
+	{
+		java.util.Set <String> set = new java.util.HashSet <> ();
+		for (int i = 0; i < table.getTableLength(); i++) set.add(java.util.Arrays.toString(table.getTuple(i)));
+		return set;
+	}
+	
 	/**
 	 * Tests the natural join method.
 	 */
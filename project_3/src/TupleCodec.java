@@ -0,0 +1,186 @@
+
+/****************************************************************************************
+ * @file  TupleCodec.java
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/****************************************************************************************
+ * This class encodes tuples into a compact binary form driven by the domains of the
+ * attributes (e.g., an Integer takes 4 bytes, a String a variable-length length prefix
+ * followed by its UTF-8 bytes).  A tuple is laid out as a null bitmap followed by the
+ * non-null values in attribute order.  It is used wherever tuples are written to or
+ * read from pages (table files, logs, spill files).
+ */
+public class TupleCodec
+{
+    /** The domains of the attributes.
+     */
+    private final Class [] domain;
+
+    /** The number of bytes in the null bitmap.
+     */
+    private final int nullBytes;
+
+    /************************************************************************************
+     * Construct a codec for tuples with the given domains.
+     * @param _domain  the attribute domains (Integer, Long, Short, Byte, Double, Float,
+     *                 Character or String)
+     */
+    public TupleCodec (Class [] _domain)
+    {
+        domain    = _domain;
+        nullBytes = (domain.length + 7) / 8;
+        for (Class c : domain) {
+            if (c != Integer.class && c != Long.class && c != Short.class && c != Byte.class &&
+                c != Double.class && c != Float.class && c != Character.class && c != String.class) {
+                throw new IllegalArgumentException ("TupleCodec: unsupported domain " + c);
+            } // if
+        } // for
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of bytes needed to encode the tuple.
+     * @param t  the tuple
+     */
+    public int size (Comparable [] t)
+    {
+        int n = nullBytes;
+        for (int j = 0; j < domain.length; j++) {
+            if (t [j] == null) continue;
+            Class c = domain [j];
+            if (c == Integer.class || c == Float.class)      n += 4;
+            else if (c == Long.class || c == Double.class)   n += 8;
+            else if (c == Short.class || c == Character.class) n += 2;
+            else if (c == Byte.class)                        n += 1;
+            else {
+                int len = utf8Length ((String) t [j]);
+                n += varIntSize (len) + len;
+            } // if
+        } // for
+        return n;
+    } // size
+
+    /************************************************************************************
+     * Encode the tuple at the buffer's current position.
+     * @param buf  the buffer to write into (must have size (t) bytes remaining)
+     * @param t    the tuple
+     */
+    public void write (ByteBuffer buf, Comparable [] t)
+    {
+        int start = buf.position ();
+        for (int b = 0; b < nullBytes; b++) buf.put ((byte) 0);
+        for (int j = 0; j < domain.length; j++) {
+            Comparable v = t [j];
+            if (v == null) {
+                buf.put (start + j / 8, (byte) (buf.get (start + j / 8) | (1 << (j % 8))));
+                continue;
+            } // if
+            Class c = domain [j];
+            if (c == Integer.class)        buf.putInt ((Integer) v);
+            else if (c == Long.class)      buf.putLong ((Long) v);
+            else if (c == Double.class)    buf.putDouble ((Double) v);
+            else if (c == Float.class)     buf.putFloat ((Float) v);
+            else if (c == Short.class)     buf.putShort ((Short) v);
+            else if (c == Byte.class)      buf.put ((Byte) v);
+            else if (c == Character.class) buf.putChar ((Character) v);
+            else {
+                byte [] bytes = ((String) v).getBytes (StandardCharsets.UTF_8);
+                putVarInt (buf, bytes.length);
+                buf.put (bytes);
+            } // if
+        } // for
+    } // write
+
+    /************************************************************************************
+     * Decode a tuple starting at the buffer's current position.
+     * @param buf  the buffer to read from
+     * @return  the decoded tuple
+     */
+    public Comparable [] read (ByteBuffer buf)
+    {
+        Comparable [] t = new Comparable [domain.length];
+        int start = buf.position ();
+        buf.position (start + nullBytes);
+        for (int j = 0; j < domain.length; j++) {
+            if ((buf.get (start + j / 8) & (1 << (j % 8))) != 0) continue;
+            Class c = domain [j];
+            if (c == Integer.class)        t [j] = buf.getInt ();
+            else if (c == Long.class)      t [j] = buf.getLong ();
+            else if (c == Double.class)    t [j] = buf.getDouble ();
+            else if (c == Float.class)     t [j] = buf.getFloat ();
+            else if (c == Short.class)     t [j] = buf.getShort ();
+            else if (c == Byte.class)      t [j] = buf.get ();
+            else if (c == Character.class) t [j] = buf.getChar ();
+            else {
+                int len = getVarInt (buf);
+                if (buf.hasArray ()) {
+                    int off = buf.arrayOffset () + buf.position ();
+                    t [j] = new String (buf.array (), off, len, StandardCharsets.UTF_8);
+                    buf.position (buf.position () + len);
+                } else {
+                    byte [] bytes = new byte [len];
+                    buf.get (bytes);
+                    t [j] = new String (bytes, StandardCharsets.UTF_8);
+                } // if
+            } // if
+        } // for
+        return t;
+    } // read
+
+    /************************************************************************************
+     * Return the number of bytes the string takes when encoded in UTF-8.
+     * @param s  the string
+     */
+    private static int utf8Length (String s)
+    {
+        int n = 0;
+        for (int i = 0; i < s.length (); i++) {
+            char ch = s.charAt (i);
+            if (ch < 0x80)                     n += 1;
+            else if (ch < 0x800)               n += 2;
+            else if (Character.isHighSurrogate (ch) && i + 1 < s.length () &&
+                     Character.isLowSurrogate (s.charAt (i + 1))) { n += 4; i++; }
+            else                               n += 3;
+        } // for
+        return n;
+    } // utf8Length
+
+    /************************************************************************************
+     * Return the number of bytes used to encode the non-negative value as a varint.
+     */
+    private static int varIntSize (int v)
+    {
+        int n = 1;
+        while ((v >>>= 7) != 0) n++;
+        return n;
+    } // varIntSize
+
+    /************************************************************************************
+     * Write the non-negative value using 7 bits per byte (high bit = more bytes follow).
+     */
+    private static void putVarInt (ByteBuffer buf, int v)
+    {
+        while ((v & ~0x7F) != 0) {
+            buf.put ((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        } // while
+        buf.put ((byte) v);
+    } // putVarInt
+
+    /************************************************************************************
+     * Read a value written by putVarInt.
+     */
+    private static int getVarInt (ByteBuffer buf)
+    {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get ();
+            v |= (b & 0x7F) << shift;
+            if (b >= 0) return v;
+        } // for
+    } // getVarInt
+
+} // TupleCodec class
+
@@ -0,0 +1,197 @@
+
+/****************************************************************************************
+ * @file  VectorCompare.java
+ */
+
+import java.util.Arrays;
+
+/****************************************************************************************
+ * This class provides the comparison of an attribute with a constant as a vector
+ * predicate (see VectorPredicate.compare).  The comparison operator is encoded as a
+ * three bit mask over the outcomes less, equal and greater, so a single loop per
+ * storage kind (int, long, double) covers all six operators, once the rows marked in
+ * the column's null bitmap are dropped.  A dictionary coded column is compared on its
+ * codes for == and !=, and otherwise through a table giving the outcome for each code.
+ * A numeric value must fit the column's storage type exactly (see Expr.coerce), since
+ * narrowing it (e.g., 3.5 to 3 for an int column) would change the outcome.
+ */
+class VectorCompare
+      implements VectorPredicate
+{
+    /** The bits of the mask for the outcomes of a comparison.
+     */
+    private static final int LT = 1, EQ = 2, GT = 4;
+
+    /** The position of the attribute.
+     */
+    private final int col;
+
+    /** The outcomes (LT, EQ, GT) for which a row qualifies.
+     */
+    private final int mask;
+
+    /** The value to compare with.
+     */
+    private final Comparable value;
+
+    /** The value converted to the storage type of a numeric column (on first use).
+     */
+    private Number number;
+
+    /** For a dictionary coded column, the store and whether each code qualifies (built
+     *  on first use and extended as the dictionary grows).
+     */
+    private ColumnStore codeStore;
+    private boolean []  codeOk;
+
+    /************************************************************************************
+     * Construct the comparison of the attribute at col with the value.
+     *
+     * @param _col    the position of the attribute
+     * @param op      the comparison: "==", "!=", "<", "<=", ">" or ">="
+     * @param _value  the value to compare with
+     */
+    VectorCompare (int _col, String op, Comparable _value)
+    {
+        col   = _col;
+        value = _value;
+        switch (op) {
+        case "==": mask = EQ;      break;
+        case "!=": mask = LT | GT; break;
+        case "<":  mask = LT;      break;
+        case "<=": mask = LT | EQ; break;
+        case ">":  mask = GT;      break;
+        case ">=": mask = GT | EQ; break;
+        default:   throw new IllegalArgumentException ("VectorCompare: unknown operator " + op);
+        } // switch
+        if (value == null) throw new NullPointerException ("VectorCompare: null value");
+    } // constructor
+
+    /************************************************************************************
+     * Determine whether the tuple qualifies.
+     *
+     * @param t  the tuple to test
+     */
+    @SuppressWarnings ("unchecked")
+    public boolean test (Comparable [] t)
+    {
+        return t [col] != null && qualifies (Integer.signum (t [col].compareTo (value)));
+    } // test
+
+    /************************************************************************************
+     * Shorten the batch's selection vector to the qualifying rows.
+     *
+     * @param b  the batch to filter
+     */
+    public void filter (Batch b)
+    {
+        ColumnStore s   = b.store;
+        int []      sel = b.sel;
+        int         n   = b.n, m = 0;
+
+        long [] nulls = (s.kind (col) == ColumnStore.CODE) ? null : s.nulls (col);
+        if (nulls != null) {                                    // a null never qualifies
+            for (int i = 0; i < n; i++) {
+                int r = sel [i];
+                if ((nulls [r >>> 6] >>> r & 1L) == 0) sel [m++] = r;
+            } // for
+            n = m;
+            m = 0;
+        } // if
+
+        switch (s.kind (col)) {
+        case ColumnStore.INT:
+            int [] is = s.ints (col);
+            int    iv = number (s.kind (col)).intValue ();
+            for (int i = 0; i < n; i++) {
+                int r = sel [i];
+                if ((mask >> (Integer.compare (is [r], iv) + 1) & 1) != 0) sel [m++] = r;
+            } // for
+            break;
+        case ColumnStore.LONG:
+            long [] ls = s.longs (col);
+            long    lv = number (s.kind (col)).longValue ();
+            for (int i = 0; i < n; i++) {
+                int r = sel [i];
+                if ((mask >> (Long.compare (ls [r], lv) + 1) & 1) != 0) sel [m++] = r;
+            } // for
+            break;
+        case ColumnStore.DOUBLE:
+            double [] ds = s.doubles (col);
+            double    dv = number (s.kind (col)).doubleValue ();
+            for (int i = 0; i < n; i++) {
+                int r = sel [i];
+                if ((mask >> (Double.compare (ds [r], dv) + 1) & 1) != 0) sel [m++] = r;
+            } // for
+            break;
+        default:
+            int [] cs = s.ints (col);
+            if (mask == EQ || mask == (LT | GT)) {
+                int     code = s.code (col, value);              // -1 if the value is absent
+                boolean eq   = mask == EQ;
+                for (int i = 0; i < n; i++) {
+                    int r = sel [i], c = cs [r];
+                    if (c >= 0 && (c == code) == eq) sel [m++] = r;
+                } // for
+            } else {
+                boolean [] ok = codeTable (s);
+                for (int i = 0; i < n; i++) {
+                    int r = sel [i], c = cs [r];
+                    if (c >= 0 && ok [c]) sel [m++] = r;
+                } // for
+            } // if
+        } // switch
+        b.n = m;
+    } // filter
+
+    /************************************************************************************
+     * Return the value converted to the storage type of an INT, LONG or DOUBLE column.
+     *
+     * @param kind  the storage kind of the column
+     * @throws IllegalArgumentException  if the value does not convert exactly
+     */
+    private Number number (int kind)
+    {
+        if (number == null) {
+            Class      c = (kind == ColumnStore.INT) ? Integer.class : (kind == ColumnStore.LONG) ? Long.class : Double.class;
+            Comparable v = (value instanceof Character) ? Integer.valueOf ((Character) value) : value;
+            Comparable w = Expr.coerce (v, c);
+            if (w == null) {
+                throw new IllegalArgumentException ("VectorCompare: " + value + " is not a " + c.getSimpleName ());
+            } // if
+            number = (Number) w;
+        } // if
+        return number;
+    } // number
+
+    /************************************************************************************
+     * Return whether a comparison with the given outcome (-1, 0 or 1) qualifies.
+     */
+    private boolean qualifies (int c)
+    {
+        return (mask >> (c + 1) & 1) != 0;
+    } // qualifies
+
+    /************************************************************************************
+     * Return the table giving whether each code of the dictionary coded column of the
+     * store qualifies, extending it if the dictionary has grown.
+     *
+     * @param s  the store
+     */
+    @SuppressWarnings ("unchecked")
+    private synchronized boolean [] codeTable (ColumnStore s)
+    {
+        int size = s.dictionarySize (col);
+        if (codeStore != s) {
+            codeStore = s;
+            codeOk    = new boolean [0];
+        } // if
+        if (codeOk.length < size) {
+            boolean [] ok = Arrays.copyOf (codeOk, size);
+            for (int c = codeOk.length; c < size; c++) ok [c] = qualifies (Integer.signum (s.decode (col, c).compareTo (value)));
+            codeOk = ok;
+        } // if
+        return codeOk;
+    } // codeTable
+
+} // VectorCompare class
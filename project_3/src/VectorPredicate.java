@@ -0,0 +1,92 @@
+
+/****************************************************************************************
+ * @file  VectorPredicate.java
+ */
+
+import java.util.function.Predicate;
+
+/****************************************************************************************
+ * This interface provides predicates that can be evaluated a batch at a time (see
+ * Batch) over the primitive column vectors of a ColumnStore, as well as a row at a time
+ * like any other predicate (so they work on row-store tables too).  Comparisons of an
+ * attribute with a constant are made by compare, and run as tight loops over the
+ * column's vector, e.g.,
+ *
+ *     student.select (VectorPredicate.compare (0, ">=", 100).and (VectorPredicate.compare (3, "==", "FR")))
+ */
+public interface VectorPredicate
+       extends Predicate <Comparable []>
+{
+    /************************************************************************************
+     * Shorten the batch's selection vector to the rows satisfying the predicate,
+     * keeping them in order.
+     *
+     * @param b  the batch to filter
+     */
+    void filter (Batch b);
+
+    /************************************************************************************
+     * Return the conjunction of this predicate and p2.  In a batch, p2 is only evaluated
+     * on the rows this predicate keeps.
+     *
+     * @param p2  the other predicate
+     */
+    default VectorPredicate and (VectorPredicate p2)
+    {
+        VectorPredicate p1 = this;
+        return new VectorPredicate () {
+            public void filter (Batch b)
+            {
+                p1.filter (b);
+                if (b.n > 0) p2.filter (b);
+            } // filter
+
+            public boolean test (Comparable [] t)
+            {
+                return p1.test (t) && p2.test (t);
+            } // test
+        };
+    } // and
+
+    /************************************************************************************
+     * Return the predicate comparing the attribute at position col with the value, e.g.,
+     * compare (1, "<", 1980) for year < 1980.  A null attribute never qualifies.
+     *
+     * @param col    the position of the attribute
+     * @param op     the comparison: "==", "!=", "<", "<=", ">" or ">="
+     * @param value  the (non-null) value to compare with, exactly representable in the
+     *               attribute's type (else filtering throws IllegalArgumentException)
+     */
+    static VectorPredicate compare (int col, String op, Comparable value)
+    {
+        return new VectorCompare (col, op, value);
+    } // compare
+
+    /************************************************************************************
+     * Return a vector predicate testing the given (row) predicate on each selected row
+     * of a batch, for conditions compare cannot express.
+     *
+     * @param p  the row predicate
+     */
+    static VectorPredicate of (Predicate <Comparable []> p)
+    {
+        return new VectorPredicate () {
+            public void filter (Batch b)
+            {
+                Comparable [] buf = new Comparable [b.store.columns ()];
+                int           m   = 0;
+                for (int i = 0; i < b.n; i++) {
+                    b.store.fill (b.sel [i], buf);
+                    if (p.test (buf)) b.sel [m++] = b.sel [i];
+                } // for
+                b.n = m;
+            } // filter
+
+            public boolean test (Comparable [] t)
+            {
+                return p.test (t);
+            } // test
+        };
+    } // of
+
+} // VectorPredicate interface
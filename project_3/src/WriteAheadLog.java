@@ -0,0 +1,283 @@
+
+/****************************************************************************************
+ * @file  WriteAheadLog.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/****************************************************************************************
+ * This class provides an append-only write-ahead log of inserted tuples.  Each record is
+ *
+ *  | length (int) | CRC-32 of payload (int) | payload (tuple encoded by TupleCodec) |
+ *
+ * Records are appended to an in-memory buffer and made durable with group commit:
+ * the first committer to find no flush in progress becomes the leader and writes and
+ * forces everything appended so far, while the other committers wait for it (or for
+ * the next leader), so many concurrent writers share one FileChannel.force.  A failed
+ * write or force poisons the log: the failed batch may be partly on disk, so the file
+ * is cut back to the last durable record and every later commit throws.
+ */
+public class WriteAheadLog
+{
+    /** The size of a record header (length and checksum).
+     */
+    private static final int HEADER = 8;
+
+    /** The file holding the log.
+     */
+    private final FileChannel file;
+
+    /** The codec for the logged tuples.
+     */
+    private final TupleCodec codec;
+
+    /** Records appended but not yet handed to a flush.
+     */
+    private ByteBuffer pending = ByteBuffer.allocate (1 << 16);
+
+    /** A buffer to swap in for pending while a flush is writing it.
+     */
+    private ByteBuffer spare = ByteBuffer.allocate (1 << 16);
+
+    /** The log sequence number (end offset) of the last appended record.
+     */
+    private long appendedLsn;
+
+    /** All records ending at or before this log sequence number are durable.
+     */
+    private long durableLsn;
+
+    /** Whether a leader is currently writing and forcing a batch.
+     */
+    private boolean flushing = false;
+
+    /** The error that poisoned the log (null while it is healthy).
+     */
+    private IOException failure = null;
+
+    /** The number of times the log has been forced (for performance testing).
+     */
+    private long forces = 0;
+
+    /************************************************************************************
+     * Open (or create) the log at the given path for appending.
+     * @param path    the path of the log file
+     * @param domain  the domains of the logged tuples
+     * @throws IOException  if the file cannot be opened
+     */
+    public WriteAheadLog (String path, Class [] domain)
+           throws IOException
+    {
+        this (FileChannel.open (Paths.get (path), StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE), domain);
+    } // constructor
+
+    /************************************************************************************
+     * Open a log that appends to the given channel (e.g., one that injects failures).
+     * @param _file   the channel holding the log
+     * @param domain  the domains of the logged tuples
+     * @throws IOException  if the channel cannot be positioned
+     */
+    WriteAheadLog (FileChannel _file, Class [] domain)
+           throws IOException
+    {
+        file  = _file;
+        codec = new TupleCodec (domain);
+        appendedLsn = durableLsn = file.size ();
+        file.position (appendedLsn);
+    } // constructor
+
+    /************************************************************************************
+     * Append a record for the inserted tuple to the log buffer.  The record is not
+     * durable until commit returns for its log sequence number.
+     * @param t  the inserted tuple
+     * @return  the log sequence number of the record
+     */
+    public synchronized long append (Comparable [] t)
+    {
+        int len = codec.size (t);
+        if (pending.remaining () < HEADER + len) {
+            ByteBuffer bigger = ByteBuffer.allocate (Math.max (2 * pending.capacity (), pending.position () + HEADER + len));
+            pending.flip ();
+            bigger.put (pending);
+            pending = bigger;
+        } // if
+        int start = pending.position ();
+        pending.position (start + HEADER);
+        codec.write (pending, t);
+        CRC32 crc = new CRC32 ();
+        crc.update (pending.array (), start + HEADER, len);
+        pending.putInt (start, len);
+        pending.putInt (start + 4, (int) crc.getValue ());
+        appendedLsn += HEADER + len;
+        return appendedLsn;
+    } // append
+
+    /************************************************************************************
+     * Wait until the record with the given log sequence number is durable.  If no flush
+     * is in progress, the caller becomes the leader and flushes every record appended
+     * so far on behalf of all waiting committers.
+     * @param lsn  the log sequence number returned by append
+     * @throws IOException  if the log cannot be written or forced, now or by an
+     *                      earlier flush (the record is then not durable)
+     */
+    public void commit (long lsn)
+           throws IOException
+    {
+        ByteBuffer batch;
+        long       target;
+
+        synchronized (this) {
+            while (durableLsn < lsn && flushing) {
+                try {
+                    wait ();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread ().interrupt ();
+                    throw new InterruptedIOException ("commit interrupted");
+                } // try
+            } // while
+            if (durableLsn >= lsn) return;
+            if (failure != null) throw new IOException ("commit: the log failed earlier", failure);
+            flushing = true;
+            batch    = pending;
+            pending  = (spare.capacity () >= batch.capacity ()) ? spare : ByteBuffer.allocate (batch.capacity ());
+            spare    = null;
+            target   = appendedLsn;
+        } // synchronized
+
+        IOException error = null;
+        try {
+            batch.flip ();
+            while (batch.hasRemaining ()) file.write (batch);
+            file.force (false);
+        } catch (IOException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            synchronized (this) {
+                batch.clear ();
+                spare    = batch;
+                flushing = false;
+                if (error == null) {
+                    durableLsn = target;
+                    forces++;
+                } else {
+                    poison (error);
+                } // if
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // commit
+
+    /************************************************************************************
+     * Poison the log after a failed flush, so that no committer whose record was in the
+     * failed batch (or any later one) is told it is durable.  The part of the batch that
+     * reached the file is cut off, if the file still allows it, so that a replay of the
+     * log does not stop at a torn record.
+     * @param error  the error that failed the flush
+     */
+    private void poison (IOException error)
+    {
+        failure = error;
+        try {
+            file.truncate (durableLsn);
+            file.position (durableLsn);
+        } catch (IOException ex) {
+            error.addSuppressed (ex);
+        } // try
+    } // poison
+
+    /************************************************************************************
+     * Discard the log's contents, e.g., after a checkpoint has saved every logged tuple.
+     * @throws IOException  if the log cannot be truncated
+     */
+    public synchronized void truncate ()
+           throws IOException
+    {
+        while (flushing) {
+            try {
+                wait ();
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                throw new InterruptedIOException ("truncate interrupted");
+            } // try
+        } // while
+        pending.clear ();
+        file.truncate (0);
+        file.position (0);
+        file.force (true);
+        appendedLsn = durableLsn = 0;
+    } // truncate
+
+    /************************************************************************************
+     * Return the number of times the log has been forced to disk.
+     */
+    public synchronized long forces ()
+    {
+        return forces;
+    } // forces
+
+    /************************************************************************************
+     * Flush any remaining records and close the log (the file is closed even if the
+     * flush fails).
+     * @throws IOException  if the log cannot be written or closed
+     */
+    public void close ()
+           throws IOException
+    {
+        long lsn;
+        synchronized (this) { lsn = appendedLsn; }
+        try {
+            commit (lsn);
+        } finally {
+            file.close ();
+        } // try
+    } // close
+
+    /************************************************************************************
+     * Replay the log at the given path, passing each intact record's tuple to apply.
+     * Replay stops at the first torn or corrupt record (e.g., one cut short by a crash),
+     * which is cut off the end of the file.
+     * @param path    the path of the log file
+     * @param domain  the domains of the logged tuples
+     * @param apply   the action redoing an insert
+     * @return  the number of records replayed
+     * @throws IOException  if the log cannot be read
+     */
+    public static long replay (String path, Class [] domain, Consumer <Comparable []> apply)
+           throws IOException
+    {
+        if (! Files.exists (Paths.get (path))) return 0;
+        TupleCodec codec = new TupleCodec (domain);
+        long       n     = 0;
+
+        try (FileChannel ch = FileChannel.open (Paths.get (path), StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate ((int) Math.min (ch.size (), Integer.MAX_VALUE - 8));
+            while (buf.hasRemaining () && ch.read (buf) >= 0);
+            buf.flip ();
+
+            while (buf.remaining () >= HEADER) {
+                int start = buf.position ();
+                int len   = buf.getInt ();
+                int sum   = buf.getInt ();
+                if (len < 0 || len > buf.remaining ()) { buf.position (start); break; }
+                CRC32 crc = new CRC32 ();
+                crc.update (buf.array (), buf.position (), len);
+                if ((int) crc.getValue () != sum) { buf.position (start); break; }
+                apply.accept (codec.read (buf));
+                buf.position (start + HEADER + len);
+                n++;
+            } // while
+            if (buf.position () < ch.size ()) ch.truncate (buf.position ());
+        } // try
+        return n;
+    } // replay
+
+} // WriteAheadLog class
+